@@ -23,20 +23,36 @@
 package auditorium;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.ServerSocket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Observer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 // import auditorium.verifierplugins.*;
 
 import sexpression.*;
+import sexpression.stream.InvalidVerbatimStreamException;
 // import verifier.*;
 
 /**
@@ -44,19 +60,43 @@ import sexpression.*;
  * wishes to use auditorium.<br>
  * <br>
  * In addition to providing the library API for accessing the auditorium
- * network, this class is the keeper of three threads. In order to make sure
+ * network, this class is the keeper of four threads. In order to make sure
  * these threads are running when they should be, only interleave calls to the
  * API between a call to start() and stop().<br>
  * <b>Announce</b>: This thread takes announcements placed on the queue by the
  * user, formats them as messages (this includes signing), floods them to the
  * network and puts them into the log. <br>
  * <b>Receive</b>: This thread takes messages that are heard by individual
- * links and does the appropriate thing with them (ignore or flood/tell
- * application). <b>Join</b>: This thread listens for join requests, responds
+ * links and does the appropriate thing with them (ignore or flood/log). New
+ * messages are handed to a pool of verify threads, which check their
+ * signatures in parallel. <b>Deliver</b>: This thread passes verified messages
+ * to the application, in the order the receive and announce threads logged
+ * them, so messages from any one sender arrive in the order they were sent.
+ * <b>Join</b>: This thread listens for join requests, responds
  * appropriately, and sets up link structures.<br>
  * <br>
- * All thread synchronization (including the three aforementioned threads and
- * each link thread) is done in this class. This means that all other auditorium
+ * A host rejoining others (one whose log isn't empty) tells each, in the
+ * join, the highest sequence number it has logged from each node (a
+ * {@link CatchUpRequest}). The other host sends back whatever in its log is
+ * newer and, if its own log isn't empty either, asks the same of the joining
+ * host, so a host that was cut off picks up what it missed. A brand
+ * new host asks for nothing and is sent nothing. Catching up is done on a
+ * small pool of threads, reading the log with a {@link LogReader}, one peer
+ * at a time per thread.<br>
+ * <br>
+ * If {@link IAuditoriumParams#getCompressLinks()} is set, the join also offers
+ * {@link Compression}, and a link is compressed in both directions whenever
+ * the hosts at both ends have it set.<br>
+ * <br>
+ * If {@link IAuditoriumParams#getUseNIOTransport()} is set, links do not get
+ * threads of their own. Instead a single {@link AuditoriumSelector} services
+ * every link as well as the listen socket, and join handshakes are handed to a
+ * small fixed pool of threads, so the number of threads no longer grows with
+ * the number of connected peers.<br>
+ * <br>
+ * All thread synchronization (including the aforementioned threads and each
+ * link thread) is done in this class, save for the log's {@link LastSet},
+ * which verify threads update. This means that all other auditorium
  * classes are not thread safe. This is done to simplify matters.
  * 
  * 
@@ -112,14 +152,53 @@ public class AuditoriumHost implements IAuditoriumHost {
         }
     }
 
+    /**
+     * A logged message waiting to be passed to the application, once its
+     * signature has been checked.
+     */
+    private static class Verification {
+        public final Message message;
+        public final Future<ASExpression> payload;
+
+        public Verification(Message message, Future<ASExpression> payload) {
+            this.message = message;
+            this.payload = payload;
+        }
+    }
+
     // Core state
     private final HashMap<String, IAuditoriumLayer> _layers;
     private final IAuditoriumLayer _head;
     private final AuditoriumDiscoveryHost _discover;
     private final IAuditoriumParams _constants;
-    private final SynchronizedQueue<Pair> _inqueue;
-    private final SynchronizedQueue<ASExpression> _outqueue;
-    private final SynchronizedQueue<Message> _pendingqueue;
+    private final LockFreeQueue<Pair> _inqueue;
+    private final LockFreeQueue<ASExpression> _outqueue;
+    private final LockFreeQueue<Message> _pendingqueue;
+
+    // The announce and receive threads take at most this many messages off
+    // their queues (and hold the host lock) at a time.
+    private static final int BATCH_SIZE = 64;
+
+    // Catching a peer up stops queuing while its backlog is this long, so as
+    // not to crowd out the messages being flooded to it.
+    private static final int CATCH_UP_BACKLOG = Link.MAX_BACKLOG / 2;
+    private static final int CATCH_UP_WAIT = 50;
+
+    // At most this many peers are caught up at once, and at most this many
+    // more wait their turn; further requests are dropped. A link has at most
+    // one catch-up going and a new request on it replaces it. Catch-ups are
+    // keyed by the link the request came in on, not by the node id a request
+    // claims (catch-up requests aren't signed), so a peer can't start or
+    // cancel one on anybody else's link.
+    private static final int CATCH_UP_THREADS = 2;
+    private static final int CATCH_UP_QUEUE = 16;
+    private ExecutorService _catchUpPool;
+    private final IdentityHashMap<Link, Future<?>> _catchUps;
+
+    // New messages, oldest first, each with its payload as worked out by the
+    // verify pool.
+    private final LockFreeQueue<Verification> _verifiedqueue;
+    private ExecutorService _verifyPool;
 
     // People
     private final HostPointer _me;
@@ -140,6 +219,11 @@ public class AuditoriumHost implements IAuditoriumHost {
     // Sockets
     private ServerSocket _listensocket;
 
+    // Non-blocking transport (null when each link has its own thread)
+    private static final int JOIN_HANDSHAKE_THREADS = 2;
+    private final AuditoriumSelector _selector;
+    private ExecutorService _joinPool;
+
     // Thread state
     private volatile boolean _running;
     private volatile long _sequence;
@@ -172,9 +256,13 @@ public class AuditoriumHost implements IAuditoriumHost {
         _head = temporal;
         _discover = new AuditoriumDiscoveryHost( this, constants );
         _constants = constants;
-        _inqueue = new SynchronizedQueue<Pair>();
-        _outqueue = new SynchronizedQueue<ASExpression>();
-        _pendingqueue = new SynchronizedQueue<Message>();
+        _inqueue = new LockFreeQueue<Pair>();
+        _outqueue = new LockFreeQueue<ASExpression>();
+        _pendingqueue = new LockFreeQueue<Message>();
+        _verifiedqueue = new LockFreeQueue<Verification>();
+        _catchUps = new IdentityHashMap<Link, Future<?>>();
+        _selector = constants.getUseNIOTransport() ? new AuditoriumSelector()
+                : null;
 
         // Events
         _hostJoined = new Event<HostPointer>();
@@ -188,9 +276,12 @@ public class AuditoriumHost implements IAuditoriumHost {
         	if (ruleFile != null) {
 //        		loadedRule = Verifier.readRule( constants.getRuleFile() );
         	}
-            _log = new Log( new File( constants.getLogLocation() ) );
+            _log = new Log( new File( constants.getLogLocation() ),
+                    LogWriter.SyncPolicy.parse( constants.getLogSyncPolicy() ),
+                    constants.getLogSyncInterval(), constants.getResumeLog(),
+                    constants.getIndexLog() );
         }
-        catch (FileNotFoundException e) {
+        catch (IOException e) {
             throw new FatalNetworkException( "Can't open file: "
                     + e.getMessage(), e );
         }
@@ -211,7 +302,9 @@ public class AuditoriumHost implements IAuditoriumHost {
 	        
         // Thread state
         _running = false;
-        _sequence = 0;
+        // Pick up numbering where we left off, so peers can tell what's new.
+        _sequence = constants.getResumeLog() ? _log
+                .getHighestSequence( machineName ) : 0;
     }
 
     /**
@@ -224,24 +317,52 @@ public class AuditoriumHost implements IAuditoriumHost {
         Bugout.msg( "Host: STARTING" );
         _discover.start();
         _running = true;
+        int verifiers = _constants.getVerifyThreads();
+        _verifyPool = Executors.newFixedThreadPool( verifiers > 0 ? verifiers
+                : Runtime.getRuntime().availableProcessors() );
+        _catchUpPool = new ThreadPoolExecutor( CATCH_UP_THREADS,
+                CATCH_UP_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>( CATCH_UP_QUEUE ),
+                new ThreadFactory() {
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread( r, "CatchUp" );
+                        t.setDaemon( true );
+                        return t;
+                    }
+
+                } );
+        if (_selector == null) {
+            new Thread( new Runnable() {
+
+                public void run() {
+                    joinListenerThread();
+                }
+
+            } ).start();
+        }
+        else {
+            _selector.start();
+            joinListenerSelector();
+        }
         new Thread( new Runnable() {
 
             public void run() {
-                joinListenerThread();
+                announceThread();
             }
 
         } ).start();
         new Thread( new Runnable() {
 
             public void run() {
-                announceThread();
+                receiveThread();
             }
 
         } ).start();
         new Thread( new Runnable() {
 
             public void run() {
-                receiveThread();
+                deliverThread();
             }
 
         } ).start();
@@ -261,10 +382,22 @@ public class AuditoriumHost implements IAuditoriumHost {
         _inqueue.releaseThreads();
         _outqueue.releaseThreads();
         _pendingqueue.releaseThreads();
+        _verifiedqueue.releaseThreads();
+        // Messages still waiting for a verify thread are never delivered.
+        for (Runnable r : _verifyPool.shutdownNow())
+            ((Future<?>) r).cancel( false );
+        _catchUpPool.shutdownNow();
         try {
-            _listensocket.close();
+            if (_listensocket != null)
+                _listensocket.close();
         }
         catch (IOException e) {}
+        if (_selector != null) {
+            _selector.stop();
+            if (_joinPool != null)
+                _joinPool.shutdownNow();
+        }
+        _log.close();
 
         /*
         // XXX: uncomment when verifier works
@@ -311,11 +444,23 @@ public class AuditoriumHost implements IAuditoriumHost {
                 }
         }
 
-        // Send the join
-        Message joinmsg = new Message( "join", _me, nextSequence(), _head
-                .makeJoin( StringExpression.EMPTY ) );
+        // Send the join. If we have something to resume from, say what so the
+        // host can catch us up. Offer to compress the link.
+        Message joinmsg;
+        synchronized (this) {
+            ArrayList<ASExpression> options = new ArrayList<ASExpression>();
+            ASExpression request = makeCatchUpRequest();
+            if (request != null)
+                options.add( request );
+            if (_constants.getCompressLinks())
+                options.add( Compression.DEFLATE );
+            joinmsg = new Message( "join", _me, nextSequence(), _head
+                    .makeJoin( new ListExpression( options ) ) );
+        }
         MessageSocket socket = new MessageSocket( host, _constants
-                .getJoinTimeout() );
+                .getJoinTimeout(), _selector != null );
+        if (_constants.getCompressLinks())
+            socket.acceptCompression();
         Bugout.msg( "Host: sending join: " + new MessagePointer( joinmsg ) );
         socket.send( joinmsg );
 
@@ -340,7 +485,7 @@ public class AuditoriumHost implements IAuditoriumHost {
                     catch (IOException e) {}
                     return;
                 }
-            Link l = new Link( this, socket, joinreply.getFrom() );
+            Link l = makeLink( socket, joinreply.getFrom() );
             l.start();
             _hosts.add( l );
         }
@@ -456,10 +601,29 @@ public class AuditoriumHost implements IAuditoriumHost {
     }
 
     /**
-     * @see auditorium.IAuditoriumHost#receiveAnnouncement(auditorium.Message)
+     * Get the number of messages waiting to be written to each connected
+     * host. A peer whose backlog keeps growing is not keeping up; once it
+     * reaches {@link Link#MAX_BACKLOG} the link is dropped.
+     * 
+     * @return This method returns a map from each connected host to the
+     *         number of messages queued for it.
      */
-    public void receiveAnnouncement(Message message) {
-        _pendingqueue.push( message );
+    public synchronized HashMap<HostPointer, Integer> getBacklogs() {
+        HashMap<HostPointer, Integer> backlogs = new HashMap<HostPointer, Integer>();
+        for (Link l : _hosts)
+            backlogs.put( l.getAddress(), l.getBacklog() );
+        return backlogs;
+    }
+
+    /**
+     * @see auditorium.IAuditoriumHost#receiveAnnouncement(auditorium.Link,
+     *      auditorium.Message)
+     */
+    public void receiveAnnouncement(Link link, Message message) {
+        if (message.getType().equals( "catch-up" ))
+            receiveCatchUp( link, message );
+        else
+            _pendingqueue.push( message );
     }
 
     /**
@@ -467,6 +631,11 @@ public class AuditoriumHost implements IAuditoriumHost {
      */
     public synchronized void removeLink(Link link) {
         link.stop();
+        synchronized (_catchUps) {
+            Future<?> catchingUp = _catchUps.remove( link );
+            if (catchingUp != null)
+                catchingUp.cancel( true );
+        }
         _hosts.remove( link );
         _hostLeft.notify( link.getAddress() );
     }
@@ -501,85 +670,290 @@ public class AuditoriumHost implements IAuditoriumHost {
                 break;
             }
 
-            // Get the join request, make the response.
-            Message jrq = null;
-            try {
-                jrq = socket.receive();
-                Bugout.msg( "Listen: received " + new MessagePointer( jrq ) );
-                if (!jrq.getType().equals( "join" )) {
-                    Bugout.err( "Listen: received non-join message" );
-                    try {
-                        socket.close();
-                    }
-                    catch (IOException e) {}
-                    continue;
+            acceptJoin( socket );
+        }
+        Bugout.msg( "Listen: THREAD END" );
+        stop();
+    }
+
+    // Join listening, non-blocking transport: the selector accepts, the join
+    // pool does the handshake.
+    private void joinListenerSelector() {
+        Bugout.msg( "Listen: selector listening on "
+                + _constants.getListenPort() );
+        _joinPool = Executors.newFixedThreadPool( JOIN_HANDSHAKE_THREADS );
+        try {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.socket().bind(
+                new InetSocketAddress( _constants.getListenPort() ) );
+            _listensocket = server.socket();
+            _selector.listen( server, new AuditoriumSelector.Acceptor() {
+
+                public void accept(final SocketChannel channel) {
+                    _joinPool.execute( new Runnable() {
+
+                        public void run() {
+                            handshakeChannel( channel );
+                        }
+                    } );
                 }
+            } );
+        }
+        catch (IOException e) {
+            Bugout.err( "Couldn't bind socket." );
+        }
+    }
+
+    private void handshakeChannel(SocketChannel channel) {
+        Bugout.msg( "Listen: connection received." );
+        try {
+            // The peer sends its join right after connecting; don't let a
+            // silent one tie up a handshake thread.
+            channel.socket().setSoTimeout( _constants.getJoinTimeout() );
+            MessageSocket socket = new MessageSocket( channel.socket() );
+            acceptJoin( socket );
+        }
+        catch (IOException | NetworkException e) {
+            Bugout.err( "Listen: " + e.getMessage() );
+            try {
+                channel.close();
             }
-            catch (NetworkException e) {
-                Bugout.err( "Listen: " + e.getMessage() );
+            catch (IOException e1) {}
+        }
+    }
+
+    /**
+     * Receive a join request on a newly accepted socket, send the reply, and
+     * set up the link. Any failure closes the socket.
+     */
+    private void acceptJoin(MessageSocket socket) {
+        // Get the join request, make the response.
+        Message jrq = null;
+        try {
+            jrq = socket.receive();
+            Bugout.msg( "Listen: received " + new MessagePointer( jrq ) );
+            if (!jrq.getType().equals( "join" )) {
+                Bugout.err( "Listen: received non-join message" );
                 try {
                     socket.close();
                 }
-                catch (IOException e1) {}
-                continue;
+                catch (IOException e) {}
+                return;
             }
-            catch (IncorrectFormatException e) {
-                Bugout.err( "Listen: " + e.getMessage() );
+        }
+        catch (NetworkException e) {
+            Bugout.err( "Listen: " + e.getMessage() );
+            try {
+                socket.close();
+            }
+            catch (IOException e1) {}
+            return;
+        }
+        catch (IncorrectFormatException e) {
+            Bugout.err( "Listen: " + e.getMessage() );
+            try {
+                socket.close();
+            }
+            catch (IOException e1) {}
+            return;
+        }
+
+        // A joining host that says what it has wants to be caught up, and
+        // one that offers compression gets it if we want it too.
+        CatchUpRequest request = null;
+        boolean compress = false;
+        if (jrq.getDatum() instanceof ListExpression)
+            for (ASExpression option : (ListExpression) jrq.getDatum()) {
+                if (option.equals( Compression.DEFLATE ))
+                    compress = _constants.getCompressLinks();
+                else
+                    try {
+                        request = new CatchUpRequest( option );
+                    }
+                    catch (IncorrectFormatException e) {}
+            }
+
+        // Send the join response, set up the auditorium link.
+        Link link;
+        synchronized (this) {
+            try {
+                socket.send( new Message( "join-reply", _me,
+                        nextSequence(), _head
+                                .makeJoinReply( Nothing.SINGLETON ) ) );
+                if (compress)
+                    socket.compressOutput();
+            }
+            catch (NetworkException e) {
                 try {
                     socket.close();
                 }
                 catch (IOException e1) {}
-                continue;
+                return;
             }
+            for (Link l : _hosts)
+                if (l.getAddress().equals( jrq.getFrom() ))
+                    continue;
+            link = makeLink( socket, jrq.getFrom() );
+            link.start();
+            _hosts.add( link );
+            _hostJoined.notify( jrq.getFrom() );
+            Bugout.msg( "Listen: Connection successful to "
+                    + link.getAddress() );
+        }
 
-            // Send the join response, set up the auditorium link.
+        // A rejoining host is caught up. If we have something to resume from
+        // too, it may have heard things while apart that we haven't, so ask
+        // it to return the favor.
+        if (request != null) {
+            catchUp( link, request );
+            Message ask = null;
             synchronized (this) {
+                ASExpression have = makeCatchUpRequest();
+                if (have != null)
+                    ask = new Message( "catch-up", _me, nextSequence(), have );
+            }
+            if (ask != null)
                 try {
-                    socket.send( new Message( "join-reply", _me,
-                            nextSequence(), _head
-                                    .makeJoinReply( Nothing.SINGLETON ) ) );
+                    link.send( ask );
                 }
                 catch (NetworkException e) {
-                    try {
-                        socket.close();
+                    Bugout.err( "Listen: " + e.getMessage() );
+                }
+        }
+    }
+
+    /**
+     * Assume lock is already acquired!
+     * 
+     * @return This method returns a catch-up request listing what the log
+     *         has, or null if there is nothing to resume from (the log is
+     *         empty), in which case the host should not be sent anyone's
+     *         history.
+     */
+    private ASExpression makeCatchUpRequest() {
+        Map<String, Long> have = _log.getHighestSequences();
+        if (have.isEmpty())
+            return null;
+        return new CatchUpRequest( have ).toASE();
+    }
+
+    /**
+     * A peer has asked to be caught up. This is called on a link's thread (the
+     * selector thread, even), so it must not block. The peer is caught up on
+     * the link the request came in on, whoever the request says it is from.
+     */
+    private void receiveCatchUp(Link link, Message message) {
+        CatchUpRequest request;
+        try {
+            request = new CatchUpRequest( message.getDatum() );
+        }
+        catch (IncorrectFormatException e) {
+            Bugout.err( "Receive: malformed catch-up:" + e.getMessage() );
+            return;
+        }
+        catchUp( link, request );
+    }
+
+    /**
+     * Send a peer everything in the log it is missing, on the catch-up pool.
+     * Any catch-up still going on the same link is cancelled.
+     */
+    private void catchUp(final Link link, final CatchUpRequest request) {
+        synchronized (_catchUps) {
+            Future<?> previous = _catchUps.remove( link );
+            if (previous != null)
+                previous.cancel( true );
+            if (!link.running())
+                return;
+            try {
+                _catchUps.put( link, _catchUpPool.submit( new Runnable() {
+
+                    public void run() {
+                        catchUpThread( link, request.getHave() );
                     }
-                    catch (IOException e1) {}
-                    continue;
+
+                } ) );
+            }
+            catch (RejectedExecutionException e) {
+                Bugout.err( "Host: too busy to catch " + link.getAddress()
+                        + " up" );
+            }
+        }
+    }
+
+    // Catch-up thread
+    private void catchUpThread(Link link, Map<String, Long> have) {
+        try {
+            Future<Void> written;
+            synchronized (this) {
+                written = _log.sync();
+            }
+            written.get();
+
+            LogReader reader = new LogReader( _log.getLocation() );
+            try {
+                int[] missed = reader.getNewer( have );
+                Bugout.msg( "Host: catching " + link.getAddress() + " up on "
+                        + missed.length + " messages" );
+                for (int i : missed) {
+                    if (Thread.currentThread().isInterrupted())
+                        return;
+                    while (link.getBacklog() >= CATCH_UP_BACKLOG) {
+                        if (!link.running())
+                            return;
+                        Thread.sleep( CATCH_UP_WAIT );
+                    }
+                    if (!link.enqueue( reader.readVerbatim( i ) ))
+                        return;
                 }
-                for (Link l : _hosts)
-                    if (l.getAddress().equals( jrq.getFrom() ))
-                        continue;
-                Link l = new Link( this, socket, jrq.getFrom() );
-                l.start();
-                _hosts.add( l );
-                _hostJoined.notify( jrq.getFrom() );
-                Bugout.msg( "Listen: Connection successful to "
-                        + l.getAddress() );
+            }
+            finally {
+                reader.close();
             }
         }
-        Bugout.msg( "Listen: THREAD END" );
-        stop();
+        catch (IOException e) {
+            Bugout.err( "Host: couldn't catch " + link.getAddress() + " up: "
+                    + e.getMessage() );
+        }
+        catch (InvalidVerbatimStreamException e) {
+            Bugout.err( "Host: couldn't catch " + link.getAddress() + " up: "
+                    + e.getMessage() );
+        }
+        catch (IncorrectFormatException e) {
+            Bugout.err( "Host: couldn't catch " + link.getAddress() + " up: "
+                    + e.getMessage() );
+        }
+        catch (ExecutionException e) {
+            Bugout.err( "Host: couldn't catch " + link.getAddress() + " up: "
+                    + e.getCause().getMessage() );
+        }
+        catch (InterruptedException e) {}
     }
 
     // Announce thread
     private void announceThread() {
         Bugout.msg( "Announce: THREAD START" );
+        ArrayList<ASExpression> batch = new ArrayList<ASExpression>();
         while (_running) {
             try {
-                ASExpression announcement = _outqueue.pop();
+                _outqueue.drainTo( batch, BATCH_SIZE );
                 synchronized (this) {
-                    // Make the announcement
-                    Message msg = new Message( "announce", _me, nextSequence(),
-                            _head.makeAnnouncement( announcement ) );
-
-                    // Flood the message.
-                    Bugout.msg( "Announce: flooding "
-                            + new MessagePointer( msg ) 
-							+ " (" + (announcement instanceof ListExpression
-									? ((ListExpression)announcement).get(0)
-									: "<string>")
-							+ " ...)");
-                    logMessage( msg );
+                    for (ASExpression announcement : batch) {
+                        // Make the announcement
+                        Message msg = new Message( "announce", _me,
+                                nextSequence(), _head
+                                        .makeAnnouncement( announcement ) );
+
+                        // Flood the message.
+                        Bugout.msg( "Announce: flooding "
+                                + new MessagePointer( msg )
+                                + " ("
+                                + (announcement instanceof ListExpression
+                                        ? ((ListExpression) announcement)
+                                                .get( 0 ) : "<string>")
+                                + " ...)" );
+                        logMessage( msg );
+                    }
                 }
             }
             catch (ReleasedQueueException e) {}
@@ -587,6 +961,7 @@ public class AuditoriumHost implements IAuditoriumHost {
                 throw new FatalNetworkException(
                         "Can't serialize to the log file", e );
             }
+            batch.clear();
             Thread.yield();
         }
         Bugout.msg( "Announce: THREAD END" );
@@ -595,14 +970,17 @@ public class AuditoriumHost implements IAuditoriumHost {
     // Receive thread
     private void receiveThread() {
         Bugout.msg( "Receive: THREAD START." );
+        ArrayList<Message> batch = new ArrayList<Message>();
         while (_running) {
             try {
-                Message message = _pendingqueue.pop();
+                _pendingqueue.drainTo( batch, BATCH_SIZE );
 
                 synchronized (this) {
-                    Bugout.msg( "Announce: flooding "
-                            + new MessagePointer( message ) );
-                    logMessage( message );
+                    for (Message message : batch) {
+                        Bugout.msg( "Announce: flooding "
+                                + new MessagePointer( message ) );
+                        logMessage( message );
+                    }
                 }
 
             }
@@ -610,22 +988,67 @@ public class AuditoriumHost implements IAuditoriumHost {
             catch (IOException e) {
                 throw new FatalNetworkException( "can't serialize to log", e );
             }
+            batch.clear();
             Thread.yield();
         }
         Bugout.msg( "Receive: THREAD END" );
     }
 
+    // Deliver thread
+    private void deliverThread() {
+        Bugout.msg( "Deliver: THREAD START." );
+        ArrayList<Verification> batch = new ArrayList<Verification>();
+        while (_running) {
+            try {
+                _verifiedqueue.drainTo( batch, BATCH_SIZE );
+                for (Verification v : batch) {
+                    try {
+                        ASExpression payload = v.payload.get();
+                        if (!_inqueue.push( new Pair( v.message.getFrom(),
+                                payload ) )) {
+                            Bugout.err( "Receive: Applciation queue push fail" );
+                            stop();
+                        }
+                    }
+                    catch (ExecutionException e) {
+                        Bugout.err( "Receive: malformed message:"
+                                + e.getCause().getMessage() );
+                    }
+                }
+            }
+            catch (ReleasedQueueException e) {}
+            catch (CancellationException e) {}
+            catch (InterruptedException e) {
+                Bugout.err( "Deliver: interrupted" );
+            }
+            batch.clear();
+        }
+        Bugout.msg( "Deliver: THREAD END" );
+    }
+
     /**
-     * Assume lock is already acquired!
+     * Wrap a socket whose handshake has completed in the kind of link the
+     * configured transport calls for.
+     */
+    private Link makeLink(MessageSocket socket, HostPointer address) {
+        if (_selector != null && socket.getChannel() != null)
+            return new ChannelLink( this, socket, address, _selector );
+        return new Link( this, socket, address );
+    }
+
+    /**
+     * Assume lock is already acquired! The message is serialized once and the
+     * same bytes are queued on every link; each link's writer puts them on
+     * the wire, so this does not wait on any peer.
      */
     private void flood(Message message) {
         ArrayList<Link> removelist = new ArrayList<Link>();
+        byte[] verbatim = message.toASE().toVerbatim();
 
         for (Link l : _hosts) {
-            try {
-                l.getSocket().send( message );
-            }
-            catch (NetworkException e) {
+            if (!l.enqueue( verbatim )) {
+                Bugout.err( "Host: dropping " + l.getAddress() + " (backlog "
+                        + l.getBacklog() + ")" );
                 removelist.add( l );
             }
         }
@@ -637,25 +1060,30 @@ public class AuditoriumHost implements IAuditoriumHost {
     }
 
     /**
-     * Assume lock is already acquired!
+     * Assume lock is already acquired! The layers (signature checking
+     * included) are run on the verify pool; the deliver thread waits for the
+     * result in the order messages were logged here.
      */
-    private void logMessage(Message message) throws IOException {
+    private void logMessage(final Message message) throws IOException {
         if (_log.logAnnouncement( message )) {
             verify( message );
+            Bugout.msg( "Host: logging and flooding: "
+                    + new MessagePointer( message ) );
+            flood( message );
             try {
-                Bugout.msg( "Host: logging and flooding: "
-                        + new MessagePointer( message ) );
-                flood( message );
-                ASExpression payload = _head.receiveAnnouncement( message
-                        .getDatum() );
-                if (!_inqueue.push( new Pair( message.getFrom(), payload ) )) {
-                    Bugout.err( "Receive: Applciation queue push fail" );
-                    stop();
-                }
+                Future<ASExpression> payload = _verifyPool
+                        .submit( new Callable<ASExpression>() {
+
+                            public ASExpression call()
+                                    throws IncorrectFormatException {
+                                return _head.receiveAnnouncement( message
+                                        .getDatum() );
+                            }
+                        } );
+                _verifiedqueue.push( new Verification( message, payload ) );
             }
-            catch (IncorrectFormatException e) {
-                Bugout.err( "Receive: malformed message:" + e.getMessage() );
-                return;
+            catch (RejectedExecutionException e) {
+                // Stopping.
             }
         }
     }
@@ -22,10 +22,18 @@
 
 package auditorium;
 
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import sexpression.*;
 
 /**
- * This layer handles signatures.
+ * This layer handles signatures. A host's certificate is sent with every
+ * message it signs, but never changes, so once a certificate has been checked
+ * against its certificate authority it is remembered (by its SHA-256 hash) and
+ * later messages carrying it only need their own signature checked.
  * 
  * @author Kyle Derr
  * 
@@ -40,6 +48,23 @@ public class AuditoriumIntegrityLayer extends AAuditoriumLayer {
     private final IKeyStore _keystore;
     private Cert _mycert;
 
+    /**
+     * The most certificates remembered as checked. The least recently seen
+     * is forgotten first.
+     */
+    public static final int VERIFIED_CERT_CACHE_SIZE = 256;
+
+    @SuppressWarnings("serial")
+    private final Map<ByteBuffer, Cert> _verifiedCerts = Collections
+            .synchronizedMap( new LinkedHashMap<ByteBuffer, Cert>( 16, 0.75f,
+                    true ) {
+
+                protected boolean removeEldestEntry(
+                        Map.Entry<ByteBuffer, Cert> eldest) {
+                    return size() > VERIFIED_CERT_CACHE_SIZE;
+                }
+            } );
+
     // / All certificate authority keys are expected to be annotated thusly
     public static final String CA_ANNOTATION = "ca";
 
@@ -121,22 +146,9 @@ public class AuditoriumIntegrityLayer extends AAuditoriumLayer {
                         + " doesn't match the pattern:" + PATTERN ) );
             ListExpression matchlist = (ListExpression) matchresult;
 
-            Cert cer = new Cert( matchlist.get( 0 ) );
+            Cert cer = verifiedCert( matchlist.get( 0 ) );
             Signature sig = new Signature( matchlist.get( 1 ) );
-            RSACrypto.SINGLETON.verify( new Signature( matchlist.get( 1 ) ),
-                new Cert( matchlist.get( 0 ) ) );
-
-            String signingKeyId = cer.getSignature().getId(); // the ID of the key that signed the *certificate*
-            Cert signingCert = _keystore.loadCert( signingKeyId ); // the cert that signed the certificate
-            if (signingCert.getKey().getAnnotation().equals( CA_ANNOTATION )) {
-            	// verify that the signature on the certificate itself is correct
-                RSACrypto.SINGLETON.verify( cer.getSignature(), signingCert );
-            }
-            else {
-            	throw new SignerValidityException("Certificate on message signature was signed by non-authoritative key '"
-                        + signingKeyId + "' (annotation: '"
-                        + signingCert.getKey().getAnnotation() + "')");
-            }
+            RSACrypto.SINGLETON.verify( sig, cer );
 
             // Send the rest upwards.
             return sig.getPayload();
@@ -148,6 +160,45 @@ public class AuditoriumIntegrityLayer extends AAuditoriumLayer {
 		}
     }
 
+    /**
+     * Parse a certificate and check that it was signed by a certificate
+     * authority, unless this exact certificate has been checked before.
+     * 
+     * @param expression
+     *            The certificate, as it came in a message.
+     * @return This method returns the checked certificate.
+     * @throws IncorrectFormatException
+     *             if the expression isn't a certificate.
+     * @throws AuditoriumCryptoException
+     *             if the certificate's signature doesn't check out.
+     * @throws SignerValidityException
+     *             if the certificate wasn't signed by an authority.
+     */
+    private Cert verifiedCert(ASExpression expression)
+            throws IncorrectFormatException, AuditoriumCryptoException,
+            SignerValidityException {
+        ByteBuffer hash = ByteBuffer.wrap( expression.getSHA256() );
+        Cert cer = _verifiedCerts.get( hash );
+        if (cer != null)
+            return cer;
+
+        cer = new Cert( expression );
+        String signingKeyId = cer.getSignature().getId(); // the ID of the key that signed the *certificate*
+        Cert signingCert = _keystore.loadCert( signingKeyId ); // the cert that signed the certificate
+        if (signingCert.getKey().getAnnotation().equals( CA_ANNOTATION )) {
+        	// verify that the signature on the certificate itself is correct
+            RSACrypto.SINGLETON.verify( cer.getSignature(), signingCert );
+        }
+        else {
+        	throw new SignerValidityException("Certificate on message signature was signed by non-authoritative key '"
+                    + signingKeyId + "' (annotation: '"
+                    + signingCert.getKey().getAnnotation() + "')");
+        }
+
+        _verifiedCerts.put( hash, cer );
+        return cer;
+    }
+
     /**
      * @see auditorium.IAuditoriumLayer#receiveJoinReply(sexpression.ASExpression)
      */
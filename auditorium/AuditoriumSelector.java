@@ -0,0 +1,246 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class is the event loop behind the non-blocking auditorium transport.
+ * One instance owns a single java.nio Selector and a single thread, and that
+ * thread services every {@link ChannelLink} registered with it (and,
+ * optionally, the listen socket), no matter how many peers are connected.<br>
+ * <br>
+ * Registration and interest changes requested from other threads are queued
+ * and carried out by the selector thread itself, so callers never block on the
+ * selector's internal locks. Like the other auditorium thread keepers, you
+ * must call start() and stop() on an instance for it to behave as expected.
+ * 
+ * @author Kyle Derr
+ * 
+ */
+public class AuditoriumSelector {
+
+    /**
+     * Implement this to be handed connections accepted on a listen channel.
+     * The accept method is called from the selector thread, so it should hand
+     * off any blocking work.
+     */
+    public static interface Acceptor {
+
+        /**
+         * @param channel
+         *            This channel was just accepted. It is in blocking mode.
+         */
+        public void accept(SocketChannel channel);
+    }
+
+    private final Selector _selector;
+    private final ConcurrentLinkedQueue<Runnable> _tasks;
+    private volatile boolean _running;
+
+    /**
+     * Construct a new selector loop. The thread is not started until start()
+     * is called.
+     */
+    public AuditoriumSelector() {
+        try {
+            _selector = Selector.open();
+        }
+        catch (IOException e) {
+            throw new FatalNetworkException( "Cannot open a selector.", e );
+        }
+        _tasks = new ConcurrentLinkedQueue<Runnable>();
+        _running = false;
+    }
+
+    /**
+     * Start the selector thread.
+     */
+    public void start() {
+        Bugout.msg( "Selector: STARTING" );
+        _running = true;
+        new Thread( new Runnable() {
+
+            public void run() {
+                selectorThread();
+            }
+        } ).start();
+    }
+
+    /**
+     * Stop the selector thread. Channels still registered are left open; it is
+     * up to their owners to close them.
+     */
+    public void stop() {
+        Bugout.msg( "Selector: STOPPING" );
+        _running = false;
+        _selector.wakeup();
+    }
+
+    /**
+     * Accept connections on the given server channel from the selector thread.
+     * 
+     * @param server
+     *            Accept connections on this (already bound) channel.
+     * @param acceptor
+     *            Hand each accepted connection to this acceptor.
+     * @throws IOException
+     *             This method throws if the channel cannot be made
+     *             non-blocking.
+     */
+    public void listen(final ServerSocketChannel server, final Acceptor acceptor)
+            throws IOException {
+        server.configureBlocking( false );
+        schedule( new Runnable() {
+
+            public void run() {
+                try {
+                    server.register( _selector, SelectionKey.OP_ACCEPT,
+                        acceptor );
+                }
+                catch (ClosedChannelException e) {
+                    Bugout.err( "Selector: listen channel closed before "
+                            + "registration" );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Start servicing reads for the given link. The link's channel must
+     * already be in non-blocking mode.
+     * 
+     * @param link
+     *            Register this link.
+     */
+    void register(final ChannelLink link) {
+        schedule( new Runnable() {
+
+            public void run() {
+                try {
+                    int ops = SelectionKey.OP_READ;
+                    if (link.hasOutbound())
+                        ops |= SelectionKey.OP_WRITE;
+                    link.setKey( link.getChannel().register( _selector, ops,
+                        link ) );
+                }
+                catch (ClosedChannelException e) {
+                    Bugout.err( "Selector: link " + link.getAddress()
+                            + " closed before registration" );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Ask the selector thread to flush the given link's outbound data when its
+     * channel becomes writable.
+     * 
+     * @param link
+     *            This link has data waiting to be written.
+     */
+    void requestWrite(final ChannelLink link) {
+        schedule( new Runnable() {
+
+            public void run() {
+                SelectionKey key = link.getKey();
+                if (key == null || !key.isValid())
+                    return;
+                key.interestOps( key.interestOps() | SelectionKey.OP_WRITE );
+            }
+        } );
+    }
+
+    private void schedule(Runnable task) {
+        _tasks.offer( task );
+        _selector.wakeup();
+    }
+
+    private void selectorThread() {
+        Bugout.msg( "Selector: THREAD START" );
+        while (_running) {
+            Runnable task;
+            while ((task = _tasks.poll()) != null)
+                task.run();
+
+            try {
+                _selector.select();
+            }
+            catch (IOException e) {
+                Bugout.err( "Selector: " + e.getMessage() );
+                break;
+            }
+
+            Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    dispatch( key );
+                }
+                catch (CancelledKeyException e) {
+                    // The link was stopped out from under us; nothing to do.
+                }
+            }
+        }
+
+        try {
+            _selector.close();
+        }
+        catch (IOException e) {}
+        Bugout.msg( "Selector: THREAD END" );
+    }
+
+    private void dispatch(SelectionKey key) {
+        if (!key.isValid())
+            return;
+
+        if (key.isAcceptable()) {
+            SocketChannel channel = null;
+            try {
+                channel = ((ServerSocketChannel) key.channel()).accept();
+            }
+            catch (IOException e) {
+                Bugout.err( "Selector: accept failed: " + e.getMessage() );
+                return;
+            }
+            if (channel != null)
+                ((Acceptor) key.attachment()).accept( channel );
+            return;
+        }
+
+        ChannelLink link = (ChannelLink) key.attachment();
+        if (key.isReadable())
+            link.readReady();
+        if (key.isValid() && key.isWritable())
+            link.writeReady();
+    }
+}
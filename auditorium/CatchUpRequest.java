@@ -0,0 +1,116 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import sexpression.*;
+
+/**
+ * This class represents the catch-up auditorium data structure. Its format is
+ * (catch-up ((nodeid sequence) ...)), listing the highest sequence number a
+ * host has logged from each node it has heard from. A rejoining host lists
+ * one among the options in the datum of its join message; the host it joins
+ * replies by sending every message in its own log that is newer. If that host
+ * has logged anything at all, it then sends a catch-up message of its
+ * own over the new link, so that the joining host can do the same for it.
+ * (Hosts that predate this ignore the join datum, and so never see a catch-up
+ * message.)<br>
+ * <br>
+ * Sequence numbers are only comparable while a host keeps counting from where
+ * it left off, which it does when it resumes its log.
+ * 
+ * @author Kyle Derr
+ * 
+ */
+public class CatchUpRequest {
+    public static final ASExpression PATTERN = new ListExpression(
+            StringExpression.makeString( "catch-up" ), new ListWildcard(
+                    new ListExpression( StringWildcard.SINGLETON,
+                            StringWildcard.SINGLETON ) ) );
+
+    private final Map<String, Long> _have;
+
+    /**
+     * @param have
+     *            This maps node ids to the highest sequence number logged
+     *            from that node.
+     */
+    public CatchUpRequest(Map<String, Long> have) {
+        _have = have;
+    }
+
+    /**
+     * Convert a catch-up request from its sexp form to its object form.
+     * 
+     * @param exp
+     *            Convert this sexp.
+     * @throws IncorrectFormatException
+     *             This method throws if the given expression is not (catch-up
+     *             ((nodeid sequence) ...)), or a sequence isn't a number.
+     */
+    public CatchUpRequest(ASExpression exp) throws IncorrectFormatException {
+        ASExpression result = PATTERN.match( exp );
+        if (result == NoMatch.SINGLETON)
+            throw new IncorrectFormatException( exp, new Exception( exp
+                    + " doesn't match the pattern: " + PATTERN ) );
+
+        _have = new HashMap<String, Long>();
+        for (ASExpression ase : (ListExpression) ((ListExpression) result)
+                .get( 0 )) {
+            ListExpression pair = (ListExpression) ase;
+            try {
+                _have.put( pair.get( 0 ).toString(), Long.parseLong( pair
+                        .get( 1 ).toString() ) );
+            }
+            catch (NumberFormatException e) {
+                throw new IncorrectFormatException( exp, e );
+            }
+        }
+    }
+
+    /**
+     * @return This method returns a map from node ids to the highest sequence
+     *         number the requesting host has logged from that node.
+     */
+    public Map<String, Long> getHave() {
+        return _have;
+    }
+
+    /**
+     * Convert this request to its sexp form.
+     * 
+     * @return This method returns this request in its sexp form.
+     */
+    public ASExpression toASE() {
+        ArrayList<ASExpression> lst = new ArrayList<ASExpression>();
+        for (Map.Entry<String, Long> e : _have.entrySet())
+            lst.add( new ListExpression( StringExpression.makeString( e
+                    .getKey() ), StringExpression.makeString( Long.toString( e
+                    .getValue() ) ) ) );
+        return new ListExpression( StringExpression.makeString( "catch-up" ),
+                new ListExpression( lst ) );
+    }
+}
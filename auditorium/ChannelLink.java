@@ -0,0 +1,318 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import sexpression.ASExpression;
+import sexpression.stream.ASEFrameDecoder;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+/**
+ * This is a link whose socket is serviced by an {@link AuditoriumSelector}
+ * rather than by a listen thread of its own. The join handshake is still done
+ * in blocking mode over the wrapped {@link MessageSocket}; once start() is
+ * called the channel is switched to non-blocking mode and handed to the
+ * selector, which calls back into this link when bytes arrive or when queued
+ * outbound data can be written. Whatever has piled up on the link's
+ * {@link OutboundQueue} since the last write goes out in one gathering
+ * write.<br>
+ * <br>
+ * Because the selector thread is shared by every link, nothing in readReady()
+ * or writeReady() may block.<br>
+ * <br>
+ * Compressed framing (see {@link Compression}) is handled here rather than by
+ * the socket: each direction switches over to its own inflater or deflater
+ * when the switch is announced.
+ * 
+ * @author Kyle Derr
+ * 
+ */
+public class ChannelLink extends Link {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final AuditoriumSelector _selector;
+    private final SocketChannel _channel;
+    private final ASEFrameDecoder _decoder;
+    private final ByteBuffer _readbuf;
+    private volatile SelectionKey _key;
+
+    // Touched only by the selector thread, except _inflightCount.
+    private ByteBuffer[] _inflight;
+    private int _inflightStart;
+    private volatile int _inflightCount;
+
+    // Touched only by the selector thread once started.
+    private Inflater _inflater;
+    private Deflater _deflater;
+    private boolean _owesMarker;
+    private final byte[] _inflatebuf;
+
+    /**
+     * Construct a new link around a socket whose handshake has completed.
+     * 
+     * @param host
+     *            This is the AuditoriumHost that is using this link.
+     * @param socket
+     *            This is the socket to the other auditorium host. It must
+     *            have been created from a SocketChannel.
+     * @param address
+     *            This is the address that the socket is connected to.
+     * @param selector
+     *            This selector will service the link's channel.
+     */
+    public ChannelLink(IAuditoriumHost host, MessageSocket socket,
+            HostPointer address, AuditoriumSelector selector) {
+        super( host, socket, address );
+        if (socket.getChannel() == null)
+            throw new IllegalArgumentException(
+                    "ChannelLink requires a channel-backed socket" );
+        _selector = selector;
+        _channel = socket.getChannel();
+        _decoder = new ASEFrameDecoder();
+        _readbuf = ByteBuffer.allocate( READ_BUFFER_SIZE );
+        _inflight = new ByteBuffer[0];
+        _inflightStart = 0;
+        _inflightCount = 0;
+        _inflatebuf = new byte[READ_BUFFER_SIZE];
+    }
+
+    /**
+     * Switch the channel to non-blocking mode and register it with the
+     * selector.
+     */
+    @Override
+    public void start() {
+        Bugout.msg( "Link " + _address + ": STARTING (selector)" );
+        _running = true;
+        // The socket already told the other end during the handshake.
+        if (_socket.compressesOutput())
+            _deflater = Compression.newDeflater();
+        try {
+            _channel.configureBlocking( false );
+        }
+        catch (IOException e) {
+            Bugout.err( "Link " + _address + ": " + e.getMessage() );
+            _host.removeLink( this );
+            return;
+        }
+        _selector.register( this );
+    }
+
+    /**
+     * Queue a message and ask the selector thread to write it out.
+     * 
+     * @see auditorium.Link#enqueue(byte[])
+     */
+    @Override
+    public boolean enqueue(byte[] verbatim) {
+        if (!super.enqueue( verbatim ))
+            return false;
+        _selector.requestWrite( this );
+        return true;
+    }
+
+    /**
+     * The backlog of a selector-driven link includes messages that have been
+     * taken off the queue but only partly written.
+     * 
+     * @see auditorium.Link#getBacklog()
+     */
+    @Override
+    public int getBacklog() {
+        return super.getBacklog() + _inflightCount;
+    }
+
+    /**
+     * Get the channel this link reads from and writes to.
+     * 
+     * @return This method returns the link's channel.
+     */
+    SocketChannel getChannel() {
+        return _channel;
+    }
+
+    SelectionKey getKey() {
+        return _key;
+    }
+
+    void setKey(SelectionKey key) {
+        _key = key;
+    }
+
+    boolean hasOutbound() {
+        return _outbound.size() > 0;
+    }
+
+    /**
+     * Called on the selector thread when the channel has bytes to read. Any
+     * complete messages are passed to the host.
+     */
+    void readReady() {
+        int read;
+        try {
+            read = _channel.read( _readbuf );
+        }
+        catch (IOException e) {
+            Bugout.err( "Link " + _address + ": " + e.getMessage() );
+            close();
+            return;
+        }
+
+        if (read > 0) {
+            _readbuf.flip();
+            try {
+                if (_inflater == null)
+                    _decoder.feed( _readbuf );
+                else
+                    inflate( _readbuf.array(), 0, _readbuf.limit() );
+                _readbuf.clear();
+                deliver();
+            }
+            catch (DataFormatException e) {
+                Bugout.err( "Link " + _address + ": " + e.getMessage() );
+                close();
+                return;
+            }
+            catch (InvalidVerbatimStreamException e) {
+                Bugout.err( "Link " + _address + ": " + e.getMessage() );
+                close();
+                return;
+            }
+        }
+
+        if (read < 0) {
+            Bugout.err( "Link " + _address + ": End of stream" );
+            close();
+        }
+    }
+
+    /**
+     * Called on the selector thread when the channel can accept more bytes.
+     * Finishes the batch in flight, or else takes everything queued as a new
+     * batch, and writes as much of it as the channel will take. Stops asking
+     * for write readiness once there is nothing left.
+     */
+    void writeReady() {
+        try {
+            if (_inflightStart == _inflight.length) {
+                List<byte[]> batch = _outbound.pollAll();
+                if (batch.isEmpty() && !_owesMarker) {
+                    _key.interestOps( SelectionKey.OP_READ );
+                    return;
+                }
+                if (_deflater == null) {
+                    _inflight = new ByteBuffer[batch.size()];
+                    for (int i = 0; i < _inflight.length; i++)
+                        _inflight[i] = ByteBuffer.wrap( batch.get( i ) );
+                }
+                else if (_owesMarker) {
+                    _inflight = new ByteBuffer[] {
+                            ByteBuffer.wrap( Compression.DEFLATE.toVerbatim() ),
+                            ByteBuffer.wrap( Compression.deflate( _deflater,
+                                batch ) ) };
+                    _owesMarker = false;
+                }
+                else {
+                    _inflight = new ByteBuffer[] { ByteBuffer
+                            .wrap( Compression.deflate( _deflater, batch ) ) };
+                }
+                _inflightStart = 0;
+                // A compressed batch counts as unwritten until all of it is.
+                _inflightCount = batch.size();
+            }
+
+            _channel.write( _inflight, _inflightStart, _inflight.length
+                    - _inflightStart );
+            while (_inflightStart < _inflight.length
+                    && !_inflight[_inflightStart].hasRemaining())
+                _inflightStart++;
+            if (_inflightStart == _inflight.length)
+                _inflightCount = 0;
+            else if (_deflater == null)
+                _inflightCount = _inflight.length - _inflightStart;
+        }
+        catch (IOException e) {
+            Bugout.err( "Link " + _address + ": while writing: "
+                    + e.getMessage() );
+            close();
+        }
+    }
+
+    private void deliver() throws InvalidVerbatimStreamException,
+            DataFormatException {
+        ASExpression expression;
+        while ((expression = _decoder.next()) != null) {
+            if (_inflater == null && expression.equals( Compression.DEFLATE )) {
+                // Whatever is left, and everything after it, is compressed.
+                _inflater = Compression.newInflater();
+                byte[] rest = _decoder.takePending();
+                inflate( rest, 0, rest.length );
+                if (_deflater == null && _socket.acceptsCompression()) {
+                    _deflater = Compression.newDeflater();
+                    _owesMarker = true;
+                    _selector.requestWrite( this );
+                }
+                continue;
+            }
+            try {
+                Message message = new Message( expression );
+                Bugout.msg( "Link " + _address + ": received: "
+                        + new MessagePointer( message ) );
+                _host.receiveAnnouncement( this, message );
+            }
+            catch (IncorrectFormatException e) {
+                Bugout.err( "Link " + _address
+                        + ": received a message that is incorrectly formatted:"
+                        + e.getMessage() );
+            }
+        }
+    }
+
+    private void inflate(byte[] bytes, int off, int len)
+            throws DataFormatException {
+        _inflater.setInput( bytes, off, len );
+        while (true) {
+            int n = _inflater.inflate( _inflatebuf );
+            if (n > 0)
+                _decoder.feed( _inflatebuf, 0, n );
+            else if (_inflater.needsInput())
+                return;
+            else
+                throw new DataFormatException( "compressed stream ended" );
+        }
+    }
+
+    private void close() {
+        _host.removeLink( this );
+        stop();
+    }
+}
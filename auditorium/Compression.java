@@ -0,0 +1,150 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+
+/**
+ * Compressed framing for links. Messages on a link are mostly the same few
+ * keywords and the sender's certificate over and over, so each direction of a
+ * link can be sent as one DEFLATE stream, flushed after every write so that
+ * the peer never waits on a partial message. Both ends start the stream from
+ * the same preset dictionary of message vocabulary, so even the first message
+ * on a link is compressed well; after that, the 32K window remembers each
+ * sender's certificate.<br>
+ * <br>
+ * Compression is negotiated during the join: a joining host that is willing
+ * puts {@link #DEFLATE} in its join datum. If the joined host is willing too,
+ * it sends {@link #DEFLATE} (uncompressed) right after the join reply, and
+ * everything after that compressed. The joining host does the same once it
+ * has read that. Either side reading {@link #DEFLATE} on a link knows that the
+ * rest of the link is compressed. Hosts that don't know about compression
+ * never offer it, and are never sent it.
+ * 
+ * @see MessageSocket#compressOutput()
+ * @author Kyle Derr
+ */
+public class Compression {
+
+    /**
+     * Offered in a join datum, and sent on a link just before the first
+     * compressed byte.
+     */
+    public static final ASExpression DEFLATE = new ListExpression( "compress",
+            "deflate" );
+
+    // Words that turn up in nearly every message, in their verbatim form.
+    // Deflate finds the last part of a dictionary cheapest to refer to, so
+    // the most common go last.
+    private static final String[] WORDS = { "cast-ballot",
+            "encrypted-cast-ballot", "encrypted-cast-ballot-with-nizks",
+            "authorized-to-cast", "authorized-to-cast-with-nizks",
+            "commit-ballot", "cast-committed-ballot", "spoil-ballot",
+            "ballot-received", "ballot-printing", "ballot-print-success",
+            "ballot-print-fail", "ballot-scanned", "ballot-accepted",
+            "ballot-rejected", "provisional-ballot",
+            "provisional-authorized-to-cast", "commit-provisional-ballot",
+            "override-cast", "override-cancel", "override-cancel-confirm",
+            "override-cancel-deny", "override-commit-confirm",
+            "override-commit-deny", "polls-open", "polls-closed",
+            "last-polls-open", "poll-status", "poll-machines", "pin-entered",
+            "invalid-pin", "assign-label", "activated", "status",
+            "supervisor", "votebox", "ballotscanner", "tap-machine",
+            "catch-up", "sha1withrsa", "booth", "ca" };
+
+    private static final String FRAMING = "(3:ptr(3:ptr(3:ptr"
+            + "(3:key(9:signature(9:signature2:ca256:(14:signed-message(4:cert"
+            + "(9:signature2:ca256:(8:succeeds((3:ptr(8:announce(4:host";
+
+    private static final byte[] DICTIONARY;
+    static {
+        StringBuilder dictionary = new StringBuilder();
+        for (String word : WORDS)
+            dictionary.append( word.length() ).append( ':' ).append( word );
+        dictionary.append( FRAMING );
+        DICTIONARY = dictionary.toString().getBytes();
+    }
+
+    /**
+     * @return This method returns a deflater for one direction of a link,
+     *         ready to use.
+     */
+    public static Deflater newDeflater() {
+        Deflater deflater = new Deflater( Deflater.DEFAULT_COMPRESSION, true );
+        deflater.setDictionary( DICTIONARY );
+        return deflater;
+    }
+
+    /**
+     * @return This method returns an inflater for one direction of a link,
+     *         ready to use.
+     */
+    public static Inflater newInflater() {
+        Inflater inflater = new Inflater( true );
+        inflater.setDictionary( DICTIONARY );
+        return inflater;
+    }
+
+    /**
+     * Compress messages onto a link's stream, flushing so that the peer can
+     * read every one of them without waiting for more.
+     * 
+     * @param deflater
+     *            This is the link's deflater.
+     * @param verbatims
+     *            Compress these messages, each in its verbatim form, in order.
+     * @return This method returns the compressed bytes.
+     */
+    public static byte[] deflate(Deflater deflater, List<byte[]> verbatims) {
+        int length = 0;
+        for (byte[] verbatim : verbatims)
+            length += verbatim.length;
+        byte[] out = new byte[length / 2 + 64];
+        int size = 0;
+        for (byte[] verbatim : verbatims) {
+            deflater.setInput( verbatim );
+            while (!deflater.needsInput()) {
+                if (size == out.length)
+                    out = Arrays.copyOf( out, out.length * 2 );
+                size += deflater.deflate( out, size, out.length - size );
+            }
+        }
+        // Flush until the deflater stops filling the whole buffer.
+        int n;
+        do {
+            if (size == out.length)
+                out = Arrays.copyOf( out, out.length * 2 );
+            n = deflater.deflate( out, size, out.length - size,
+                Deflater.SYNC_FLUSH );
+            size += n;
+        }
+        while (size == out.length);
+        return Arrays.copyOf( out, size );
+    }
+}
@@ -70,10 +70,12 @@ public interface IAuditoriumHost {
      * Notify the host that message was received on a link. Links should call
      * this method.
      * 
+     * @param link
+     *            This is the link the message was received on.
      * @param message
      *            Notify the host that this message was received on the link.
      */
-    void receiveAnnouncement(Message message);
+    void receiveAnnouncement(Link link, Message message);
 
     /**
      * @return This method returns the incremented sequence number counter's
@@ -68,6 +68,24 @@ public interface IAuditoriumParams {
 
     public int getJoinTimeout();
 
+    /**
+     * @return true if links should be serviced by a single selector thread
+     *         (java.nio) rather than by one blocking listen thread per peer.
+     */
+    public boolean getUseNIOTransport();
+
+    /**
+     * @return Check the signatures on incoming messages with this many
+     *         threads, or 0 for one per available processor.
+     */
+    public int getVerifyThreads();
+
+    /**
+     * @return true if links should be compressed when the host at the other
+     *         end agrees to it. See {@link auditorium.Compression}.
+     */
+    public boolean getCompressLinks();
+
     /**
      * @return Send UDP packets to this address as "broadcast"
      */
@@ -78,6 +96,37 @@ public interface IAuditoriumParams {
      */
     public String getLogLocation();
 
+    /**
+     * @return When to force log data to disk: "none", "message", "batch" or
+     *         "interval". See {@link auditorium.LogWriter.SyncPolicy}.
+     */
+    public String getLogSyncPolicy();
+
+    /**
+     * @return If the log sync policy is "interval", force log data to disk at
+     *         most this often (milliseconds).
+     */
+    public int getLogSyncInterval();
+
+    /**
+     * @return Return true to pick up the log already at the log location
+     *         (appending to it, and remembering what it holds) instead of
+     *         starting a new one.
+     */
+    public boolean getResumeLog();
+
+    /**
+     * @return Return true to keep an index of the log beside it, for random
+     *         access by {@link auditorium.LogReader}.
+     */
+    public boolean getIndexLog();
+
+    /**
+     * @return Checkpoint Supervisor's running tallies to this directory, so
+     *         that they survive a restart. Null or empty to not checkpoint.
+     */
+    public String getTallyCheckpointDirectory();
+
     /**
 	 * @return Return an {@link auditorium.IKeyStore} to be used when looking for
 	 *         certificates of other participants or signing authorities.
@@ -163,6 +212,16 @@ public interface IAuditoriumParams {
      */
     public boolean getUsePiecemealEncryption();
     
+    /**
+     * @return true if VoteBox should encrypt the races of a ballot, and prove them well formed, in parallel.
+     */
+    public boolean getUseParallelEncryption();
+    
+    /**
+     * @return true if VoteBox should precompute encryption randomness in the background while the voter votes.
+     */
+    public boolean getPrecomputeRandomness();
+    
     /**
      * @return true if Supervisor should display the tally results in the simplest way it can.
      */
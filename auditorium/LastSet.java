@@ -0,0 +1,106 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * This is the set of messages the log has seen but that no message has pointed
+ * to yet: the "last" set, which the temporal layer puts into each outgoing
+ * message and prunes as pointers come in. Adding and removing a pointer take
+ * constant time however many messages are waiting, and pointers come back out
+ * in the order they were added.<br>
+ * <br>
+ * Unlike the rest of the log, this set is thread safe. Every operation holds
+ * the set's lock for a constant amount of work, except {@link #takeAll()},
+ * which empties the set in the same step as it reads it, so a pointer added
+ * meanwhile is either in the result or left for the next call, never lost.
+ * 
+ * @author Kyle Derr
+ */
+public class LastSet {
+
+    private LinkedHashSet<MessagePointer> _pointers;
+
+    /**
+     * Construct an empty set.
+     */
+    public LastSet() {
+        _pointers = new LinkedHashSet<MessagePointer>();
+    }
+
+    /**
+     * Add a pointer to the end of the set, unless it is in the set already.
+     * 
+     * @param pointer
+     *            Add this pointer.
+     * @return This method returns true if the pointer was not in the set.
+     */
+    public synchronized boolean add(MessagePointer pointer) {
+        return _pointers.add( pointer );
+    }
+
+    /**
+     * Remove a pointer from the set, if it is there.
+     * 
+     * @param pointer
+     *            Remove this pointer.
+     * @return This method returns true if the pointer was in the set.
+     */
+    public synchronized boolean remove(MessagePointer pointer) {
+        return _pointers.remove( pointer );
+    }
+
+    /**
+     * Empty the set, all at once.
+     * 
+     * @return This method returns what the set held, oldest first.
+     */
+    public MessagePointer[] takeAll() {
+        LinkedHashSet<MessagePointer> taken;
+        synchronized (this) {
+            if (_pointers.isEmpty())
+                return new MessagePointer[0];
+            taken = _pointers;
+            _pointers = new LinkedHashSet<MessagePointer>();
+        }
+        return taken.toArray( new MessagePointer[taken.size()] );
+    }
+
+    /**
+     * @return This method returns a copy of what the set holds, oldest first,
+     *         leaving the set as it is.
+     */
+    public synchronized List<MessagePointer> toList() {
+        return new ArrayList<MessagePointer>( _pointers );
+    }
+
+    /**
+     * @return This method returns the number of pointers in the set.
+     */
+    public synchronized int size() {
+        return _pointers.size();
+    }
+}
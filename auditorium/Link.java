@@ -33,17 +33,29 @@ import java.io.IOException;
  * stop() on it before it will behave in the expected way. The link's thread
  * will operate at a priority one less than the calling thread. This is to aid
  * auditorium in being able to keep up with many links flooding messages onto
- * its queues.
+ * its queues.<br>
+ * <br>
+ * Outgoing messages are not written by the caller. They are placed, already
+ * serialized, on a bounded {@link OutboundQueue}, and a writer thread (also
+ * started by start()) sends everything that has piled up in one socket write.
+ * A peer that can't keep up therefore only delays itself; once its backlog
+ * reaches MAX_BACKLOG further sends are refused.
  * 
  * @author Kyle Derr Derr
  * 
  */
 public class Link {
 
-    private final IAuditoriumHost _host;
-    private final MessageSocket _socket;
-    private final HostPointer _address;
-    private volatile boolean _running;
+    protected final IAuditoriumHost _host;
+    protected final MessageSocket _socket;
+    protected final HostPointer _address;
+    protected volatile boolean _running;
+    protected final OutboundQueue _outbound;
+
+    /**
+     * Refuse to queue more than this many messages for a single peer.
+     */
+    public static final int MAX_BACKLOG = 1024;
 
     /**
      * Construct a new auditorium link structure to wrap a socket that has
@@ -60,6 +72,7 @@ public class Link {
         _host = host;
         _socket = socket;
         _address = address;
+        _outbound = new OutboundQueue( MAX_BACKLOG );
         _running = false;
     }
 
@@ -80,6 +93,13 @@ public class Link {
         t.setPriority( Thread.currentThread().getPriority() + 1 );
         t.start();
 
+        new Thread( new Runnable() {
+
+            public void run() {
+                writeThread();
+            }
+        } ).start();
+
     }
 
     /**
@@ -88,6 +108,7 @@ public class Link {
     public void stop() {
         Bugout.err( "Link " + _address + ": STOPPING" );
         _running = false;
+        _outbound.releaseThreads();
         try {
             _socket.close();
         }
@@ -116,6 +137,59 @@ public class Link {
         return _socket;
     }
 
+    /**
+     * Queue a message to be sent to the other end of this link. This call does
+     * not wait for the message to reach the wire.
+     * 
+     * @param message
+     *            Send this message.
+     * @throws NetworkException
+     *             This method throws if the message can't be queued because
+     *             the link is stopped or its backlog is full.
+     */
+    public void send(Message message) throws NetworkException {
+        if (!enqueue( message.toASE().toVerbatim() ))
+            throw new NetworkException( "Link " + _address
+                    + ": couldn't queue " + new MessagePointer( message ),
+                    null );
+    }
+
+    /**
+     * Queue an already-serialized message to be sent to the other end of this
+     * link. When flooding, the same array is handed to every link.
+     * 
+     * @param verbatim
+     *            This is the message in its verbatim form. It must not be
+     *            modified afterwards.
+     * @return This method returns true if the message was queued, or false if
+     *         the link is stopped or its backlog is full.
+     */
+    public boolean enqueue(byte[] verbatim) {
+        if (!_running)
+            return false;
+        return _outbound.offer( verbatim );
+    }
+
+    /**
+     * Get the number of messages queued for this link that haven't been
+     * written yet.
+     * 
+     * @return This method returns this link's backlog, in messages.
+     */
+    public int getBacklog() {
+        return _outbound.size();
+    }
+
+    /**
+     * Get the number of bytes queued for this link that haven't been written
+     * yet.
+     * 
+     * @return This method returns this link's backlog, in bytes.
+     */
+    public long getBacklogBytes() {
+        return _outbound.bytes();
+    }
+
     /**
      * Check if this link is currently running
      * 
@@ -145,7 +219,7 @@ public class Link {
                     Message message = _socket.receive();
                     Bugout.msg( "Link " + _address + ": received: "
                             + new MessagePointer( message ) );
-                    _host.receiveAnnouncement( message );
+                    _host.receiveAnnouncement( this, message );
                 }
                 catch (IncorrectFormatException e) {
                     Bugout
@@ -163,4 +237,19 @@ public class Link {
         Bugout.msg( "Link " + _address + ": THREAD END" );
         stop();
     }
+
+    private void writeThread() {
+        try {
+            while (_running) {
+                _socket.send( _outbound.takeAll() );
+            }
+        }
+        catch (ReleasedQueueException e) {}
+        catch (NetworkException e) {
+            // Closing the socket will end the listen thread, which tells the
+            // host.
+            Bugout.err( "Link " + _address + ": " + e.getMessage() );
+            stop();
+        }
+    }
 }
@@ -0,0 +1,254 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This is the queue auditorium uses to hand work between threads (the
+ * application and the announce thread, the links and the receive thread, the
+ * receive thread and the application). Any number of threads may push
+ * without ever taking a lock: a push is a single atomic swap of the tail
+ * pointer. Consumers are expected to be one thread per queue; if there are
+ * more they are serialized among themselves, but they never hold up
+ * producers.<br>
+ * <br>
+ * A call to pop() or drainTo() when the queue is empty will block until
+ * something gets placed in the queue. drainTo() then takes everything that is
+ * waiting (up to a limit), so a consumer can handle a burst of messages with a
+ * single wakeup.<br>
+ * <br>
+ * The linked list is the one described by Dmitry Vyukov for
+ * multi-producer/single-consumer queues: the consumer owns a stub head node,
+ * and producers append by swapping themselves in as the tail and then linking
+ * the old tail to themselves.
+ * 
+ * @author Kyle Derr
+ * 
+ */
+public class LockFreeQueue<T> {
+
+    private static final class Node<T> {
+        volatile T value;
+        volatile Node<T> next;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+
+    // Producer side
+    private final AtomicReference<Node<T>> _tail;
+    private final AtomicInteger _size;
+
+    // Consumer side (guarded by _consumerLock)
+    private final Object _consumerLock = new Object();
+    private Node<T> _head;
+    private volatile Thread _waiter;
+
+    private volatile boolean _release = false;
+
+    public LockFreeQueue() {
+        Node<T> stub = new Node<T>( null );
+        _head = stub;
+        _tail = new AtomicReference<Node<T>>( stub );
+        _size = new AtomicInteger( 0 );
+    }
+
+    /**
+     * Call this method to add a new element to the queue. This never blocks.
+     * 
+     * @param exp
+     *            This is the element that wants to be added to the queue.
+     * @return This method returns true if the add was a success, or false
+     *         otherwise.
+     */
+    public boolean push(T exp) {
+        Node<T> node = new Node<T>( exp );
+        _size.incrementAndGet();
+        Node<T> prev = _tail.getAndSet( node );
+        prev.next = node;
+
+        Thread waiter = _waiter;
+        if (waiter != null)
+            LockSupport.unpark( waiter );
+        return true;
+    }
+
+    /**
+     * Call this method to remove the least recently added element from the
+     * queue, waiting for one if the queue is empty.
+     * 
+     * @return This method returns the least recently added element.
+     * @throws ReleasedQueueException
+     *             This method throws if it deems it cannot ever get any input.
+     *             This determination is made if another thread calls
+     *             releaseThreads().
+     */
+    public T pop() throws ReleasedQueueException {
+        synchronized (_consumerLock) {
+            await();
+            return poll();
+        }
+    }
+
+    /**
+     * Call this method to remove up to max of the least recently added
+     * elements from the queue, waiting for at least one if the queue is empty.
+     * 
+     * @param batch
+     *            Removed elements are added to this collection, oldest first.
+     * @param max
+     *            Remove at most this many elements.
+     * @return This method returns the number of elements removed, which is
+     *         always at least one.
+     * @throws ReleasedQueueException
+     *             This method throws if it deems it cannot ever get any input.
+     *             This determination is made if another thread calls
+     *             releaseThreads().
+     */
+    public int drainTo(Collection<? super T> batch, int max)
+            throws ReleasedQueueException {
+        synchronized (_consumerLock) {
+            await();
+            int count = 0;
+            while (count < max && _head.next != null) {
+                batch.add( poll() );
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Like drainTo(batch, max), but give up if nothing arrives within the
+     * given time.
+     * 
+     * @param batch
+     *            Removed elements are added to this collection, oldest first.
+     * @param max
+     *            Remove at most this many elements.
+     * @param timeout
+     *            Wait at most this many milliseconds for the first element.
+     * @return This method returns the number of elements removed, which is
+     *         zero if the wait timed out.
+     * @throws ReleasedQueueException
+     *             This method throws if another thread calls releaseThreads().
+     */
+    public int drainTo(Collection<? super T> batch, int max, long timeout)
+            throws ReleasedQueueException {
+        synchronized (_consumerLock) {
+            long deadline = System.nanoTime() + timeout * 1000000L;
+            if (_head.next == null && !_release) {
+                _waiter = Thread.currentThread();
+                try {
+                    long left;
+                    while (_head.next == null && !_release
+                            && (left = deadline - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos( this, left );
+                        if (Thread.interrupted())
+                            throw new FatalNetworkException(
+                                    "Couldn't wait on the queue.",
+                                    new InterruptedException() );
+                    }
+                }
+                finally {
+                    _waiter = null;
+                }
+            }
+
+            if (_release)
+                throw ReleasedQueueException.SINGLETON;
+
+            int count = 0;
+            while (count < max && _head.next != null) {
+                batch.add( poll() );
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Get the number of elements that are in the queue.
+     * 
+     * @return This method returns the number of elements that are in the queue.
+     */
+    public int size() {
+        return _size.get();
+    }
+
+    /**
+     * If any threads are waiting on a pop operation, release them. This
+     * operation is not recoverable (subsequent pop operations will not block).
+     */
+    public void releaseThreads() {
+        _release = true;
+        Thread waiter = _waiter;
+        if (waiter != null)
+            LockSupport.unpark( waiter );
+    }
+
+    /**
+     * Block until there is something to take. Assumes the consumer lock is
+     * already held.
+     */
+    private void await() throws ReleasedQueueException {
+        if (_head.next == null && !_release) {
+            // Publish ourselves before the last look, so that a push racing
+            // with us either gets seen or unparks us.
+            _waiter = Thread.currentThread();
+            try {
+                while (_head.next == null && !_release) {
+                    LockSupport.park( this );
+                    if (Thread.interrupted())
+                        throw new FatalNetworkException(
+                                "Couldn't wait on the queue.",
+                                new InterruptedException() );
+                }
+            }
+            finally {
+                _waiter = null;
+            }
+        }
+
+        if (_release)
+            throw ReleasedQueueException.SINGLETON;
+    }
+
+    /**
+     * Take the element after the stub. Assumes the consumer lock is already
+     * held and the queue is non-empty.
+     */
+    private T poll() {
+        Node<T> next = _head.next;
+        T value = next.value;
+        next.value = null;
+        _head = next;
+        _size.decrementAndGet();
+        return value;
+    }
+}
@@ -23,12 +23,20 @@
 package auditorium;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import sexpression.ASExpression;
+import sexpression.stream.ASEFrameDecoder;
+import sexpression.stream.InvalidVerbatimStreamException;
 
 /**
  * Log's job is to serialize messages that are heard over auditorium. In
@@ -36,15 +44,36 @@ import java.util.List;
  * compute whether or not a given s-expression has been heard before, as well as
  * keep track of what the most recently heard but not pointed to messages are.
  * (This is useful for helping the temporal layer decide what messages should be
- * pointed to when said messages are being constructed.)
+ * pointed to when said messages are being constructed.)<br>
+ * <br>
+ * Writing is handed off to a {@link LogWriter}, so logging a message does not
+ * wait for the disk. Use sync() when a message must be on stable storage
+ * before going on.<br>
+ * <br>
+ * What has been seen is kept in a {@link SeenSet}. A log that is resumed keeps
+ * its seen set in a file beside the log, so that it need not read the whole log
+ * back in when the machine restarts.<br>
+ * <br>
+ * The log also remembers the highest sequence number it has logged from each
+ * sender, which is what a host tells its peers when it (re)joins so that they
+ * can send it whatever it missed; see {@link LogReader#getNewer(Map)}.<br>
+ * <br>
+ * A log that is still open when the VM exits is closed on the way out, so
+ * that what is queued for the writer gets to disk and the seen set is marked
+ * clean even if nobody calls close().
  * 
  * @author Kyle Derr Derr
  */
 public class Log {
 
-    private final FileOutputStream _location;
-    private final HashSet<MessagePointer> _haveSeen;
-    private final LinkedList<MessagePointer> _last;
+    private final LogWriter _writer;
+    private final SeenSet _haveSeen;
+    private final LogIndex _index;
+    private final LastSet _last;
+    private final File _location;
+    private final HashMap<String, Long> _highest;
+    private final Thread _shutdown;
+    private boolean _closed;
 
     /**
      * Construct a Log instance that serializes log data to a given location.
@@ -55,9 +84,117 @@ public class Log {
      *             This method throws if the given location cannot be found.
      */
     public Log(File location) throws FileNotFoundException {
-        _location = new FileOutputStream( location );
-        _haveSeen = new HashSet<MessagePointer>();
-        _last = new LinkedList<MessagePointer>();
+        this( location, LogWriter.SyncPolicy.NONE, 0 );
+    }
+
+    /**
+     * Construct a Log instance that serializes log data to a given location,
+     * forcing it to disk according to the given policy.
+     * 
+     * @param location
+     *            This is the location that should be written to.
+     * @param policy
+     *            Force log data to stable storage according to this policy.
+     * @param interval
+     *            If the policy is INTERVAL, force at most this often
+     *            (milliseconds).
+     * @throws FileNotFoundException
+     *             This method throws if the given location cannot be found.
+     */
+    public Log(File location, LogWriter.SyncPolicy policy, int interval)
+            throws FileNotFoundException {
+        _writer = new LogWriter( new FileOutputStream( location ).getChannel(),
+                policy, interval );
+        _haveSeen = new SeenSet();
+        _index = null;
+        _last = new LastSet();
+        _location = location;
+        _highest = new HashMap<String, Long>();
+        _shutdown = closeOnExit();
+    }
+
+    /**
+     * Construct a Log instance that serializes log data to a given location,
+     * optionally resuming the log that is already there instead of starting
+     * over. The log is not indexed.
+     * 
+     * @see #Log(File, LogWriter.SyncPolicy, int, boolean, boolean)
+     */
+    public Log(File location, LogWriter.SyncPolicy policy, int interval,
+            boolean resume) throws IOException {
+        this( location, policy, interval, resume, false );
+    }
+
+    /**
+     * Construct a Log instance that serializes log data to a given location,
+     * optionally resuming the log that is already there instead of starting
+     * over. A resumed log appends to the existing file and keeps its seen set
+     * in a file named after the log with ".seen" tacked on. If the seen set
+     * doesn't account for the whole log, the rest is read back in; if it can't
+     * be trusted at all (it is missing, or the machine went down without
+     * closing it), it is rebuilt from the log. A message that was only partly
+     * written when the machine went down is cut off the end of the log.<br>
+     * <br>
+     * If the log is indexed, a {@link LogIndex} is kept in a file named after
+     * the log with ".idx" tacked on, for {@link LogReader} to use. A resumed
+     * log brings its index up to date in the same way as its seen set.
+     * 
+     * @param location
+     *            This is the location that should be written to.
+     * @param policy
+     *            Force log data to stable storage according to this policy.
+     * @param interval
+     *            If the policy is INTERVAL, force at most this often
+     *            (milliseconds).
+     * @param resume
+     *            Pick up the existing log at location if this is true,
+     *            otherwise start a new one.
+     * @param index
+     *            Keep an index of the log if this is true.
+     * @throws IOException
+     *             This method throws if the log, its seen set or its index
+     *             can't be opened or read.
+     */
+    public Log(File location, LogWriter.SyncPolicy policy, int interval,
+            boolean resume, boolean index) throws IOException {
+        _index = index ? new LogIndex( new File( location.getPath() + ".idx" ),
+                resume ) : null;
+        if (!resume) {
+            _writer = new LogWriter(
+                    new FileOutputStream( location ).getChannel(), policy,
+                    interval );
+            _haveSeen = new SeenSet();
+            _highest = new HashMap<String, Long>();
+        }
+        else {
+            _haveSeen = new SeenSet( new File( location.getPath() + ".seen" ) );
+            long length = location.length();
+            if (!_haveSeen.isClean() || _haveSeen.getCovered() > length)
+                _haveSeen.clear();
+            if (_index != null && _index.getCovered() > length)
+                _index.truncate( length );
+
+            long from = _haveSeen.getCovered();
+            if (_index != null)
+                from = Math.min( from, _index.getCovered() );
+            if (from < length) {
+                long end = catchUp( location, from );
+                if (end < length) {
+                    Bugout.err( "Log: cutting " + (length - end)
+                            + " bytes of partial message off " + location );
+                    RandomAccessFile file = new RandomAccessFile( location,
+                            "rw" );
+                    file.setLength( end );
+                    file.close();
+                }
+            }
+            _highest = readHighest( location );
+            _writer = new LogWriter( new FileOutputStream( location, true )
+                    .getChannel(), policy, interval );
+        }
+        _last = new LastSet();
+        _location = location;
+        _shutdown = closeOnExit();
     }
 
     /**
@@ -75,15 +212,40 @@ public class Log {
      */
     public boolean logAnnouncement(Message message) throws IOException {
         MessagePointer tomessage = new MessagePointer( message );
-        if (!_haveSeen.contains( tomessage )) {
-            _haveSeen.add( tomessage );
+        if (_haveSeen.add( tomessage.getHash().getBytes() )) {
             _last.add( tomessage );
             write( message );
+            long seq = LogIndex.sequence( message.getSequence() );
+            if (seq != LogIndex.NO_SEQUENCE) {
+                String from = message.getFrom().getNodeId();
+                Long highest = _highest.get( from );
+                if (highest == null || seq > highest)
+                    _highest.put( from, seq );
+            }
             return true;
         }
         return false;
     }
 
+    /**
+     * Check whether a message has been logged. Use the return value of
+     * logAnnouncement instead when the answer decides whether to log it.
+     * 
+     * @param message
+     *            Look for the message this points to.
+     * @return This method returns true if the message has been seen.
+     */
+    public boolean hasSeen(MessagePointer message) {
+        return _haveSeen.contains( message.getHash().getBytes() );
+    }
+
+    /**
+     * @return This method returns the number of distinct messages logged.
+     */
+    public int seenCount() {
+        return _haveSeen.size();
+    }
+
     /**
      * Add a message to the "last" list. This message will be included in the
      * pointer set for the next message sent out.
@@ -107,38 +269,194 @@ public class Log {
 
     /**
      * Get a list of messages that have been seen but not yet referenced.
-     * Calling this method effectively clears the last list (before saving it as
-     * a return value).
+     * Calling this method clears the last list in the same step as it reads
+     * it, so a message logged meanwhile is never dropped.
      * 
      * @return This method returns the last list.
      */
     public MessagePointer[] getLast() {
-        MessagePointer[] ret = _last.toArray( new MessagePointer[0] );
-        _last.clear();
-        return ret;
+        return _last.takeAll();
     }
 
-    private void write(Message message) throws IOException {
-        _location.write( message.toASE().toVerbatim() );
-        _location.flush();
+    /**
+     * Get a future that completes once every message logged so far is on
+     * stable storage, whatever the sync policy.
+     * 
+     * @return This method returns the durability future.
+     */
+    public Future<Void> sync() {
+        if (_index != null) {
+            try {
+                _index.flush();
+            }
+            catch (IOException e) {
+                Bugout.err( "Log: couldn't write index: " + e.getMessage() );
+            }
+        }
+        return _writer.sync();
     }
 
-    // ** Testing Methods ***
     /**
-     * THIS METHOD IS ONLY USED FOR TESTING. Use the return value of
-     * logAnnouncement to know whether or not you've seen a message (becaues the
-     * lookup is done atomically with the store!)
+     * @return This method returns a map from each node that has been heard
+     *         from to the highest sequence number logged from it.
      */
-    public synchronized HashSet<MessagePointer> TESTgetSetCopy() {
-        return new HashSet<MessagePointer>( _haveSeen );
+    public Map<String, Long> getHighestSequences() {
+        return new HashMap<String, Long>( _highest );
     }
 
+    /**
+     * @param nodeId
+     *            Look for messages from this node.
+     * @return This method returns the highest sequence number logged from the
+     *         given node, or 0 if nothing has been.
+     */
+    public long getHighestSequence(String nodeId) {
+        Long highest = _highest.get( nodeId );
+        return highest == null ? 0 : highest;
+    }
+
+    /**
+     * @return This method returns the log file. Open a {@link LogReader} on it
+     *         once sync() is done to see everything logged before the sync.
+     */
+    public File getLocation() {
+        return _location;
+    }
+
+    /**
+     * Write out and force everything that is pending, and release the log
+     * file. Messages can't be logged after this. Closing a log more than once
+     * does nothing.
+     */
+    public void close() {
+        synchronized (this) {
+            if (_closed)
+                return;
+            _closed = true;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook( _shutdown );
+        }
+        catch (IllegalStateException e) {
+            // The VM is already exiting (and this may be the hook).
+        }
+        _writer.close();
+        _haveSeen.close();
+        if (_index != null)
+            _index.close();
+    }
+
+    /**
+     * Register a shutdown hook that closes this log if it is still open when
+     * the VM exits.
+     */
+    private Thread closeOnExit() {
+        Thread hook = new Thread( new Runnable() {
+
+            public void run() {
+                close();
+            }
+        } );
+        Runtime.getRuntime().addShutdownHook( hook );
+        return hook;
+    }
+
+    private Future<Void> write(Message message) throws IOException {
+        byte[] verbatim = message.toASE().toVerbatim();
+        long offset = _writer.position();
+        Future<Void> f = _writer.append( verbatim );
+        _haveSeen.setCovered( _writer.position() );
+        if (_index != null)
+            _index.add( offset, verbatim.length, message );
+        return f;
+    }
+
+    /**
+     * Read the log from the given offset on, adding every message in it to the
+     * seen set and the index, where they don't already have it. Messages are
+     * written to the log verbatim, so a message's hash is just the hash of its
+     * bytes in the log; messages are only parsed for the index. A torn message
+     * at the end of the log (from a crash mid-write) is left out.
+     * 
+     * @return This method returns the offset just past the last whole message.
+     */
+    private long catchUp(File location, long from) throws IOException {
+        long seen = _haveSeen.getCovered();
+        long indexed = _index == null ? Long.MAX_VALUE : _index.getCovered();
+        InputStream in = new FileInputStream( location );
+        try {
+            long skipped = 0;
+            while (skipped < from) {
+                long n = in.skip( from - skipped );
+                if (n <= 0)
+                    throw new IOException( "Log is shorter than its seen set" );
+                skipped += n;
+            }
+
+            ASEFrameDecoder decoder = new ASEFrameDecoder();
+            byte[] chunk = new byte[64 * 1024];
+            long covered = from;
+            int read;
+            while ((read = in.read( chunk )) > 0) {
+                decoder.feed( chunk, 0, read );
+                byte[] frame;
+                while ((frame = decoder.nextFrame()) != null) {
+                    if (covered >= seen)
+                        _haveSeen.add( ASExpression.computeSHA1( frame ) );
+                    if (covered >= indexed)
+                        _index.add( covered, frame.length, new Message(
+                                ASExpression.makeVerbatim( frame ) ) );
+                    covered += frame.length;
+                }
+            }
+            _haveSeen.setCovered( covered );
+            return covered;
+        }
+        catch (InvalidVerbatimStreamException e) {
+            throw new IOException( "Log is corrupt: " + e.getMessage() );
+        }
+        catch (IncorrectFormatException e) {
+            throw new IOException( "Log is corrupt: " + e.getMessage() );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Find the highest sequence number from each sender in a log being
+     * resumed. The index, if any, must be written out first.
+     */
+    private HashMap<String, Long> readHighest(File location)
+            throws IOException {
+        if (!location.exists())
+            return new HashMap<String, Long>();
+        if (_index != null)
+            _index.flush();
+        LogReader reader = null;
+        try {
+            reader = new LogReader( location );
+            return new HashMap<String, Long>( reader.getHighestSequences() );
+        }
+        catch (InvalidVerbatimStreamException e) {
+            throw new IOException( "Log is corrupt: " + e.getMessage() );
+        }
+        catch (IncorrectFormatException e) {
+            throw new IOException( "Log is corrupt: " + e.getMessage() );
+        }
+        finally {
+            if (reader != null)
+                reader.close();
+        }
+    }
+
+    // ** Testing Methods ***
     /**
      * THIS METHOD IS ONLY USED FOR TESTING. Use getLast() in practice, because
      * it gets the last set and then subsequently clears it in one atomic
      * operation.
      */
-    public synchronized List<MessagePointer> TESTgetLast() {
-        return new LinkedList<MessagePointer>( _last );
+    public List<MessagePointer> TESTgetLast() {
+        return _last.toList();
     }
 }
@@ -0,0 +1,200 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import sexpression.ASExpression;
+
+/**
+ * The log index is a file of fixed-size records, one per message in the log,
+ * in log order. Each record holds the message's offset and length in the log,
+ * its sender's node id (as a 64-bit hash), its sequence number and its SHA-1
+ * hash. The log appends a record every time it writes a message; see
+ * {@link LogReader} for the other side.<br>
+ * <br>
+ * Records are buffered in memory and written out in batches; flush() pushes
+ * them to the file. The index is never forced to disk, because it can always
+ * be rebuilt from the log: a reader ignores records which point past the end
+ * of the log, and indexes any part of the log the records don't reach by
+ * itself.
+ * 
+ * @author Kyle Derr
+ */
+public class LogIndex {
+
+    /** The size, in bytes, of one index record. */
+    public static final int RECORD = 48;
+
+    /** The sequence number recorded for a message whose sequence isn't numeric. */
+    public static final long NO_SEQUENCE = -1;
+
+    private static final int BUFFERED = 256;
+
+    private final FileChannel _channel;
+    private final ByteBuffer _buffer;
+    private long _covered;
+
+    /**
+     * @param file
+     *            Write records to this file.
+     * @param append
+     *            If true, keep the records already in the file and add to
+     *            them, otherwise start the file over.
+     * @throws IOException
+     *             This method throws if the file can't be opened or read.
+     */
+    public LogIndex(File file, boolean append) throws IOException {
+        _channel = new RandomAccessFile( file, "rw" ).getChannel();
+        _buffer = ByteBuffer.allocate( RECORD * BUFFERED );
+        _covered = 0;
+
+        long size = append ? _channel.size() / RECORD * RECORD : 0;
+        _channel.truncate( size );
+        if (size > 0) {
+            ByteBuffer last = ByteBuffer.allocate( RECORD );
+            _channel.read( last, size - RECORD );
+            _covered = last.getLong( 0 ) + last.getInt( 8 );
+        }
+        _channel.position( size );
+    }
+
+    /**
+     * @return This method returns the offset in the log just past the last
+     *         message indexed.
+     */
+    public long getCovered() {
+        return _covered;
+    }
+
+    /**
+     * Record a message that has been appended to the log.
+     * 
+     * @param offset
+     *            The message starts at this offset in the log.
+     * @param length
+     *            The message is this many bytes long.
+     * @param message
+     *            This is the message.
+     * @throws IOException
+     *             This method throws if buffered records can't be written.
+     */
+    public void add(long offset, int length, Message message)
+            throws IOException {
+        if (!_buffer.hasRemaining())
+            flush();
+        _buffer.putLong( offset );
+        _buffer.putInt( length );
+        _buffer.putLong( nodeKey( message.getFrom().getNodeId() ) );
+        _buffer.putLong( sequence( message.getSequence() ) );
+        _buffer.put( message.getHash().getBytes(), 0, 20 );
+        _covered = offset + length;
+    }
+
+    /**
+     * Drop every record for a message that doesn't fit entirely within the
+     * first length bytes of the log (after the log has been cut short).
+     * 
+     * @param length
+     *            This is the length of the log.
+     * @throws IOException
+     *             This method throws if the index can't be read or cut.
+     */
+    public void truncate(long length) throws IOException {
+        flush();
+        long size = _channel.size();
+        ByteBuffer record = ByteBuffer.allocate( RECORD );
+        while (size > 0) {
+            record.clear();
+            _channel.read( record, size - RECORD );
+            long end = record.getLong( 0 ) + record.getInt( 8 );
+            if (end <= length) {
+                _covered = end;
+                break;
+            }
+            size -= RECORD;
+            _covered = 0;
+        }
+        _channel.truncate( size );
+        _channel.position( size );
+    }
+
+    /**
+     * Write out buffered records.
+     * 
+     * @throws IOException
+     *             This method throws if the records can't be written.
+     */
+    public void flush() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining())
+            _channel.write( _buffer );
+        _buffer.clear();
+    }
+
+    /**
+     * Write out buffered records and close the index file.
+     */
+    public void close() {
+        try {
+            flush();
+            _channel.close();
+        }
+        catch (IOException e) {
+            Bugout.err( "LogIndex: while closing: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Reduce a node id to the key stored in index records.
+     * 
+     * @param nodeId
+     *            This is the node id.
+     * @return This method returns the first eight bytes of the SHA-1 hash of
+     *         the node id.
+     */
+    public static long nodeKey(String nodeId) {
+        byte[] hash = ASExpression.computeSHA1( nodeId.getBytes() );
+        return ByteBuffer.wrap( hash ).getLong();
+    }
+
+    /**
+     * @param sequence
+     *            This is a message's sequence field.
+     * @return This method returns the sequence number as a long, or
+     *         NO_SEQUENCE if it is not a non-negative number.
+     */
+    public static long sequence(String sequence) {
+        try {
+            long seq = Long.parseLong( sequence );
+            return seq < 0 ? NO_SEQUENCE : seq;
+        }
+        catch (NumberFormatException e) {
+            return NO_SEQUENCE;
+        }
+    }
+}
@@ -0,0 +1,522 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sexpression.ASExpression;
+import sexpression.stream.ASEFrameDecoder;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+/**
+ * Random access to the messages in an auditorium log file. The log is memory
+ * mapped, and the positions of its messages are taken from the log's index
+ * (see {@link LogIndex}), so a message can be fetched by its position in the
+ * log, by a {@link MessagePointer}, or by sender and sequence number without
+ * reading anything else. Any part of the log that the index doesn't cover
+ * (because the index is missing, or fell behind when the machine went down) is
+ * scanned when the reader is opened; those messages are only parsed if a
+ * lookup by sender needs them.<br>
+ * <br>
+ * A reader sees the log as it was when the reader was opened, and is meant
+ * for looking at a log after the fact; it is not thread safe.
+ * 
+ * @author Kyle Derr
+ */
+public class LogReader {
+
+    private static final long SEGMENT = 1L << 30;
+    private static final int CHUNK = 64 * 1024;
+
+    /**
+     * The messages from one sender, sorted by sequence number.
+     */
+    private static class Run {
+
+        long[] seqs = new long[16];
+        int[] records = new int[16];
+        int size = 0;
+
+        void add(long seq, int record) {
+            if (size == seqs.length) {
+                seqs = Arrays.copyOf( seqs, size * 2 );
+                records = Arrays.copyOf( records, size * 2 );
+            }
+            seqs[size] = seq;
+            records[size] = record;
+            size++;
+        }
+
+        void sort() {
+            for (int i = 1; i < size; i++)
+                if (seqs[i - 1] > seqs[i]) {
+                    sortSlow();
+                    return;
+                }
+        }
+
+        private void sortSlow() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            final long[] s = seqs;
+            Arrays.sort( order, new Comparator<Integer>() {
+
+                public int compare(Integer a, Integer b) {
+                    return Long.compare( s[a], s[b] );
+                }
+            } );
+            long[] sortedSeqs = new long[size];
+            int[] sortedRecords = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedSeqs[i] = seqs[order[i]];
+                sortedRecords[i] = records[order[i]];
+            }
+            seqs = sortedSeqs;
+            records = sortedRecords;
+        }
+
+        /**
+         * Sequence numbers normally run without gaps, so look where the
+         * number should be before searching for it.
+         */
+        int find(long seq) {
+            if (size == 0)
+                return -1;
+            long guess = seq - seqs[0];
+            if (guess >= 0 && guess < size && seqs[(int) guess] == seq)
+                return (int) guess;
+            int i = Arrays.binarySearch( seqs, 0, size, seq );
+            return i < 0 ? -1 : i;
+        }
+
+        int lowerBound(long seq) {
+            int i = Arrays.binarySearch( seqs, 0, size, seq );
+            if (i < 0)
+                return -i - 1;
+            while (i > 0 && seqs[i - 1] == seq)
+                i--;
+            return i;
+        }
+    }
+
+    private final FileChannel _channel;
+    private final MappedByteBuffer[] _segments;
+    private final long _length;
+
+    private long[] _offsets;
+    private int[] _lengths;
+    private long[] _nodes;
+    private long[] _seqs;
+    private long[] _hashes;
+    private int _size;
+    private int _keyed;
+    private HashMap<Long, Run> _runs;
+
+    /**
+     * Open a log file, along with its index, if it has one.
+     * 
+     * @param log
+     *            Read this log file. Its index is expected to be beside it,
+     *            with ".idx" tacked on to its name.
+     * @throws IOException
+     *             This method throws if the log can't be read.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if an unindexed part of the log is
+     *             corrupt.
+     */
+    public LogReader(File log) throws IOException,
+            InvalidVerbatimStreamException {
+        _channel = new RandomAccessFile( log, "r" ).getChannel();
+        _length = _channel.size();
+        _segments = new MappedByteBuffer[(int) ((_length + SEGMENT - 1) / SEGMENT)];
+        for (int i = 0; i < _segments.length; i++) {
+            long start = i * SEGMENT;
+            _segments[i] = _channel.map( FileChannel.MapMode.READ_ONLY, start,
+                Math.min( SEGMENT, _length - start ) );
+        }
+
+        _offsets = new long[1024];
+        _lengths = new int[1024];
+        _nodes = new long[1024];
+        _seqs = new long[1024];
+        _hashes = new long[1024];
+        _size = 0;
+
+        long covered = readIndex( new File( log.getPath() + ".idx" ) );
+        _keyed = _size;
+        scan( covered );
+    }
+
+    /**
+     * @return This method returns the number of messages in the log.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Read a message, unparsed.
+     * 
+     * @param i
+     *            Read the message at this position in the log (the first
+     *            message is 0).
+     * @return This method returns the message as an s-expression.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if the message in the log is corrupt.
+     */
+    public ASExpression read(int i) throws InvalidVerbatimStreamException {
+        if (i < 0 || i >= _size)
+            throw new IndexOutOfBoundsException( "message " + i + " of "
+                    + _size );
+        return ASExpression.makeVerbatim( bytes( i ) );
+    }
+
+    /**
+     * Read a message's bytes, exactly as they are in the log.
+     * 
+     * @param i
+     *            Read the message at this position in the log (the first
+     *            message is 0).
+     * @return This method returns the message in its verbatim form.
+     */
+    public byte[] readVerbatim(int i) {
+        if (i < 0 || i >= _size)
+            throw new IndexOutOfBoundsException( "message " + i + " of "
+                    + _size );
+        return bytes( i );
+    }
+
+    /**
+     * Get a message by its position in the log.
+     * 
+     * @param i
+     *            Get the message at this position in the log (the first
+     *            message is 0).
+     * @return This method returns the message.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if the message in the log is corrupt.
+     * @throws IncorrectFormatException
+     *             This method throws if the log entry isn't a message.
+     */
+    public Message get(int i) throws InvalidVerbatimStreamException,
+            IncorrectFormatException {
+        return new Message( read( i ) );
+    }
+
+    /**
+     * Get the message that a pointer points to.
+     * 
+     * @param pointer
+     *            Get the message this points to.
+     * @return This method returns the message, or null if it isn't in the
+     *         log.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if the log is corrupt.
+     * @throws IncorrectFormatException
+     *             This method throws if a log entry isn't a message.
+     */
+    public Message get(MessagePointer pointer)
+            throws InvalidVerbatimStreamException, IncorrectFormatException {
+        long seq = LogIndex.sequence( pointer.getNumber() );
+        if (seq == LogIndex.NO_SEQUENCE)
+            return null;
+        Run run = run( pointer.getNodeId() );
+        if (run == null)
+            return null;
+        int at = run.find( seq );
+        if (at < 0)
+            return null;
+
+        byte[] hash = pointer.getHash().getBytes();
+        if (hash.length < 8)
+            return null;
+        long prefix = ByteBuffer.wrap( hash ).getLong();
+        for (; at < run.size && run.seqs[at] == seq; at++) {
+            int i = run.records[at];
+            if (_hashes[i] != prefix)
+                continue;
+            byte[] bytes = bytes( i );
+            if (Arrays.equals( ASExpression.computeSHA1( bytes ), hash ))
+                return new Message( ASExpression.makeVerbatim( bytes ) );
+        }
+        return null;
+    }
+
+    /**
+     * Get the messages from one sender within a range of sequence numbers.
+     * 
+     * @param nodeId
+     *            Get messages sent by this node.
+     * @param from
+     *            This is the first sequence number wanted.
+     * @param to
+     *            This is the last sequence number wanted (inclusive).
+     * @return This method returns the messages in sequence order.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if the log is corrupt.
+     * @throws IncorrectFormatException
+     *             This method throws if a log entry isn't a message.
+     */
+    public List<Message> get(String nodeId, long from, long to)
+            throws InvalidVerbatimStreamException, IncorrectFormatException {
+        ArrayList<Message> ret = new ArrayList<Message>();
+        Run run = run( nodeId );
+        if (run == null)
+            return ret;
+        for (int at = run.lowerBound( from ); at < run.size
+                && run.seqs[at] <= to; at++) {
+            Message m = get( run.records[at] );
+            if (m.getFrom().getNodeId().equals( nodeId ))
+                ret.add( m );
+        }
+        return ret;
+    }
+
+    /**
+     * Get the highest sequence number in the log from each sender.
+     * 
+     * @return This method returns a map from each sender's node id to the
+     *         highest sequence number logged from it.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if the log is corrupt.
+     * @throws IncorrectFormatException
+     *             This method throws if a log entry isn't a message.
+     */
+    public Map<String, Long> getHighestSequences()
+            throws InvalidVerbatimStreamException, IncorrectFormatException {
+        if (_runs == null)
+            key();
+        HashMap<String, Long> ret = new HashMap<String, Long>();
+        for (Run run : _runs.values()) {
+            Message m = get( run.records[run.size - 1] );
+            ret.put( m.getFrom().getNodeId(), run.seqs[run.size - 1] );
+        }
+        return ret;
+    }
+
+    /**
+     * Find the messages that another host is missing, going by the highest
+     * sequence number it has from each sender (see
+     * {@link #getHighestSequences()}). Every message from a sender the host
+     * hasn't heard of is missing.
+     * 
+     * @param have
+     *            This maps node ids to the highest sequence number the host
+     *            has from that node.
+     * @return This method returns the positions of the missing messages, in
+     *         log order.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if the log is corrupt.
+     * @throws IncorrectFormatException
+     *             This method throws if a log entry isn't a message.
+     */
+    public int[] getNewer(Map<String, Long> have)
+            throws InvalidVerbatimStreamException, IncorrectFormatException {
+        if (_runs == null)
+            key();
+        HashMap<Long, Long> known = new HashMap<Long, Long>();
+        for (Map.Entry<String, Long> e : have.entrySet())
+            known.put( LogIndex.nodeKey( e.getKey() ), e.getValue() );
+
+        int[] ret = new int[16];
+        int count = 0;
+        for (Map.Entry<Long, Run> e : _runs.entrySet()) {
+            Run run = e.getValue();
+            Long highest = known.get( e.getKey() );
+            int at = highest == null ? 0 : run.lowerBound( highest + 1 );
+            for (; at < run.size; at++) {
+                if (count == ret.length)
+                    ret = Arrays.copyOf( ret, count * 2 );
+                ret[count++] = run.records[at];
+            }
+        }
+        ret = Arrays.copyOf( ret, count );
+        Arrays.sort( ret );
+        return ret;
+    }
+
+    /**
+     * Release the log file.
+     */
+    public void close() {
+        try {
+            _channel.close();
+        }
+        catch (IOException e) {
+            Bugout.err( "LogReader: while closing: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Load the records from the index, stopping at the first one which
+     * doesn't follow on from the one before it or runs past the end of the
+     * log.
+     * 
+     * @return This method returns the offset in the log just past the last
+     *         indexed message.
+     */
+    private long readIndex(File index) throws IOException {
+        if (!index.exists())
+            return 0;
+        FileChannel channel = new RandomAccessFile( index, "r" ).getChannel();
+        try {
+            long count = channel.size() / LogIndex.RECORD;
+            if (count == 0)
+                return 0;
+            MappedByteBuffer records = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, count * LogIndex.RECORD );
+            long covered = 0;
+            for (int i = 0; i < count; i++) {
+                records.position( i * LogIndex.RECORD );
+                long offset = records.getLong();
+                int length = records.getInt();
+                if (offset != covered || length <= 0
+                        || offset + length > _length)
+                    break;
+                add( offset, length );
+                _nodes[_size - 1] = records.getLong();
+                _seqs[_size - 1] = records.getLong();
+                _hashes[_size - 1] = records.getLong();
+                covered = offset + length;
+            }
+            return covered;
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Find the messages in the log from the given offset on. Only their
+     * positions are recorded; they are hashed and parsed by key() if need be.
+     */
+    private void scan(long from) throws InvalidVerbatimStreamException {
+        ASEFrameDecoder decoder = new ASEFrameDecoder();
+        long offset = from;
+        for (long pos = from; pos < _length; pos += CHUNK) {
+            int len = (int) Math.min( CHUNK, _length - pos );
+            decoder.feed( slice( pos, len ) );
+            byte[] frame;
+            while ((frame = decoder.nextFrame()) != null) {
+                add( offset, frame.length );
+                offset += frame.length;
+            }
+        }
+    }
+
+    /**
+     * Fill in the sender, sequence number and hash of the messages that were
+     * found by scan(), and sort every sender's messages.
+     */
+    private void key() throws InvalidVerbatimStreamException,
+            IncorrectFormatException {
+        for (; _keyed < _size; _keyed++) {
+            byte[] bytes = bytes( _keyed );
+            Message m = new Message( ASExpression.makeVerbatim( bytes ) );
+            _nodes[_keyed] = LogIndex.nodeKey( m.getFrom().getNodeId() );
+            _seqs[_keyed] = LogIndex.sequence( m.getSequence() );
+            _hashes[_keyed] = ByteBuffer.wrap(
+                ASExpression.computeSHA1( bytes ) ).getLong();
+        }
+
+        _runs = new HashMap<Long, Run>();
+        for (int i = 0; i < _size; i++) {
+            if (_seqs[i] == LogIndex.NO_SEQUENCE)
+                continue;
+            Run run = _runs.get( _nodes[i] );
+            if (run == null) {
+                run = new Run();
+                _runs.put( _nodes[i], run );
+            }
+            run.add( _seqs[i], i );
+        }
+        for (Run run : _runs.values())
+            run.sort();
+    }
+
+    private Run run(String nodeId) throws InvalidVerbatimStreamException,
+            IncorrectFormatException {
+        if (_runs == null)
+            key();
+        return _runs.get( LogIndex.nodeKey( nodeId ) );
+    }
+
+    private void add(long offset, int length) {
+        if (_size == _offsets.length) {
+            int n = _size * 2;
+            _offsets = Arrays.copyOf( _offsets, n );
+            _lengths = Arrays.copyOf( _lengths, n );
+            _nodes = Arrays.copyOf( _nodes, n );
+            _seqs = Arrays.copyOf( _seqs, n );
+            _hashes = Arrays.copyOf( _hashes, n );
+        }
+        _offsets[_size] = offset;
+        _lengths[_size] = length;
+        _size++;
+    }
+
+    private byte[] bytes(int i) {
+        byte[] ret = new byte[_lengths[i]];
+        slice( _offsets[i], ret.length ).get( ret );
+        return ret;
+    }
+
+    /**
+     * Get a view of a range of the log. The range is copied only if it
+     * straddles two mapped segments.
+     */
+    private ByteBuffer slice(long offset, int length) {
+        int seg = (int) (offset / SEGMENT);
+        int start = (int) (offset % SEGMENT);
+        if (start + (long) length <= _segments[seg].capacity()) {
+            ByteBuffer view = _segments[seg].duplicate();
+            view.position( start );
+            view.limit( start + length );
+            return view;
+        }
+
+        ByteBuffer copy = ByteBuffer.allocate( length );
+        while (copy.hasRemaining()) {
+            ByteBuffer view = _segments[seg].duplicate();
+            view.position( start );
+            view.limit( Math.min( view.capacity(), start + copy.remaining() ) );
+            copy.put( view );
+            seg++;
+            start = 0;
+        }
+        copy.flip();
+        return copy;
+    }
+}
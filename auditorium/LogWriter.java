@@ -0,0 +1,320 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * This is the stage that puts log data on disk. Callers hand it serialized
+ * messages and get back immediately; a single writer thread takes whatever
+ * has piled up, writes it to the file in one go (group commit), and then
+ * forces it to stable storage according to the configured
+ * {@link SyncPolicy}.<br>
+ * <br>
+ * Every append returns a future that completes once that message is as
+ * durable as the policy promises, and sync() returns a future that completes
+ * once everything appended so far has been forced, regardless of policy.
+ * This lets the election protocol wait for durability at the points where it
+ * matters without making every message pay for an fsync.<br>
+ * <br>
+ * The writer thread is a daemon; call close() to flush what is pending and
+ * stop it. {@link Log} does this from a shutdown hook if it is never closed.
+ * 
+ * @author Kyle Derr
+ * 
+ */
+public class LogWriter {
+
+    /**
+     * When the writer forces data to stable storage.
+     */
+    public static enum SyncPolicy {
+        /**
+         * Never force; messages are durable once the OS has them. This is how
+         * the log has always behaved.
+         */
+        NONE,
+
+        /**
+         * Force after every message.
+         */
+        MESSAGE,
+
+        /**
+         * Force once after every group of messages written together.
+         */
+        BATCH,
+
+        /**
+         * Force at most once every sync interval.
+         */
+        INTERVAL;
+
+        /**
+         * Parse a policy name as it appears in a configuration file.
+         * 
+         * @param name
+         *            One of "none", "message", "batch", "interval".
+         * @return This method returns the named policy, or NONE (after
+         *         complaining) if the name is not recognized.
+         */
+        public static SyncPolicy parse(String name) {
+            if (name == null)
+                return NONE;
+            try {
+                return valueOf( name.trim().toUpperCase() );
+            }
+            catch (IllegalArgumentException e) {
+                Bugout.err( "LogWriter: unknown sync policy " + name
+                        + ", using none" );
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * Write at most this many messages per group.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    // A queued unit of work: a message to write, a sync barrier, or (when
+    // close is called) the signal to stop.
+    private static class Entry {
+        final byte[] verbatim;
+        final boolean stop;
+        final CompletableFuture<Void> done;
+
+        Entry(byte[] verbatim, boolean stop) {
+            this.verbatim = verbatim;
+            this.stop = stop;
+            this.done = new CompletableFuture<Void>();
+        }
+    }
+
+    private final FileChannel _channel;
+    private final SyncPolicy _policy;
+    private final long _interval;
+    private final LockFreeQueue<Entry> _queue;
+    private final Thread _thread;
+    private volatile IOException _failure;
+    private long _position;
+    private volatile boolean _closed;
+
+    /**
+     * @param channel
+     *            Append to this channel, starting at its current position.
+     * @param policy
+     *            Force data to disk according to this policy.
+     * @param interval
+     *            If the policy is INTERVAL, force at most this often
+     *            (milliseconds).
+     */
+    public LogWriter(FileChannel channel, SyncPolicy policy, int interval) {
+        _channel = channel;
+        _policy = policy;
+        _interval = Math.max( 1, interval );
+        _queue = new LockFreeQueue<Entry>();
+        _failure = null;
+        _closed = false;
+        try {
+            _position = channel.position();
+        }
+        catch (IOException e) {
+            throw new FatalNetworkException( "Can't read log position", e );
+        }
+
+        _thread = new Thread( new Runnable() {
+
+            public void run() {
+                writerThread();
+            }
+        } );
+        _thread.setDaemon( true );
+        _thread.start();
+    }
+
+    /**
+     * Queue a serialized message to be appended to the log.
+     * 
+     * @param verbatim
+     *            Append these bytes.
+     * @return This method returns a future that completes when the message is
+     *         durable according to the sync policy.
+     *         If the writer has been closed, the message is dropped and the
+     *         future fails.
+     * @throws IOException
+     *             This method throws if an earlier write failed.
+     */
+    public Future<Void> append(byte[] verbatim) throws IOException {
+        if (_failure != null)
+            throw _failure;
+        Entry e = new Entry( verbatim, false );
+        if (_closed) {
+            Bugout.err( "LogWriter: dropping message appended after close" );
+            e.done.completeExceptionally( new IOException(
+                    "log writer is closed" ) );
+            return e.done;
+        }
+        _position += verbatim.length;
+        _queue.push( e );
+        return e.done;
+    }
+
+    /**
+     * Ask for everything appended so far to be forced to disk.
+     * 
+     * @return This method returns a future that completes once every message
+     *         appended before this call is on stable storage.
+     */
+    public Future<Void> sync() {
+        Entry e = new Entry( null, false );
+        if (_closed)
+            e.done.complete( null );
+        else
+            _queue.push( e );
+        return e.done;
+    }
+
+    /**
+     * Get the file offset at which the next appended message will start. This
+     * counts messages that are queued but not yet written.
+     * 
+     * @return This method returns the log's logical length, in bytes.
+     */
+    public long position() {
+        return _position;
+    }
+
+    /**
+     * Write and force everything pending, stop the writer thread, and close
+     * the channel.
+     */
+    public void close() {
+        if (_closed)
+            return;
+        _closed = true;
+        _queue.push( new Entry( null, true ) );
+        try {
+            _thread.join();
+        }
+        catch (InterruptedException e) {}
+        try {
+            _channel.close();
+        }
+        catch (IOException e) {
+            Bugout.err( "LogWriter: while closing: " + e.getMessage() );
+        }
+    }
+
+    private void writerThread() {
+        ArrayList<Entry> batch = new ArrayList<Entry>();
+        ArrayList<Entry> unforced = new ArrayList<Entry>();
+        ArrayList<ByteBuffer> group = new ArrayList<ByteBuffer>();
+        long lastForce = System.currentTimeMillis();
+        boolean running = true;
+
+        while (running) {
+            batch.clear();
+            try {
+                if (unforced.isEmpty())
+                    _queue.drainTo( batch, BATCH_SIZE );
+                else
+                    _queue.drainTo( batch, BATCH_SIZE, Math.max( 1, lastForce
+                            + _interval - System.currentTimeMillis() ) );
+            }
+            catch (ReleasedQueueException e) {
+                break;
+            }
+
+            boolean force = false;
+            for (Entry e : batch)
+                if (e.stop)
+                    running = false;
+
+            try {
+                for (Entry e : batch) {
+                    if (e.verbatim == null) {
+                        // Sync barrier: everything before it goes out now.
+                        writeGroup( group );
+                        force = true;
+                    }
+                    else if (_policy == SyncPolicy.MESSAGE) {
+                        group.add( ByteBuffer.wrap( e.verbatim ) );
+                        writeGroup( group );
+                        _channel.force( false );
+                        e.done.complete( null );
+                        continue;
+                    }
+                    else
+                        group.add( ByteBuffer.wrap( e.verbatim ) );
+                    unforced.add( e );
+                }
+                writeGroup( group );
+
+                long now = System.currentTimeMillis();
+                if (_policy == SyncPolicy.BATCH
+                        || (_policy == SyncPolicy.INTERVAL && now - lastForce >= _interval))
+                    force = true;
+
+                if (force && !unforced.isEmpty()) {
+                    _channel.force( false );
+                    lastForce = now;
+                }
+                if (force || _policy == SyncPolicy.NONE) {
+                    for (Entry e : unforced)
+                        e.done.complete( null );
+                    unforced.clear();
+                }
+            }
+            catch (IOException e) {
+                Bugout.err( "LogWriter: " + e.getMessage() );
+                _failure = e;
+                group.clear();
+                for (Entry f : batch)
+                    f.done.completeExceptionally( e );
+                for (Entry f : unforced)
+                    f.done.completeExceptionally( e );
+                unforced.clear();
+            }
+        }
+    }
+
+    /**
+     * Write a group of messages with as few system calls as the channel
+     * allows, and empty the group.
+     */
+    private void writeGroup(ArrayList<ByteBuffer> group) throws IOException {
+        if (group.isEmpty())
+            return;
+        ByteBuffer[] bufs = group.toArray( new ByteBuffer[group.size()] );
+        ByteBuffer last = bufs[bufs.length - 1];
+        while (last.hasRemaining())
+            _channel.write( bufs );
+        group.clear();
+    }
+}
@@ -22,25 +22,40 @@
 
 package auditorium;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
+import sexpression.ASExpression;
 import sexpression.stream.*;
 
 /**
  * This class wraps a socket that interfaces with the outside world in the form
  * of Message instances. This type of socket can only send and receive entire
- * auditorium messages.
+ * auditorium messages.<br>
+ * <br>
+ * Either direction of the socket can be switched over to compressed framing
+ * (see {@link Compression}). This is transparent to callers of send() and
+ * receive().
  * 
  * @author Kyle Derr
  * 
  */
 public class MessageSocket {
 
-    private final ASEWriter _out;
-    private final ASEInputStreamReader _in;
+    private static final int COMPRESS_BUFFER_SIZE = 64 * 1024;
+
+    private ASEWriter _out;
+    private ASEInputStreamReader _in;
     private final Socket _socket;
+    private volatile boolean _compressing;
+    private volatile boolean _accepting;
 
     /**
      * Construct a new message socket and connect it to the given host, but
@@ -54,8 +69,28 @@ public class MessageSocket {
      *             This method throws if there is a problem connecting.
      */
     public MessageSocket(HostPointer host, int timeout) throws NetworkException {
-        _socket = new Socket();
+        this( host, timeout, false );
+    }
+
+    /**
+     * Construct a new message socket and connect it to the given host, but
+     * timeout the connection after a given period of time.
+     * 
+     * @param host
+     *            Connect to this host.
+     * @param timeout
+     *            Only wait this long for the connection to succeed.
+     * @param channel
+     *            If true, the underlying socket is created from a
+     *            SocketChannel so that it can later be handed to an
+     *            {@link AuditoriumSelector}.
+     * @throws NetworkException
+     *             This method throws if there is a problem connecting.
+     */
+    public MessageSocket(HostPointer host, int timeout, boolean channel)
+            throws NetworkException {
         try {
+            _socket = channel ? SocketChannel.open().socket() : new Socket();
             _socket.connect( new InetSocketAddress( host.getIP(), host
                     .getPort() ), timeout );
             _out = new ASEWriter( _socket.getOutputStream() );
@@ -95,7 +130,7 @@ public class MessageSocket {
      * @throws NetworkException
      *             This method throws if the message can't be sent.
      */
-    public void send(Message msg) throws NetworkException {
+    public synchronized void send(Message msg) throws NetworkException {
         try {
             _out.writeASE( msg.toASE() );
         }
@@ -104,6 +139,25 @@ public class MessageSocket {
         }
     }
 
+    /**
+     * Send several already-serialized messages in a single write.
+     * 
+     * @param verbatims
+     *            Send these messages, each in its verbatim form, in order.
+     * @throws NetworkException
+     *             This method throws if the messages can't be sent.
+     */
+    public synchronized void send(List<byte[]> verbatims)
+            throws NetworkException {
+        try {
+            _out.writeVerbatim( verbatims );
+        }
+        catch (IOException e) {
+            throw new NetworkException( "Couldn't send " + verbatims.size()
+                    + " messages", e );
+        }
+    }
+
     /**
      * Receive a message.
      * 
@@ -112,12 +166,81 @@ public class MessageSocket {
      * @throws IncorrectFormatException if the incoming s-exp isn't formatted as a message.
      */
     public Message receive() throws NetworkException, IncorrectFormatException {
-        try { return new Message(_in.read()); }
+        try {
+            ASExpression expression = _in.read();
+            while (expression.equals( Compression.DEFLATE )) {
+                // The rest of the stream is compressed.
+                _in = new ASEInputStreamReader( new BufferedInputStream(
+                        new InflaterInputStream( _socket.getInputStream(),
+                                Compression.newInflater() ) ) );
+                if (_accepting)
+                    compressOutput();
+                expression = _in.read();
+            }
+            return new Message( expression );
+        }
         catch (IOException | InvalidVerbatimStreamException e) {
             throw new NetworkException( "while receiving:" + e.getMessage(), e );
         }
     }
 
+    /**
+     * Compress everything sent from now on. The other end is told so first,
+     * and its receive() will follow along. Calling this again has no effect.
+     * 
+     * @throws NetworkException
+     *             This method throws if the other end can't be told.
+     */
+    public synchronized void compressOutput() throws NetworkException {
+        if (_compressing)
+            return;
+        try {
+            _out.writeASE( Compression.DEFLATE );
+            _out = new ASEWriter( new BufferedOutputStream(
+                    new DeflaterOutputStream( _socket.getOutputStream(),
+                            Compression.newDeflater(), COMPRESS_BUFFER_SIZE,
+                            true ), COMPRESS_BUFFER_SIZE ) );
+            _compressing = true;
+        }
+        catch (IOException e) {
+            throw new NetworkException( "Couldn't start compressing", e );
+        }
+    }
+
+    /**
+     * Answer in kind: once the other end says it is compressing, compress
+     * everything sent from then on too.
+     */
+    public void acceptCompression() {
+        _accepting = true;
+    }
+
+    /**
+     * @return This method returns true if the other end compressing its
+     *         output will make this end compress too.
+     */
+    public boolean acceptsCompression() {
+        return _accepting;
+    }
+
+    /**
+     * @return This method returns true if everything sent from now on is
+     *         compressed.
+     */
+    public boolean compressesOutput() {
+        return _compressing;
+    }
+
+    /**
+     * Get the channel underneath this socket, if there is one.
+     * 
+     * @return This method returns the socket's channel, or null if the socket
+     *         was not created from a channel.
+     */
+    public SocketChannel getChannel() {
+        return _socket.getChannel();
+    }
+
     /**
      * Close the socket.
      * 
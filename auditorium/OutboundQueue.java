@@ -0,0 +1,138 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the bounded queue of serialized messages waiting to be written to a
+ * single link. Producers (the host's announce and receive threads, via
+ * flood) never block: if the queue is full the offer is refused, which the
+ * host takes to mean the peer has fallen hopelessly behind. The link's writer
+ * takes everything that is pending at once, so that a burst of messages can
+ * go out in a single socket write.<br>
+ * <br>
+ * The byte arrays placed on this queue are shared between every link's queue
+ * and must not be modified.
+ * 
+ * @author Kyle Derr
+ * 
+ */
+public class OutboundQueue {
+
+    private final int _capacity;
+    private ArrayList<byte[]> _pending;
+    private long _bytes;
+    private boolean _release;
+
+    /**
+     * @param capacity
+     *            Refuse offers once this many messages are waiting.
+     */
+    public OutboundQueue(int capacity) {
+        _capacity = capacity;
+        _pending = new ArrayList<byte[]>();
+        _bytes = 0;
+        _release = false;
+    }
+
+    /**
+     * Add a serialized message to the end of the queue.
+     * 
+     * @param verbatim
+     *            This is the verbatim form of the message.
+     * @return This method returns true if the message was queued, or false if
+     *         the queue is full or has been released.
+     */
+    public synchronized boolean offer(byte[] verbatim) {
+        if (_release || _pending.size() >= _capacity)
+            return false;
+        _pending.add( verbatim );
+        _bytes += verbatim.length;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Remove everything that is waiting, blocking until at least one message
+     * is available.
+     * 
+     * @return This method returns the waiting messages, oldest first.
+     * @throws ReleasedQueueException
+     *             This method throws if releaseThreads() is called.
+     */
+    public synchronized List<byte[]> takeAll() throws ReleasedQueueException {
+        while (_pending.isEmpty() && !_release) {
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                throw new FatalNetworkException(
+                        "Couldn't wait on the outbound queue.", e );
+            }
+        }
+
+        if (_release)
+            throw ReleasedQueueException.SINGLETON;
+
+        return pollAll();
+    }
+
+    /**
+     * Remove everything that is waiting, without blocking.
+     * 
+     * @return This method returns the waiting messages, oldest first. The list
+     *         is empty if nothing is waiting.
+     */
+    public synchronized List<byte[]> pollAll() {
+        List<byte[]> batch = _pending;
+        _pending = new ArrayList<byte[]>();
+        _bytes = 0;
+        return batch;
+    }
+
+    /**
+     * @return This method returns the number of messages waiting.
+     */
+    public synchronized int size() {
+        return _pending.size();
+    }
+
+    /**
+     * @return This method returns the total size, in bytes, of the messages
+     *         waiting.
+     */
+    public synchronized long bytes() {
+        return _bytes;
+    }
+
+    /**
+     * Release any thread blocked in takeAll(), and refuse all further offers.
+     * This operation is not recoverable.
+     */
+    public synchronized void releaseThreads() {
+        _release = true;
+        notifyAll();
+    }
+}
@@ -22,16 +22,24 @@
 
 package auditorium;
 
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.RSAPrivateKeySpec;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import sexpression.*;
 
 /**
- * Crypto primitives used in auditorium are wrapped here.
+ * Crypto primitives used in auditorium are wrapped here. The JCA key objects
+ * built from auditorium keys are kept, keyed on the modulus and exponent, and
+ * each thread keeps its own signature engine, so signing or verifying a
+ * message does no factory lookups once the keys involved have been seen.
  * 
  * @author Kyle Derr
  * 
@@ -40,8 +48,66 @@ public class RSACrypto {
 
     public static final RSACrypto SINGLETON = new RSACrypto();
 
+    /**
+     * Built keys are dropped wholesale once this many have been kept. A
+     * polling place has far fewer hosts than this.
+     */
+    public static final int MAX_CACHED_KEYS = 1024;
+
+    private static final String ALGORITHM = "SHA1withRSA";
+
+    private final ConcurrentHashMap<List<BigInteger>, PublicKey> _publicKeys = new ConcurrentHashMap<List<BigInteger>, PublicKey>();
+    private final ConcurrentHashMap<List<BigInteger>, PrivateKey> _privateKeys = new ConcurrentHashMap<List<BigInteger>, PrivateKey>();
+
+    private static final ThreadLocal<java.security.Signature> _signature = new ThreadLocal<java.security.Signature>() {
+
+        protected java.security.Signature initialValue() {
+            try {
+                return java.security.Signature.getInstance( ALGORITHM );
+            }
+            catch (GeneralSecurityException e) {
+                throw new RuntimeException( ALGORITHM
+                        + " not supported on this platform", e );
+            }
+        }
+    };
+
     private RSACrypto() {}
 
+    /**
+     * @return This method returns the JCA public key for the given auditorium
+     *         key, building it the first time it is asked for.
+     */
+    private PublicKey publicKey(Key key) throws GeneralSecurityException {
+        List<BigInteger> id = Arrays.asList( key.getMod(), key.getKey() );
+        PublicKey ret = _publicKeys.get( id );
+        if (ret == null) {
+            if (_publicKeys.size() >= MAX_CACHED_KEYS)
+                _publicKeys.clear();
+            ret = KeyFactory.getInstance( "RSA" ).generatePublic(
+                new RSAPublicKeySpec( key.getMod(), key.getKey() ) );
+            _publicKeys.put( id, ret );
+        }
+        return ret;
+    }
+
+    /**
+     * @return This method returns the JCA private key for the given
+     *         auditorium key, building it the first time it is asked for.
+     */
+    private PrivateKey privateKey(Key key) throws GeneralSecurityException {
+        List<BigInteger> id = Arrays.asList( key.getMod(), key.getKey() );
+        PrivateKey ret = _privateKeys.get( id );
+        if (ret == null) {
+            if (_privateKeys.size() >= MAX_CACHED_KEYS)
+                _privateKeys.clear();
+            ret = KeyFactory.getInstance( "RSA" ).generatePrivate(
+                new RSAPrivateKeySpec( key.getMod(), key.getKey() ) );
+            _privateKeys.put( id, ret );
+        }
+        return ret;
+    }
+
     /**
      * Create an RSA digital signature.
      * 
@@ -54,13 +120,8 @@ public class RSACrypto {
     public Signature sign(ASExpression data, Key key)
             throws AuditoriumCryptoException {
         try {
-            KeyFactory factory = KeyFactory.getInstance( "RSA" );
-            java.security.Signature sig = java.security.Signature
-                    .getInstance( "SHA1withRSA" );
-            PrivateKey privkey = factory
-                    .generatePrivate( new RSAPrivateKeySpec( key.getMod(), key
-                            .getKey() ) );
-            sig.initSign( privkey );
+            java.security.Signature sig = _signature.get();
+            sig.initSign( privateKey( key ) );
             sig.update( data.toVerbatim() );
             return new Signature( key.getId(),
                     StringExpression.makeString( sig.sign() ), data );
@@ -83,12 +144,8 @@ public class RSACrypto {
     public void verify(Signature signature, Cert host)
             throws AuditoriumCryptoException {
         try {
-            KeyFactory factory = KeyFactory.getInstance( "RSA" );
-            java.security.Signature sig = java.security.Signature
-                    .getInstance( "SHA1withRSA" );
-            PublicKey pubkey = factory.generatePublic( new RSAPublicKeySpec(
-                    host.getKey().getMod(), host.getKey().getKey() ) );
-            sig.initVerify( pubkey );
+            java.security.Signature sig = _signature.get();
+            sig.initVerify( publicKey( host.getKey() ) );
             sig.update( signature.getPayload().toVerbatim() );
             if (!sig.verify( signature.getSigData().getBytesCopy() ))
                 throw new AuditoriumCryptoException( "verify signature",
@@ -0,0 +1,304 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This is the set of messages the log has already seen. Rather than holding on
+ * to a MessagePointer per message, it keeps only the first eight bytes of each
+ * message's SHA-1 hash in an open-addressed table of longs, so a long election
+ * costs sixteen bytes or so per message instead of several hundred. (Two
+ * different messages sharing 64 bits of SHA-1 is not something we need to
+ * worry about.)<br>
+ * <br>
+ * The table can live in a file beside the log, memory mapped, so that a
+ * machine which is restarted does not have to read its whole log back in
+ * before rejoining. The file's header remembers how many bytes of the log the
+ * table accounts for and whether it was closed cleanly; see
+ * {@link #isClean()} and {@link #getCovered()}.<br>
+ * <br>
+ * The set is compact but not bounded: it never forgets a message (that is its
+ * whole job), so it grows with the log, doubling whenever it is half full. It
+ * stops at {@link #MAX_CAPACITY} slots, the most that can be mapped at once,
+ * which is tens of millions of messages; past that it fails rather than
+ * forget.<br>
+ * <br>
+ * This class is not thread safe; the log's callers already serialize access.
+ * 
+ * @author Kyle Derr
+ */
+public class SeenSet {
+
+    public static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The table never grows beyond this many slots (a 1 GB file).
+     */
+    public static final int MAX_CAPACITY = 1 << 27;
+
+    private static final long MAGIC = 0x564f5445534545L;
+
+    /* Header slots, in longs. */
+    private static final int H_MAGIC = 0;
+    private static final int H_CAPACITY = 1;
+    private static final int H_COUNT = 2;
+    private static final int H_COVERED = 3;
+    private static final int H_CLEAN = 4;
+    private static final int HEADER = 8;
+
+    private final FileChannel _channel;
+    private MappedByteBuffer _mapped;
+    private LongBuffer _table;
+    private int _capacity;
+    private int _count;
+    private boolean _wasClean;
+
+    /**
+     * Construct an empty seen set which lives only in memory.
+     */
+    public SeenSet() {
+        _channel = null;
+        _capacity = INITIAL_CAPACITY;
+        _table = LongBuffer.wrap( new long[HEADER + _capacity] );
+        writeHeader();
+    }
+
+    /**
+     * Construct a seen set that is backed by the given file, picking up
+     * whatever the file held when it was last closed. If the file does not
+     * exist or is not a seen set, start empty.
+     * 
+     * @param file
+     *            Map this file.
+     * @throws IOException
+     *             This method throws if the file can't be opened or mapped.
+     */
+    public SeenSet(File file) throws IOException {
+        _channel = new RandomAccessFile( file, "rw" ).getChannel();
+        if (_channel.size() >= HEADER * 8) {
+            map( HEADER );
+            int capacity = (int) _table.get( H_CAPACITY );
+            if (_table.get( H_MAGIC ) == MAGIC
+                    && Integer.bitCount( capacity ) == 1
+                    && _channel.size() >= (HEADER + (long) capacity) * 8) {
+                map( capacity );
+                _count = (int) _table.get( H_COUNT );
+                _wasClean = _table.get( H_CLEAN ) == 1;
+                /* Until close() says otherwise, assume we crashed. */
+                _table.put( H_CLEAN, 0 );
+                _mapped.force();
+                return;
+            }
+        }
+        map( INITIAL_CAPACITY );
+        clear();
+    }
+
+    /**
+     * Add a message's hash to the set.
+     * 
+     * @param hash
+     *            This is the message's SHA-1 hash.
+     * @return This method returns true if the hash was not already in the set.
+     */
+    public boolean add(byte[] hash) {
+        long key = key( hash );
+        int mask = _capacity - 1;
+        int i = slot( key, mask );
+        long k;
+        while ((k = _table.get( HEADER + i )) != 0) {
+            if (k == key)
+                return false;
+            i = (i + 1) & mask;
+        }
+        _table.put( HEADER + i, key );
+        _count++;
+        _table.put( H_COUNT, _count );
+        if (_count * 2 > _capacity)
+            grow();
+        return true;
+    }
+
+    /**
+     * Check for a message's hash in the set.
+     * 
+     * @param hash
+     *            This is the message's SHA-1 hash.
+     * @return This method returns true if the hash is in the set.
+     */
+    public boolean contains(byte[] hash) {
+        long key = key( hash );
+        int mask = _capacity - 1;
+        int i = slot( key, mask );
+        long k;
+        while ((k = _table.get( HEADER + i )) != 0) {
+            if (k == key)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return This method returns the number of hashes in the set.
+     */
+    public int size() {
+        return _count;
+    }
+
+    /**
+     * Empty the set.
+     */
+    public void clear() {
+        for (int i = 0; i < _capacity; i++)
+            _table.put( HEADER + i, 0 );
+        _count = 0;
+        _wasClean = false;
+        writeHeader();
+        setCovered( 0 );
+    }
+
+    /**
+     * @return This method returns the number of log bytes that the set
+     *         accounts for: every message in the first this-many bytes of the
+     *         log is in the set.
+     */
+    public long getCovered() {
+        return _table.get( H_COVERED );
+    }
+
+    /**
+     * Record how many bytes of the log the set now accounts for.
+     * 
+     * @param covered
+     *            This is the length of the log covered so far.
+     */
+    public void setCovered(long covered) {
+        _table.put( H_COVERED, covered );
+    }
+
+    /**
+     * A mapped set's pages may reach the disk in any order, so a set that was
+     * not closed cleanly can't be trusted to hold everything its header says
+     * it does.
+     * 
+     * @return This method returns true if the set was loaded from a file that
+     *         was closed cleanly.
+     */
+    public boolean isClean() {
+        return _wasClean;
+    }
+
+    /**
+     * Flush the set to its file, if it has one, and mark the file clean. The
+     * set can't be used after this.
+     */
+    public void close() {
+        if (_channel == null)
+            return;
+        try {
+            _table.put( H_CLEAN, 1 );
+            _mapped.force();
+            _channel.close();
+        }
+        catch (IOException e) {
+            throw new FatalNetworkException( "Can't close the seen set", e );
+        }
+    }
+
+    /**
+     * Double the table and rehash everything into it.
+     */
+    private void grow() {
+        if (_capacity >= MAX_CAPACITY)
+            throw new FatalNetworkException( "The seen set is full ("
+                    + _count + " messages)", null );
+        long[] keys = new long[_count];
+        int n = 0;
+        for (int i = 0; i < _capacity; i++) {
+            long k = _table.get( HEADER + i );
+            if (k != 0)
+                keys[n++] = k;
+        }
+        long covered = getCovered();
+
+        int capacity = _capacity * 2;
+        if (_channel == null)
+            _table = LongBuffer.wrap( new long[HEADER + capacity] );
+        else {
+            try {
+                map( capacity );
+            }
+            catch (IOException e) {
+                throw new FatalNetworkException( "Can't grow the seen set", e );
+            }
+            for (int i = 0; i < capacity; i++)
+                _table.put( HEADER + i, 0 );
+        }
+        _capacity = capacity;
+        writeHeader();
+        setCovered( covered );
+
+        int mask = _capacity - 1;
+        for (long key : keys) {
+            int i = slot( key, mask );
+            while (_table.get( HEADER + i ) != 0)
+                i = (i + 1) & mask;
+            _table.put( HEADER + i, key );
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        _mapped = _channel.map( FileChannel.MapMode.READ_WRITE, 0,
+            (HEADER + (long) capacity) * 8 );
+        _table = _mapped.asLongBuffer();
+        _capacity = capacity;
+    }
+
+    private void writeHeader() {
+        _table.put( H_MAGIC, MAGIC );
+        _table.put( H_CAPACITY, _capacity );
+        _table.put( H_COUNT, _count );
+        _table.put( H_CLEAN, 0 );
+    }
+
+    /**
+     * Fold a SHA-1 hash down to a nonzero long (zero marks an empty slot).
+     */
+    private static long key(byte[] hash) {
+        long key = 0;
+        for (int i = 0; i < 8; i++)
+            key = (key << 8) | (i < hash.length ? hash[i] & 0xff : 0);
+        return key == 0 ? 1 : key;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -23,9 +23,7 @@
 package auditorium.loganalysis;
 
 import java.io.CharArrayReader;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -73,12 +71,11 @@ public class Dag {
      */
     public void build() throws IOException, InvalidVerbatimStreamException,
             IncorrectFormatException {
-        ASEInputStreamReader reader = new ASEInputStreamReader(
-                new FileInputStream( new File( _filename ) ) );
+        LogReader reader = new LogReader( new File( _filename ) );
 
         try {
-            while (true) {
-                ASExpression message = reader.read();
+            for (int i = 0; i < reader.size(); i++) {
+                ASExpression message = reader.read( i );
                 MessagePointer ptr = new MessagePointer( new Message( message ) );
 
                 ArrayList<MessagePointer> predlist = new ArrayList<MessagePointer>();
@@ -92,7 +89,9 @@ public class Dag {
                 _dag.put( ptr, predlist );
             }
         }
-        catch (EOFException e) {}
+        finally {
+            reader.close();
+        }
     }
 
     /**
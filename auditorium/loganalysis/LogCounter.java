@@ -23,8 +23,7 @@
 package auditorium.loganalysis;
 
 import java.io.CharArrayReader;
-import java.io.FileInputStream;
-import java.io.EOFException;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -32,7 +31,6 @@ import auditorium.*;
 import sexpression.*;
 import sexpression.lexer.Lexer;
 import sexpression.parser.Parser;
-import sexpression.stream.*;
 
 /**
  * Parse a log file and print out some simple information: <br>
@@ -54,14 +52,13 @@ public class LogCounter {
 
     public static void main(String[] args) throws Exception {
         long count = 0;
-        ASEInputStreamReader rd = new ASEInputStreamReader(
-                new FileInputStream( args[0] ) );
+        LogReader rd = new LogReader( new File( args[0] ) );
         HashMap<String, ArrayList<Integer>> map = new HashMap<String, ArrayList<Integer>>();
         int[] branches = new int[1000];
 
         try {
-            while (true) {
-                Message m = new Message( rd.read() );
+            for (int i = 0; i < rd.size(); i++) {
+                Message m = rd.get( i );
                 ArrayList<Integer> message;
                 if (map.containsKey( m.getFrom().getNodeId() ))
                     message = map.get( m.getFrom().getNodeId() );
@@ -76,7 +73,9 @@ public class LogCounter {
                 count++;
             }
         }
-        catch (EOFException e) {}
+        finally {
+            rd.close();
+        }
         for (String key : map.keySet()) {
             System.err.println( key );
             ArrayList<Integer> lst = map.get( key );
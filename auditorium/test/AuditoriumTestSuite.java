@@ -19,7 +19,7 @@
   * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
   * ACCESS OR USE OF THE SOFTWARE.
  */
-
+
 package auditorium.test;
 
 import org.junit.runners.*;
@@ -27,16 +27,25 @@ import org.junit.runner.*;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+  CatchUpRequestTest.class,
   CertTest.class,
+  ChannelLinkTest.class,
+  CompressionTest.class,
   CryptoTest.class,
   HostPointerTest.class,
   IntegrityLayerTest.class,
   KeyStoreTest.class,
   KeyTest.class,
+  LastSetTest.class,
   LinkTest.class,
+  LockFreeQueueTest.class,
+  LogReaderTest.class,
   LogTest.class,
+  LogWriterTest.class,
   MessagePointerTest.class,
   MessageTest.class,
+  OutboundQueueTest.class,
+  SeenSetTest.class,
   SignatureTest.class,
   TemporalLayerTest.class
 })
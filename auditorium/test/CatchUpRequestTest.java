@@ -0,0 +1,73 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import auditorium.CatchUpRequest;
+import auditorium.IncorrectFormatException;
+
+/**
+ * Tests for the CatchUpRequest class.
+ */
+public class CatchUpRequestTest {
+
+    @Test
+    public void round_trip() throws Exception {
+        Map<String, Long> have = new HashMap<String, Long>();
+        have.put( "booth1", 12L );
+        have.put( "supervisor", 40L );
+        CatchUpRequest request = new CatchUpRequest( new CatchUpRequest( have )
+                .toASE() );
+        assertEquals( have, request.getHave() );
+    }
+
+    @Test
+    public void empty() throws Exception {
+        ListExpression exp = new ListExpression( StringExpression
+                .makeString( "catch-up" ), ListExpression.EMPTY );
+        assertEquals( exp, new CatchUpRequest( new HashMap<String, Long>() )
+                .toASE() );
+        assertTrue( new CatchUpRequest( exp ).getHave().isEmpty() );
+    }
+
+    // The datum of a join from a host that doesn't ask to be caught up.
+    @Test(expected = IncorrectFormatException.class)
+    public void not_a_request() throws Exception {
+        new CatchUpRequest( StringExpression.EMPTY );
+    }
+
+    @Test(expected = IncorrectFormatException.class)
+    public void bad_sequence() throws Exception {
+        new CatchUpRequest( new ListExpression( StringExpression
+                .makeString( "catch-up" ), new ListExpression(
+                new ListExpression( "booth1", "twelve" ) ) ) );
+    }
+}
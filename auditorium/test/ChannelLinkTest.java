@@ -0,0 +1,273 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.stream.ASEInputStreamReader;
+import auditorium.AuditoriumSelector;
+import auditorium.ChannelLink;
+import auditorium.Compression;
+import auditorium.HostPointer;
+import auditorium.IAuditoriumHost;
+import auditorium.Link;
+import auditorium.Log;
+import auditorium.Message;
+import auditorium.MessageSocket;
+import auditorium.LockFreeQueue;
+
+/**
+ * The same checks as LinkTest, but against a link serviced by an
+ * AuditoriumSelector instead of its own thread.
+ */
+public class ChannelLinkTest {
+
+    // the host will put stuff in here when its methods are called.
+    private LockFreeQueue<Message> _received;
+    private LockFreeQueue<Link> _links;
+
+    // Use these streams to talk to the Link.
+    private volatile OutputStream _stream;
+    private volatile Socket _toLink;
+
+    private AuditoriumSelector _selector;
+    private ChannelLink _link;
+
+    private IAuditoriumHost _host = new IAuditoriumHost() {
+
+        public ASExpression getAddresses() {
+            throw new RuntimeException( "unused" );
+        }
+
+        public Log getLog() {
+            throw new RuntimeException( "unused" );
+        }
+
+        public HostPointer getMe() {
+            throw new RuntimeException( "unused" );
+        }
+
+        public String getNodeId() {
+            throw new RuntimeException( "unused" );
+        }
+
+        public void receiveAnnouncement(Link link, Message message) {
+            _received.push( message );
+        }
+
+        public void removeLink(Link link) {
+            _links.push( link );
+        }
+
+        public String nextSequence() {
+            throw new RuntimeException( "unused" );
+        }
+    };
+
+    @Before
+    public void setup() throws Exception {
+        Thread.sleep( 100 );
+        _received = new LockFreeQueue<Message>();
+        _links = new LockFreeQueue<Link>();
+        _selector = new AuditoriumSelector();
+        _selector.start();
+
+        new Thread( new Runnable() {
+
+            public void run() {
+                try {
+                    ServerSocket serversocket = new ServerSocket( 9001 );
+                    _toLink = serversocket.accept();
+                    _stream = _toLink.getOutputStream();
+                    serversocket.close();
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                    fail();
+                }
+            }
+        } ).start();
+
+        Thread.sleep( 100 );
+        HostPointer hp = new HostPointer( "", "127.0.0.1", 9001 );
+        _link = new ChannelLink( _host, new MessageSocket( hp, 8000, true ),
+                hp, _selector );
+        _link.start();
+        Thread.sleep( 100 );
+    }
+
+    @After
+    public void tear() throws Exception {
+        Thread.sleep( 100 );
+        _stream.close();
+        _link.stop();
+        _selector.stop();
+        Thread.sleep( 100 );
+    }
+
+    // Check that when you close the socket, the thing stops running
+    @Test
+    public void close_socket() throws Exception {
+        _stream.close();
+        Thread.sleep( 100 );
+        assertFalse( _link.running() );
+
+        assertEquals( 1, _links.size() );
+        assertEquals( 0, _received.size() );
+
+        assertSame( _link, _links.pop() );
+    }
+
+    // Send random bytes
+    @Test
+    public void random_bytes() throws Exception {
+        assertTrue( _link.running() );
+        _stream.write( 234 );
+        Thread.sleep( 100 );
+
+        assertFalse( _link.running() );
+
+        assertEquals( 1, _links.size() );
+        assertEquals( 0, _received.size() );
+    }
+
+    // Badly formatted s-expressions don't kill the link.
+    @Test
+    public void non_message() throws Exception {
+        assertTrue( _link.running() );
+        _stream.write( new ListExpression( "Test", "Message" ).toVerbatim() );
+        Thread.sleep( 100 );
+
+        assertTrue( _link.running() );
+
+        assertEquals( 0, _links.size() );
+        assertEquals( 0, _received.size() );
+    }
+
+    // Messages split across writes are reassembled, back to back messages
+    // are separated.
+    @Test
+    public void messages() throws Exception {
+        Message m1 = new Message( "announcement", new HostPointer( "id", "ip",
+                9000 ), "1", ListExpression.EMPTY );
+        Message m2 = new Message( "announcement", new HostPointer( "id", "ip",
+                9000 ), "2", new ListExpression( "a", "b" ) );
+        byte[] b1 = m1.toASE().toVerbatim();
+        byte[] b2 = m2.toASE().toVerbatim();
+
+        _stream.write( b1, 0, 5 );
+        _stream.flush();
+        Thread.sleep( 100 );
+        assertEquals( 0, _received.size() );
+
+        byte[] rest = new byte[b1.length - 5 + b2.length];
+        System.arraycopy( b1, 5, rest, 0, b1.length - 5 );
+        System.arraycopy( b2, 0, rest, b1.length - 5, b2.length );
+        _stream.write( rest );
+        Thread.sleep( 100 );
+
+        assertTrue( _link.running() );
+        assertEquals( 2, _received.size() );
+        assertEquals( m1.toASE(), _received.pop().toASE() );
+        assertEquals( m2.toASE(), _received.pop().toASE() );
+    }
+
+    // Messages sent through the link come out the other end intact.
+    @Test
+    public void send() throws Exception {
+        Message m = new Message( "announcement", new HostPointer( "id", "ip",
+                9000 ), "TEST", ListExpression.EMPTY );
+        _link.send( m );
+        _link.send( m );
+
+        ASEInputStreamReader in = new ASEInputStreamReader( _toLink
+                .getInputStream() );
+        assertEquals( m.toASE(), in.read() );
+        assertEquals( m.toASE(), in.read() );
+    }
+
+    // Once the other end says it is compressing, what follows is inflated,
+    // even if it arrived along with the announcement.
+    @Test
+    public void compressed() throws Exception {
+        Message m1 = new Message( "announcement", new HostPointer( "id", "ip",
+                9000 ), "1", ListExpression.EMPTY );
+        Message m2 = new Message( "announcement", new HostPointer( "id", "ip",
+                9000 ), "2", new ListExpression( "a", "b" ) );
+        byte[] marker = Compression.DEFLATE.toVerbatim();
+        byte[] compressed = Compression.deflate( Compression.newDeflater(),
+            Arrays.asList( m1.toASE().toVerbatim(), m2.toASE().toVerbatim() ) );
+
+        byte[] bytes = new byte[marker.length + compressed.length];
+        System.arraycopy( marker, 0, bytes, 0, marker.length );
+        System.arraycopy( compressed, 0, bytes, marker.length,
+            compressed.length );
+        _stream.write( bytes, 0, marker.length + 3 );
+        _stream.flush();
+        Thread.sleep( 100 );
+        assertEquals( 0, _received.size() );
+
+        _stream.write( bytes, marker.length + 3, bytes.length - marker.length
+                - 3 );
+        Thread.sleep( 100 );
+
+        assertTrue( _link.running() );
+        assertEquals( 2, _received.size() );
+        assertEquals( m1.toASE(), _received.pop().toASE() );
+        assertEquals( m2.toASE(), _received.pop().toASE() );
+    }
+
+    // A link whose socket accepts compression answers in kind.
+    @Test
+    public void compressed_reply() throws Exception {
+        Message m = new Message( "announcement", new HostPointer( "id", "ip",
+                9000 ), "TEST", ListExpression.EMPTY );
+        _link.getSocket().acceptCompression();
+        _stream.write( Compression.DEFLATE.toVerbatim() );
+        Thread.sleep( 100 );
+        _link.send( m );
+        _link.send( m );
+
+        ASEInputStreamReader in = new ASEInputStreamReader( _toLink
+                .getInputStream() );
+        assertEquals( Compression.DEFLATE, in.read() );
+        in = new ASEInputStreamReader( new BufferedInputStream(
+                new InflaterInputStream( _toLink.getInputStream(), Compression
+                        .newInflater() ) ) );
+        assertEquals( m.toASE(), in.read() );
+        assertEquals( m.toASE(), in.read() );
+    }
+}
@@ -0,0 +1,142 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import auditorium.Compression;
+import auditorium.HostPointer;
+import auditorium.Message;
+import auditorium.MessageSocket;
+
+/**
+ * Tests for the Compression class, and for MessageSocket switching over to
+ * it.
+ */
+public class CompressionTest {
+
+    private static Message message(int i) {
+        return new Message( "announce", new HostPointer( "id", "127.0.0.1",
+                9000 ), Integer.toString( i ), new ListExpression(
+                StringExpression.makeString( "cast-ballot" ), StringExpression
+                        .makeString( new byte[] { (byte) i, 0, (byte) -i } ) ) );
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] bytes)
+            throws Exception {
+        inflater.setInput( bytes );
+        byte[] out = new byte[64 * 1024];
+        int n = inflater.inflate( out );
+        assertTrue( inflater.needsInput() );
+        return Arrays.copyOf( out, n );
+    }
+
+    // ** deflate tests
+
+    // Every batch can be inflated as soon as it arrives, and comes out as the
+    // messages went in.
+    @Test
+    public void deflate_batches() throws Exception {
+        Deflater deflater = Compression.newDeflater();
+        Inflater inflater = Compression.newInflater();
+
+        for (int batch = 0; batch < 5; batch++) {
+            List<byte[]> verbatims = new ArrayList<byte[]>();
+            int length = 0;
+            for (int i = 0; i < batch; i++) {
+                byte[] verbatim = message( batch * 10 + i ).toASE()
+                        .toVerbatim();
+                verbatims.add( verbatim );
+                length += verbatim.length;
+            }
+
+            byte[] expected = new byte[length];
+            int pos = 0;
+            for (byte[] verbatim : verbatims) {
+                System.arraycopy( verbatim, 0, expected, pos, verbatim.length );
+                pos += verbatim.length;
+            }
+
+            byte[] compressed = Compression.deflate( deflater, verbatims );
+            assertArrayEquals( expected, inflate( inflater, compressed ) );
+        }
+    }
+
+    // A message seen before costs much less the second time.
+    @Test
+    public void deflate_repeats() throws Exception {
+        Deflater deflater = Compression.newDeflater();
+        byte[] verbatim = message( 1 ).toASE().toVerbatim();
+
+        int first = Compression.deflate( deflater, Arrays.asList( verbatim ) )
+                .length;
+        int second = Compression.deflate( deflater, Arrays.asList( verbatim ) )
+                .length;
+        assertTrue( first < verbatim.length );
+        assertTrue( second < first / 4 );
+    }
+
+    // ** MessageSocket tests
+
+    // One end compresses, the other answers in kind, and messages still get
+    // through both ways.
+    @Test
+    public void socket_negotiate() throws Exception {
+        ServerSocket server = new ServerSocket( 9002 );
+        MessageSocket joiner = new MessageSocket( new HostPointer( "",
+                "127.0.0.1", 9002 ), 8000 );
+        MessageSocket joined = new MessageSocket( server.accept() );
+        server.close();
+
+        joiner.acceptCompression();
+        joined.send( message( 0 ) );
+        joined.compressOutput();
+        joined.compressOutput();
+        joined.send( message( 1 ) );
+        joined.send( Arrays.asList( message( 2 ).toASE().toVerbatim(),
+            message( 3 ).toASE().toVerbatim() ) );
+
+        assertFalse( joiner.compressesOutput() );
+        for (int i = 0; i < 4; i++)
+            assertEquals( message( i ).toASE(), joiner.receive().toASE() );
+        assertTrue( joiner.compressesOutput() );
+
+        joiner.send( message( 4 ) );
+        assertEquals( message( 4 ).toASE(), joined.receive().toASE() );
+        assertFalse( joined.acceptsCompression() );
+
+        joiner.close();
+        joined.close();
+    }
+}
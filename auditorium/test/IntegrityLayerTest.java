@@ -51,7 +51,7 @@ public class IntegrityLayerTest {
             return "TEST";
         }
 
-        public void receiveAnnouncement(Message message) {
+        public void receiveAnnouncement(Link link, Message message) {
             throw new RuntimeException( "unused" );
         }
 
@@ -247,6 +247,48 @@ public class IntegrityLayerTest {
                 StringExpression.EMPTY, datum ) );
     }
 
+    // A certificate that has been checked once still needs a good signature on
+    // every message that carries it.
+    @Test(expected = IncorrectFormatException.class)
+    public void receive_announcement_14() throws Exception {
+        receive_announcement_test( StringExpression.makeString( "Test" ) );
+
+        ASExpression datum = StringExpression.makeString( "TEST" );
+        Signature sig = RSACrypto.SINGLETON.sign( datum, _mykey );
+        byte[] sigbytes = sig.getSigData().getBytesCopy();
+        sigbytes[0] = 1;
+        Signature notsig = new Signature( "TEST", StringExpression
+                .makeString( sigbytes ), datum );
+
+        _layer.receiveAnnouncement( new ListExpression( StringExpression
+                .makeString( "signed-message" ), _mycert.toASE(), notsig
+                .toASE() ) );
+    }
+
+    // A certificate whose authority signature doesn't check is never
+    // remembered as checked.
+    @Test
+    public void receive_announcement_15() throws Exception {
+        Keys other = new Generator().generateKey( "other", "booth" );
+        Cert forged = new Cert( RSACrypto.SINGLETON.sign( other.getPublic()
+                .toASE(), other.getPrivate() ) );
+        forged = new Cert( new Signature( "ca", forged.getSignature()
+                .getSigData(), forged.getSignature().getPayload() ) );
+
+        ASExpression datum = StringExpression.makeString( "TEST" );
+        ASExpression message = new ListExpression( StringExpression
+                .makeString( "signed-message" ), forged.toASE(),
+                RSACrypto.SINGLETON.sign( datum, other.getPrivate() ).toASE() );
+
+        for (int lcv = 0; lcv < 2; lcv++) {
+            try {
+                _layer.receiveAnnouncement( message );
+                fail( "forged certificate accepted" );
+            }
+            catch (IncorrectFormatException e) {}
+        }
+    }
+
     // ** do nothing method tests **
     // (all these tested methods essentially return what they're given)
     private void donothing_test(ASExpression datum) throws Exception {
@@ -0,0 +1,135 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import sexpression.ASExpression;
+import sexpression.StringExpression;
+import auditorium.LastSet;
+import auditorium.MessagePointer;
+
+/**
+ * Tests for the LastSet class.
+ */
+public class LastSetTest {
+
+    private static MessagePointer pointer(int i) {
+        String number = Integer.toString( i );
+        return new MessagePointer( "node", number, StringExpression
+                .makeString( ASExpression.computeSHA1( number.getBytes() ) ) );
+    }
+
+    // ** add/remove tests
+
+    @Test
+    public void add_remove() {
+        LastSet set = new LastSet();
+        assertEquals( 0, set.size() );
+
+        assertTrue( set.add( pointer( 1 ) ) );
+        assertTrue( set.add( pointer( 2 ) ) );
+        assertFalse( set.add( pointer( 1 ) ) );
+        assertEquals( 2, set.size() );
+
+        assertTrue( set.remove( pointer( 1 ) ) );
+        assertFalse( set.remove( pointer( 1 ) ) );
+        assertFalse( set.remove( pointer( 3 ) ) );
+        assertEquals( 1, set.size() );
+        assertEquals( pointer( 2 ), set.toList().get( 0 ) );
+    }
+
+    @Test
+    public void order() {
+        LastSet set = new LastSet();
+        for (int i = 0; i < 100; i++)
+            set.add( pointer( i ) );
+        for (int i = 0; i < 100; i += 2)
+            set.remove( pointer( i ) );
+
+        List<MessagePointer> list = set.toList();
+        assertEquals( 50, list.size() );
+        for (int i = 0; i < 50; i++)
+            assertEquals( pointer( 2 * i + 1 ), list.get( i ) );
+    }
+
+    // ** takeAll tests
+
+    @Test
+    public void take_all() {
+        LastSet set = new LastSet();
+        assertEquals( 0, set.takeAll().length );
+
+        set.add( pointer( 1 ) );
+        set.add( pointer( 2 ) );
+        MessagePointer[] taken = set.takeAll();
+        assertEquals( 2, taken.length );
+        assertEquals( pointer( 1 ), taken[0] );
+        assertEquals( pointer( 2 ), taken[1] );
+
+        assertEquals( 0, set.size() );
+        assertEquals( 0, set.takeAll().length );
+
+        // Taking doesn't forget how to add.
+        assertTrue( set.add( pointer( 1 ) ) );
+        assertEquals( 1, set.takeAll().length );
+    }
+
+    @Test
+    public void take_all_concurrent() throws Exception {
+        final LastSet set = new LastSet();
+        final int count = 20000;
+        Thread[] adders = new Thread[4];
+        for (int t = 0; t < adders.length; t++) {
+            final int first = t;
+            adders[t] = new Thread( new Runnable() {
+
+                public void run() {
+                    for (int i = first; i < count; i += 4)
+                        set.add( pointer( i ) );
+                }
+            } );
+            adders[t].start();
+        }
+
+        // Every pointer is taken exactly once, however the threads interleave.
+        HashSet<MessagePointer> taken = new HashSet<MessagePointer>();
+        boolean adding = true;
+        while (adding) {
+            adding = false;
+            for (Thread t : adders)
+                adding |= t.isAlive();
+            for (MessagePointer p : set.takeAll())
+                assertTrue( taken.add( p ) );
+        }
+        for (MessagePointer p : set.takeAll())
+            assertTrue( taken.add( p ) );
+
+        assertEquals( count, taken.size() );
+    }
+}
@@ -41,13 +41,13 @@ import auditorium.Link;
 import auditorium.Log;
 import auditorium.Message;
 import auditorium.MessageSocket;
-import auditorium.SynchronizedQueue;
+import auditorium.LockFreeQueue;
 
 public class LinkTest {
 
     // the host will put stuff in here when its methods are called.
-    private SynchronizedQueue<Message> _received;
-    private SynchronizedQueue<Link> _links;
+    private LockFreeQueue<Message> _received;
+    private LockFreeQueue<Link> _links;
 
     // Use this stream to send shit to the Link.
     private volatile OutputStream _stream;
@@ -72,7 +72,7 @@ public class LinkTest {
             throw new RuntimeException( "unused" );
         }
 
-        public void receiveAnnouncement(Message message) {
+        public void receiveAnnouncement(Link link, Message message) {
             _received.push( message );
         }
 
@@ -89,8 +89,8 @@ public class LinkTest {
     @Before
     public void setup() throws Exception {
         Thread.sleep( 100 );
-        _received = new SynchronizedQueue<Message>();
-        _links = new SynchronizedQueue<Link>();
+        _received = new LockFreeQueue<Message>();
+        _links = new LockFreeQueue<Link>();
 
         new Thread( new Runnable() {
 
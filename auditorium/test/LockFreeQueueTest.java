@@ -0,0 +1,118 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import auditorium.LockFreeQueue;
+import auditorium.ReleasedQueueException;
+
+/**
+ * Tests for the LockFreeQueue class.
+ */
+public class LockFreeQueueTest {
+
+    // Elements come out in the order they went in.
+    @Test
+    public void fifo() throws Exception {
+        LockFreeQueue<Integer> q = new LockFreeQueue<Integer>();
+        for (int i = 0; i < 10; i++)
+            q.push( i );
+        assertEquals( 10, q.size() );
+
+        assertEquals( 0, (int) q.pop() );
+        ArrayList<Integer> batch = new ArrayList<Integer>();
+        assertEquals( 4, q.drainTo( batch, 4 ) );
+        assertEquals( 5, q.size() );
+        assertEquals( 4, q.drainTo( batch, 4 ) );
+        assertEquals( 1, q.drainTo( batch, 4 ) );
+        assertEquals( 0, q.size() );
+        for (int i = 0; i < 9; i++)
+            assertEquals( i + 1, (int) batch.get( i ) );
+    }
+
+    // Nothing pushed by many producers is lost or reordered per producer.
+    @Test
+    public void producers() throws Exception {
+        final int producers = 8;
+        final int each = 20000;
+        final LockFreeQueue<int[]> q = new LockFreeQueue<int[]>();
+
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            new Thread( new Runnable() {
+
+                public void run() {
+                    for (int i = 0; i < each; i++)
+                        q.push( new int[] { id, i } );
+                }
+            } ).start();
+        }
+
+        int[] next = new int[producers];
+        ArrayList<int[]> batch = new ArrayList<int[]>();
+        int total = 0;
+        while (total < producers * each) {
+            batch.clear();
+            total += q.drainTo( batch, 100 );
+            for (int[] e : batch) {
+                assertEquals( next[e[0]], e[1] );
+                next[e[0]]++;
+            }
+        }
+        assertEquals( 0, q.size() );
+    }
+
+    // A blocked consumer is woken by releaseThreads, and later calls don't
+    // block.
+    @Test
+    public void release() throws Exception {
+        final LockFreeQueue<Integer> q = new LockFreeQueue<Integer>();
+        new Thread( new Runnable() {
+
+            public void run() {
+                try {
+                    Thread.sleep( 100 );
+                }
+                catch (InterruptedException e) {}
+                q.releaseThreads();
+            }
+        } ).start();
+
+        try {
+            q.pop();
+            fail();
+        }
+        catch (ReleasedQueueException e) {}
+
+        try {
+            q.drainTo( new ArrayList<Integer>(), 10 );
+            fail();
+        }
+        catch (ReleasedQueueException e) {}
+    }
+}
@@ -0,0 +1,219 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import sexpression.ASExpression;
+import sexpression.StringExpression;
+import auditorium.HostPointer;
+import auditorium.Log;
+import auditorium.LogReader;
+import auditorium.LogWriter;
+import auditorium.Message;
+import auditorium.MessagePointer;
+
+/**
+ * Tests for the LogIndex and LogReader classes.
+ */
+public class LogReaderTest {
+
+    private final File _file = new File( "temp-reader" );
+    private final File _index = new File( "temp-reader.idx" );
+    private final File _seen = new File( "temp-reader.seen" );
+
+    @After
+    public void tear() {
+        _file.delete();
+        _index.delete();
+        _seen.delete();
+    }
+
+    private static Message message(String node, int seq) {
+        return new Message( "announcement", new HostPointer( node,
+                "192.168.1.100", 9000 ), Integer.toString( seq ),
+                StringExpression.makeString( node + seq ) );
+    }
+
+    /**
+     * Log ten messages from each of two nodes, interleaved.
+     */
+    private void write(boolean resume) throws Exception {
+        Log log = new Log( _file, LogWriter.SyncPolicy.NONE, 0, resume, true );
+        for (int i = 0; i < 10; i++) {
+            log.logAnnouncement( message( "a", i ) );
+            log.logAnnouncement( message( "b", i ) );
+        }
+        log.close();
+    }
+
+    private static void assertMessage(Message expected, Message actual) {
+        assertNotNull( actual );
+        assertEquals( expected.toASE(), actual.toASE() );
+    }
+
+    private void check() throws Exception {
+        LogReader reader = new LogReader( _file );
+        assertEquals( 20, reader.size() );
+        assertMessage( message( "a", 0 ), reader.get( 0 ) );
+        assertMessage( message( "b", 9 ), reader.get( 19 ) );
+
+        assertMessage( message( "b", 4 ), reader.get( new MessagePointer(
+                message( "b", 4 ) ) ) );
+        assertNull( reader.get( new MessagePointer( message( "c", 4 ) ) ) );
+        assertNull( reader.get( new MessagePointer( message( "a", 10 ) ) ) );
+        assertNull( reader.get( new MessagePointer( "a", "4", message( "b",
+            4 ).getHash() ) ) );
+
+        List<Message> range = reader.get( "a", 3, 5 );
+        assertEquals( 3, range.size() );
+        for (int i = 0; i < 3; i++)
+            assertMessage( message( "a", 3 + i ), range.get( i ) );
+        assertEquals( 0, reader.get( "a", 10, 20 ).size() );
+        assertEquals( 0, reader.get( "c", 0, 20 ).size() );
+        reader.close();
+    }
+
+    // ** reader tests
+
+    @Test
+    public void indexed() throws Exception {
+        write( false );
+        assertEquals( 20 * 48, _index.length() );
+        check();
+    }
+
+    @Test
+    public void no_index() throws Exception {
+        write( false );
+        _index.delete();
+        check();
+    }
+
+    @Test
+    public void index_behind() throws Exception {
+        write( false );
+        RandomAccessFile index = new RandomAccessFile( _index, "rw" );
+        index.setLength( 7 * 48 + 5 );
+        index.close();
+        check();
+    }
+
+    @Test
+    public void empty() throws Exception {
+        new FileOutputStream( _file ).close();
+        LogReader reader = new LogReader( _file );
+        assertEquals( 0, reader.size() );
+        assertNull( reader.get( new MessagePointer( message( "a", 0 ) ) ) );
+        reader.close();
+    }
+
+    // ** catch-up tests
+
+    @Test
+    public void highest_sequences() throws Exception {
+        write( false );
+        LogReader reader = new LogReader( _file );
+        Map<String, Long> highest = reader.getHighestSequences();
+        assertEquals( 2, highest.size() );
+        assertEquals( Long.valueOf( 9 ), highest.get( "a" ) );
+        assertEquals( Long.valueOf( 9 ), highest.get( "b" ) );
+        reader.close();
+    }
+
+    @Test
+    public void newer() throws Exception {
+        write( false );
+        LogReader reader = new LogReader( _file );
+
+        /* Caught up on a to 4, never heard of b. */
+        Map<String, Long> have = new HashMap<String, Long>();
+        have.put( "a", 4L );
+        have.put( "c", 100L );
+        int[] newer = reader.getNewer( have );
+        assertEquals( 15, newer.length );
+        for (int i = 1; i < newer.length; i++)
+            assertTrue( newer[i - 1] < newer[i] );
+        assertMessage( message( "b", 0 ), reader.get( newer[0] ) );
+        assertMessage( message( "b", 2 ), reader.get( newer[2] ) );
+        assertMessage( message( "a", 5 ), reader.get( newer[5] ) );
+        assertMessage( message( "b", 9 ), reader.get( newer[14] ) );
+        assertMessage( message( "b", 9 ), new Message( ASExpression
+                .makeVerbatim( reader.readVerbatim( newer[14] ) ) ) );
+
+        have.put( "b", 9L );
+        have.put( "a", 9L );
+        assertEquals( 0, reader.getNewer( have ).length );
+        assertEquals( 20, reader.getNewer( new HashMap<String, Long>() ).length );
+        reader.close();
+    }
+
+    // ** resume tests
+
+    @Test
+    public void resume_catches_index_up() throws Exception {
+        Log log = new Log( _file, LogWriter.SyncPolicy.NONE, 0, true, true );
+        for (int i = 0; i < 10; i++)
+            log.logAnnouncement( message( "a", i ) );
+        log.close();
+        _index.delete();
+
+        log = new Log( _file, LogWriter.SyncPolicy.NONE, 0, true, true );
+        assertFalse( log.logAnnouncement( message( "a", 0 ) ) );
+        for (int i = 0; i < 10; i++)
+            log.logAnnouncement( message( "b", i ) );
+        log.close();
+        assertEquals( 20 * 48, _index.length() );
+
+        LogReader reader = new LogReader( _file );
+        assertMessage( message( "a", 9 ), reader.get( new MessagePointer(
+                message( "a", 9 ) ) ) );
+        assertEquals( 10, reader.get( "b", 0, 100 ).size() );
+        reader.close();
+    }
+
+    @Test
+    public void resume_cuts_partial_message() throws Exception {
+        write( true );
+        long length = _file.length();
+        FileOutputStream out = new FileOutputStream( _file, true );
+        out.write( "(5:abc".getBytes() );
+        out.close();
+        _seen.delete();
+
+        Log log = new Log( _file, LogWriter.SyncPolicy.NONE, 0, true, true );
+        log.close();
+        assertEquals( length, _file.length() );
+        check();
+    }
+}
@@ -51,6 +51,7 @@ public class LogTest {
     @After
     public void tear() {
         new File( "temp" ).delete();
+        new File( "temp.seen" ).delete();
     }
 
     // ** logAnnouncement(Message) tests
@@ -66,8 +67,8 @@ public class LogTest {
                 StringExpression.makeString( "test2" ) );
         MessagePointer pointer2 = new MessagePointer( msg2 );
 
-        assertFalse( _log.TESTgetSetCopy().contains( pointer1 ) );
-        assertFalse( _log.TESTgetSetCopy().contains( pointer2 ) );
+        assertFalse( _log.hasSeen( pointer1 ) );
+        assertFalse( _log.hasSeen( pointer2 ) );
         assertEquals( 0, _log.getLast().length );
 
         _log.logAnnouncement( msg1 );
@@ -75,9 +76,9 @@ public class LogTest {
         ArrayList<MessagePointer> last = new ArrayList<MessagePointer>();
         for (MessagePointer p : _log.TESTgetLast())
             last.add( p );
-        assertEquals( 1, _log.TESTgetSetCopy().size() );
-        assertTrue( _log.TESTgetSetCopy().contains( pointer1 ) );
-        assertFalse( _log.TESTgetSetCopy().contains( pointer2 ) );
+        assertEquals( 1, _log.seenCount() );
+        assertTrue( _log.hasSeen( pointer1 ) );
+        assertFalse( _log.hasSeen( pointer2 ) );
         assertEquals( 1, last.size() );
         assertTrue( last.contains( pointer1 ) );
         assertFalse( last.contains( pointer2 ) );
@@ -88,13 +89,96 @@ public class LogTest {
         last = new ArrayList<MessagePointer>();
         for (MessagePointer p : _log.TESTgetLast())
             last.add( p );
-        assertEquals( 2, _log.TESTgetSetCopy().size() );
-        assertTrue( _log.TESTgetSetCopy().contains( pointer1 ) );
-        assertTrue( _log.TESTgetSetCopy().contains( pointer2 ) );
+        assertEquals( 2, _log.seenCount() );
+        assertTrue( _log.hasSeen( pointer1 ) );
+        assertTrue( _log.hasSeen( pointer2 ) );
         assertEquals( 2, last.size() );
         assertTrue( last.contains( pointer1 ) );
         assertTrue( last.contains( pointer2 ) );
         assertFalse( _log.logAnnouncement( msg1 ) );
         assertFalse( _log.logAnnouncement( msg2 ) );
     }
+
+    // ** resume tests
+
+    private static Message message(int i) {
+        return new Message( "announcement", new HostPointer( "test-node",
+                "192.168.1.100", 9000 ), Integer.toString( i ),
+                StringExpression.makeString( "test" + i ) );
+    }
+
+    @Test
+    public void resume_clean() throws Exception {
+        _log.close();
+        File file = new File( "temp" );
+        Log log = new Log( file, LogWriter.SyncPolicy.NONE, 0, true );
+        assertTrue( log.logAnnouncement( message( 1 ) ) );
+        assertTrue( log.logAnnouncement( message( 2 ) ) );
+        log.close();
+        long length = file.length();
+
+        log = new Log( file, LogWriter.SyncPolicy.NONE, 0, true );
+        assertEquals( 2, log.seenCount() );
+        assertTrue( log.hasSeen( new MessagePointer( message( 1 ) ) ) );
+        assertFalse( log.logAnnouncement( message( 2 ) ) );
+        assertTrue( log.logAnnouncement( message( 3 ) ) );
+        log.close();
+        assertTrue( file.length() > length );
+    }
+
+    @Test
+    public void resume_rebuilds() throws Exception {
+        _log.logAnnouncement( message( 1 ) );
+        _log.logAnnouncement( message( 2 ) );
+        _log.close();
+
+        /* No seen file at all: everything comes from the log. */
+        File file = new File( "temp" );
+        Log log = new Log( file, LogWriter.SyncPolicy.NONE, 0, true );
+        assertEquals( 2, log.seenCount() );
+        assertTrue( log.hasSeen( new MessagePointer( message( 1 ) ) ) );
+        assertTrue( log.hasSeen( new MessagePointer( message( 2 ) ) ) );
+        assertFalse( log.logAnnouncement( message( 1 ) ) );
+        assertTrue( log.logAnnouncement( message( 3 ) ) );
+        log.close();
+    }
+
+    @Test
+    public void close_twice() throws Exception {
+        _log.close();
+        File file = new File( "temp" );
+        Log log = new Log( file, LogWriter.SyncPolicy.NONE, 0, true );
+        assertTrue( log.logAnnouncement( message( 1 ) ) );
+        log.close();
+        log.close();
+
+        log = new Log( file, LogWriter.SyncPolicy.NONE, 0, true );
+        assertEquals( 1, log.seenCount() );
+        log.close();
+    }
+
+    // ** highest sequence tests
+
+    @Test
+    public void highest_sequence() throws Exception {
+        assertEquals( 0, _log.getHighestSequence( "test-node" ) );
+        assertTrue( _log.getHighestSequences().isEmpty() );
+
+        _log.logAnnouncement( message( 3 ) );
+        _log.logAnnouncement( message( 1 ) );
+        assertEquals( 3, _log.getHighestSequence( "test-node" ) );
+        assertEquals( 0, _log.getHighestSequence( "other-node" ) );
+        assertEquals( 1, _log.getHighestSequences().size() );
+        assertEquals( Long.valueOf( 3 ), _log.getHighestSequences().get(
+            "test-node" ) );
+        _log.close();
+
+        /* A resumed log remembers. */
+        Log log = new Log( new File( "temp" ), LogWriter.SyncPolicy.NONE, 0,
+                true );
+        assertEquals( 3, log.getHighestSequence( "test-node" ) );
+        log.logAnnouncement( message( 7 ) );
+        assertEquals( 7, log.getHighestSequence( "test-node" ) );
+        log.close();
+    }
 }
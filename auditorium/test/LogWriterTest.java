@@ -0,0 +1,112 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import auditorium.LogWriter;
+import auditorium.LogWriter.SyncPolicy;
+
+/**
+ * Tests for the LogWriter class.
+ */
+public class LogWriterTest {
+
+    private final File _file = new File( "temp-logwriter" );
+
+    @After
+    public void tear() {
+        _file.delete();
+    }
+
+    private LogWriter open(SyncPolicy policy, int interval) throws Exception {
+        return new LogWriter( new FileOutputStream( _file ).getChannel(),
+                policy, interval );
+    }
+
+    private byte[] contents() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileInputStream in = new FileInputStream( _file );
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read( buf )) > 0)
+            out.write( buf, 0, n );
+        in.close();
+        return out.toByteArray();
+    }
+
+    // Every policy ends up with the messages on disk, in order, and every
+    // append future completes.
+    @Test
+    public void policies() throws Exception {
+        for (SyncPolicy policy : SyncPolicy.values()) {
+            LogWriter writer = open( policy, 20 );
+            ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+            StringBuffer expected = new StringBuffer();
+            for (int i = 0; i < 500; i++) {
+                String s = "(3:msg" + Integer.toString( i ).length() + ":"
+                        + i + ")";
+                expected.append( s );
+                futures.add( writer.append( s.getBytes( "us-ascii" ) ) );
+            }
+            assertEquals( expected.length(), writer.position() );
+
+            for (Future<Void> f : futures)
+                f.get( 5, TimeUnit.SECONDS );
+            writer.sync().get( 5, TimeUnit.SECONDS );
+            assertEquals( expected.toString(), new String( contents(),
+                    "us-ascii" ) );
+            writer.close();
+        }
+    }
+
+    // Close writes out anything still queued.
+    @Test
+    public void close() throws Exception {
+        LogWriter writer = open( SyncPolicy.INTERVAL, 60000 );
+        Future<Void> f = writer.append( "3:abc".getBytes( "us-ascii" ) );
+        writer.close();
+        assertTrue( f.isDone() );
+        assertEquals( "3:abc", new String( contents(), "us-ascii" ) );
+        assertTrue( writer.append( "1:x".getBytes( "us-ascii" ) ).isDone() );
+    }
+
+    @Test
+    public void parse() {
+        assertEquals( SyncPolicy.BATCH, SyncPolicy.parse( "batch" ) );
+        assertEquals( SyncPolicy.INTERVAL, SyncPolicy.parse( " Interval " ) );
+        assertEquals( SyncPolicy.NONE, SyncPolicy.parse( null ) );
+        assertEquals( SyncPolicy.NONE, SyncPolicy.parse( "sometimes" ) );
+    }
+}
@@ -0,0 +1,104 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import auditorium.OutboundQueue;
+import auditorium.ReleasedQueueException;
+
+/**
+ * Tests for the OutboundQueue class.
+ */
+public class OutboundQueueTest {
+
+    // Offers beyond capacity are refused, and takeAll drains everything.
+    @Test
+    public void capacity() throws Exception {
+        OutboundQueue q = new OutboundQueue( 2 );
+        byte[] a = new byte[] { 1, 2, 3 };
+        byte[] b = new byte[] { 4 };
+
+        assertTrue( q.offer( a ) );
+        assertTrue( q.offer( b ) );
+        assertFalse( q.offer( a ) );
+        assertEquals( 2, q.size() );
+        assertEquals( 4, q.bytes() );
+
+        List<byte[]> batch = q.takeAll();
+        assertEquals( 2, batch.size() );
+        assertSame( a, batch.get( 0 ) );
+        assertSame( b, batch.get( 1 ) );
+        assertEquals( 0, q.size() );
+        assertEquals( 0, q.bytes() );
+        assertTrue( q.pollAll().isEmpty() );
+        assertTrue( q.offer( a ) );
+    }
+
+    // A blocked writer is woken by an offer.
+    @Test
+    public void blocking_take() throws Exception {
+        final OutboundQueue q = new OutboundQueue( 10 );
+        new Thread( new Runnable() {
+
+            public void run() {
+                try {
+                    Thread.sleep( 100 );
+                }
+                catch (InterruptedException e) {}
+                q.offer( new byte[] { 7 } );
+            }
+        } ).start();
+
+        List<byte[]> batch = q.takeAll();
+        assertEquals( 1, batch.size() );
+        assertEquals( 7, batch.get( 0 )[0] );
+    }
+
+    // Releasing wakes the writer and refuses further offers.
+    @Test
+    public void release() throws Exception {
+        final OutboundQueue q = new OutboundQueue( 10 );
+        new Thread( new Runnable() {
+
+            public void run() {
+                try {
+                    Thread.sleep( 100 );
+                }
+                catch (InterruptedException e) {}
+                q.releaseThreads();
+            }
+        } ).start();
+
+        try {
+            q.takeAll();
+            fail();
+        }
+        catch (ReleasedQueueException e) {}
+        assertFalse( q.offer( new byte[] { 1 } ) );
+    }
+}
@@ -0,0 +1,141 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package auditorium.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Test;
+
+import sexpression.ASExpression;
+import auditorium.SeenSet;
+
+/**
+ * Tests for the SeenSet class.
+ */
+public class SeenSetTest {
+
+    private final File _file = new File( "temp-seen" );
+
+    @After
+    public void tear() {
+        _file.delete();
+    }
+
+    private static byte[] hash(int i) {
+        return ASExpression.computeSHA1( Integer.toString( i ).getBytes() );
+    }
+
+    // ** add/contains tests
+
+    @Test
+    public void add_contains() {
+        SeenSet set = new SeenSet();
+        assertEquals( 0, set.size() );
+        assertFalse( set.contains( hash( 1 ) ) );
+
+        assertTrue( set.add( hash( 1 ) ) );
+        assertTrue( set.contains( hash( 1 ) ) );
+        assertFalse( set.contains( hash( 2 ) ) );
+        assertEquals( 1, set.size() );
+
+        assertFalse( set.add( hash( 1 ) ) );
+        assertEquals( 1, set.size() );
+    }
+
+    @Test
+    public void zero_hash() {
+        SeenSet set = new SeenSet();
+        assertTrue( set.add( new byte[20] ) );
+        assertTrue( set.contains( new byte[20] ) );
+        assertFalse( set.add( new byte[20] ) );
+    }
+
+    @Test
+    public void grow() {
+        SeenSet set = new SeenSet();
+        set.setCovered( 1234 );
+        int n = SeenSet.INITIAL_CAPACITY * 4;
+        for (int i = 0; i < n; i++)
+            assertTrue( set.add( hash( i ) ) );
+        assertEquals( n, set.size() );
+        for (int i = 0; i < n; i++)
+            assertTrue( set.contains( hash( i ) ) );
+        assertFalse( set.contains( hash( n ) ) );
+        assertEquals( 1234, set.getCovered() );
+    }
+
+    // ** file-backed tests
+
+    @Test
+    public void persists_when_closed() throws Exception {
+        _file.delete();
+        SeenSet set = new SeenSet( _file );
+        assertFalse( set.isClean() );
+        int n = SeenSet.INITIAL_CAPACITY * 2;
+        for (int i = 0; i < n; i++)
+            set.add( hash( i ) );
+        set.setCovered( 99 );
+        set.close();
+
+        set = new SeenSet( _file );
+        assertTrue( set.isClean() );
+        assertEquals( n, set.size() );
+        assertEquals( 99, set.getCovered() );
+        for (int i = 0; i < n; i++)
+            assertTrue( set.contains( hash( i ) ) );
+        assertFalse( set.contains( hash( n ) ) );
+        set.close();
+    }
+
+    @Test
+    public void unclean_until_closed() throws Exception {
+        _file.delete();
+        SeenSet set = new SeenSet( _file );
+        set.add( hash( 1 ) );
+        set.close();
+
+        set = new SeenSet( _file );
+        assertTrue( set.isClean() );
+        /* Not closed this time; the next open must not trust the file. */
+        SeenSet again = new SeenSet( _file );
+        assertFalse( again.isClean() );
+        again.close();
+        set.close();
+    }
+
+    @Test
+    public void clear() throws Exception {
+        _file.delete();
+        SeenSet set = new SeenSet( _file );
+        set.add( hash( 1 ) );
+        set.setCovered( 10 );
+        set.clear();
+        assertEquals( 0, set.size() );
+        assertEquals( 0, set.getCovered() );
+        assertFalse( set.contains( hash( 1 ) ) );
+        set.close();
+    }
+}
@@ -55,7 +55,7 @@ public class TemporalLayerTest {
             throw new RuntimeException( "not used" );
         }
 
-        public void receiveAnnouncement(Message message) {
+        public void receiveAnnouncement(Link link, Message message) {
             throw new RuntimeException( "not used" );
         }
 
@@ -47,9 +47,17 @@ public class TestParams implements IAuditoriumParams {
     public static final int DISCOVER_REPLY_PORT = 9783;
     public static final int LISTEN_PORT = 9700;
     public static final int JOIN_TIMEOUT = 1000;
+    public static final boolean USE_NIO_TRANSPORT = false;
+    public static final int VERIFY_THREADS = 2;
+    public static final boolean COMPRESS_LINKS = false;
     public static final String BROADCAST_ADDRESS = "255.255.255.255";
     public static final String LOG_LOCATION = "/local/Kyle Derr Derr/log.out";
+    public static final String LOG_SYNC_POLICY = "none";
+    public static final int LOG_SYNC_INTERVAL = 100;
+    public static final boolean RESUME_LOG = false;
+    public static final boolean INDEX_LOG = false;
     public static final String KEYS_DIRECTORY = "/keys/";
+    public static final String TALLY_CHECKPOINT_DIRECTORY = "";
     public static final String RULE_FILE = "rules";
     public static final boolean ENCRYPTION_ENABLED = false;
     public static final boolean USE_ELO_TOUCH_SCREEN = false;
@@ -63,6 +71,8 @@ public class TestParams implements IAuditoriumParams {
     public static final String DEFAULT_PRINTER_FOR_VVPAT = "";
     public static final boolean DEFAULT_ENABLE_NIZKS = false;
     public static final boolean DEFAULT_USE_PIECEMEAL_ENCRYPTION = false;
+    public static final boolean DEFAULT_USE_PARALLEL_ENCRYPTION = false;
+    public static final boolean DEFAULT_PRECOMPUTE_RANDOMNESS = false;
     public static final boolean DEFAULT_USE_SIMPLE_TALLY_VIEW = false;
     public static final boolean DEFAULT_USE_TABLE_TALLY_VIEW = false;
     public static final boolean DEFAULT_USE_WINDOWED_VIEW = true;
@@ -96,10 +106,42 @@ public class TestParams implements IAuditoriumParams {
         return LISTEN_PORT;
     }
 
+    public boolean getUseNIOTransport() {
+        return USE_NIO_TRANSPORT;
+    }
+
+    public int getVerifyThreads() {
+        return VERIFY_THREADS;
+    }
+
+    public boolean getCompressLinks() {
+        return COMPRESS_LINKS;
+    }
+
     public String getLogLocation() {
         return LOG_LOCATION;
     }
 
+    public String getLogSyncPolicy() {
+        return LOG_SYNC_POLICY;
+    }
+
+    public int getLogSyncInterval() {
+        return LOG_SYNC_INTERVAL;
+    }
+
+    public boolean getResumeLog() {
+        return RESUME_LOG;
+    }
+
+    public boolean getIndexLog() {
+        return INDEX_LOG;
+    }
+
+    public String getTallyCheckpointDirectory() {
+        return TALLY_CHECKPOINT_DIRECTORY;
+    }
+
     public auditorium.IKeyStore getKeyStore() {
         return new auditorium.SimpleKeyStore(KEYS_DIRECTORY);
     }
@@ -161,6 +203,16 @@ public class TestParams implements IAuditoriumParams {
 		return DEFAULT_USE_PIECEMEAL_ENCRYPTION;
 	}
 
+	public boolean getUseParallelEncryption()
+	{
+		return DEFAULT_USE_PARALLEL_ENCRYPTION;
+	}
+
+	public boolean getPrecomputeRandomness()
+	{
+		return DEFAULT_PRECOMPUTE_RANDOMNESS;
+	}
+
 	public boolean getUseSimpleTallyView() {
 		return DEFAULT_USE_SIMPLE_TALLY_VIEW;
 	}
@@ -0,0 +1,286 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package benchmark;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A small microbenchmark harness. Each {@link Benchmark} method of an object
+ * is run for a number of warmup iterations, whose results are thrown away, and
+ * then for a number of measured iterations of fixed length. The method is
+ * called in batches sized so that a batch takes about a millisecond, to keep
+ * the cost of reading the clock out of the numbers. Return values are folded
+ * into a field the JIT can't see through, so the work can't be optimized
+ * away.<br>
+ * <br>
+ * If the object has {@link Param} fields, the benchmarks are run once for
+ * each combination of their values, after calling the object's {@link Setup}
+ * methods with the fields set. The values are reported alongside the
+ * results.<br>
+ * <br>
+ * Options (all optional, in any order):<br>
+ * -wi [n] : warmup iterations (default 3)<br>
+ * -i [n] : measured iterations (default 5)<br>
+ * -r [ms] : length of each iteration (default 1000)<br>
+ * -p [name]=[value],[value]... : run with these values of a parameter<br>
+ * [regex] : only run benchmarks whose names contain a match
+ * 
+ * @author Kyle Derr
+ */
+public class Harness {
+
+    public static final int WARMUP_ITERATIONS = 3;
+    public static final int ITERATIONS = 5;
+    public static final long ITERATION_MILLIS = 1000;
+
+    private static final long BATCH_NANOS = 1000000;
+
+    private int _warmup = WARMUP_ITERATIONS;
+    private int _iterations = ITERATIONS;
+    private long _millis = ITERATION_MILLIS;
+    private Pattern _filter = null;
+    private final HashMap<String, String[]> _params = new HashMap<String, String[]>();
+    private volatile int _sink;
+
+    /**
+     * @param args
+     *            Configure the harness from these command line options.
+     */
+    public Harness(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals( "-wi" ))
+                _warmup = Integer.parseInt( args[++i] );
+            else if (args[i].equals( "-i" ))
+                _iterations = Integer.parseInt( args[++i] );
+            else if (args[i].equals( "-r" ))
+                _millis = Long.parseLong( args[++i] );
+            else if (args[i].equals( "-p" )) {
+                String[] param = args[++i].split( "=", 2 );
+                if (param.length != 2)
+                    throw new IllegalArgumentException( "Expected -p name=values, got " + args[i] );
+                _params.put( param[0], param[1].split( "," ) );
+            }
+            else
+                _filter = Pattern.compile( args[i] );
+        }
+    }
+
+    /**
+     * Run every benchmark method of the given object, in name order, and
+     * print a line of results for each to standard out. With parameters, do
+     * so for each combination of their values in turn.
+     * 
+     * @param benchmarks
+     *            Run the benchmarks on this object.
+     */
+    public void run(Object benchmarks) {
+        String prefix = benchmarks.getClass().getSimpleName() + ".";
+        ArrayList<Method> methods = new ArrayList<Method>();
+        for (Method m : annotated( benchmarks, Benchmark.class ))
+            if (_filter == null
+                    || _filter.matcher( prefix + m.getName() ).find())
+                methods.add( m );
+
+        /* Don't pay for setup if there's nothing to run. */
+        if (methods.isEmpty())
+            return;
+
+        ArrayList<Field> fields = new ArrayList<Field>();
+        for (Field f : benchmarks.getClass().getFields())
+            if (f.isAnnotationPresent( Param.class ))
+                fields.add( f );
+        Collections.sort( fields, new Comparator<Field>() {
+
+            public int compare(Field a, Field b) {
+                return a.getName().compareTo( b.getName() );
+            }
+        } );
+
+        run( benchmarks, prefix, methods, fields, new String[fields.size()], 0 );
+    }
+
+    /**
+     * Set each parameter from the given one on to each of its values in turn,
+     * and run the benchmarks once all of them are set.
+     */
+    private void run(Object benchmarks, String prefix, List<Method> methods,
+            List<Field> fields, String[] values, int field) {
+        if (field < fields.size()) {
+            Field f = fields.get( field );
+            String[] choices = _params.get( f.getName() );
+            if (choices == null)
+                choices = f.getAnnotation( Param.class ).value();
+            for (String value : choices) {
+                values[field] = value;
+                run( benchmarks, prefix, methods, fields, values, field + 1 );
+            }
+            return;
+        }
+
+        StringBuilder label = new StringBuilder();
+        try {
+            for (int i = 0; i < fields.size(); i++) {
+                set( benchmarks, fields.get( i ), values[i] );
+                label.append( i == 0 ? " " : ", " ).append(
+                    fields.get( i ).getName() ).append( '=' ).append( values[i] );
+            }
+            for (Method m : annotated( benchmarks, Setup.class ))
+                m.invoke( benchmarks );
+        }
+        catch (IllegalAccessException e) {
+            throw new RuntimeException( label.toString(), e );
+        }
+        catch (InvocationTargetException e) {
+            throw new RuntimeException( label.toString(), e.getCause() );
+        }
+
+        for (Method m : methods)
+            report( prefix + m.getName() + label, measure( benchmarks, m ) );
+    }
+
+    /**
+     * @return This method returns the public, no-argument methods of the
+     *         given object with the given annotation, in name order.
+     */
+    private List<Method> annotated(Object target,
+            Class<? extends java.lang.annotation.Annotation> annotation) {
+        ArrayList<Method> methods = new ArrayList<Method>();
+        for (Method m : target.getClass().getMethods())
+            if (m.isAnnotationPresent( annotation )
+                    && m.getParameterTypes().length == 0)
+                methods.add( m );
+        Collections.sort( methods, new Comparator<Method>() {
+
+            public int compare(Method a, Method b) {
+                return a.getName().compareTo( b.getName() );
+            }
+        } );
+        return methods;
+    }
+
+    /**
+     * Set a parameter field from its string value.
+     */
+    private void set(Object target, Field f, String value)
+            throws IllegalAccessException {
+        Class<?> type = f.getType();
+        if (type == String.class)
+            f.set( target, value );
+        else if (type == boolean.class)
+            f.setBoolean( target, Boolean.parseBoolean( value ) );
+        else if (type == int.class)
+            f.setInt( target, Integer.parseInt( value ) );
+        else if (type == long.class)
+            f.setLong( target, Long.parseLong( value ) );
+        else if (type == double.class)
+            f.setDouble( target, Double.parseDouble( value ) );
+        else
+            throw new IllegalArgumentException( "Can't set parameter "
+                    + f.getName() + " of type " + type.getName() );
+    }
+
+    /**
+     * Time one benchmark.
+     * 
+     * @return This method returns the time per call, in nanoseconds, for each
+     *         measured iteration.
+     */
+    private double[] measure(Object target, Method m) {
+        try {
+            int batch = calibrate( target, m );
+            for (int i = 0; i < _warmup; i++)
+                iteration( target, m, batch );
+            double[] ret = new double[_iterations];
+            for (int i = 0; i < _iterations; i++)
+                ret[i] = iteration( target, m, batch );
+            return ret;
+        }
+        catch (IllegalAccessException e) {
+            throw new RuntimeException( m.getName(), e );
+        }
+        catch (InvocationTargetException e) {
+            throw new RuntimeException( m.getName(), e.getCause() );
+        }
+    }
+
+    /**
+     * Find a batch size for which a batch takes at least BATCH_NANOS.
+     */
+    private int calibrate(Object target, Method m)
+            throws IllegalAccessException, InvocationTargetException {
+        int batch = 1;
+        while (batch < (1 << 24)) {
+            long start = System.nanoTime();
+            batch( target, m, batch );
+            if (System.nanoTime() - start >= BATCH_NANOS)
+                break;
+            batch *= 2;
+        }
+        return batch;
+    }
+
+    private double iteration(Object target, Method m, int batch)
+            throws IllegalAccessException, InvocationTargetException {
+        long deadline = System.nanoTime() + _millis * 1000000;
+        long start = System.nanoTime();
+        long calls = 0;
+        long now;
+        do {
+            batch( target, m, batch );
+            calls += batch;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return (double) (now - start) / calls;
+    }
+
+    private void batch(Object target, Method m, int batch)
+            throws IllegalAccessException, InvocationTargetException {
+        int sink = 0;
+        for (int i = 0; i < batch; i++)
+            sink += System.identityHashCode( m.invoke( target ) );
+        _sink += sink;
+    }
+
+    private void report(String name, double[] nanos) {
+        double mean = 0;
+        for (double n : nanos)
+            mean += n;
+        mean /= nanos.length;
+        double var = 0;
+        for (double n : nanos)
+            var += (n - mean) * (n - mean);
+        double sd = nanos.length > 1 ? Math.sqrt( var / (nanos.length - 1) )
+                : 0;
+
+        System.out.println( String.format( "%-64s %12.3f +- %9.3f us/op",
+            name, mean / 1000, sd / 1000 ) );
+    }
+}
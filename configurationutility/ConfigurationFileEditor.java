@@ -802,6 +802,18 @@ public class ConfigurationFileEditor extends JFrame {
         defaultAttributeValues.add("1000");
         defaultAttributeComments.add("");
 
+        defaultAttributeNames.add("USE_NIO_TRANSPORT");
+        defaultAttributeValues.add("false");
+        defaultAttributeComments.add("If true, links are serviced by one selector thread instead of a thread per peer.");
+
+        defaultAttributeNames.add("VERIFY_THREADS");
+        defaultAttributeValues.add("0");
+        defaultAttributeComments.add("Threads checking signatures on incoming messages; 0 for one per processor.");
+
+        defaultAttributeNames.add("COMPRESS_LINKS");
+        defaultAttributeValues.add("false");
+        defaultAttributeComments.add("Offer and accept compressed framing on links to other machines.");
+
         defaultAttributeNames.add("BROADCAST_ADDRESS");
         defaultAttributeValues.add("255.255.255.255");
         defaultAttributeComments.add("");
@@ -823,10 +835,30 @@ public class ConfigurationFileEditor extends JFrame {
         defaultAttributeValues.add("log.out");
         defaultAttributeComments.add("");
 
+        defaultAttributeNames.add("LOG_SYNC_POLICY");
+        defaultAttributeValues.add("none");
+        defaultAttributeComments.add("When to force the log to disk: none, message, batch or interval.");
+
+        defaultAttributeNames.add("LOG_SYNC_INTERVAL");
+        defaultAttributeValues.add("100");
+        defaultAttributeComments.add("How often (milliseconds) to force the log to disk when LOG_SYNC_POLICY is interval.");
+
+        defaultAttributeNames.add("RESUME_LOG");
+        defaultAttributeValues.add("false");
+        defaultAttributeComments.add("If true, append to the existing log (keeping its seen set beside it) instead of starting over.");
+
+        defaultAttributeNames.add("INDEX_LOG");
+        defaultAttributeValues.add("true");
+        defaultAttributeComments.add("If true, keep an index of the log beside it for random access.");
+
         defaultAttributeNames.add("KEYS_DIRECTORY");
         defaultAttributeValues.add("keys/");
         defaultAttributeComments.add("");
 
+        defaultAttributeNames.add("TALLY_CHECKPOINT_DIRECTORY");
+        defaultAttributeValues.add(" ");
+        defaultAttributeComments.add("Where Supervisor checkpoints its running tallies. If \"\", they are not checkpointed.");
+
         defaultAttributeNames.add("RULE_FILE");
         defaultAttributeValues.add("rules");
         defaultAttributeComments.add("");
@@ -942,6 +974,14 @@ public class ConfigurationFileEditor extends JFrame {
         defaultAttributeValues.add("false");
         defaultAttributeComments.add("By default, we don't enable Piecemeal Encryption.");
 
+        defaultAttributeNames.add("USE_PARALLEL_ENCRYPTION");
+        defaultAttributeValues.add("true");
+        defaultAttributeComments.add("By default, races on a ballot are encrypted in parallel.");
+
+        defaultAttributeNames.add("PRECOMPUTE_RANDOMNESS");
+        defaultAttributeValues.add("true");
+        defaultAttributeComments.add("By default, randomness for encrypting ballots is precomputed while the voter votes.");
+
         defaultAttributeNames.add("SHUFFLE_CANDIDATE_ORDER");
         defaultAttributeValues.add("false");
         defaultAttributeComments.add("");
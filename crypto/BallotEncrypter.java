@@ -26,12 +26,15 @@ import java.math.BigInteger;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import crypto.adder.AdderInteger;
 import crypto.adder.Election;
 import crypto.adder.ElgamalCiphertext;
 import crypto.adder.PrivateKey;
 import crypto.adder.PublicKey;
+import crypto.adder.RandomnessPool;
 import crypto.adder.Vote;
 import crypto.adder.VoteProof;
 
@@ -70,12 +73,77 @@ public class BallotEncrypter {
     /** This expounds upon @see randomList */
     private List<List<AdderInteger>> adderRandom;
 
+    /** Whether races, and the proofs for each candidate, are encrypted as parallel fork-join tasks */
+    private boolean parallel = false;
+
+    /** Precomputed randomness for the Adder key, or null when precomputation is off */
+    private RandomnessPool adderPool;
+
+    /** Precomputed randomness for the plain ElGamal key, or null when precomputation is off */
+    private RandomnessPool elGamalPool;
+
 
     /**
      * An empty private constructor to complete the singleton pattern
      */
     private BallotEncrypter() { }
 
+    /**
+     * Chooses whether {@link #encryptWithProof} encrypts the races of a ballot, and computes the
+     * proofs for each candidate, in parallel on the common fork-join pool. Long ballots then finish
+     * encrypting in roughly the time of their slowest race.
+     *
+     * @param parallel      true to encrypt in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Chooses whether encryption draws on pools of randomness precomputed in the background. Once
+     * {@link #precompute(PublicKey)} or {@link #precompute(Key)} names the key a ballot will be encrypted
+     * under, each vote counter costs a single modular multiplication for as long as the pool lasts.
+     * Turning precomputation off throws the pools away.
+     *
+     * @param precompute    true to precompute randomness
+     */
+    public synchronized void setPrecompute(boolean precompute) {
+        if (precompute) {
+            if (adderPool == null) {
+                adderPool = new RandomnessPool();
+                elGamalPool = new RandomnessPool();
+            }
+        }
+        else if (adderPool != null) {
+            adderPool.clear();
+            elGamalPool.clear();
+            adderPool = null;
+            elGamalPool = null;
+        }
+    }
+
+    /**
+     * Starts precomputing randomness for {@link #encryptWithProof} under the given key, if precomputation
+     * is on. Randomness left over from a different key is thrown away.
+     *
+     * @param pubKey        the Adder PublicKey ballots will be encrypted with
+     */
+    public synchronized void precompute(PublicKey pubKey) {
+        if (adderPool != null)
+            adderPool.load(AdderKeyManipulator.generateFinalPublicKey(pubKey));
+    }
+
+    /**
+     * Starts precomputing randomness for {@link #encrypt} under the given key, if precomputation is on.
+     * Randomness left over from a different key is thrown away.
+     *
+     * @param publicKey     the public ElGamal key ballots will be encrypted with
+     */
+    public synchronized void precompute(Key publicKey) {
+        if (elGamalPool != null)
+            ElGamalCrypto.SINGLETON.precompute(publicKey, elGamalPool);
+    }
+
     /**
      * Takes an unencrypted ballot and encrypts it, while also generating a set of NIZKs to prove it is well formed.
      * 
@@ -94,7 +162,7 @@ public class BallotEncrypter {
 
 
         /* Randomly generate a key for write-in encryption, will be sent over the wire, encrypted */
-        byte[] writeInKey = new byte[16];
+        final byte[] writeInKey = new byte[16];
 
         for (int i = 0; i < 16; i++)
             writeInKey[i] = (byte) (Math.random() * 16);
@@ -129,6 +197,12 @@ public class BallotEncrypter {
         }
 
 
+        /* Every race is encrypted under the same final key, so generate it once up front */
+        final PublicKey finalPubKey = AdderKeyManipulator.generateFinalPublicKey(pubKey);
+        final RandomnessPool pool = adderPool;
+
+        List<RecursiveTask<ListExpression>> tasks = new ArrayList<>();
+
         /* Iterate over the races (pull out each group of candidates) */
         for(List<String> group : raceGroups){
 
@@ -140,15 +214,30 @@ public class BallotEncrypter {
                         races.add(ballotMap.get(candidateId));
 
                 /* Create a new  ListExpression for the entire race from the races ArrayList */
-                ListExpression subBallot = new ListExpression(races);
+                final ListExpression subBallot = new ListExpression(races);
 
-                /* Encrypt the mapped sub-ballot with the elGamal Public key and the random generated writeInKey */
-                ListExpression encryptedSubBallot = encryptSubBallotWithProof(subBallot, pubKey, writeInKey);
+                /* Keep the random values for each race in ballot order, however the races get scheduled */
+                final List<AdderInteger> subRandom = new ArrayList<>();
+                adderRandom.add(subRandom);
 
-                /* Add the encrypted sub-ballot to the list of sub-ballots (this will be the entire ballot eventually) */
-                subBallots.add(encryptedSubBallot);
+                /* Encrypt the mapped sub-ballot with the elGamal Public key and the random generated writeInKey */
+                tasks.add(new RecursiveTask<ListExpression>() {
+                    protected ListExpression compute() {
+                        return encryptSubBallotWithProof(subBallot, finalPubKey, pool, writeInKey, subRandom);
+                    }
+                });
         }
 
+        if (parallel)
+            ForkJoinTask.invokeAll(tasks);
+        else
+            for (RecursiveTask<ListExpression> task : tasks)
+                task.invoke();
+
+        /* Add the encrypted sub-ballots to the list of sub-ballots (this will be the entire ballot eventually) */
+        for (RecursiveTask<ListExpression> task : tasks)
+            subBallots.add(task.join());
+
         /* Non-homomorphically encrypt the write-in key */
         ElgamalCiphertext encryptedKey = pubKey.encryptNoHomo(new AdderInteger(new BigInteger(writeInKey)));
 
@@ -165,12 +254,14 @@ public class BallotEncrypter {
      * Take an unencrypted ballot and make it encrypted, while also generating a NIZK
      * 
      * @param subBallot         This is the pre-encrypt ballot in the form ((race-id counter) ...)
-     * @param pubKey            this is an Adder-style public key
+     * @param finalPubKey       this is the final Adder-style public key
+     * @param pool              precomputed randomness to draw on, or null
      * @param writeInKey        the key used to encrypt the writeIn
+     * @param subRandom         receives the random values used to encrypt each vote counter
      * @return                  An ListExpression of the form ((vote [vote]) (vote-ids ([id1], [id2], ...)) (proof [proof]) (public-key [key]))
      */
     @SuppressWarnings("unchecked")
-    private ListExpression encryptSubBallotWithProof(ListExpression subBallot, PublicKey pubKey, byte[] writeInKey){
+    private ListExpression encryptSubBallotWithProof(ListExpression subBallot, PublicKey finalPubKey, RandomnessPool pool, byte[] writeInKey, List<AdderInteger> subRandom){
 
         List<AdderInteger> value    = new ArrayList<>();
         List<ASExpression> valueIds = new ArrayList<>();
@@ -204,25 +295,18 @@ public class BallotEncrypter {
             valueIds.add(candidateID);
         }
 
-        PublicKey finalPubKey = AdderKeyManipulator.generateFinalPublicKey(pubKey);
-
-        Vote vote = finalPubKey.encrypt(value);
+        Vote vote = finalPubKey.encrypt(value, pool);
 
         /* Important data from the ElGamal Encryption */
         List<ElgamalCiphertext> ciphers = vote.getCipherList();
-		
-		List<AdderInteger> subRandom = new ArrayList<>();
 
         /* Building a list of random values that are used to encrypt the vote counters. */
 		for(ElgamalCiphertext cipher : ciphers)
 			subRandom.add(cipher.getR());
 
-		/* Add this list of random values for the subBallot to the entire ballot list. */
-		adderRandom.add(subRandom);
-
         /* Checking the encrypted subBallots against the proofs*/
 		VoteProof proof = new VoteProof();
-		proof.compute(vote, finalPubKey, value, 0, 1);
+		proof.compute(vote, finalPubKey, value, 0, 1, parallel);
 
         ASExpression outASE = vote.toASE();
 
@@ -289,6 +373,8 @@ public class BallotEncrypter {
 
         ArrayList<ASExpression> encryptedpairs = new ArrayList<>();
 
+        RandomnessPool pool = elGamalPool;
+
         /* Iterate over the ballot list */
         for (ASExpression ase : ballot) {
 
@@ -306,7 +392,7 @@ public class BallotEncrypter {
 //            }
 
             /* Encrypt the counter corresponding to the candidate-id and store it in cipher (c1,c2) using the elGamal public key */
-            Pair<BigInteger> cipher = ElGamalCrypto.SINGLETON.encrypt(publicKey, new BigInteger(count.toString()));
+            Pair<BigInteger> cipher = ElGamalCrypto.SINGLETON.encrypt(publicKey, new BigInteger(count.toString()), pool);
 
 
             /* Convert the ciphertexts to StringExpressions c1 and c2 */
@@ -24,10 +24,13 @@ package crypto;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 import auditorium.Key;
+import crypto.adder.AdderInteger;
+import crypto.adder.DiscreteLog;
+import crypto.adder.RandomnessPool;
+import crypto.adder.SearchSpaceExhaustedException;
 
 /**
  * This class implements an El Gamal encryption key-pair, which can then be used
@@ -68,9 +71,6 @@ public class ElGamalCrypto {
     /** An annotation denoting that the key generated with this string is to be a public key  */
     private static final String PUBLIC_ANNOTATION = "ElGamalPublic";
 
-    /** A size for a look-up table for re-encryption */
-    private static final int TABLE_SIZE = 0;
-
     /** A modulus field for encryption using the Modulus class */
     private final Modulus modulusCls;
 
@@ -83,9 +83,6 @@ public class ElGamalCrypto {
     /** A member of the group we are using for encryption */
     private final BigInteger member;
 
-    /** A map so that members of the group can be found for reuse */
-    private final HashMap<BigInteger, BigInteger> reencryptionLookupMap = new HashMap<>();
-
     /** A reference to the last generated random values to be used for reencryption (for either testing, verification, or piecemeal */
     private final ArrayList<BigInteger> lastRandom = new ArrayList<>();
 
@@ -127,16 +124,46 @@ public class ElGamalCrypto {
      * @return              This method returns an ElGamal cipher Pair.
      */
     public Pair<BigInteger> encrypt(Key key, BigInteger plainText) {
+        return encrypt(key, plainText, null);
+    }
+
+    /**
+     * Perform an encryption, taking the random value (and its powers of the generator and key) from the given pool
+     * when it has one ready for this key.
+     *
+     * @param key           Encrypt with this key (should be generated by generate())
+     * @param plainText     Encrypt this plaintext.
+     * @param pool          A pool filled by precompute(), or null
+     * @return              This method returns an ElGamal cipher Pair.
+     */
+    public Pair<BigInteger> encrypt(Key key, BigInteger plainText, RandomnessPool pool) {
         if (plainText.compareTo(mod) >= 0) throw new RuntimeException("Plaintext cannot be larger than modulus");
 
-        /* Generate a random value */
-        BigInteger rnd = modulusCls.getRandomValue();
+        RandomnessPool.Entry entry = null;
+
+        if (pool != null)
+            entry = pool.take(new AdderInteger(mod), new AdderInteger(gen, mod), new AdderInteger(key.getKey(), mod));
+
+        BigInteger rnd, c1, s;
+
+        if (entry != null) {
+            rnd = entry.getR().bigintValue();
+            c1 = entry.getG().bigintValue();
+            s = entry.getH().bigintValue();
+        }
+        else {
+            /* Generate a random value */
+            rnd = modulusCls.getRandomValue();
 
-        /* Map the random value into the group and compute g^y, i.e. the first part of the ElGamal ciphertext  */
-        BigInteger c1 = gen.modPow(rnd, mod);
+            /* Map the random value into the group and compute g^y, i.e. the first part of the ElGamal ciphertext  */
+            c1 = gen.modPow(rnd, mod);
+
+            /* The shared secret */
+            s = key.getKey().modPow(rnd, mod);
+        }
 
         /* Using the random value, compute m' * s, the encryption of the plaintext m, where m' is m mapped into the group */
-        BigInteger c2 = member.modPow(plainText, mod).multiply(key.getKey().modPow(rnd, mod)).mod(mod);
+        BigInteger c2 = member.modPow(plainText, mod).multiply(s).mod(mod);
 
         /* Keep the random value around */
         lastRandom.add(rnd);
@@ -145,6 +172,16 @@ public class ElGamalCrypto {
         return new Pair<>(c1, c2);
     }
 
+    /**
+     * Start filling the given pool with random values for encrypting under the given key.
+     *
+     * @param key           The key that will be passed to encrypt()
+     * @param pool          The pool to fill
+     */
+    public void precompute(Key key, RandomnessPool pool) {
+        pool.load(new AdderInteger(mod), new AdderInteger(mod), new AdderInteger(gen, mod), new AdderInteger(key.getKey(), mod));
+    }
+
     /**
      * Perform a normal decryption by computing the inverse of the cipher using the shared secret key.
      *
@@ -169,15 +206,25 @@ public class ElGamalCrypto {
         return lookup(cipherText.get2().multiply(publickey.getKey().modPow(r, mod).modInverse(mod)).mod(mod));
     }
 
+    /**
+     * Recover a plaintext from the group member it was mapped to, searching ever larger ranges so that small
+     * plaintexts (the usual vote counters) are found quickly.
+     *
+     * @param i             the member, m' = member^m
+     * @return              the plaintext m
+     */
     private BigInteger lookup(BigInteger i) {
-        if (reencryptionLookupMap.containsKey(i)) return reencryptionLookupMap.get(i);
-
-        else
-            for (int lcv = TABLE_SIZE; true; lcv++) {
-                BigInteger blcv = new BigInteger(Integer.toString(lcv));
-                if (member.modPow(blcv, mod).equals(i))
-                    return blcv;
-            }
+        DiscreteLog log = DiscreteLog.forBase(member, mod);
+
+        for (int max = 1 << 10; ; max = max << 2) {
+            int m = log.log(i, max);
+
+            if (m >= 0)
+                return BigInteger.valueOf(m);
+
+            if (max >= 1 << 30)
+                throw new SearchSpaceExhaustedException("Error searching for " + i);
+        }
     }
     /**
      * @return This method returns the most recent randomness used by the encrypt method.
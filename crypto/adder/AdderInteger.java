@@ -1,6 +1,8 @@
 package crypto.adder;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 
 import sexpression.ASExpression;
 import sexpression.ListExpression;
@@ -30,8 +32,25 @@ public class AdderInteger implements Comparable {
      */
     public static final AdderInteger TWO = new AdderInteger("2");
 
+    /**
+     * Tag of the binary S-Expression form written by {@link #toASE}.
+     */
+    private static final StringExpression BINARY_TAG = StringExpression.makeString("adder-integer-2");
+    /**
+     * Tag of the decimal S-Expression form written by {@link #toDecimalASE}.
+     */
+    private static final StringExpression DECIMAL_TAG = StringExpression.makeString("adder-integer");
+
+    /**
+     * Fewest bases without a precomputed table for which {@link #multiPow}
+     * shares squarings between them. Measured on 1024- and 2048-bit moduli
+     * with full-length exponents.
+     */
+    public static final int STRAUS_MIN_BASES = 32;
+
     private BigInteger val;
     private BigInteger mod;
+    private FixedBase fixedBase;
     private static final Context CTX = new Context();
 
 
@@ -51,6 +70,7 @@ public class AdderInteger implements Comparable {
     public AdderInteger(AdderInteger b) {
         this.val = b.val;
         this.mod = b.mod;
+        this.fixedBase = b.fixedBase;
     }
 
     /**
@@ -202,6 +222,10 @@ public class AdderInteger implements Comparable {
      */
     public AdderInteger(AdderInteger b, AdderInteger mod) {
         this(b.toString(), mod);
+
+        if (b.mod.equals(this.mod)) {
+            this.fixedBase = b.fixedBase;
+        }
     }
 
 
@@ -458,7 +482,102 @@ public class AdderInteger implements Comparable {
 
         c.mod = mod;
 
-        c.val = !mod.equals(BigInteger.ZERO) ? val.modPow(exponent.val, c.mod) : val.pow(exponent.val.intValue());
+        if (fixedBase != null) {
+            c.val = fixedBase.pow(exponent.val);
+        } else {
+            c.val = !mod.equals(BigInteger.ZERO) ? val.modPow(exponent.val, c.mod) : val.pow(exponent.val.intValue());
+        }
+
+        return c;
+    }
+
+    /**
+     * Returns an AdderInteger whose value is
+     * <tt>&prod; bases[i]<sup>exponents[i]</sup></tt>, reduced by the
+     * modulus of the first base, which the others are expected to share. Bases backed by a precomputed table
+     * (such as a key's generator) are raised with it. The rest share a single
+     * chain of squarings ({@link MultiExponent}) once there are at least
+     * {@link #STRAUS_MIN_BASES} of them; below that, separate
+     * <tt>modPow</tt> calls are faster, as <tt>BigInteger</tt>'s Montgomery
+     * multiplication is intrinsified by the JVM and ours is not.
+     *
+     * @param  bases        the bases
+     * @param  exponents    the exponents, one per base
+     * @return              the product of the powers
+     */
+    public static AdderInteger multiPow(AdderInteger[] bases, AdderInteger[] exponents) {
+        if (bases.length == 0 || bases.length != exponents.length)
+            throw new IllegalArgumentException("expected one exponent per base");
+
+        BigInteger m = bases[0].mod;
+
+        AdderInteger c = new AdderInteger();
+        c.mod = m;
+
+        if (m.equals(BigInteger.ZERO)) {
+            c.val = BigInteger.ONE;
+
+            for (int i = 0; i < bases.length; i++)
+                c.val = c.val.multiply(bases[i].pow(exponents[i]).val);
+
+            return c;
+        }
+
+        BigInteger result = BigInteger.ONE;
+        List<BigInteger> restBases = new ArrayList<>(bases.length);
+        List<BigInteger> restExponents = new ArrayList<>(bases.length);
+
+        for (int i = 0; i < bases.length; i++) {
+            if (bases[i].fixedBase != null) {
+                result = result.multiply(bases[i].fixedBase.pow(exponents[i].val)).mod(m);
+            } else {
+                restBases.add(bases[i].val);
+                restExponents.add(exponents[i].val);
+            }
+        }
+
+        if (restBases.size() >= STRAUS_MIN_BASES) {
+            BigInteger rest = MultiExponent.pow(restBases.toArray(new BigInteger[0]),
+                                                restExponents.toArray(new BigInteger[0]), m);
+            result = result.multiply(rest).mod(m);
+        } else {
+            for (int i = 0; i < restBases.size(); i++)
+                result = result.multiply(restBases.get(i).modPow(restExponents.get(i), m)).mod(m);
+        }
+
+        c.val = result;
+
+        return c;
+    }
+
+    /**
+     * Returns an AdderInteger whose value is
+     * <tt>(this<sup>exponent</sup> &middot; base<sup>baseExponent</sup>)</tt>,
+     * as {@link #multiPow(AdderInteger[], AdderInteger[])} computes it.
+     *
+     * @param  exponent         exponent to which this AdderInteger is to be raised
+     * @param  base             the other base
+     * @param  baseExponent     exponent to which the other base is to be raised
+     * @return                  the product of the two powers
+     */
+    public AdderInteger multiPow(AdderInteger exponent, AdderInteger base, AdderInteger baseExponent) {
+        return multiPow(new AdderInteger[] { this, base }, new AdderInteger[] { exponent, baseExponent });
+    }
+
+    /**
+     * Returns a copy of this AdderInteger which is expected to be raised to
+     * many different exponents, such as a key's generator. Its powers are
+     * computed from a precomputed table shared by all copies of the same
+     * base, falling back to <tt>modPow</tt> when the modulus does not allow
+     * one.
+     *
+     * @return          a copy of this AdderInteger backed by a table
+     * @see             FixedBase
+     */
+    AdderInteger toFixedBase() {
+        AdderInteger c = new AdderInteger(this);
+
+        c.fixedBase = FixedBase.forBase(val, mod);
 
         return c;
     }
@@ -563,16 +682,31 @@ public class AdderInteger implements Comparable {
     }
  
     /**
-     * Method for interop with VoteBox's S-Expression system.
+     * Method for interop with VoteBox's S-Expression system. The value and
+     * modulus are written as raw two's-complement bytes, under the
+     * <tt>adder-integer-2</tt> tag; this is less than half the size of
+     * {@link #toDecimalASE} and much faster to read back.
      * 
      * @return          the S-Expression equivalent of this AdderInteger
      */
     public ASExpression toASE(){
-    	return new ListExpression(StringExpression.makeString("adder-integer"), StringExpression.makeString(""+getValue()), StringExpression.makeString(""+getModulus()));
+    	return new ListExpression(BINARY_TAG, StringExpression.makeString(val.toByteArray()), StringExpression.makeString(mod.toByteArray()));
+    }
+
+    /**
+     * Method for interop with VoteBox's S-Expression system, writing the
+     * value and modulus as decimal strings under the <tt>adder-integer</tt>
+     * tag, as understood by versions predating {@link #toASE}'s binary form.
+     * 
+     * @return          the S-Expression equivalent of this AdderInteger
+     */
+    public ASExpression toDecimalASE(){
+    	return new ListExpression(DECIMAL_TAG, StringExpression.makeString(""+getValue()), StringExpression.makeString(""+getModulus()));
     }
     
     /**
-     * Method for interop with VoteBox's S-Expression system.
+     * Method for interop with VoteBox's S-Expression system. Reads both the
+     * binary and the decimal forms.
      * 
      * @return          the S-Expression equivalent of this AdderInteger
      */
@@ -583,14 +717,21 @@ public class AdderInteger implements Comparable {
         /* Check to make sure that the list expression is a well-formed AdderInteger ListExpression */
     	if(list.size() != 3)
     		throw new RuntimeException("Not an adder-integer");
-    	
-    	if(!list.get(0).toString().equals("adder-integer"))
-    		throw new RuntimeException("Not an adder-integer");
 
+        BigInteger v;
+        BigInteger m;
 
         /* Pull out the value and modulus */
-    	BigInteger v = new BigInteger(list.get(1).toString());
-    	BigInteger m = new BigInteger(list.get(2).toString());
+    	if(list.get(0).equals(BINARY_TAG)) {
+            v = new BigInteger(((StringExpression) list.get(1)).getBytes());
+            m = new BigInteger(((StringExpression) list.get(2)).getBytes());
+        }
+        else if(list.get(0).equals(DECIMAL_TAG)) {
+            v = new BigInteger(list.get(1).toString());
+            m = new BigInteger(list.get(2).toString());
+        }
+        else
+    		throw new RuntimeException("Not an adder-integer");
 
         /* Check if the modulus is zero -- if so, return and construct with the value, otherwise specify the modulus */
     	if(!m.equals(BigInteger.ZERO))
@@ -7,7 +7,9 @@ import java.util.Random;
 
 /**
  * Encapsulates random number generator used by the <code>AdderInteger</code>
- * class.
+ * class. Every thread gets its own independently seeded stream, so that
+ * encryptions and proofs computed in parallel do not contend on (or share)
+ * one generator.
  *
  * @author  David Walluck
  * @version $LastChangedRevision$ $LastChangedDate$
@@ -19,25 +21,31 @@ import java.util.Random;
  * @since   0.0.1
  */
 public final class Context {
-    private Random random;
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        protected Random initialValue() {
+
+            /* We use SHA-1 because it is fine for RNG */
+            try { return SecureRandom.getInstance("SHA1PRNG"); }
+            catch (NoSuchAlgorithmException nsae) { throw new RuntimeException(nsae); }
+        }
+    };
 
     /**
      * Create a Context.
      */
     public Context() {
 
-        /* We use SHA-1 because it is fine for RNG */
-        try { random = SecureRandom.getInstance("SHA1PRNG"); }
-        catch (NoSuchAlgorithmException nsae) { throw new RuntimeException(nsae); }
+        /* Fail now rather than on first use if the algorithm is missing */
+        random.get();
     }
 
    /**
-    * Gets the random number generator used by this context.
+    * Gets the calling thread's random number generator for this context.
     *
     * @return       the random number generator
     */
     public Random getRandom() {
-        return random;
+        return random.get();
     }
 
    /**
@@ -0,0 +1,184 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recovers small exponents, as needed to turn a decrypted tally
+ * <tt>f<sup>m</sup></tt> back into the count <tt>m</tt>.
+ * <p>
+ * Uses baby-step giant-step: a table of <tt>base<sup>j</sup></tt> for every
+ * <tt>j</tt> below some step size <tt>s</tt> is built by repeated
+ * multiplication, and the target is then divided by <tt>base<sup>s</sup></tt>
+ * until it lands in the table. Finding an exponent up to <tt>n</tt> takes
+ * about <tt>2&radic;n</tt> modular multiplications, and no exponentiations
+ * at all.
+ * <p>
+ * Tables are shared between every caller using the same base and modulus,
+ * and only ever grow, so decrypting one candidate's total makes the next one
+ * cheaper.
+ *
+ * @author David Walluck
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ */
+public final class DiscreteLog {
+    /**
+     * Smallest table built, small enough to be free and large enough that
+     * most single-ballot counts are found by one lookup.
+     */
+    private static final int MIN_STEPS = 64;
+
+    /**
+     * Tables are dropped wholesale once this many distinct bases have been
+     * seen, as {@link FixedBase} does.
+     */
+    private static final int MAX_TABLES = 32;
+
+    private static final ConcurrentHashMap<List<BigInteger>, DiscreteLog> _tables =
+        new ConcurrentHashMap<List<BigInteger>, DiscreteLog>();
+
+    private final BigInteger base;
+    private final BigInteger mod;
+    private final HashMap<BigInteger, Integer> babySteps;
+    private BigInteger next;
+    private BigInteger giantStep;
+    private boolean complete;
+
+    /**
+     * Returns the shared solver for the given base and modulus.
+     *
+     * @param base  the base
+     * @param mod   the modulus
+     * @return      the solver
+     */
+    public static DiscreteLog forBase(BigInteger base, BigInteger mod) {
+        List<BigInteger> key = Arrays.asList(base, mod);
+        DiscreteLog log = _tables.get(key);
+
+        if (log == null) {
+            if (_tables.size() >= MAX_TABLES) {
+                _tables.clear();
+            }
+
+            DiscreteLog created = new DiscreteLog(base.mod(mod), mod);
+            log = _tables.putIfAbsent(key, created);
+
+            if (log == null) {
+                log = created;
+            }
+        }
+
+        return log;
+    }
+
+    /**
+     * Returns the shared solver for the given base and modulus.
+     *
+     * @param base  the base
+     * @param mod   the modulus
+     * @return      the solver
+     */
+    public static DiscreteLog forBase(AdderInteger base, AdderInteger mod) {
+        return forBase(base.bigintValue(), mod.bigintValue());
+    }
+
+    /**
+     * Creates a solver with an empty table.
+     *
+     * @param base  the base, reduced modulo <tt>mod</tt>
+     * @param mod   the modulus
+     */
+    private DiscreteLog(BigInteger base, BigInteger mod) {
+        this.base = base;
+        this.mod = mod;
+        this.babySteps = new HashMap<BigInteger, Integer>();
+        this.next = BigInteger.ONE;
+    }
+
+    /**
+     * Finds the smallest <tt>k</tt> between <tt>0</tt> and <tt>max</tt>,
+     * inclusive, such that <tt>base<sup>k</sup> = target</tt>.
+     *
+     * @param target    the power to take the logarithm of
+     * @param max       the largest exponent to consider
+     * @return          the exponent, or <tt>-1</tt> if there is none up to
+     *                  <tt>max</tt>
+     */
+    public synchronized int log(BigInteger target, int max) {
+        if (max < 0) {
+            return -1;
+        }
+
+        target = target.mod(mod);
+        grow((int) Math.ceil(Math.sqrt(max + 1.0)));
+
+        int steps = babySteps.size();
+        Integer j = babySteps.get(target);
+
+        if (j != null) {
+            return j <= max ? j : -1;
+        }
+
+        if (complete) {
+            return -1;
+        }
+
+        /* divide by base^steps until the target falls into the table */
+        BigInteger gamma = target;
+
+        for (long i = steps; i <= max; i += steps) {
+            gamma = gamma.multiply(giantStep).mod(mod);
+            j = babySteps.get(gamma);
+
+            if (j != null) {
+                return i + j <= max ? (int) (i + j) : -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the smallest <tt>k</tt> between <tt>0</tt> and <tt>max</tt>,
+     * inclusive, such that <tt>base<sup>k</sup> = target</tt>.
+     *
+     * @param target    the power to take the logarithm of
+     * @param max       the largest exponent to consider
+     * @return          the exponent, or <tt>-1</tt> if there is none up to
+     *                  <tt>max</tt>
+     */
+    public int log(AdderInteger target, int max) {
+        return log(target.bigintValue(), max);
+    }
+
+    /**
+     * Extends the table of baby steps to cover at least the given number of
+     * exponents, and updates the giant step to match.
+     *
+     * @param steps the number of baby steps wanted
+     */
+    private void grow(int steps) {
+        steps = Math.max(steps, MIN_STEPS);
+
+        if (complete || babySteps.size() >= steps) {
+            return;
+        }
+
+        for (int j = babySteps.size(); j < steps; j++) {
+            /* a base of small order repeats, and the table then holds every power */
+            if (babySteps.containsKey(next)) {
+                complete = true;
+                return;
+            }
+
+            babySteps.put(next, j);
+            next = next.multiply(base).mod(mod);
+        }
+
+        giantStep = next.modInverse(mod);
+    }
+}
@@ -4,8 +4,16 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+
 /**
  * Represents an election.
+ * <p>
+ * Votes are either kept, with {@link #castVote}, or folded into a running
+ * sum as they arrive, with {@link #tally}. A running sum takes the same
+ * space however many votes it holds, and makes {@link #sumVotes} free.
  *
  * @author David Walluck
  * @version $LastChangedRevision$ $LastChangedDate$
@@ -14,6 +22,8 @@ import java.util.List;
 public class Election {
     private AdderInteger p;
     private List<Vote> votes;
+    private Vote total;
+    private int tallied;
 
     /**
      * Creates a new election.
@@ -44,35 +54,60 @@ public class Election {
     }
 
     /**
-     * Sums the votes cast in this election.
-     * This is the product of the votes modulo <tt>p</tt>).
+     * Folds the given vote into the running sum of this election, without
+     * keeping the vote itself.
      *
-     * @return          a vote representing the total of the given list of votes
+     * @param vote      the vote
      */
-    public Vote sumVotes() {
+    public void tally(Vote vote) {
+        total = (total == null) ? vote.multiply(identity(vote)) : vote.multiply(total);
+        tallied++;
+    }
 
-        /* Pull out the first vote */
-        Vote v = votes.get(0);
+    /**
+     * Gets the number of votes in this election, whether kept or folded
+     * into the running sum.
+     *
+     * @return          the number of votes
+     */
+    public int getVoteCount() {
+        return votes.size() + tallied;
+    }
 
+    /**
+     * Creates an encryption of zero for each choice in the given vote, to
+     * start a product of votes from.
+     *
+     * @param vote      a vote with the wanted number of choices
+     * @return          a vote of ones
+     */
+    private Vote identity(Vote vote) {
         List<ElgamalCiphertext> initList = new ArrayList<>();
 
-        /*
-          Load up the initList with new ciphertexts only from the first Vote in the Election
-          This specific vote will be used a query used to calculate the total number of votes.
-        */
-        for (ElgamalCiphertext ignored : v.getCipherList()) {
+        for (ElgamalCiphertext ignored : vote.getCipherList()) {
             ElgamalCiphertext ciphertext = new ElgamalCiphertext(AdderInteger.ONE, AdderInteger.ONE, p);
             initList.add(ciphertext);
         }
 
-        /* Create a single ballot from the initList*/
-        Vote total = new Vote(initList);
+        return new Vote(initList);
+    }
+
+    /**
+     * Sums the votes cast in this election.
+     * This is the product of the votes modulo <tt>p</tt>).
+     *
+     * @return          a vote representing the total of the given list of votes
+     */
+    public Vote sumVotes() {
+
+        /* Start from the running sum, if any, or else from a vote of ones shaped like the first vote */
+        Vote sum = (total != null) ? total : identity(votes.get(0));
 
         /* Homomorphically tally the encrypted votes */
         for (Vote vote : votes)
-            total = vote.multiply(total);
+            sum = vote.multiply(sum);
 
-        return total;
+        return sum;
     }
 
     /**
@@ -118,63 +153,79 @@ public class Election {
         /* For each cipher (i.e. for each candidate) */
         for (int i = 0; i < csize; i++) {
 
-            /* Adding a one to the product list so that we don't get a null pointer or zero later */
-            productList.add(new AdderInteger(AdderInteger.ONE, p));
+            AdderInteger[] bases = new AdderInteger[lsize];
+            AdderInteger[] exponents = new AdderInteger[lsize];
 
             /* Iterate over the LaGrange coefficients */
             for (int j = 0; j < lsize; j++) {
 
-                /* Get out the ith product */
-                AdderInteger pli =  productList.get(i);
-
                 /* Pull out the list partial sum (cast to List) */
                 List ps = (List) partialSums.get(j);
 
                 /* Pull out the ith partial sum (equals h^y) and the jth LaGrange coefficient */
-                AdderInteger psi = (AdderInteger) ps.get(i);
-                AdderInteger lcj = lagrangeCoeffs.get(j);
-
-                /* Multiply these together */
-                AdderInteger product = psi.pow(lcj).multiply(pli);
-
-                /* Store the updated product back in the list */
-                productList.set(i, product);
+                bases[j] = (AdderInteger) ps.get(i);
+                exponents[j] = lagrangeCoeffs.get(j);
             }
 
+            /* Multiply the partial sums, each raised to its coefficient, together (starting from one if there are none) */
+            productList.add(lsize == 0 ? new AdderInteger(AdderInteger.ONE, p) : AdderInteger.multiPow(bases, exponents));
+
             /* Get the public value from the ith ciphertext (encrypted sum for ith candidate) (bigH = h' = h^y * f^m) (bigG = g^y) */
             AdderInteger bigH = (cipherList.get(i)).getH();
 
             /* Divide h' / h^y = f^m, where m = total number of votes for a candidate */
             AdderInteger target = bigH.divide(productList.get(i));
 
-            /* Indicates if we have successfully resolved the ciphertext */
-            boolean gotResult = false;
-
-            AdderInteger j = null;
-
             /* Possible total number of votes for a candidate */
-            int numVotes = votes.size();
-
-            /* Iterate over the number of votes to try to guess n */
-            for (int k = 0; k <= numVotes; k++) {
-
-                /* Create a guess */
-                j = new AdderInteger(k, q);
+            int numVotes = getVoteCount();
 
-                System.out.println("DOES " + f.pow(j) + " equal " + target + "?");
-
-                /* Check the guess and get out when found */
-                if (f.pow(j).equals(target)) {
-                    gotResult = true;
-                    break;
-                }
-            }
+            /* Solve f^m = target for m, which is at most the number of votes */
+            int m = DiscreteLog.forBase(f, p).log(target, numVotes);
 
             /* Keep track of found result, otherwise error */
-            if (gotResult) results.add(j);
+            if (m >= 0) results.add(new AdderInteger(m, q));
             else throw new SearchSpaceExhaustedException("Error searching for " + target);
         }
 
         return results;
     }
+
+    /**
+     * Method for interop with VoteBox's S-Expression system. Kept votes are
+     * folded into the running sum, so only the sum and the number of votes
+     * are written out.
+     *
+     * @return          the S-Expression equivalent of this Election
+     */
+    public ASExpression toASE() {
+        int count = getVoteCount();
+        ASExpression sum = (count == 0) ? ListExpression.EMPTY : sumVotes().toASE();
+
+        return new ListExpression(StringExpression.makeString("election"), p.toASE(),
+                                  StringExpression.makeString(Integer.toString(count)), sum);
+    }
+
+    /**
+     * Method for interop with VoteBox's S-Expression system.
+     *
+     * @param ase       S-Expression representation of an Election
+     * @return          the Election equivalent of ase, holding a running sum
+     */
+    public static Election fromASE(ASExpression ase) {
+        ListExpression list = (ListExpression) ase;
+
+        if (list.size() != 4 || !list.get(0).toString().equals("election"))
+            throw new RuntimeException("Not an election");
+
+        Election election = new Election(AdderInteger.fromASE(list.get(1)));
+        election.tallied = Integer.parseInt(list.get(2).toString());
+
+        if (election.tallied < 0)
+            throw new RuntimeException("Negative vote count");
+
+        if (election.tallied > 0)
+            election.total = Vote.fromASE(list.get(3));
+
+        return election;
+    }
 }
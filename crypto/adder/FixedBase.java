@@ -0,0 +1,206 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed table for raising one fixed base to many different exponents
+ * modulo an odd prime, as ElGamal encryption and the membership proofs do
+ * with the generator <tt>g</tt> and the public value <tt>h</tt>.
+ * <p>
+ * The table holds <tt>base<sup>j &middot; 2<sup>wi</sup></sup></tt> for
+ * every window <tt>i</tt> of <tt>w</tt> exponent bits (8, or 6 for moduli
+ * wider than 1024 bits) and every digit <tt>j</tt>, so an exponentiation
+ * needs no squarings at all, only one multiplication per non-zero window.
+ * Entries are kept in {@link Montgomery} form.
+ * <p>
+ * Tables are shared between every <tt>AdderInteger</tt> holding the same
+ * base and modulus, and are built on first use.
+ *
+ * @author David Walluck
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ */
+final class FixedBase {
+    /**
+     * Largest modulus, in bits, for which 8-bit windows are used; wider
+     * moduli use 6-bit windows to keep each table to a few megabytes.
+     */
+    static final int WIDE_WINDOW_BITS = 1024;
+
+    /**
+     * Tables are dropped wholesale once this many distinct bases have been
+     * seen, which only happens when keys are churned (e.g. in tests).
+     */
+    private static final int MAX_TABLES = 32;
+
+    private static final ConcurrentHashMap<Key, FixedBase> _tables =
+        new ConcurrentHashMap<Key, FixedBase>();
+
+    private final BigInteger base;
+    private final BigInteger mod;
+    private final Montgomery mont;
+    private final int limbs;
+    private final int width;
+    private final int windows;
+    private volatile int[][] table;
+
+    /**
+     * Returns the shared table for the given base and modulus, or
+     * <tt>null</tt> when the modulus is not suitable (it must be odd and
+     * greater than one).
+     *
+     * @param base  the base
+     * @param mod   the modulus
+     * @return      the table, or <tt>null</tt>
+     */
+    static FixedBase forBase(BigInteger base, BigInteger mod) {
+        if (!Montgomery.supports(mod) || base.signum() < 0 || base.compareTo(mod) >= 0) {
+            return null;
+        }
+
+        Key key = new Key(base, mod);
+        FixedBase fb = _tables.get(key);
+
+        if (fb == null) {
+            if (_tables.size() >= MAX_TABLES) {
+                _tables.clear();
+            }
+
+            FixedBase created = new FixedBase(base, mod);
+            fb = _tables.putIfAbsent(key, created);
+
+            if (fb == null) {
+                fb = created;
+            }
+        }
+
+        return fb;
+    }
+
+    /**
+     * Creates an (unbuilt) table for the given base and odd modulus.
+     *
+     * @param base  the base
+     * @param mod   the modulus
+     */
+    private FixedBase(BigInteger base, BigInteger mod) {
+        this.base = base;
+        this.mod = mod;
+        this.mont = new Montgomery(mod);
+        this.limbs = mont.limbs();
+        this.width = mod.bitLength() <= WIDE_WINDOW_BITS ? 8 : 6;
+        this.windows = (mod.bitLength() + width - 1) / width;
+    }
+
+    /**
+     * Returns <tt>base<sup>exponent</sup> mod mod</tt>. Exponents which are
+     * negative or wider than the modulus are passed on to
+     * {@link BigInteger#modPow}.
+     *
+     * @param exponent  the exponent
+     * @return          the power
+     */
+    BigInteger pow(BigInteger exponent) {
+        if (exponent.signum() < 0 || exponent.bitLength() > mod.bitLength()) {
+            return base.modPow(exponent, mod);
+        }
+
+        int[][] t = table();
+        byte[] e = exponent.toByteArray();
+        int[] acc = null;
+        int[] scratch = new int[limbs + 2];
+
+        for (int i = 0; i < windows; i++) {
+            int d = Montgomery.digit(e, i * width, width);
+
+            if (d == 0) {
+                continue;
+            }
+
+            if (acc == null) {
+                acc = new int[limbs];
+                System.arraycopy(t[i], d * limbs, acc, 0, limbs);
+            } else {
+                mont.multiply(acc, 0, t[i], d * limbs, scratch, acc);
+            }
+        }
+
+        if (acc == null) {
+            return BigInteger.ONE;
+        }
+
+        return mont.fromMontgomery(acc);
+    }
+
+    /**
+     * Builds the table on first use.
+     *
+     * @return the table, one row of <tt>2<sup>w</sup></tt> entries per window
+     */
+    private int[][] table() {
+        int[][] t = table;
+
+        if (t != null) {
+            return t;
+        }
+
+        synchronized (this) {
+            if (table != null) {
+                return table;
+            }
+
+            int size = 1 << width;
+            int[] scratch = new int[limbs + 2];
+            int[] b = mont.toMontgomery(base);
+
+            t = new int[windows][];
+
+            for (int i = 0; i < windows; i++) {
+                int[] row = new int[size * limbs];
+                System.arraycopy(b, 0, row, limbs, limbs);
+
+                for (int j = 2; j < size; j++) {
+                    int[] entry = new int[limbs];
+                    mont.multiply(row, (j - 1) * limbs, b, 0, scratch, entry);
+                    System.arraycopy(entry, 0, row, j * limbs, limbs);
+                }
+
+                /* next window's base is this one raised to 2^w */
+                int[] next = new int[limbs];
+                mont.multiply(row, (size - 1) * limbs, b, 0, scratch, next);
+                b = next;
+                t[i] = row;
+            }
+
+            table = t;
+            return t;
+        }
+    }
+
+    /**
+     * Cache key pairing a base with its modulus.
+     */
+    private static final class Key {
+        private final BigInteger base;
+        private final BigInteger mod;
+
+        Key(BigInteger base, BigInteger mod) {
+            this.base = base;
+            this.mod = mod;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key k = (Key) o;
+            return base.equals(k.base) && mod.equals(k.mod);
+        }
+
+        public int hashCode() {
+            return 31 * base.hashCode() + mod.hashCode();
+        }
+    }
+}
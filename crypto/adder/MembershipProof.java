@@ -1,6 +1,10 @@
 package crypto.adder;
 
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -12,6 +16,12 @@ import sexpression.StringExpression;
 
 /**
  * Represents a membership proof.
+ * <p>
+ * The challenge of a version 1 proof is the SHA-1 hash of the decimal
+ * strings of the numbers it commits to. Version 2 proofs, which are the ones
+ * computed now, hash each number as fixed-width big-endian bytes instead,
+ * sparing a base 10 conversion of every number on both sides. Both versions
+ * verify.
  *
  * @author David Walluck
  * @version $LastChangedRevision$ $LastChangedDate$
@@ -19,6 +29,12 @@ import sexpression.StringExpression;
  */
 public class MembershipProof {
 
+	/**
+	 * The version of the proofs computed by {@link #compute}.
+	 */
+	public static final int VERSION = 2;
+
+	private int version = VERSION;
 	private AdderInteger p;
 	private AdderInteger q;
 	private AdderInteger c;
@@ -42,6 +58,7 @@ public class MembershipProof {
 	 * Constructs a new <code>MembershipProof</code> object with the specified
 	 * prime.
 	 *
+	 * @param version       the proof version
 	 * @param p             the prime
 	 * @param q             the sub-prime
 	 * @param yList         the y list
@@ -49,9 +66,10 @@ public class MembershipProof {
 	 * @param sList         the s list
 	 * @param cList         the c list
 	 */
-	private MembershipProof(AdderInteger p, AdderInteger q, List<AdderInteger> yList, List<AdderInteger> zList,
+	private MembershipProof(int version, AdderInteger p, AdderInteger q, List<AdderInteger> yList, List<AdderInteger> zList,
                             List<AdderInteger> sList, List<AdderInteger> cList) {
 
+		this.version = version;
 		this.p = p;
 		this.q = q;
 		this.yList = yList;
@@ -88,14 +106,15 @@ public class MembershipProof {
         /* Generate t */
 		AdderInteger t = AdderInteger.random(q);
 
-        /* Create a StringBuffer for holding information to create a String */
-		StringBuffer sb = new StringBuffer(4096);
+		this.version = VERSION;
 
-        /* Append all the numbers */
-		sb.append(g);
-		sb.append(h);
-		sb.append(bigG);
-		sb.append(bigH);
+        /* Hash all the numbers */
+		Challenge challenge = new Challenge(version, p, q);
+
+		challenge.add(g);
+		challenge.add(h);
+		challenge.add(bigG);
+		challenge.add(bigH);
 
 		int indexInDomain = 0;
 
@@ -123,21 +142,18 @@ public class MembershipProof {
 				AdderInteger c = cList.get(i);
 				AdderInteger negC = c.negate();
 				AdderInteger fpow = f.pow(d);
-				y = g.pow(s).multiply(bigG.pow(negC));
-				z = h.pow(s).multiply(bigH.divide(fpow).pow(negC));
+				y = g.multiPow(s, bigG, negC);
+				z = h.multiPow(s, bigH.divide(fpow), negC);
 			}
 
 			yList.add(y);
 			zList.add(z);
 
-			sb.append(y);
-			sb.append(z);
+			challenge.add(y);
+			challenge.add(z);
 		}
 
-		String s = sb.toString();
-		String cHash = Util.sha1(s);
-
-		this.c = new AdderInteger(cHash, q, 16).mod(q);
+		this.c = challenge.finish();
 		AdderInteger realC = new AdderInteger(this.c, q);
 
         for (AdderInteger fakeC : cList)
@@ -169,12 +185,12 @@ public class MembershipProof {
 
 		AdderInteger cChoices = new AdderInteger(AdderInteger.ZERO, q);
 
-		StringBuffer sb = new StringBuffer(4096);
+		Challenge challenge = new Challenge(version, p, q);
 
-		sb.append(g);
-		sb.append(h);
-		sb.append(bigG);
-		sb.append(bigH);
+		challenge.add(g);
+		challenge.add(h);
+		challenge.add(bigG);
+		challenge.add(bigH);
 
 		int size = cList.size();
 
@@ -187,16 +203,87 @@ public class MembershipProof {
 
 			cChoices = cChoices.add(c);
 
-			sb.append(g.pow(s).multiply(bigG.pow(negC)));
-			sb.append(h.pow(s).multiply(bigH.divide(fpow).pow(negC)));
+			challenge.add(g.multiPow(s, bigG, negC));
+			challenge.add(h.multiPow(s, bigH.divide(fpow), negC));
 		}
 
-		String cHash = Util.sha1(sb.toString());
-		AdderInteger newC = new AdderInteger(cHash, q, 16).mod(q);
+		AdderInteger newC = challenge.finish();
 
 		return (cChoices.equals(newC));
 	}
 
+	/**
+	 * Verifies many proofs, made under the same public key and over the same
+	 * domain, at once. This is much cheaper than calling
+	 * {@link #verify(ElgamalCiphertext, PublicKey, List)} on each of them, but
+	 * only tells whether all of them are valid.
+	 *
+	 * @param proofs        the proofs
+	 * @param ciphertexts   the ciphertexts, one per proof
+	 * @param pubKey        the public key
+	 * @param domain        the domain
+	 * @return              true if every proof is valid
+	 */
+	public static boolean verify(List<MembershipProof> proofs, List<ElgamalCiphertext> ciphertexts,
+			PublicKey pubKey, List<AdderInteger> domain) {
+		ProofBatch batch = new ProofBatch(pubKey);
+
+		for (int i = 0; i < proofs.size(); i++) {
+			if (!proofs.get(i).addTo(batch, ciphertexts.get(i), pubKey, domain))
+				return false;
+		}
+
+		return batch.check();
+	}
+
+	/**
+	 * Checks this proof's challenge against the commitments it carries and
+	 * adds its verification equations to the given batch. The challenge is
+	 * the same hash {@link #verify(ElgamalCiphertext, PublicKey, List)}
+	 * computes, so once the batch checks out the two agree.
+	 *
+	 * @param batch         the batch
+	 * @param ciphertext    the ciphertext
+	 * @param pubKey        the public key
+	 * @param domain        the domain
+	 * @return              false if the proof is malformed or its challenge
+	 *                      does not match
+	 */
+	boolean addTo(ProofBatch batch, ElgamalCiphertext ciphertext, PublicKey pubKey,
+			List<AdderInteger> domain) {
+		int size = domain.size();
+
+		if (cList.size() != size || sList.size() != size || yList.size() != size || zList.size() != size)
+			return false;
+
+		AdderInteger q = pubKey.getQ();
+		AdderInteger bigG = ciphertext.getG();
+		AdderInteger bigH = ciphertext.getH();
+
+		AdderInteger cChoices = new AdderInteger(AdderInteger.ZERO, q);
+
+		Challenge challenge = new Challenge(version, pubKey.getP(), q);
+
+		challenge.add(pubKey.getG());
+		challenge.add(pubKey.getH());
+		challenge.add(bigG);
+		challenge.add(bigH);
+
+		for (int i = 0; i < size; i++) {
+			cChoices = cChoices.add(cList.get(i));
+
+			challenge.add(yList.get(i));
+			challenge.add(zList.get(i));
+		}
+
+		AdderInteger newC = challenge.finish();
+
+		if (!cChoices.equals(newC))
+			return false;
+
+		return batch.add(bigG, bigH, yList, zList, sList, cList, domain);
+	}
+
 	/**
 	 * Creates a <tt>MembershipProof</tt> from the string standard representation
 	 * as described in the {@link #toString} method.
@@ -205,6 +292,21 @@ public class MembershipProof {
 	 * @return a        <tt>MembershipProof</tt> with the specified values
 	 */
 	public static MembershipProof fromString(String s) {
+		int version = 1;
+
+		/* Version 2 and later proofs are prefixed with their version */
+		if (s.startsWith("v")) {
+			int start = s.indexOf('p');
+
+			try {
+				version = Integer.parseInt(s.substring(1, start));
+			} catch (IndexOutOfBoundsException | NumberFormatException e) {
+				throw new InvalidMembershipProofException("bad version");
+			}
+
+			s = s.substring(start);
+		}
+
 		StringTokenizer st = new StringTokenizer(s, "pyzsc", true);
 		int numTokens = st.countTokens() - 2;
 
@@ -273,7 +375,7 @@ public class MembershipProof {
 				cList.add(new AdderInteger(st.nextToken(), q));
 			}
 
-			return new MembershipProof(p, q, yList, zList, sList, cList);
+			return new MembershipProof(version, p, q, yList, zList, sList, cList);
 		}
         catch (NoSuchElementException | NumberFormatException nsee) { throw new InvalidMembershipProofException(nsee.getMessage()); }
     }
@@ -287,6 +389,11 @@ public class MembershipProof {
 
 		StringBuilder sb = new StringBuilder(4096);
 
+		if (version > 1) {
+			sb.append("v");
+			sb.append(version);
+		}
+
 		sb.append("p");
 		sb.append(p);
 
@@ -335,7 +442,7 @@ public class MembershipProof {
 		for(AdderInteger c : cList)
 			cListL.add(c.toASE());
 
-		return new ListExpression(StringExpression.makeString("membership-proof"),
+		return new ListExpression(StringExpression.makeString(version > 1 ? "membership-proof-" + version : "membership-proof"),
 				p.toASE(),
 				new ListExpression(yListL),
 				new ListExpression(zListL),
@@ -352,7 +459,14 @@ public class MembershipProof {
 	public static MembershipProof fromASE(ASExpression ase){
 		ListExpression exp = (ListExpression)ase;
 		
-		if(!(exp.get(0)).toString().equals("membership-proof"))
+		String tag = exp.get(0).toString();
+		int version;
+
+		if(tag.equals("membership-proof"))
+			version = 1;
+		else if(tag.equals("membership-proof-2"))
+			version = 2;
+		else
 			throw new RuntimeException("Not membership-proof");
 		
 		AdderInteger p = AdderInteger.fromASE(exp.get(1));
@@ -374,6 +488,70 @@ public class MembershipProof {
 		
 		AdderInteger q = p.subtract(AdderInteger.ONE).divide(AdderInteger.TWO);
 		
-		return new MembershipProof(p, q, yList, zList, sList, cList);
+		return new MembershipProof(version, p, q, yList, zList, sList, cList);
+	}
+
+	/**
+	 * Accumulates the numbers hashed into the challenge, encoded as the given
+	 * proof version requires: decimal strings for version 1, and otherwise
+	 * big-endian bytes as wide as the prime, preceded by the version.
+	 */
+	private static final class Challenge {
+		private final AdderInteger q;
+		private final BigInteger p;
+		private final StringBuffer sb;
+		private final MessageDigest digest;
+		private final byte[] buffer;
+
+		Challenge(int version, AdderInteger p, AdderInteger q) {
+			this.q = q;
+			this.p = p.bigintValue();
+
+			if (version == 1) {
+				this.sb = new StringBuffer(4096);
+				this.digest = null;
+				this.buffer = null;
+			} else {
+				try {
+					this.digest = MessageDigest.getInstance("SHA");
+				} catch (NoSuchAlgorithmException nsae) {
+					throw new RuntimeException(nsae);
+				}
+
+				this.sb = null;
+				this.buffer = new byte[(this.p.bitLength() + 7) / 8];
+				this.digest.update((byte) version);
+			}
+		}
+
+		void add(AdderInteger x) {
+			if (sb != null) {
+				sb.append(x);
+				return;
+			}
+
+			BigInteger v = x.bigintValue();
+
+			if (v.signum() < 0 || v.compareTo(p) >= 0)
+				v = v.mod(p);
+
+			/* drop the sign byte and left-pad to the width of p */
+			byte[] b = v.toByteArray();
+			int off = b.length > buffer.length ? b.length - buffer.length : 0;
+			int len = b.length - off;
+
+			Arrays.fill(buffer, 0, buffer.length - len, (byte) 0);
+			System.arraycopy(b, off, buffer, buffer.length - len, len);
+			digest.update(buffer);
+		}
+
+		AdderInteger finish() {
+			if (sb != null)
+				return new AdderInteger(Util.sha1(sb.toString()), q, 16).mod(q);
+
+			BigInteger hash = new BigInteger(1, digest.digest());
+
+			return new AdderInteger(hash.mod(q.bigintValue()), q.bigintValue());
+		}
 	}
 }
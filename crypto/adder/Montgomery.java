@@ -0,0 +1,232 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Montgomery arithmetic modulo a fixed odd number, on little-endian arrays
+ * of 32-bit limbs. A value <tt>x</tt> is held as
+ * <tt>x &middot; R mod m</tt> with <tt>R = 2<sup>32n</sup></tt>, which lets
+ * products be reduced with shifts instead of the division
+ * <tt>BigInteger</tt> performs after every multiplication. This is the
+ * engine behind both {@link FixedBase} and {@link MultiExponent}.
+ *
+ * @author David Walluck
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ */
+final class Montgomery {
+    private static final long MASK = 0xFFFFFFFFL;
+
+    private final BigInteger mod;
+    private final int limbs;
+    private final int[] modLimbs;
+    private final int inverse;
+
+    /**
+     * Creates the arithmetic for the given modulus.
+     *
+     * @param mod   the modulus, which must be odd and greater than one
+     */
+    Montgomery(BigInteger mod) {
+        this.mod = mod;
+        this.limbs = (mod.bitLength() + 31) / 32;
+        this.modLimbs = toLimbs(mod);
+
+        /* Newton iteration for mod[0]^-1 mod 2^64, five steps suffice */
+        long m0 = modLimbs[0] & MASK;
+        long inv = 1;
+
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - m0 * inv;
+        }
+
+        this.inverse = (int) -inv;
+    }
+
+    /**
+     * Returns whether Montgomery arithmetic applies to the given modulus.
+     *
+     * @param mod   the modulus
+     * @return      <tt>true</tt> if the modulus is odd and greater than one
+     */
+    static boolean supports(BigInteger mod) {
+        return mod.compareTo(BigInteger.ONE) > 0 && mod.testBit(0);
+    }
+
+    /**
+     * Returns the modulus.
+     *
+     * @return the modulus
+     */
+    BigInteger getModulus() {
+        return mod;
+    }
+
+    /**
+     * Returns the number of limbs in every value.
+     *
+     * @return the number of limbs
+     */
+    int limbs() {
+        return limbs;
+    }
+
+    /**
+     * Converts a number into Montgomery form.
+     *
+     * @param x     the number, which is reduced first
+     * @return      its limbs in Montgomery form
+     */
+    int[] toMontgomery(BigInteger x) {
+        return toLimbs(x.mod(mod).shiftLeft(32 * limbs).mod(mod));
+    }
+
+    /**
+     * Converts limbs in Montgomery form back into a number.
+     *
+     * @param a     the limbs, which are left untouched
+     * @return      the number
+     */
+    BigInteger fromMontgomery(int[] a) {
+        int[] one = new int[limbs];
+        int[] r = new int[limbs];
+        one[0] = 1;
+        multiply(a, 0, one, 0, new int[limbs + 2], r);
+
+        return fromLimbs(r);
+    }
+
+    /**
+     * Montgomery product <tt>a &middot; b &middot; R<sup>-1</sup></tt>
+     * (coarsely integrated operand scanning). The result may alias either
+     * operand.
+     *
+     * @param a         first operand limbs
+     * @param ao        offset of the first operand in <tt>a</tt>
+     * @param b         second operand limbs
+     * @param bo        offset of the second operand in <tt>b</tt>
+     * @param t         scratch space of <tt>limbs + 2</tt> ints
+     * @param r         where to put the result
+     */
+    void multiply(int[] a, int ao, int[] b, int bo, int[] t, int[] r) {
+        int n = limbs;
+        int[] m = modLimbs;
+
+        Arrays.fill(t, 0);
+
+        for (int i = 0; i < n; i++) {
+            long bi = b[bo + i] & MASK;
+            long c = 0;
+            long s;
+
+            for (int j = 0; j < n; j++) {
+                s = (t[j] & MASK) + (a[ao + j] & MASK) * bi + c;
+                t[j] = (int) s;
+                c = s >>> 32;
+            }
+
+            s = (t[n] & MASK) + c;
+            t[n] = (int) s;
+            t[n + 1] = (int) (s >>> 32);
+
+            long u = (t[0] * inverse) & MASK;
+            s = (t[0] & MASK) + u * (m[0] & MASK);
+            c = s >>> 32;
+
+            for (int j = 1; j < n; j++) {
+                s = (t[j] & MASK) + u * (m[j] & MASK) + c;
+                t[j - 1] = (int) s;
+                c = s >>> 32;
+            }
+
+            s = (t[n] & MASK) + c;
+            t[n - 1] = (int) s;
+            t[n] = t[n + 1] + (int) (s >>> 32);
+        }
+
+        boolean subtract = t[n] != 0;
+
+        if (!subtract) {
+            subtract = true;
+
+            for (int i = n - 1; i >= 0; i--) {
+                int cmp = Integer.compareUnsigned(t[i], m[i]);
+
+                if (cmp != 0) {
+                    subtract = cmp > 0;
+                    break;
+                }
+            }
+        }
+
+        if (subtract) {
+            long borrow = 0;
+
+            for (int i = 0; i < n; i++) {
+                long d = (t[i] & MASK) - (m[i] & MASK) - borrow;
+                r[i] = (int) d;
+                borrow = d >>> 63;
+            }
+        } else {
+            System.arraycopy(t, 0, r, 0, n);
+        }
+    }
+
+    /**
+     * Returns the <tt>width</tt>-bit digit of a big-endian two's complement
+     * (non-negative) number starting at the given bit.
+     *
+     * @param e         the number, as from <tt>BigInteger.toByteArray</tt>
+     * @param bit       the lowest bit of the digit
+     * @param width     the number of bits in the digit
+     * @return          the digit
+     */
+    static int digit(byte[] e, int bit, int width) {
+        int d = 0;
+
+        for (int k = 0; k < width; k++) {
+            int pos = bit + k;
+            int idx = e.length - 1 - (pos >>> 3);
+
+            if (idx < 0) {
+                break;
+            }
+
+            d |= ((e[idx] >>> (pos & 7)) & 1) << k;
+        }
+
+        return d;
+    }
+
+    /**
+     * Splits a non-negative number below the modulus into limbs.
+     */
+    private int[] toLimbs(BigInteger x) {
+        byte[] b = x.toByteArray();
+        int[] r = new int[limbs];
+
+        for (int k = 0; k < b.length && k < 4 * limbs; k++) {
+            r[k >>> 2] |= (b[b.length - 1 - k] & 0xFF) << (8 * (k & 3));
+        }
+
+        return r;
+    }
+
+    /**
+     * Joins limbs back into a non-negative number.
+     */
+    private static BigInteger fromLimbs(int[] r) {
+        byte[] b = new byte[4 * r.length + 1];
+
+        for (int i = 0; i < r.length; i++) {
+            int at = b.length - 1 - 4 * i;
+            b[at] = (byte) r[i];
+            b[at - 1] = (byte) (r[i] >>> 8);
+            b[at - 2] = (byte) (r[i] >>> 16);
+            b[at - 3] = (byte) (r[i] >>> 24);
+        }
+
+        return new BigInteger(b);
+    }
+}
@@ -0,0 +1,150 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+
+/**
+ * Simultaneous exponentiation of several bases modulo one odd number.
+ * <p>
+ * All bases share a single chain of squarings (Straus' method): the
+ * exponents are scanned together from the top bit down, and every base
+ * multiplies in a digit from a small table of its own powers whenever one
+ * of its windows ends. A product of <tt>k</tt> powers therefore costs about
+ * as many squarings as one power, plus a handful of multiplications per
+ * base, instead of <tt>k</tt> separate <tt>modPow</tt> calls. Each base's
+ * window width is chosen from its exponent's length, so short exponents,
+ * like the randomizers of a batch verification, stay cheap.
+ *
+ * @author David Walluck
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ */
+final class MultiExponent {
+    /**
+     * Widest window used for any base.
+     */
+    private static final int MAX_WIDTH = 6;
+
+    /**
+     * Utility class.
+     */
+    private MultiExponent() {
+    }
+
+    /**
+     * Returns <tt>&prod; bases[i]<sup>exponents[i]</sup> mod mod</tt>.
+     * Negative exponents invert their base, which must then be a unit.
+     *
+     * @param bases         the bases
+     * @param exponents     the exponents, one per base
+     * @param mod           the modulus
+     * @return              the product of the powers
+     */
+    static BigInteger pow(BigInteger[] bases, BigInteger[] exponents,
+                          BigInteger mod) {
+        int count = bases.length;
+
+        if (!Montgomery.supports(mod)) {
+            BigInteger r = BigInteger.ONE;
+
+            for (int i = 0; i < count; i++) {
+                r = r.multiply(bases[i].modPow(exponents[i], mod)).mod(mod);
+            }
+
+            return r;
+        }
+
+        Montgomery mont = new Montgomery(mod);
+        int n = mont.limbs();
+        int[] scratch = new int[n + 2];
+        int[][] tables = new int[count][];
+        byte[][] digits = new byte[count][];
+        int[] widths = new int[count];
+        int top = 0;
+
+        for (int i = 0; i < count; i++) {
+            BigInteger b = bases[i];
+            BigInteger e = exponents[i];
+
+            if (e.signum() < 0) {
+                b = b.modInverse(mod);
+                e = e.negate();
+            }
+
+            int w = width(e.bitLength());
+            int size = 1 << w;
+            int[] table = new int[size * n];
+            int[] bm = mont.toMontgomery(b);
+
+            System.arraycopy(bm, 0, table, n, n);
+
+            for (int j = 2; j < size; j++) {
+                int[] entry = new int[n];
+                mont.multiply(table, (j - 1) * n, bm, 0, scratch, entry);
+                System.arraycopy(entry, 0, table, j * n, n);
+            }
+
+            tables[i] = table;
+            digits[i] = e.toByteArray();
+            widths[i] = w;
+            top = Math.max(top, e.bitLength());
+        }
+
+        int[] acc = null;
+
+        for (int bit = top - 1; bit >= 0; bit--) {
+            if (acc != null) {
+                mont.multiply(acc, 0, acc, 0, scratch, acc);
+            }
+
+            for (int i = 0; i < count; i++) {
+                int w = widths[i];
+
+                if (bit % w != 0) {
+                    continue;
+                }
+
+                int d = Montgomery.digit(digits[i], bit, w);
+
+                if (d == 0) {
+                    continue;
+                }
+
+                if (acc == null) {
+                    acc = new int[n];
+                    System.arraycopy(tables[i], d * n, acc, 0, n);
+                } else {
+                    mont.multiply(acc, 0, tables[i], d * n, scratch, acc);
+                }
+            }
+        }
+
+        if (acc == null) {
+            return BigInteger.ONE.mod(mod);
+        }
+
+        return mont.fromMontgomery(acc);
+    }
+
+    /**
+     * Picks the window width which minimizes the table size plus the number
+     * of digits for an exponent of the given length.
+     *
+     * @param bits      the exponent length in bits
+     * @return          the window width
+     */
+    private static int width(int bits) {
+        int best = 1;
+        int bestCost = bits;
+
+        for (int w = 2; w <= MAX_WIDTH; w++) {
+            int cost = (1 << w) - 2 + (bits + w - 1) / w;
+
+            if (cost < bestCost) {
+                best = w;
+                bestCost = cost;
+            }
+        }
+
+        return best;
+    }
+}
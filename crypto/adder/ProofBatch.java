@@ -0,0 +1,231 @@
+package crypto.adder;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the verification equations of many membership proofs at once.
+ * <p>
+ * Each entry of a proof with commitments <tt>y, z</tt>, response <tt>s</tt>
+ * and challenge <tt>c</tt> for domain value <tt>d</tt> must satisfy
+ * <tt>g<sup>s</sup> = y G<sup>c</sup></tt> and
+ * <tt>h<sup>s</sup> = z (H / f<sup>d</sup>)<sup>c</sup></tt>. Rather than
+ * checking these one by one, every equation is raised to a random
+ * {@link #SECURITY}-bit exponent and all of them are multiplied together
+ * (the small-exponent test). The generator sides collapse into three
+ * fixed-base powers, each ciphertext contributes its <tt>G</tt> and
+ * <tt>H</tt> once, and everything else is evaluated with a single
+ * {@link MultiExponent multi-exponentiation}. A batch containing any bad
+ * equation passes with probability at most
+ * <tt>2<sup>-SECURITY</sup></tt>.
+ * <p>
+ * The test is only sound for elements of the order-<tt>q</tt> subgroup, so
+ * the ciphertexts and commitments are also checked to be quadratic residues,
+ * again in bulk: the Jacobi symbol of the product of a random subset of
+ * them is <tt>-1</tt> with probability one half if any one is not.
+ *
+ * @author David Walluck
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ */
+final class ProofBatch {
+    /**
+     * Bits in each random exponent, and number of subgroup rounds.
+     */
+    static final int SECURITY = 64;
+
+    private static final Context CTX = new Context();
+
+    private final BigInteger p;
+    private final BigInteger q;
+    private final AdderInteger g;
+    private final AdderInteger h;
+    private final AdderInteger f;
+    private final Random random;
+    private final List<BigInteger> bases = new ArrayList<BigInteger>();
+    private final List<BigInteger> exponents = new ArrayList<BigInteger>();
+    private BigInteger gExponent = BigInteger.ZERO;
+    private BigInteger hExponent = BigInteger.ZERO;
+    private BigInteger fExponent = BigInteger.ZERO;
+
+    /**
+     * Creates an empty batch for proofs made under the given key.
+     *
+     * @param pubKey    the public key
+     */
+    ProofBatch(PublicKey pubKey) {
+        this.p = pubKey.getP().bigintValue();
+        this.q = pubKey.getQ().bigintValue();
+        this.g = pubKey.getG();
+        this.h = pubKey.getH();
+        this.f = pubKey.getF();
+        this.random = CTX.getRandom();
+    }
+
+    /**
+     * Adds the equations of one membership proof. The lists must all have
+     * the same length as the domain.
+     *
+     * @param bigG      the ciphertext's <tt>G</tt>
+     * @param bigH      the ciphertext's <tt>H</tt>
+     * @param yList     the proof's <tt>y</tt> commitments
+     * @param zList     the proof's <tt>z</tt> commitments
+     * @param sList     the proof's responses
+     * @param cList     the proof's challenges
+     * @param domain    the domain
+     * @return          <tt>false</tt> if some value is out of range, in which
+     *                  case the batch must not be checked
+     */
+    boolean add(AdderInteger bigG, AdderInteger bigH, List<AdderInteger> yList,
+                List<AdderInteger> zList, List<AdderInteger> sList,
+                List<AdderInteger> cList, List<AdderInteger> domain) {
+        BigInteger gv = bigG.bigintValue();
+        BigInteger hv = bigH.bigintValue();
+
+        if (!inGroup(gv) || !inGroup(hv)) {
+            return false;
+        }
+
+        BigInteger gSum = BigInteger.ZERO;
+        BigInteger hSum = BigInteger.ZERO;
+
+        for (int i = 0; i < domain.size(); i++) {
+            BigInteger y = yList.get(i).bigintValue();
+            BigInteger z = zList.get(i).bigintValue();
+
+            if (!inGroup(y) || !inGroup(z)) {
+                return false;
+            }
+
+            BigInteger s = sList.get(i).bigintValue();
+            BigInteger c = cList.get(i).bigintValue();
+            BigInteger d = domain.get(i).bigintValue();
+            BigInteger alpha = new BigInteger(SECURITY, random);
+            BigInteger beta = new BigInteger(SECURITY, random);
+
+            gExponent = gExponent.add(alpha.multiply(s)).mod(q);
+            hExponent = hExponent.add(beta.multiply(s)).mod(q);
+            fExponent = fExponent.add(beta.multiply(c).multiply(d)).mod(q);
+            gSum = gSum.add(alpha.multiply(c));
+            hSum = hSum.add(beta.multiply(c));
+
+            bases.add(y);
+            exponents.add(alpha);
+            bases.add(z);
+            exponents.add(beta);
+        }
+
+        bases.add(gv);
+        exponents.add(gSum.mod(q));
+        bases.add(hv);
+        exponents.add(hSum.mod(q));
+
+        return true;
+    }
+
+    /**
+     * Checks every equation added so far.
+     *
+     * @return  <tt>true</tt> if all of them hold (up to the error bound)
+     */
+    boolean check() {
+        if (bases.isEmpty()) {
+            return true;
+        }
+
+        if (!inSubgroup()) {
+            return false;
+        }
+
+        BigInteger rhs = MultiExponent.pow(
+                bases.toArray(new BigInteger[bases.size()]),
+                exponents.toArray(new BigInteger[exponents.size()]), p);
+
+        BigInteger lhs = g.pow(new AdderInteger(gExponent))
+                          .multiply(h.pow(new AdderInteger(hExponent)))
+                          .multiply(f.pow(new AdderInteger(fExponent)))
+                          .bigintValue();
+
+        return lhs.equals(rhs);
+    }
+
+    /**
+     * Returns whether the given value is a nonzero residue modulo <tt>p</tt>.
+     */
+    private boolean inGroup(BigInteger x) {
+        return x.signum() > 0 && x.compareTo(p) < 0;
+    }
+
+    /**
+     * Checks that every base is a quadratic residue, using one Jacobi symbol
+     * per round on the product of a random half of them.
+     */
+    private boolean inSubgroup() {
+        Montgomery mont = new Montgomery(p);
+        int[] scratch = new int[mont.limbs() + 2];
+        int[][] products = new int[SECURITY][];
+
+        for (int i = 0; i < bases.size(); i++) {
+            int[] x = mont.toMontgomery(bases.get(i));
+            long mask = random.nextLong();
+
+            for (int r = 0; r < SECURITY; r++, mask >>>= 1) {
+                if ((mask & 1) == 0) {
+                    continue;
+                }
+
+                if (products[r] == null) {
+                    products[r] = x.clone();
+                } else {
+                    mont.multiply(products[r], 0, x, 0, scratch, products[r]);
+                }
+            }
+        }
+
+        for (int r = 0; r < SECURITY; r++) {
+            if (products[r] != null
+                && jacobi(mont.fromMontgomery(products[r]), p) != 1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the Jacobi symbol <tt>(a / n)</tt> for odd positive
+     * <tt>n</tt>.
+     *
+     * @param a     the numerator
+     * @param n     the denominator
+     * @return      -1, 0 or 1
+     */
+    static int jacobi(BigInteger a, BigInteger n) {
+        int t = 1;
+
+        a = a.mod(n);
+
+        while (a.signum() != 0) {
+            int z = a.getLowestSetBit();
+            a = a.shiftRight(z);
+
+            int r = n.intValue() & 7;
+
+            if ((z & 1) == 1 && (r == 3 || r == 5)) {
+                t = -t;
+            }
+
+            if ((a.intValue() & 3) == 3 && (n.intValue() & 3) == 3) {
+                t = -t;
+            }
+
+            BigInteger tmp = a;
+            a = n.mod(tmp);
+            n = tmp;
+        }
+
+        return n.equals(BigInteger.ONE) ? t : 0;
+    }
+}
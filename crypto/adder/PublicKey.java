@@ -34,7 +34,7 @@ public class PublicKey {
     public PublicKey(AdderInteger p, AdderInteger g, AdderInteger f) {
         this.p = p;
         this.q = p.subtract(AdderInteger.ONE).divide(AdderInteger.TWO);
-        this.g = g;
+        this.g = fixed(g);
         this.f = f;
     }
 
@@ -50,8 +50,8 @@ public class PublicKey {
                      AdderInteger f) {
         this.p = p;
         this.q = p.subtract(AdderInteger.ONE).divide(AdderInteger.TWO);
-        this.g = g;
-        this.h = h;
+        this.g = fixed(g);
+        this.h = fixed(h);
         this.f = f;
     }
 
@@ -68,8 +68,8 @@ public class PublicKey {
                       AdderInteger h, AdderInteger f) {
         this.p = p;
         this.q = q;
-        this.g = g;
-        this.h = h;
+        this.g = fixed(g);
+        this.h = fixed(h);
         this.f = f;
     }
 
@@ -118,21 +118,45 @@ public class PublicKey {
     public PrivateKey genKeyPair() {
         AdderInteger x = AdderInteger.random(q);
 
-        this.h = g.pow(x);
+        this.h = fixed(g.pow(x));
 
         return new PrivateKey(p, g, x, f);
     }
 
+    /**
+     * Backs the given base with a precomputed table, since <tt>g</tt> and
+     * <tt>h</tt> are raised to a fresh random exponent for every ciphertext
+     * and proof. The message base <tt>f</tt> is left alone as it is only
+     * ever raised to small choice values.
+     *
+     * @param b     the base, possibly <tt>null</tt>
+     * @return      the table-backed base
+     */
+    private static AdderInteger fixed(AdderInteger b) {
+        return b == null ? null : b.toFixedBase();
+    }
+
     /**
      * Encrypts the given choice given the base.
      * @param m
      *
      * @return the encrypted vote
      */
-    private ElgamalCiphertext encrypt(AdderInteger m) {
-        AdderInteger r = AdderInteger.random(q);
-        AdderInteger bigG = g.pow(r);
-        AdderInteger bigH = h.pow(r).multiply(f.pow(m));
+    private ElgamalCiphertext encrypt(AdderInteger m, RandomnessPool pool) {
+        RandomnessPool.Entry entry = pool == null ? null : pool.take(this);
+        AdderInteger r;
+        AdderInteger bigG;
+        AdderInteger bigH;
+
+        if (entry != null) {
+            r = entry.getR();
+            bigG = entry.getG();
+            bigH = entry.getH().multiply(f.pow(m));
+        } else {
+            r = AdderInteger.random(q);
+            bigG = g.pow(r);
+            bigH = h.pow(r).multiply(f.pow(m));
+        }
 
         ElgamalCiphertext ciphertext = new ElgamalCiphertext(bigG, bigH, r, p);
 
@@ -164,6 +188,19 @@ public class PublicKey {
      * @return the encrypted vote
      */
     public Vote encrypt(List<AdderInteger> choices) {
+        return encrypt(choices, null);
+    }
+
+    /**
+     * Encrypts the given choices, taking the randomness for each from the
+     * given pool while it has some for this key.
+     *
+     * @param choices   the choices
+     * @param pool      the pool of precomputed randomness, or <tt>null</tt>
+     *
+     * @return the encrypted vote
+     */
+    public Vote encrypt(List<AdderInteger> choices, RandomnessPool pool) {
         List<ElgamalCiphertext> voteList
             = new ArrayList<ElgamalCiphertext>(choices.size());
 
@@ -171,7 +208,7 @@ public class PublicKey {
 
         for (it = choices.iterator(); it.hasNext();) {
             AdderInteger choice = (AdderInteger) it.next();
-            voteList.add(encrypt(choice));
+            voteList.add(encrypt(choice, pool));
         }
 
         Vote vote = new Vote(voteList);
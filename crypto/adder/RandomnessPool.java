@@ -0,0 +1,274 @@
+package crypto.adder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of encryption randomness computed ahead of time. Every ElGamal
+ * encryption under a key <tt>(p, g, h)</tt> needs a fresh exponent
+ * <tt>r</tt> together with <tt>g<sup>r</sup></tt> and
+ * <tt>h<sup>r</sup></tt>, none of which depend on the message. A low
+ * priority background thread fills the pool with such triples for the
+ * loaded key while the machine is otherwise idle, so that an encryption only
+ * has to multiply <tt>h<sup>r</sup></tt> by the encoded message.
+ * <p>
+ * The pool holds at most a fixed number of triples, and every triple is
+ * handed out exactly once. Loading a different key wipes the pool. When the
+ * pool is empty, or holds triples for a different key, {@link #take} returns
+ * <tt>null</tt> and callers compute their randomness as usual.
+ *
+ * @author David Walluck
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ */
+public final class RandomnessPool {
+    /**
+     * The number of triples kept by default, enough for a few long ballots.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private Group group;
+    private Thread filler;
+
+    /**
+     * Creates an empty pool holding up to {@link #DEFAULT_CAPACITY} triples.
+     */
+    public RandomnessPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty pool holding up to the given number of triples.
+     *
+     * @param capacity  the most triples to keep
+     */
+    public RandomnessPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * Starts filling the pool for the given public key, as used by
+     * {@link PublicKey#encrypt(java.util.List, RandomnessPool)}.
+     *
+     * @param key   the public key
+     */
+    public void load(PublicKey key) {
+        load(key.getP(), key.getQ(), key.getG(), key.getH());
+    }
+
+    /**
+     * Starts filling the pool for the given key. Exponents are drawn
+     * uniformly from <tt>0</tt> to <tt>bound - 1</tt>. Loading the key that
+     * is already loaded keeps the triples computed so far; loading any other
+     * key throws them away.
+     *
+     * @param p         the prime
+     * @param bound     the bound on the random exponents
+     * @param g         the generator
+     * @param h         the public value
+     */
+    public synchronized void load(AdderInteger p, AdderInteger bound,
+                                  AdderInteger g, AdderInteger h) {
+        if (group != null && group.matches(p, g, h)) {
+            return;
+        }
+
+        if (group != null) {
+            group.queue.clear();
+        }
+
+        group = new Group(p, bound, g, h, capacity);
+
+        if (filler == null) {
+            filler = new Thread(new Filler(), "RandomnessPool");
+            filler.setDaemon(true);
+            filler.setPriority(Thread.MIN_PRIORITY);
+            filler.start();
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Throws away every triple and stops filling the pool until a key is
+     * loaded again.
+     */
+    public synchronized void clear() {
+        if (group != null) {
+            group.queue.clear();
+        }
+
+        group = null;
+    }
+
+    /**
+     * Takes a triple for the given public key out of the pool.
+     *
+     * @param key   the public key
+     * @return      a triple never handed out before, or <tt>null</tt>
+     */
+    public Entry take(PublicKey key) {
+        return take(key.getP(), key.getG(), key.getH());
+    }
+
+    /**
+     * Takes a triple for the given key out of the pool.
+     *
+     * @param p     the prime
+     * @param g     the generator
+     * @param h     the public value
+     * @return      a triple never handed out before, or <tt>null</tt> if the
+     *              pool is empty or filled for another key
+     */
+    public Entry take(AdderInteger p, AdderInteger g, AdderInteger h) {
+        Group current = current();
+
+        if (current == null || !current.matches(p, g, h)) {
+            return null;
+        }
+
+        return current.queue.poll();
+    }
+
+    /**
+     * Returns the number of triples ready to be taken.
+     *
+     * @return the number of triples in the pool
+     */
+    public int size() {
+        Group current = current();
+
+        return current == null ? 0 : current.queue.size();
+    }
+
+    /**
+     * Returns the key being filled for, if any.
+     *
+     * @return the current group, or <tt>null</tt>
+     */
+    private synchronized Group current() {
+        return group;
+    }
+
+    /**
+     * Waits for a key to be loaded.
+     *
+     * @return the current group
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private synchronized Group await() throws InterruptedException {
+        while (group == null) {
+            wait();
+        }
+
+        return group;
+    }
+
+    /**
+     * An exponent <tt>r</tt> together with <tt>g<sup>r</sup></tt> and
+     * <tt>h<sup>r</sup></tt>.
+     */
+    public static final class Entry {
+        private final AdderInteger r;
+        private final AdderInteger g;
+        private final AdderInteger h;
+
+        /**
+         * Creates a triple.
+         *
+         * @param r     the exponent
+         * @param g     the generator raised to the exponent
+         * @param h     the public value raised to the exponent
+         */
+        Entry(AdderInteger r, AdderInteger g, AdderInteger h) {
+            this.r = r;
+            this.g = g;
+            this.h = h;
+        }
+
+        /**
+         * Returns the random exponent <tt>r</tt>.
+         *
+         * @return the exponent
+         */
+        public AdderInteger getR() {
+            return r;
+        }
+
+        /**
+         * Returns <tt>g<sup>r</sup></tt>.
+         *
+         * @return the generator raised to the exponent
+         */
+        public AdderInteger getG() {
+            return g;
+        }
+
+        /**
+         * Returns <tt>h<sup>r</sup></tt>.
+         *
+         * @return the public value raised to the exponent
+         */
+        public AdderInteger getH() {
+            return h;
+        }
+    }
+
+    /**
+     * A loaded key and the triples computed for it.
+     */
+    private static final class Group {
+        private final AdderInteger p;
+        private final AdderInteger bound;
+        private final AdderInteger g;
+        private final AdderInteger h;
+        private final ArrayBlockingQueue<Entry> queue;
+
+        Group(AdderInteger p, AdderInteger bound, AdderInteger g,
+              AdderInteger h, int capacity) {
+            this.p = p;
+            this.bound = bound;
+            this.g = new AdderInteger(g, p).toFixedBase();
+            this.h = new AdderInteger(h, p).toFixedBase();
+            this.queue = new ArrayBlockingQueue<Entry>(capacity);
+        }
+
+        boolean matches(AdderInteger p, AdderInteger g, AdderInteger h) {
+            return this.p.equals(p) && this.g.equals(g) && this.h.equals(h);
+        }
+
+        Entry generate() {
+            AdderInteger r = AdderInteger.random(bound);
+
+            return new Entry(r, g.pow(r), h.pow(r));
+        }
+    }
+
+    /**
+     * Keeps the current group topped up.
+     */
+    private final class Filler implements Runnable {
+        public void run() {
+            try {
+                while (true) {
+                    Group current = await();
+                    Entry entry = current.generate();
+
+                    /* stop offering once the key changes, the triple is useless */
+                    while (!current.queue.offer(entry, 1, TimeUnit.SECONDS)) {
+                        if (current() != current) {
+                            break;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@ package crypto.adder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import sexpression.ASExpression;
 import sexpression.ListExpression;
@@ -25,6 +27,24 @@ public class VoteProof {
 
     public void compute(Vote vote, PublicKey pubKey,
                         List<AdderInteger> choices, int min, int max) {
+        compute(vote, pubKey, choices, min, max, false);
+    }
+
+    /**
+     * Computes the proof, optionally running the membership proof for each
+     * choice and the one for the sum as separate fork-join tasks. They are
+     * independent of each other, and take all of the time.
+     *
+     * @param vote      the vote
+     * @param pubKey    the public key
+     * @param choices   the plaintext choices
+     * @param min       the fewest choices the vote may make
+     * @param max       the most choices the vote may make
+     * @param parallel  whether to compute the membership proofs in parallel
+     */
+    public void compute(Vote vote, PublicKey pubKey,
+                        List<AdderInteger> choices, int min, int max,
+                        boolean parallel) {
         this.p = pubKey.getP();
         List<ElgamalCiphertext> cipherList = vote.getCipherList();
         List<AdderInteger> cipherDomain
@@ -39,13 +59,14 @@ public class VoteProof {
         int numChoices = 0;
         int size = cipherList.size();
         this.proofList = new ArrayList<MembershipProof>(size);
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(size + 1);
 
         for (int i = 0; i < size; i++) {
             MembershipProof proof = new MembershipProof();
             ElgamalCiphertext ciphertext
                 = cipherList.get(i);
             AdderInteger choice = choices.get(i);
-            proof.compute(ciphertext, pubKey, choice, cipherDomain);
+            tasks.add(new ProofTask(proof, ciphertext, pubKey, choice, cipherDomain));
             this.proofList.add(proof);
 
             sumCipher = sumCipher.multiply(ciphertext);
@@ -63,7 +84,15 @@ public class VoteProof {
         }
 
         this.sumProof = new MembershipProof();
-        this.sumProof.compute(sumCipher, pubKey, new AdderInteger(numChoices), totalDomain);
+        tasks.add(new ProofTask(this.sumProof, sumCipher, pubKey, new AdderInteger(numChoices), totalDomain));
+
+        if (parallel) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            for (RecursiveAction task : tasks) {
+                task.invoke();
+            }
+        }
     }
 
 
@@ -106,6 +135,136 @@ public class VoteProof {
         return true;
     }
 
+    /**
+     * Verifies many vote proofs, all made under the same public key with the
+     * same bounds, in one batch. Returns <tt>true</tt> only if every proof
+     * is valid; use {@link #verifyEach} to find out which ones are not.
+     *
+     * @param proofs    the proofs
+     * @param votes     the votes, one per proof
+     * @param pubKey    the public key
+     * @param min       the fewest choices a vote may make
+     * @param max       the most choices a vote may make
+     * @return          true if every proof is valid
+     */
+    public static boolean verify(List<VoteProof> proofs, List<Vote> votes,
+                                 PublicKey pubKey, int min, int max) {
+        ProofBatch batch = new ProofBatch(pubKey);
+
+        for (int i = 0; i < proofs.size(); i++) {
+            if (!proofs.get(i).addTo(batch, votes.get(i), pubKey, min, max)) {
+                return false;
+            }
+        }
+
+        return batch.check();
+    }
+
+    /**
+     * Verifies many vote proofs as {@link #verify(List, List, PublicKey,
+     * int, int)} does, then narrows a failing batch down by halves until
+     * the bad proofs are found. Single proofs are settled by
+     * {@link #verify(Vote, PublicKey, int, int)}, and one which cannot be
+     * checked at all is reported invalid.
+     *
+     * @param proofs    the proofs
+     * @param votes     the votes, one per proof
+     * @param pubKey    the public key
+     * @param min       the fewest choices a vote may make
+     * @param max       the most choices a vote may make
+     * @return          whether each proof is valid
+     */
+    public static boolean[] verifyEach(List<VoteProof> proofs, List<Vote> votes,
+                                       PublicKey pubKey, int min, int max) {
+        boolean[] valid = new boolean[proofs.size()];
+
+        verifyEach(proofs, votes, pubKey, min, max, 0, proofs.size(), valid);
+
+        return valid;
+    }
+
+    /**
+     * Fills in <tt>valid[from, to)</tt>.
+     */
+    private static void verifyEach(List<VoteProof> proofs, List<Vote> votes,
+                                   PublicKey pubKey, int min, int max,
+                                   int from, int to, boolean[] valid) {
+        if (from >= to) {
+            return;
+        }
+
+        if (to - from == 1) {
+            try {
+                valid[from] = proofs.get(from).verify(votes.get(from), pubKey, min, max);
+            } catch (RuntimeException e) {
+                valid[from] = false;
+            }
+
+            return;
+        }
+
+        boolean ok;
+
+        try {
+            ok = verify(proofs.subList(from, to), votes.subList(from, to), pubKey, min, max);
+        } catch (RuntimeException e) {
+            ok = false;
+        }
+
+        if (ok) {
+            for (int i = from; i < to; i++) {
+                valid[i] = true;
+            }
+
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+
+        verifyEach(proofs, votes, pubKey, min, max, from, mid, valid);
+        verifyEach(proofs, votes, pubKey, min, max, mid, to, valid);
+    }
+
+    /**
+     * Adds the proofs for every choice and for the sum to the given batch.
+     *
+     * @return false if the proof is malformed or a challenge does not match
+     */
+    boolean addTo(ProofBatch batch, Vote vote, PublicKey pubKey, int min, int max) {
+        List<ElgamalCiphertext> cipherList = vote.getCipherList();
+
+        if (cipherList.size() != this.proofList.size()) {
+            return false;
+        }
+
+        List<AdderInteger> cipherDomain
+            = new ArrayList<AdderInteger>(2);
+        cipherDomain.add(AdderInteger.ZERO);
+        cipherDomain.add(AdderInteger.ONE);
+
+        ElgamalCiphertext sumCipher
+            = new ElgamalCiphertext(AdderInteger.ONE, AdderInteger.ONE, pubKey.getP());
+
+        for (int i = 0; i < cipherList.size(); i++) {
+            ElgamalCiphertext ciphertext = cipherList.get(i);
+
+            if (!this.proofList.get(i).addTo(batch, ciphertext, pubKey, cipherDomain)) {
+                return false;
+            }
+
+            sumCipher = sumCipher.multiply(ciphertext);
+        }
+
+        List<AdderInteger> totalDomain
+            = new ArrayList<AdderInteger>(max + 1);
+
+        for (int j = min; j <= max; j++) {
+            totalDomain.add(new AdderInteger(j));
+        }
+
+        return this.sumProof.addTo(batch, sumCipher, pubKey, totalDomain);
+    }
+
     public static VoteProof fromString(String s) {
         StringTokenizer st = new StringTokenizer(s, " ");
         List<MembershipProof> pList
@@ -173,4 +332,31 @@ public class VoteProof {
     	
     	return new VoteProof(sumProof, proofList);
     }
+
+    /**
+     * Computes one membership proof.
+     */
+    private static class ProofTask extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+
+        private final MembershipProof proof;
+        private final ElgamalCiphertext ciphertext;
+        private final PublicKey pubKey;
+        private final AdderInteger value;
+        private final List<AdderInteger> domain;
+
+        ProofTask(MembershipProof proof, ElgamalCiphertext ciphertext,
+                  PublicKey pubKey, AdderInteger value,
+                  List<AdderInteger> domain) {
+            this.proof = proof;
+            this.ciphertext = ciphertext;
+            this.pubKey = pubKey;
+            this.value = value;
+            this.domain = domain;
+        }
+
+        protected void compute() {
+            proof.compute(ciphertext, pubKey, value, domain);
+        }
+    }
 }
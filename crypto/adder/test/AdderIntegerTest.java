@@ -5,6 +5,12 @@ import java.math.BigInteger;
 import junit.framework.TestCase;
 import junit.textui.TestRunner;
 import crypto.adder.AdderInteger;
+import crypto.adder.PublicKey;
+import crypto.adder.Vote;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import sexpression.stream.InvalidVerbatimStreamException;
 
 /**
  * Adder integer test.
@@ -76,6 +82,89 @@ public class AdderIntegerTest extends TestCase {
         assertEquals("f", v.toString(16));
     }
 
+    /**
+     * The binary S-Expression form reads back, old decimal forms are still
+     * understood, and ciphertexts shrink.
+     */
+    public void testASE() throws InvalidVerbatimStreamException {
+        BigInteger big = BigInteger.ONE.shiftLeft(1000).subtract(BigInteger.ONE);
+        AdderInteger[] values = { AdderInteger.ZERO,
+                                  new AdderInteger("255"),
+                                  new AdderInteger(big.negate()),
+                                  new AdderInteger(big.shiftRight(1), big) };
+
+        for (int i = 0; i < values.length; i++) {
+            AdderInteger value = values[i];
+            ASExpression ase = ASExpression.makeVerbatim(value.toASE().toVerbatim());
+            AdderInteger binary = AdderInteger.fromASE(ase);
+            AdderInteger decimal = AdderInteger.fromASE(value.toDecimalASE());
+
+            assertEquals(value, binary);
+            assertEquals(value.getModulus(), binary.getModulus());
+            assertEquals(value, decimal);
+            assertEquals(value.getModulus(), decimal.getModulus());
+        }
+
+        try {
+            AdderInteger.fromASE(new ListExpression(
+                StringExpression.makeString("adder-integer-3"),
+                StringExpression.makeString("1"),
+                StringExpression.makeString("0")));
+            fail();
+        } catch (RuntimeException e) {
+            /* unknown versions are rejected */
+        }
+
+        PublicKey key = PublicKey.makePartialKey(256);
+        key.genKeyPair();
+
+        AdderInteger x = key.getH();
+        assertTrue(x.toASE().toVerbatim().length * 3
+                   < x.toDecimalASE().toVerbatim().length * 2);
+
+        Vote vote = key.encrypt(java.util.Collections.singletonList(AdderInteger.ONE));
+        assertEquals(vote.toASE(), Vote.fromASE(vote.toASE()).toASE());
+    }
+
+    /**
+     * Multi-exponentiation agrees with separate powers, with and without
+     * precomputed tables, and for enough bases to share squarings.
+     */
+    public void testMultiPow() {
+        PublicKey key = PublicKey.makePartialKey(128);
+        key.genKeyPair();
+
+        AdderInteger p = key.getP();
+        AdderInteger q = key.getQ();
+        int[] counts = { 1, 2, 5, AdderInteger.STRAUS_MIN_BASES + 3 };
+
+        for (int k = 0; k < counts.length; k++) {
+            AdderInteger[] bases = new AdderInteger[counts[k]];
+            AdderInteger[] exponents = new AdderInteger[counts[k]];
+            AdderInteger expected = new AdderInteger(AdderInteger.ONE, p);
+
+            for (int i = 0; i < bases.length; i++) {
+                bases[i] = i == 0 ? key.getG() : AdderInteger.random(p);
+                exponents[i] = AdderInteger.random(q);
+
+                if (i == 1) {
+                    exponents[i] = new AdderInteger(exponents[i].bigintValue().negate());
+                }
+
+                expected = expected.multiply(bases[i].pow(exponents[i]));
+            }
+
+            assertEquals(expected, AdderInteger.multiPow(bases, exponents));
+        }
+
+        AdderInteger s = AdderInteger.random(q);
+        AdderInteger c = AdderInteger.random(q);
+        AdderInteger x = AdderInteger.random(p);
+
+        assertEquals(key.getH().pow(s).multiply(x.pow(c)),
+                     key.getH().multiPow(s, x, c));
+    }
+
     /**
      * The main method.
      *
@@ -20,14 +20,19 @@ public class AllTests {
     public static Test suite() {
         TestSuite suite = new TestSuite();
 
+        suite.addTest(new TestSuite(AdderIntegerTest.class));
         suite.addTest(new TestSuite(crypto.adder.test.ContextTest.class));
         //suite.addTest(new TestSuite(ElgamalCiphertextTest.class));
-        //suite.addTest(new TestSuite(MembershipProofTest.class));
+        suite.addTest(new TestSuite(MembershipProofTest.class));
         suite.addTest(new TestSuite(crypto.adder.test.PolynomialTest.class));
         suite.addTest(new TestSuite(PluginTest.class));
         suite.addTest(new TestSuite(PrivateKeyTest.class));
         suite.addTest(new TestSuite(PublicKeyTest.class));
         suite.addTest(new TestSuite(VoteTest.class));
+        suite.addTest(new TestSuite(VoteProofTest.class));
+        suite.addTest(new TestSuite(RandomnessPoolTest.class));
+        suite.addTest(new TestSuite(DiscreteLogTest.class));
+        suite.addTest(new TestSuite(ElectionTest.class));
         suite.addTest(new TestSuite(AdderTest.class));
 
         return suite;
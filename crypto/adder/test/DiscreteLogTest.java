@@ -0,0 +1,87 @@
+package crypto.adder.test;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import crypto.adder.AdderInteger;
+import crypto.adder.DiscreteLog;
+import crypto.adder.PublicKey;
+
+/**
+ * Discrete logarithm test.
+ *
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ * @author David Walluck
+ */
+public class DiscreteLogTest extends TestCase {
+    private PublicKey publicKey;
+    private DiscreteLog log;
+
+    /**
+     * Constructs a new discrete logarithm test.
+     *
+     * @param name the name of the test
+     */
+    public DiscreteLogTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Makes a key whose message base the logarithms are taken to.
+     */
+    protected void setUp() {
+        publicKey = PublicKey.makePartialKey(128);
+        log = DiscreteLog.forBase(publicKey.getF(), publicKey.getP());
+    }
+
+    /**
+     * Exponents inside the baby-step table, and well beyond it, are found.
+     */
+    public void testLog() {
+        int[] exponents = { 0, 1, 2, 63, 64, 65, 999, 4096, 123457 };
+
+        for (int i = 0; i < exponents.length; i++) {
+            AdderInteger target = publicKey.getF().pow(exponents[i]);
+
+            assertEquals(exponents[i], log.log(target, 200000));
+            assertEquals(exponents[i], log.log(target, exponents[i]));
+        }
+
+        assertSame(log, DiscreteLog.forBase(publicKey.getF(), publicKey.getP()));
+    }
+
+    /**
+     * Nothing is found past the given bound.
+     */
+    public void testBound() {
+        AdderInteger target = publicKey.getF().pow(5000);
+
+        assertEquals(-1, log.log(target, 4999));
+        assertEquals(-1, log.log(target, 10));
+        assertEquals(-1, log.log(target, -1));
+        assertEquals(5000, log.log(target, 5000));
+    }
+
+    /**
+     * A base of small order gives the smallest exponent.
+     */
+    public void testSmallOrder() {
+        DiscreteLog small = DiscreteLog.forBase(BigInteger.valueOf(2),
+                                                BigInteger.valueOf(31));
+
+        assertEquals(0, small.log(BigInteger.ONE, 1000));
+        assertEquals(3, small.log(BigInteger.valueOf(8), 1000));
+        assertEquals(-1, small.log(BigInteger.valueOf(3), 1000));
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the main parameters
+     */
+    public static void main(String[] args) {
+        TestRunner.run(DiscreteLogTest.class);
+    }
+}
@@ -0,0 +1,140 @@
+package crypto.adder.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import crypto.adder.AdderInteger;
+import crypto.adder.Election;
+import crypto.adder.PrivateKey;
+import crypto.adder.PublicKey;
+import crypto.adder.Vote;
+
+/**
+ * Election test.
+ *
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ * @author David Walluck
+ */
+public class ElectionTest extends TestCase {
+    private PublicKey finalPubKey;
+    private PrivateKey finalPrivKey;
+
+    /**
+     * Constructs a new election test.
+     *
+     * @param name the name of the test
+     */
+    public ElectionTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Makes a single authority key.
+     */
+    protected void setUp() {
+        PublicKey pubKey = PublicKey.makePartialKey(128);
+        PrivateKey privKey = pubKey.genKeyPair();
+        AdderInteger p = pubKey.getP();
+        AdderInteger q = pubKey.getQ();
+        AdderInteger g = pubKey.getG();
+        AdderInteger f = pubKey.getF();
+
+        finalPubKey = new PublicKey(p, g, pubKey.getH(), f);
+        finalPrivKey = new PrivateKey(p, g, privKey.getX(), f);
+
+        assertEquals(q, finalPubKey.getQ());
+    }
+
+    /**
+     * Encrypts a vote for the given choice out of three.
+     *
+     * @param choice the choice
+     * @return the vote
+     */
+    private Vote vote(int choice) {
+        List<AdderInteger> choices = new ArrayList<AdderInteger>(3);
+
+        for (int i = 0; i < 3; i++) {
+            choices.add(i == choice ? AdderInteger.ONE : AdderInteger.ZERO);
+        }
+
+        return finalPubKey.encrypt(choices);
+    }
+
+    /**
+     * Decrypts the sum of an election.
+     *
+     * @param election the election
+     * @return the count for each choice
+     */
+    private List<AdderInteger> decrypt(Election election) {
+        Vote sum = election.sumVotes();
+        List<List<AdderInteger>> partialSums = new ArrayList<List<AdderInteger>>();
+        List<AdderInteger> coeffs = new ArrayList<AdderInteger>();
+
+        partialSums.add(finalPrivKey.partialDecrypt(sum));
+        coeffs.add(new AdderInteger(0));
+
+        return election.getFinalSum(partialSums, coeffs, sum, finalPubKey);
+    }
+
+    /**
+     * Tallied votes sum to the same counts as cast ones, without being kept,
+     * and survive a round trip through an S-expression.
+     */
+    public void testTally() {
+        Election cast = new Election(finalPubKey.getP());
+        Election tallied = new Election(finalPubKey.getP());
+        int[] choices = { 0, 2, 2, 1, 2, 0, 2 };
+
+        for (int choice : choices) {
+            Vote vote = vote(choice);
+            cast.castVote(vote);
+            tallied.tally(vote);
+        }
+
+        assertEquals(choices.length, cast.getVoteCount());
+        assertEquals(choices.length, tallied.getVoteCount());
+        assertEquals(0, tallied.getVotes().size());
+
+        List<AdderInteger> expected = decrypt(cast);
+        assertEquals(2, expected.get(0).intValue());
+        assertEquals(1, expected.get(1).intValue());
+        assertEquals(4, expected.get(2).intValue());
+        assertEquals(expected, decrypt(tallied));
+
+        Election restored = Election.fromASE(tallied.toASE());
+        assertEquals(choices.length, restored.getVoteCount());
+
+        /* a restored election keeps tallying from where it left off */
+        restored.tally(vote(1));
+        List<AdderInteger> results = decrypt(restored);
+        assertEquals(2, results.get(0).intValue());
+        assertEquals(2, results.get(1).intValue());
+        assertEquals(4, results.get(2).intValue());
+
+        /* kept votes are folded in when written out */
+        assertEquals(expected, decrypt(Election.fromASE(cast.toASE())));
+    }
+
+    /**
+     * An empty election round trips as empty.
+     */
+    public void testEmpty() {
+        Election election = Election.fromASE(new Election(finalPubKey.getP()).toASE());
+
+        assertEquals(0, election.getVoteCount());
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the main parameters
+     */
+    public static void main(String[] args) {
+        TestRunner.run(ElectionTest.class);
+    }
+}
@@ -0,0 +1,118 @@
+package crypto.adder.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import crypto.adder.AdderInteger;
+import crypto.adder.ElgamalCiphertext;
+import crypto.adder.MembershipProof;
+import crypto.adder.PublicKey;
+import crypto.adder.Vote;
+
+/**
+ * Membership proof test.
+ *
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ * @author David Walluck
+ */
+public class MembershipProofTest extends TestCase {
+    /**
+     * A key, and a ciphertext of one carrying a version 1 proof, as written
+     * before proofs were versioned.
+     */
+    private static final String KEY =
+        "p10858240153874660567g2112250064764402254h10736720183358552492"
+        + "f8526384505443459152";
+    private static final String CIPHERTEXT =
+        "p10858240153874660567G8096799390623286546H3072056383931422739 "
+        + "p10858240153874660567y2048156266571804245y4931645870873538140"
+        + "z6019223981897890105z641811353318234149s1418123441318345958"
+        + "s832297391203648387c3431218970938070939c5518005839818934760";
+
+    /**
+     * Constructs a new membership proof test.
+     *
+     * @param name the name of the test
+     */
+    public MembershipProofTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Returns the domain {0, 1}.
+     */
+    private static List<AdderInteger> domain(PublicKey key) {
+        List<AdderInteger> domain = new ArrayList<AdderInteger>();
+        domain.add(new AdderInteger(0, key.getQ()));
+        domain.add(new AdderInteger(1, key.getQ()));
+
+        return domain;
+    }
+
+    /**
+     * New proofs verify, survive both serializations, and fail against
+     * another ciphertext.
+     */
+    public void testCurrent() {
+        PublicKey key = PublicKey.makePartialKey(128);
+        key.genKeyPair();
+
+        List<AdderInteger> domain = domain(key);
+        List<AdderInteger> choices = new ArrayList<AdderInteger>();
+        choices.add(AdderInteger.ONE);
+        choices.add(AdderInteger.ZERO);
+
+        Vote vote = key.encrypt(choices);
+        ElgamalCiphertext one = vote.getCipherList().get(0);
+        ElgamalCiphertext zero = vote.getCipherList().get(1);
+
+        MembershipProof proof = new MembershipProof();
+        proof.compute(one, key, AdderInteger.ONE, domain);
+
+        assertTrue(proof.verify(one, key, domain));
+        assertTrue(proof.toString().startsWith("v" + MembershipProof.VERSION));
+        assertTrue(MembershipProof.fromString(proof.toString())
+                   .verify(one, key, domain));
+        assertTrue(MembershipProof.fromASE(proof.toASE())
+                   .verify(one, key, domain));
+        assertFalse(proof.verify(zero, key, domain));
+    }
+
+    /**
+     * Version 1 proofs still verify, singly and in a batch, and keep their
+     * version when serialized again.
+     */
+    public void testVersion1() {
+        PublicKey key = PublicKey.fromString(KEY);
+        ElgamalCiphertext cipher = ElgamalCiphertext.fromString(CIPHERTEXT);
+        MembershipProof proof = cipher.getProof();
+        List<AdderInteger> domain = domain(key);
+
+        assertTrue(proof.verify(cipher, key, domain));
+        assertTrue(proof.toString().startsWith("p"));
+        assertTrue(MembershipProof.fromString(proof.toString())
+                   .verify(cipher, key, domain));
+
+        MembershipProof copy = MembershipProof.fromASE(proof.toASE());
+        assertTrue(copy.verify(cipher, key, domain));
+
+        List<MembershipProof> proofs = new ArrayList<MembershipProof>();
+        List<ElgamalCiphertext> ciphers = new ArrayList<ElgamalCiphertext>();
+        proofs.add(copy);
+        ciphers.add(cipher);
+
+        assertTrue(MembershipProof.verify(proofs, ciphers, key, domain));
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the main parameters
+     */
+    public static void main(String[] args) {
+        TestRunner.run(MembershipProofTest.class);
+    }
+}
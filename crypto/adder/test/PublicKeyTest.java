@@ -108,6 +108,40 @@ public class PublicKeyTest extends TestCase {
         }
     }
 
+    /**
+     * Tests that powers of the generator and public value, which are taken
+     * from precomputed tables, agree with plain modular exponentiation.
+     */
+    public void testFixedBase() {
+        int[] lengths = { 16, 64, 128, 200 };
+
+        for (int i = 0; i < lengths.length; i++) {
+            PublicKey publicKey = PublicKey.makePartialKey(lengths[i]);
+            publicKey.genKeyPair();
+
+            AdderInteger p = publicKey.getP();
+            AdderInteger q = publicKey.getQ();
+            AdderInteger[] bases = { publicKey.getG(), publicKey.getH() };
+
+            for (int j = 0; j < bases.length; j++) {
+                AdderInteger plain = new AdderInteger(bases[j].toString(), p);
+                AdderInteger[] exponents = {
+                    AdderInteger.ZERO, AdderInteger.ONE, AdderInteger.TWO,
+                    q, q.subtract(AdderInteger.ONE), p,
+                    p.multiply(p), AdderInteger.random(q),
+                    AdderInteger.random(q), AdderInteger.random(q)
+                };
+
+                for (int k = 0; k < exponents.length; k++) {
+                    assertEquals(plain.pow(exponents[k]),
+                                 bases[j].pow(exponents[k]));
+                }
+
+                assertEquals(plain.pow(q), new AdderInteger(bases[j], p).pow(q));
+            }
+        }
+    }
+
     /**
      * The main method.
      *
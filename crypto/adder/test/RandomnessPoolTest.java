@@ -0,0 +1,137 @@
+package crypto.adder.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import crypto.adder.AdderInteger;
+import crypto.adder.ElgamalCiphertext;
+import crypto.adder.PrivateKey;
+import crypto.adder.PublicKey;
+import crypto.adder.RandomnessPool;
+import crypto.adder.Vote;
+
+/**
+ * Randomness pool test.
+ *
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ * @author David Walluck
+ */
+public class RandomnessPoolTest extends TestCase {
+    private PublicKey publicKey;
+    private PrivateKey privateKey;
+    private RandomnessPool pool;
+
+    /**
+     * Constructs a new randomness pool test.
+     *
+     * @param name the name of the test
+     */
+    public RandomnessPoolTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Makes a key and a small pool, and waits for the pool to fill.
+     */
+    protected void setUp() throws InterruptedException {
+        publicKey = PublicKey.makePartialKey(128);
+        privateKey = publicKey.genKeyPair();
+        pool = new RandomnessPool(8);
+        pool.load(publicKey);
+        fill();
+    }
+
+    /**
+     * Throws away the pool.
+     */
+    protected void tearDown() {
+        pool.clear();
+    }
+
+    /**
+     * Waits until the pool is full.
+     */
+    private void fill() throws InterruptedException {
+        for (int i = 0; i < 1000 && pool.size() < 8; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(8, pool.size());
+    }
+
+    /**
+     * Votes encrypted from the pool decrypt correctly, and no randomness is
+     * handed out twice.
+     */
+    public void testEncrypt() {
+        List<AdderInteger> choices = new ArrayList<AdderInteger>();
+
+        for (int i = 0; i < 8; i++) {
+            choices.add(i % 3 == 0 ? AdderInteger.ONE : AdderInteger.ZERO);
+        }
+
+        Vote vote = publicKey.encrypt(choices, pool);
+        Set<AdderInteger> seen = new HashSet<AdderInteger>();
+
+        for (int i = 0; i < choices.size(); i++) {
+            ElgamalCiphertext cipher = vote.getCipherList().get(i);
+
+            assertEquals(publicKey.getF().pow(choices.get(i)),
+                         privateKey.decrypt(cipher));
+            assertTrue(seen.add(cipher.getR()));
+        }
+    }
+
+    /**
+     * Each triple is taken once and holds the powers of its exponent.
+     */
+    public void testTake() {
+        Set<AdderInteger> seen = new HashSet<AdderInteger>();
+
+        for (int i = 0; i < 8; i++) {
+            RandomnessPool.Entry entry = pool.take(publicKey);
+
+            assertNotNull(entry);
+            assertTrue(seen.add(entry.getR()));
+            assertEquals(publicKey.getG().pow(entry.getR()), entry.getG());
+            assertEquals(publicKey.getH().pow(entry.getR()), entry.getH());
+        }
+    }
+
+    /**
+     * Loading another key wipes the pool, and nothing is handed out for the
+     * old one.
+     */
+    public void testKeyChange() throws InterruptedException {
+        PublicKey other = PublicKey.makePartialKey(128);
+        other.genKeyPair();
+
+        pool.load(other);
+
+        assertNull(pool.take(publicKey));
+
+        fill();
+
+        RandomnessPool.Entry entry = pool.take(other);
+        assertEquals(other.getH().pow(entry.getR()), entry.getH());
+
+        pool.clear();
+
+        assertEquals(0, pool.size());
+        assertNull(pool.take(other));
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the main parameters
+     */
+    public static void main(String[] args) {
+        TestRunner.run(RandomnessPoolTest.class);
+    }
+}
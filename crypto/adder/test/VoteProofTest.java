@@ -0,0 +1,181 @@
+package crypto.adder.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import crypto.adder.AdderInteger;
+import crypto.adder.ElgamalCiphertext;
+import crypto.adder.PublicKey;
+import crypto.adder.Vote;
+import crypto.adder.VoteProof;
+
+/**
+ * Vote proof test.
+ *
+ * @version $LastChangedRevision$ $LastChangedDate$
+ * @since 0.0.1
+ * @author David Walluck
+ */
+public class VoteProofTest extends TestCase {
+    private PublicKey publicKey;
+    private List<Vote> votes;
+    private List<VoteProof> proofs;
+
+    /**
+     * Constructs a new vote proof test.
+     *
+     * @param name the name of the test
+     */
+    public VoteProofTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Makes a key and a handful of honest votes, each selecting exactly one
+     * of three choices.
+     */
+    protected void setUp() {
+        publicKey = PublicKey.makePartialKey(128);
+        publicKey.genKeyPair();
+
+        votes = new ArrayList<Vote>();
+        proofs = new ArrayList<VoteProof>();
+
+        for (int i = 0; i < 12; i++) {
+            List<AdderInteger> choices = new ArrayList<AdderInteger>();
+
+            for (int j = 0; j < 3; j++) {
+                choices.add(j == i % 3 ? AdderInteger.ONE : AdderInteger.ZERO);
+            }
+
+            add(choices);
+        }
+    }
+
+    /**
+     * Encrypts and proves the given choices.
+     */
+    private void add(List<AdderInteger> choices) {
+        Vote vote = publicKey.encrypt(choices);
+        VoteProof proof = new VoteProof();
+        proof.compute(vote, publicKey, choices, 0, 1);
+
+        votes.add(vote);
+        proofs.add(VoteProof.fromASE(proof.toASE()));
+    }
+
+    /**
+     * Checks that batch results agree with verifying each proof on its own.
+     */
+    private void assertAgrees(boolean[] valid) {
+        for (int i = 0; i < proofs.size(); i++) {
+            assertEquals(proofs.get(i).verify(votes.get(i), publicKey, 0, 1),
+                         valid[i]);
+        }
+    }
+
+    /**
+     * Honest proofs pass as a batch.
+     */
+    public void testValid() {
+        assertTrue(VoteProof.verify(proofs, votes, publicKey, 0, 1));
+
+        boolean[] valid = VoteProof.verifyEach(proofs, votes, publicKey, 0, 1);
+
+        for (int i = 0; i < valid.length; i++) {
+            assertTrue(valid[i]);
+        }
+
+        assertTrue(VoteProof.verify(new ArrayList<VoteProof>(),
+                                    new ArrayList<Vote>(), publicKey, 0, 1));
+    }
+
+    /**
+     * A vote selecting two choices fails the batch, and is the only one
+     * reported.
+     */
+    public void testOvervote() {
+        List<AdderInteger> choices = new ArrayList<AdderInteger>();
+        choices.add(AdderInteger.ONE);
+        choices.add(AdderInteger.ONE);
+        choices.add(AdderInteger.ZERO);
+        add(choices);
+
+        assertFalse(VoteProof.verify(proofs, votes, publicKey, 0, 1));
+
+        boolean[] valid = VoteProof.verifyEach(proofs, votes, publicKey, 0, 1);
+
+        assertFalse(valid[valid.length - 1]);
+        assertAgrees(valid);
+    }
+
+    /**
+     * A proof attached to the wrong vote is caught.
+     */
+    public void testSwapped() {
+        Vote first = votes.get(0);
+        votes.set(0, votes.get(1));
+        votes.set(1, first);
+
+        assertFalse(VoteProof.verify(proofs, votes, publicKey, 0, 1));
+
+        boolean[] valid = VoteProof.verifyEach(proofs, votes, publicKey, 0, 1);
+
+        assertFalse(valid[0]);
+        assertFalse(valid[1]);
+        assertAgrees(valid);
+    }
+
+    /**
+     * A ciphertext pushed outside the subgroup (by negating it) fails the
+     * batch, and the result for it matches the individual check.
+     */
+    public void testOutsideSubgroup() {
+        Vote vote = votes.get(5);
+        List<ElgamalCiphertext> cipherList = new ArrayList<ElgamalCiphertext>();
+        AdderInteger p = publicKey.getP();
+
+        for (int i = 0; i < vote.getCipherList().size(); i++) {
+            ElgamalCiphertext c = vote.getCipherList().get(i);
+            AdderInteger negated = new AdderInteger(p.subtract(c.getH()), p);
+            cipherList.add(i == 0 ? new ElgamalCiphertext(c.getG(), negated, p) : c);
+        }
+
+        votes.set(5, new Vote(cipherList));
+
+        assertFalse(VoteProof.verify(proofs, votes, publicKey, 0, 1));
+        assertAgrees(VoteProof.verifyEach(proofs, votes, publicKey, 0, 1));
+    }
+
+    /**
+     * Proofs computed on the fork-join pool verify just like sequential ones.
+     */
+    public void testParallel() {
+        for (int i = 0; i < proofs.size(); i++) {
+            List<AdderInteger> choices = new ArrayList<AdderInteger>();
+
+            for (int j = 0; j < 3; j++) {
+                choices.add(j == i % 3 ? AdderInteger.ONE : AdderInteger.ZERO);
+            }
+
+            VoteProof proof = new VoteProof();
+            proof.compute(votes.get(i), publicKey, choices, 0, 1, true);
+            proofs.set(i, VoteProof.fromASE(proof.toASE()));
+
+            assertTrue(proofs.get(i).verify(votes.get(i), publicKey, 0, 1));
+        }
+
+        assertTrue(VoteProof.verify(proofs, votes, publicKey, 0, 1));
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the main parameters
+     */
+    public static void main(String[] args) {
+        TestRunner.run(VoteProofTest.class);
+    }
+}
@@ -0,0 +1,295 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package crypto.bench;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import benchmark.Benchmark;
+import benchmark.Harness;
+import benchmark.Param;
+import benchmark.Setup;
+import crypto.BallotEncrypter;
+import crypto.adder.AdderInteger;
+import crypto.adder.Election;
+import crypto.adder.ElgamalCiphertext;
+import crypto.adder.PrivateKey;
+import crypto.adder.PublicKey;
+import crypto.adder.Vote;
+import crypto.adder.VoteProof;
+import crypto.interop.AdderKeyManipulator;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+
+/**
+ * Benchmarks for the Adder side of ballot encryption and tallying: key
+ * generation, encrypting a race, computing and verifying its proof,
+ * decrypting a tally, and encrypting a whole ballot with proofs the way
+ * VoteBox does. The ballot has {@link #RACES} races of {@link #CHOICES}
+ * candidates each, with one candidate chosen in every race.<br>
+ * <br>
+ * Keys are made over the fixed safe primes of RFC 2409 and RFC 3526, since
+ * searching for a safe prime takes too long, and too unpredictably, to time.
+ * Keys, ciphertexts and ballots are built here from a java.util.Random seeded
+ * with the seed parameter, so every run with the same parameters sees the
+ * same inputs. Only the nonces inside proofs come from the usual secure
+ * generator, which is never reseeded.<br>
+ * <br>
+ * Run with:<br>
+ * java crypto.bench.AdderBenchmarks [-wi n] [-i n] [-r ms] [-p bits=1024,...]
+ * [-p seed=n,...] [regex]
+ * 
+ * @author Kyle Derr
+ */
+public class AdderBenchmarks {
+
+    public static final int RACES = 10;
+    public static final int CHOICES = 3;
+    public static final int VOTES = 100;
+
+    @Param( { "1024", "2048" })
+    public int bits;
+
+    @Param( { "20071015" })
+    public long seed;
+
+    private PublicKey _partialKey;
+    private PublicKey _publicKey;
+    private PrivateKey _privateKey;
+    private List<AdderInteger> _choices;
+    private Vote _vote;
+    private VoteProof _proof;
+    private Election _election;
+    private ListExpression _ballot;
+    private List<List<String>> _raceGroups;
+
+    /**
+     * Return the safe prime of the given length from RFC 2409 (1024 bits) or
+     * RFC 3526 (1536 and 2048 bits).
+     */
+    public static AdderInteger prime(int bits) {
+        String hex;
+        switch (bits) {
+        case 1024:
+            hex = "FFFFFFFFFFFFFFFFC90FDAA22168C234C4C6628B80DC1CD129024E088A67CC74"
+                    + "020BBEA63B139B22514A08798E3404DDEF9519B3CD3A431B302B0A6DF25F1437"
+                    + "4FE1356D6D51C245E485B576625E7EC6F44C42E9A637ED6B0BFF5CB6F406B7ED"
+                    + "EE386BFB5A899FA5AE9F24117C4B1FE649286651ECE65381FFFFFFFFFFFFFFFF";
+            break;
+        case 1536:
+            hex = "FFFFFFFFFFFFFFFFC90FDAA22168C234C4C6628B80DC1CD129024E088A67CC74"
+                    + "020BBEA63B139B22514A08798E3404DDEF9519B3CD3A431B302B0A6DF25F1437"
+                    + "4FE1356D6D51C245E485B576625E7EC6F44C42E9A637ED6B0BFF5CB6F406B7ED"
+                    + "EE386BFB5A899FA5AE9F24117C4B1FE649286651ECE45B3DC2007CB8A163BF05"
+                    + "98DA48361C55D39A69163FA8FD24CF5F83655D23DCA3AD961C62F356208552BB"
+                    + "9ED529077096966D670C354E4ABC9804F1746C08CA237327FFFFFFFFFFFFFFFF";
+            break;
+        case 2048:
+            hex = "FFFFFFFFFFFFFFFFC90FDAA22168C234C4C6628B80DC1CD129024E088A67CC74"
+                    + "020BBEA63B139B22514A08798E3404DDEF9519B3CD3A431B302B0A6DF25F1437"
+                    + "4FE1356D6D51C245E485B576625E7EC6F44C42E9A637ED6B0BFF5CB6F406B7ED"
+                    + "EE386BFB5A899FA5AE9F24117C4B1FE649286651ECE45B3DC2007CB8A163BF05"
+                    + "98DA48361C55D39A69163FA8FD24CF5F83655D23DCA3AD961C62F356208552BB"
+                    + "9ED529077096966D670C354E4ABC9804F1746C08CA18217C32905E462E36CE3B"
+                    + "E39E772C180E86039B2783A2EC07A28FB5C55DF06F4C52C9DE2BCBF695581718"
+                    + "3995497CEA956AE515D2261898FA051015728E5A8AACAA68FFFFFFFFFFFFFFFF";
+            break;
+        default:
+            throw new IllegalArgumentException( "No safe prime of " + bits
+                    + " bits; use 1024, 1536 or 2048" );
+        }
+        return new AdderInteger( new BigInteger( hex, 16 ) );
+    }
+
+    /**
+     * Return a number drawn uniformly from 0 to n - 1, reduced modulo n.
+     */
+    static AdderInteger random(Random random, AdderInteger n) {
+        BigInteger bound = n.bigintValue();
+        BigInteger t;
+        do
+            t = new BigInteger( bound.bitLength(), random );
+        while (t.compareTo( bound ) >= 0);
+        return new AdderInteger( t, bound );
+    }
+
+    /**
+     * Make a one-authority key pair of the given length, and the final keys
+     * that go with it, the way PublicKey.makePartialKey, genKeyPair and
+     * AdderKeyManipulator do but with numbers taken from the given generator.
+     * The final public key is also cached where BallotEncrypter looks for it.
+     * Return the partial public key.
+     */
+    static PublicKey keys(int bits, Random random, PublicKey[] publicKey,
+            PrivateKey[] privateKey) {
+        AdderInteger p = prime( bits );
+        AdderInteger q = p.subtract( AdderInteger.ONE ).divide(
+            AdderInteger.TWO );
+
+        AdderInteger t;
+        do
+            t = random( random, p );
+        while (t.compareTo( AdderInteger.ONE ) <= 0);
+        AdderInteger g = t.pow( AdderInteger.TWO );
+
+        AdderInteger a;
+        do
+            a = random( random, q );
+        while (a.compareTo( AdderInteger.ONE ) <= 0);
+        AdderInteger f = g.pow( a );
+
+        AdderInteger x = random( random, q );
+        PublicKey partialKey = new PublicKey( p, g, g.pow( x ), f );
+
+        /* With one authority the final secret is the constant of its polynomial. */
+        AdderInteger s = random( random, q );
+        publicKey[0] = new PublicKey( p, g, g.pow( s ), f );
+        privateKey[0] = new PrivateKey( p, g, s, f );
+        AdderKeyManipulator.setCachedKey( publicKey[0] );
+        return partialKey;
+    }
+
+    /**
+     * Encrypt choices as PublicKey.encrypt does, with randomness taken from
+     * the given generator.
+     */
+    static Vote encrypt(PublicKey key, List<AdderInteger> choices,
+            Random random) {
+        List<ElgamalCiphertext> ciphertexts = new ArrayList<ElgamalCiphertext>();
+        for (AdderInteger choice : choices) {
+            AdderInteger r = random( random, key.getQ() );
+            ciphertexts.add( new ElgamalCiphertext( key.getG().pow( r ), key
+                    .getH().pow( r ).multiply( key.getF().pow( choice ) ), r,
+                key.getP() ) );
+        }
+        return new Vote( ciphertexts );
+    }
+
+    /**
+     * Return the choices of a race with the given candidate chosen.
+     */
+    static List<AdderInteger> choices(int chosen, int choices) {
+        List<AdderInteger> ret = new ArrayList<AdderInteger>();
+        for (int i = 0; i < choices; i++)
+            ret.add( i == chosen ? AdderInteger.ONE : AdderInteger.ZERO );
+        return ret;
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random( seed );
+
+        PublicKey[] publicKey = new PublicKey[1];
+        PrivateKey[] privateKey = new PrivateKey[1];
+        _partialKey = keys( bits, random, publicKey, privateKey );
+        _publicKey = publicKey[0];
+        _privateKey = privateKey[0];
+
+        _choices = choices( 0, CHOICES );
+        _vote = encrypt( _publicKey, _choices, random );
+        _proof = new VoteProof();
+        _proof.compute( _vote, _publicKey, _choices, 0, 1 );
+
+        _election = new Election( _publicKey.getP() );
+        for (int i = 0; i < VOTES; i++)
+            _election.tally( encrypt( _publicKey, choices( random
+                    .nextInt( CHOICES ), CHOICES ), random ) );
+
+        ArrayList<ASExpression> ballot = new ArrayList<ASExpression>();
+        _raceGroups = new ArrayList<List<String>>();
+        for (int race = 0; race < RACES; race++) {
+            int chosen = random.nextInt( CHOICES );
+            String[] group = new String[CHOICES];
+            for (int i = 0; i < CHOICES; i++) {
+                group[i] = "B" + (race * CHOICES + i);
+                ballot.add( new ListExpression( StringExpression
+                        .makeString( group[i] ), StringExpression
+                        .makeString( i == chosen ? "1" : "0" ) ) );
+            }
+            _raceGroups.add( Arrays.asList( group ) );
+        }
+        _ballot = new ListExpression( ballot );
+
+        BallotEncrypter.SINGLETON.setParallel( false );
+        BallotEncrypter.SINGLETON.setPrecompute( false );
+    }
+
+    @Benchmark
+    public PrivateKey keyGeneration() {
+        return PublicKey.makePartialKey( _partialKey.getP() ).genKeyPair();
+    }
+
+    @Benchmark
+    public Vote encrypt() {
+        return _publicKey.encrypt( _choices );
+    }
+
+    @Benchmark
+    public VoteProof voteProofCompute() {
+        VoteProof proof = new VoteProof();
+        proof.compute( _vote, _publicKey, _choices, 0, 1 );
+        return proof;
+    }
+
+    @Benchmark
+    public boolean voteProofVerify() {
+        return _proof.verify( _vote, _publicKey, 0, 1 );
+    }
+
+    @Benchmark
+    public List<AdderInteger> finalSum() {
+        /* A tallier's work for one race: partially decrypt, then find the counts. */
+        Vote sum = _election.sumVotes();
+        List<List<AdderInteger>> partialSums = new ArrayList<List<AdderInteger>>();
+        partialSums.add( _privateKey.partialDecrypt( sum ) );
+        List<AdderInteger> coeffs = new ArrayList<AdderInteger>();
+        coeffs.add( new AdderInteger( 0 ) );
+        return _election.getFinalSum( partialSums, coeffs, sum, _publicKey );
+    }
+
+    @Benchmark
+    public ListExpression encryptWithProof() {
+        return BallotEncrypter.SINGLETON.encryptWithProof( _ballot,
+            _raceGroups, _partialKey );
+    }
+
+    @Benchmark
+    public ListExpression encryptWithProofParallel() {
+        BallotEncrypter.SINGLETON.setParallel( true );
+        try {
+            return BallotEncrypter.SINGLETON.encryptWithProof( _ballot,
+                _raceGroups, _partialKey );
+        }
+        finally {
+            BallotEncrypter.SINGLETON.setParallel( false );
+        }
+    }
+
+    public static void main(String[] args) {
+        new Harness( args ).run( new AdderBenchmarks() );
+    }
+}
@@ -0,0 +1,105 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package crypto.bench;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+
+import auditorium.Key;
+import benchmark.Benchmark;
+import benchmark.Harness;
+import benchmark.Setup;
+import crypto.BallotEncrypter;
+import crypto.ElGamalCrypto;
+import crypto.Pair;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+
+/**
+ * Benchmarks for exponential ElGamal, as used to encrypt ballots when NIZKs
+ * are off: key generation, encrypting and decrypting one counter, and
+ * encrypting a whole ballot of {@link AdderBenchmarks#RACES} races of
+ * {@link AdderBenchmarks#CHOICES} candidates. ElGamalCrypto works in its one
+ * fixed 1536-bit group and draws on its own generator, so there are no key
+ * size or seed parameters here.<br>
+ * <br>
+ * Run with:<br>
+ * java crypto.bench.ElGamalBenchmarks [-wi n] [-i n] [-r ms] [regex]
+ * 
+ * @author Kyle Derr
+ */
+public class ElGamalBenchmarks {
+
+    private Key _publicKey;
+    private Key _privateKey;
+    private Pair<BigInteger> _cipher;
+    private ListExpression _ballot;
+
+    @Setup
+    public void setup() {
+        Pair<Key> keys = ElGamalCrypto.SINGLETON.generate( "bench" );
+        _publicKey = keys.get1();
+        _privateKey = keys.get2();
+        _cipher = ElGamalCrypto.SINGLETON.encrypt( _publicKey, BigInteger.ONE );
+        ElGamalCrypto.SINGLETON.clearRecentRandomness();
+
+        ArrayList<ASExpression> ballot = new ArrayList<ASExpression>();
+        for (int race = 0; race < AdderBenchmarks.RACES; race++)
+            for (int i = 0; i < AdderBenchmarks.CHOICES; i++)
+                ballot.add( new ListExpression( StringExpression.makeString( "B"
+                        + (race * AdderBenchmarks.CHOICES + i) ),
+                        StringExpression.makeString( i == 0 ? "1" : "0" ) ) );
+        _ballot = new ListExpression( ballot );
+
+        BallotEncrypter.SINGLETON.setPrecompute( false );
+    }
+
+    @Benchmark
+    public Pair<Key> generate() {
+        return ElGamalCrypto.SINGLETON.generate( "bench" );
+    }
+
+    @Benchmark
+    public Pair<BigInteger> encrypt() {
+        Pair<BigInteger> cipher = ElGamalCrypto.SINGLETON.encrypt( _publicKey,
+            BigInteger.ONE );
+        /* Don't let the kept randomness grow without bound. */
+        ElGamalCrypto.SINGLETON.clearRecentRandomness();
+        return cipher;
+    }
+
+    @Benchmark
+    public BigInteger decrypt() {
+        return ElGamalCrypto.SINGLETON.decrypt( _privateKey, _cipher );
+    }
+
+    @Benchmark
+    public ListExpression encryptBallot() {
+        return BallotEncrypter.SINGLETON.encrypt( _ballot, _publicKey );
+    }
+
+    public static void main(String[] args) {
+        new Harness( args ).run( new ElGamalBenchmarks() );
+    }
+}
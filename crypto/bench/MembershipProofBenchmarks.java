@@ -0,0 +1,107 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package crypto.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import benchmark.Benchmark;
+import benchmark.Harness;
+import benchmark.Param;
+import benchmark.Setup;
+import crypto.adder.AdderInteger;
+import crypto.adder.ElgamalCiphertext;
+import crypto.adder.MembershipProof;
+import crypto.adder.PrivateKey;
+import crypto.adder.PublicKey;
+
+/**
+ * Benchmarks for computing and verifying a membership proof, over domains of
+ * a range of sizes. A vote proof is made of one two-element membership proof
+ * per candidate plus one for the number of candidates chosen, whose domain
+ * grows with the race. The ciphertext encrypts the last element of the
+ * domain. Keys and the ciphertext are fixed by the parameters, as in
+ * {@link AdderBenchmarks}.<br>
+ * <br>
+ * Run with:<br>
+ * java crypto.bench.MembershipProofBenchmarks [-wi n] [-i n] [-r ms]
+ * [-p bits=1024,...] [-p domain=2,...] [-p seed=n,...] [regex]
+ * 
+ * @author Kyle Derr
+ */
+public class MembershipProofBenchmarks {
+
+    @Param( { "1024", "2048" })
+    public int bits;
+
+    @Param( { "2", "5", "10" })
+    public int domain;
+
+    @Param( { "20071015" })
+    public long seed;
+
+    private PublicKey _publicKey;
+    private List<AdderInteger> _domain;
+    private AdderInteger _value;
+    private ElgamalCiphertext _ciphertext;
+    private MembershipProof _proof;
+
+    @Setup
+    public void setup() {
+        Random random = new Random( seed );
+
+        PublicKey[] publicKey = new PublicKey[1];
+        AdderBenchmarks.keys( bits, random, publicKey, new PrivateKey[1] );
+        _publicKey = publicKey[0];
+
+        _domain = new ArrayList<AdderInteger>();
+        for (int i = 0; i < domain; i++)
+            _domain.add( new AdderInteger( i ) );
+        _value = _domain.get( domain - 1 );
+
+        List<AdderInteger> choices = new ArrayList<AdderInteger>();
+        choices.add( _value );
+        _ciphertext = AdderBenchmarks.encrypt( _publicKey, choices, random )
+                .getCipherList().get( 0 );
+
+        _proof = new MembershipProof();
+        _proof.compute( _ciphertext, _publicKey, _value, _domain );
+    }
+
+    @Benchmark
+    public MembershipProof compute() {
+        MembershipProof proof = new MembershipProof();
+        proof.compute( _ciphertext, _publicKey, _value, _domain );
+        return proof;
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return _proof.verify( _ciphertext, _publicKey, _domain );
+    }
+
+    public static void main(String[] args) {
+        new Harness( args ).run( new MembershipProofBenchmarks() );
+    }
+}
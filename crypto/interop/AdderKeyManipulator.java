@@ -80,13 +80,36 @@ public class AdderKeyManipulator {
 	 * @return the new PrivateKey
 	 */
 	public static PrivateKey generateFinalPrivateKey(PublicKey publicKey, PrivateKey privateKey){
+		return generateFinalPrivateKey(privateKey, generateFinalKeyShare(publicKey));
+	}
+
+	/**
+	 * Encrypts the secret behind the current final keys under the pre-generated public key.
+	 * Only the holder of the pre-generated private key can turn this back into the final
+	 * private key, so unlike that key it can be written to disk.
+	 *
+	 * @param publicKey - the pre-calculated public key.
+	 * @return the encrypted share
+	 */
+	public static ElgamalCiphertext generateFinalKeyShare(PublicKey publicKey){
+		return publicKey.encryptPoly(_poly.evaluate(new AdderInteger(0, publicKey.getQ())));
+	}
+
+	/**
+	 * Generates the "final" PrivateKey from the pre-generated one and an encrypted share
+	 * from {@link #generateFinalKeyShare(PublicKey)}, possibly made in an earlier run.
+	 *
+	 * @param privateKey - the pre-calculated private key.
+	 * @param share - the encrypted share.
+	 * @return the new PrivateKey
+	 */
+	public static PrivateKey generateFinalPrivateKey(PrivateKey privateKey, ElgamalCiphertext share){
 
 		/* Generate the final private key */
 		List<ElgamalCiphertext> ciphertexts = new ArrayList<ElgamalCiphertext>();
-        ElgamalCiphertext ciphertext = publicKey.encryptPoly(_poly.evaluate(new AdderInteger(0, publicKey.getQ())));
-		ciphertexts.add(ciphertext);
+		ciphertexts.add(share);
 		PrivateKey finalPrivKey = privateKey.getFinalPrivKey(ciphertexts);
 		
 		return finalPrivKey;
-	}	
+	}
 }
\ No newline at end of file
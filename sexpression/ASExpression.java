@@ -25,6 +25,10 @@ package sexpression;
 import java.io.ByteArrayInputStream;
 import java.io.CharArrayReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
@@ -108,15 +112,9 @@ public abstract class ASExpression {
      * @return This method returns the SHA-1 hash of the given byte array.
      */
     public static byte[] computeSHA1(byte[] expression) {
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance( "SHA" );
-            md.update( expression );
-        }
-        catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException( "SHA-1 not supported on this platform" );
-        }
-        return md.digest();
+        MessageDigest md = takeDigest( _sha1, "SHA" );
+        md.update( expression );
+        return finishDigest( _sha1, md );
     }
 
     /**
@@ -127,19 +125,69 @@ public abstract class ASExpression {
      * @return This method returns the SHA-256 hash of the given byte array.
      */
     public static byte[] computeSHA256(byte[] expression) {
-        MessageDigest md = null;
+        MessageDigest md = takeDigest( _sha256, "SHA-256" );
+        md.update( expression );
+        return finishDigest( _sha256, md );
+    }
+
+    /**
+     * Digests are expensive to look up, so each thread keeps one of each kind.
+     * A digest is taken out of its slot while it is in use, so that hashing
+     * which happens in the middle of hashing (a pattern building its verbatim
+     * form interns a string, say) gets a fresh one instead of corrupting it.
+     */
+    private static final ThreadLocal<MessageDigest> _sha1 = new ThreadLocal<MessageDigest>();
+    private static final ThreadLocal<MessageDigest> _sha256 = new ThreadLocal<MessageDigest>();
+    private static final ThreadLocal<ByteBuffer> _hashBuffer = new ThreadLocal<ByteBuffer>();
+
+    private static final int HASH_BUFFER_SIZE = 8 * 1024;
+
+    private static MessageDigest takeDigest(ThreadLocal<MessageDigest> slot,
+            String algorithm) {
+        MessageDigest md = slot.get();
+        if (md != null) {
+            slot.set( null );
+            return md;
+        }
         try {
-            md = MessageDigest.getInstance( "SHA-256" );
-            md.update( expression );
+            return MessageDigest.getInstance( algorithm );
         }
         catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException( "SHA-256 not supported on this platform" );
+            throw new RuntimeException( algorithm
+                    + " not supported on this platform" );
         }
-        return md.digest();
     }
 
+    private static byte[] finishDigest(ThreadLocal<MessageDigest> slot,
+            MessageDigest md) {
+        byte[] ret = md.digest();
+        slot.set( md );
+        return ret;
+    }
+
+    /**
+     * The size of the buffers that expressions are streamed through by
+     * writeTo().
+     */
+    public static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> _directBuffer = new ThreadLocal<ByteBuffer>() {
+
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect( WRITE_BUFFER_SIZE );
+        }
+    };
+
+    private static final ThreadLocal<ByteBuffer> _heapBuffer = new ThreadLocal<ByteBuffer>() {
+
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate( WRITE_BUFFER_SIZE );
+        }
+    };
+
     // lazy eval save
-    private byte[] _hash = null;
+    private byte[] _hash = null;
+    private byte[] _hash256 = null;
     private byte[] _verbatim = null;
     private String _string = null;
 
@@ -220,11 +268,172 @@ public abstract class ASExpression {
      */
     public byte[] toVerbatim() {
         if (_verbatim == null) {
-            _verbatim = toVerbatimHelp().getBytes();
+            _verbatim = encodeVerbatim();
         }
         return _verbatim;
     }
 
+    /**
+     * Get the length of this expression's verbatim form without building it.
+     * 
+     * @return This method returns the number of bytes that toVerbatim() would
+     *         return.
+     */
+    public int verbatimLength() {
+        return toVerbatim().length;
+    }
+
+    /**
+     * Write this expression, in verbatim form, into a buffer.
+     * 
+     * @param buf
+     *            Write into this buffer, starting at its position. It must
+     *            have at least verbatimLength() bytes remaining.
+     * @throws BufferOverflowException
+     *             This method throws if the buffer doesn't have room.
+     */
+    public void writeTo(ByteBuffer buf) {
+        if (buf.remaining() < verbatimLength())
+            throw new BufferOverflowException();
+        try {
+            encodeTo( buf, null );
+        }
+        catch (IOException e) {
+            // Can't happen, nothing is written to a channel.
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Write this expression, in verbatim form, to a channel. The expression is
+     * streamed through a reusable direct buffer, so no array the size of the
+     * whole expression is built (unless one has been built already).
+     * 
+     * @param channel
+     *            Write to this channel.
+     * @throws IOException
+     *             This method throws if the channel's write method throws.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        if (_verbatim != null) {
+            ByteBuffer buf = ByteBuffer.wrap( _verbatim );
+            while (buf.hasRemaining())
+                channel.write( buf );
+            return;
+        }
+        ByteBuffer buf = _directBuffer.get();
+        buf.clear();
+        encodeTo( buf, channel );
+        drain( buf, channel );
+    }
+
+    /**
+     * Write this expression, in verbatim form, to a stream. This streams the
+     * expression in the same way as writeTo(WritableByteChannel).
+     * 
+     * @param stream
+     *            Write to this stream.
+     * @throws IOException
+     *             This method throws if the stream's write method throws.
+     */
+    public void writeTo(final OutputStream stream) throws IOException {
+        if (_verbatim != null) {
+            stream.write( _verbatim );
+            return;
+        }
+        WritableByteChannel channel = new WritableByteChannel() {
+
+            public int write(ByteBuffer src) throws IOException {
+                int n = src.remaining();
+                stream.write( src.array(), src.arrayOffset() + src.position(),
+                    n );
+                src.position( src.limit() );
+                return n;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {}
+        };
+        ByteBuffer buf = _heapBuffer.get();
+        buf.clear();
+        encodeTo( buf, channel );
+        drain( buf, channel );
+    }
+
+    /**
+     * Build the verbatim form of this expression. Types which can write
+     * themselves with encode() should build it from that, into an array of
+     * exactly the right size.
+     * 
+     * @return This method returns a new array holding the verbatim form.
+     */
+    protected byte[] encodeVerbatim() {
+        return toVerbatimHelp().getBytes();
+    }
+
+    /**
+     * Write the verbatim form of this expression into a buffer, handing the
+     * buffer to a channel whenever it fills up. Types whose verbatim form can
+     * be big should override this to write their parts directly.
+     * 
+     * @param buf
+     *            Write into this buffer.
+     * @param channel
+     *            Drain the buffer to this channel when it is full. If this is
+     *            null, the buffer must be big enough.
+     * @throws IOException
+     *             This method throws if the channel's write method throws.
+     */
+    protected void encode(ByteBuffer buf, WritableByteChannel channel)
+            throws IOException {
+        byte[] verbatim = toVerbatim();
+        put( buf, channel, verbatim, 0, verbatim.length );
+    }
+
+    /**
+     * Write this expression into a buffer, using the verbatim form if it has
+     * already been built.
+     */
+    final void encodeTo(ByteBuffer buf, WritableByteChannel channel)
+            throws IOException {
+        if (_verbatim != null)
+            put( buf, channel, _verbatim, 0, _verbatim.length );
+        else
+            encode( buf, channel );
+    }
+
+    static void put(ByteBuffer buf, WritableByteChannel channel, byte b)
+            throws IOException {
+        if (!buf.hasRemaining())
+            drain( buf, channel );
+        buf.put( b );
+    }
+
+    static void put(ByteBuffer buf, WritableByteChannel channel, byte[] bytes,
+            int off, int len) throws IOException {
+        while (len > buf.remaining()) {
+            int n = buf.remaining();
+            buf.put( bytes, off, n );
+            off += n;
+            len -= n;
+            drain( buf, channel );
+        }
+        buf.put( bytes, off, len );
+    }
+
+    private static void drain(ByteBuffer buf, WritableByteChannel channel)
+            throws IOException {
+        if (channel == null)
+            throw new BufferOverflowException();
+        buf.flip();
+        while (buf.hasRemaining())
+            channel.write( buf );
+        buf.clear();
+    }
+
     /**
      * This method computes the SHA1 hash of the verbatim representation of this
      * S-Expression.
@@ -233,15 +442,68 @@ public abstract class ASExpression {
      */
     public byte[] getSHA1() {
         if (_hash == null) {
-            _hash = computeSHA1( toVerbatim() );
+            _hash = digest( _sha1, "SHA" );
         }
         return _hash;
     }
 
-
+    /**
+     * This method computes the SHA-256 hash of the verbatim representation of
+     * this S-Expression.
+     * 
+     * @return This method returns the SHA-256 hash of this sexpression.
+     */
     public byte[] getSHA256(){
-        return computeSHA256(toVerbatim());
+        if (_hash256 == null) {
+            _hash256 = digest( _sha256, "SHA-256" );
+        }
+        return _hash256;
+    }
+
+    /**
+     * Hash the verbatim form of this expression. If the verbatim form hasn't
+     * been built, the tree is walked and fed to the digest through a small
+     * buffer instead of building it; subexpressions whose verbatim forms have
+     * been built are fed from those.
+     */
+    private byte[] digest(ThreadLocal<MessageDigest> slot, String algorithm) {
+        final MessageDigest md = takeDigest( slot, algorithm );
+        if (_verbatim != null) {
+            md.update( _verbatim );
+            return finishDigest( slot, md );
+        }
+
+        ByteBuffer buf = _hashBuffer.get();
+        if (buf == null)
+            buf = ByteBuffer.allocate( HASH_BUFFER_SIZE );
+        else
+            _hashBuffer.set( null );
+        buf.clear();
+
+        WritableByteChannel channel = new WritableByteChannel() {
+
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                md.update( src );
+                return n;
+            }
 
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {}
+        };
+        try {
+            encodeTo( buf, channel );
+            drain( buf, channel );
+        }
+        catch (IOException e) {
+            // Can't happen, the digest channel doesn't throw.
+            throw new RuntimeException( e );
+        }
+        _hashBuffer.set( buf );
+        return finishDigest( slot, md );
     }
 
     /**
@@ -22,6 +22,9 @@
 
 package sexpression;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -45,6 +48,7 @@ public class ListExpression extends ASExpression implements
     public static final ListExpression EMPTY = new ListExpression();
 
     private ASExpression[] _list;
+    private int _verbatimLength = -1;
 
     private ListExpression() {
         _list = new ASExpression[0];
@@ -130,6 +134,42 @@ public class ListExpression extends ASExpression implements
         return buf;
     }
 
+    /**
+     * @see sexpression.ASExpression#verbatimLength()
+     */
+    @Override
+    public int verbatimLength() {
+        if (_verbatimLength < 0) {
+            int len = 2;
+            for (ASExpression ase : _list)
+                len += ase.verbatimLength();
+            _verbatimLength = len;
+        }
+        return _verbatimLength;
+    }
+
+    /**
+     * @see sexpression.ASExpression#encodeVerbatim()
+     */
+    @Override
+    protected byte[] encodeVerbatim() {
+        byte[] verbatim = new byte[verbatimLength()];
+        writeTo( ByteBuffer.wrap( verbatim ) );
+        return verbatim;
+    }
+
+    /**
+     * @see sexpression.ASExpression#encode(ByteBuffer, WritableByteChannel)
+     */
+    @Override
+    protected void encode(ByteBuffer buf, WritableByteChannel channel)
+            throws IOException {
+        put( buf, channel, (byte) '(' );
+        for (ASExpression ase : _list)
+            ase.encodeTo( buf, channel );
+        put( buf, channel, (byte) ')' );
+    }
+
     /**
      * @see sexpression.ASExpression#match(sexpression.ASExpression)
      */
@@ -24,9 +24,15 @@ package sexpression;
 
 import sexpression.ByteArrayBuffer.ByteArray;
 import sexpression.stream.Base64;
-import java.lang.ref.WeakReference;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A ByteStringExpression is an SExpression. In particular, a
@@ -36,11 +42,17 @@ import java.util.HashMap;
  */
 public class StringExpression extends ASExpression {
 
+    /**
+     * Key the intern table on the bytes themselves. The hash is a cheap one,
+     * computed once; equal hashes are confirmed by comparing the bytes.
+     */
     public static class BytesBox {
         private final byte[] _bytes;
+        private final int _hash;
 
         private BytesBox(byte[] bytes) {
             _bytes = bytes;
+            _hash = Arrays.hashCode(bytes);
         }
 
         @Override
@@ -48,18 +60,33 @@ public class StringExpression extends ASExpression {
             if (!(o instanceof BytesBox))
                 return false;
 
-            return Arrays.equals(_bytes, ((BytesBox) o)._bytes);
+            BytesBox other = (BytesBox) o;
+            return _hash == other._hash && Arrays.equals(_bytes, other._bytes);
         }
 
         @Override
         public int hashCode() {
-            return (((int) _bytes[0]) << 24) | (((int) _bytes[1]) << 16)
-                    | (((int) _bytes[2]) << 8) | (int) _bytes[3];
+            return _hash;
+        }
+    }
+
+    /**
+     * An intern table entry. It remembers its key so that it can be taken out
+     * of the table once its expression has been collected.
+     */
+    private static class Interned extends WeakReference<StringExpression> {
+        private final BytesBox _key;
+
+        private Interned(BytesBox key, StringExpression referent) {
+            super(referent, _collected);
+            _key = key;
         }
     }
 
     public static final StringExpression EMPTY = new StringExpression();
-    public static final HashMap<BytesBox, WeakReference<StringExpression>> _interned = new HashMap<BytesBox, WeakReference<StringExpression>>();
+
+    private static final ReferenceQueue<StringExpression> _collected = new ReferenceQueue<StringExpression>();
+    private static final ConcurrentHashMap<BytesBox, Interned> _interned = new ConcurrentHashMap<BytesBox, Interned>();
 
     /**
      * Ask for an expression that represents the given string. This method
@@ -88,18 +115,46 @@ public class StringExpression extends ASExpression {
      *         given byte string.
      */
     public static StringExpression makeString(byte[] bytes) {
-        BytesBox hash = new BytesBox(ASExpression.computeSHA1(bytes));
-        synchronized (_interned) {
-            if (_interned.containsKey(hash)
-                    && _interned.get(hash).get() != null)
-                return _interned.get(hash).get();
+        expunge();
+        BytesBox key = new BytesBox(bytes);
+        while (true) {
+            Interned entry = _interned.get(key);
+            if (entry != null) {
+                StringExpression interned = entry.get();
+                if (interned != null)
+                    return interned;
+            }
 
             StringExpression retval = new StringExpression(bytes);
-            _interned.put(new BytesBox(ASExpression.computeSHA1(bytes)),
-                    new WeakReference<StringExpression>(retval));
-            return retval;
+            Interned fresh = new Interned(key, retval);
+            if (entry == null ? _interned.putIfAbsent(key, fresh) == null
+                    : _interned.replace(key, entry, fresh))
+                return retval;
+            // Another thread got there first; use its expression.
+        }
+    }
+
+    /**
+     * Take the entries for expressions that have been collected out of the
+     * intern table.
+     */
+    private static void expunge() {
+        Reference<? extends StringExpression> ref;
+        while ((ref = _collected.poll()) != null) {
+            Interned entry = (Interned) ref;
+            _interned.remove(entry._key, entry);
         }
+    }
 
+    /**
+     * THIS METHOD IS ONLY USED FOR TESTING.
+     * 
+     * @return This method returns the number of entries in the intern table,
+     *         after taking out those whose expressions have been collected.
+     */
+    public static int TESTgetInternedCount() {
+        expunge();
+        return _interned.size();
     }
 
     private byte[] _bytes;
@@ -168,6 +223,53 @@ public class StringExpression extends ASExpression {
         return buf;
     }
 
+    /**
+     * @see sexpression.ASExpression#verbatimLength()
+     */
+    @Override
+    public int verbatimLength() {
+        return digits(_bytes.length) + 1 + _bytes.length;
+    }
+
+    /**
+     * @see sexpression.ASExpression#encodeVerbatim()
+     */
+    @Override
+    protected byte[] encodeVerbatim() {
+        byte[] verbatim = new byte[verbatimLength()];
+        writeTo(ByteBuffer.wrap(verbatim));
+        return verbatim;
+    }
+
+    /**
+     * @see sexpression.ASExpression#encode(ByteBuffer, WritableByteChannel)
+     */
+    @Override
+    protected void encode(ByteBuffer buf, WritableByteChannel channel)
+            throws IOException {
+        int len = _bytes.length;
+        for (int div = pow10(digits(len) - 1); div > 0; div /= 10)
+            put(buf, channel, (byte) ('0' + (len / div) % 10));
+        put(buf, channel, (byte) ':');
+        put(buf, channel, _bytes, 0, len);
+    }
+
+    private static int digits(int n) {
+        int digits = 1;
+        while (n >= 10) {
+            n /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int pow10(int n) {
+        int ret = 1;
+        while (n-- > 0)
+            ret *= 10;
+        return ret;
+    }
+
     /**
      * @see sexpression.ASExpression#match(sexpression.ASExpression)
      */
@@ -231,15 +333,6 @@ public class StringExpression extends ASExpression {
         return _bytes.length;
     }
 
-    /**
-     * @see java.lang.Object#finalize()
-     */
-
-    @Override
-    public void finalize() {
-        _interned.remove(new BytesBox(_bytes));
-    }
-    
     /**
      * 
      */
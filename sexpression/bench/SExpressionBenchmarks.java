@@ -0,0 +1,281 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import auditorium.MessagePointer;
+import auditorium.loganalysis.Dag;
+import benchmark.Benchmark;
+import benchmark.Harness;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import sexpression.stream.ASEInputStreamReader;
+import sexpression.stream.ASEWriter;
+import sexpression.stream.Base64;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+/**
+ * Benchmarks for the s-expression wire format hot path. The payload is shaped
+ * like a committed encrypted ballot with NIZKs: a list of races, each an
+ * ElGamal ciphertext carrying a membership proof, every number a 1024-bit
+ * adder-integer. It is wrapped in a signed auditorium announcement pointing at
+ * a handful of earlier messages, so the patterns used here are the ones the
+ * auditorium and log analysis code actually match against. Numbers come from
+ * a fixed seed, so every run sees the same bytes.<br>
+ * <br>
+ * Run with:<br>
+ * java sexpression.bench.SExpressionBenchmarks [-wi n] [-i n] [-r ms] [regex]
+ * 
+ * @author Kyle Derr
+ */
+public class SExpressionBenchmarks {
+
+    public static final long SEED = 20071015L;
+    public static final int RACES = 10;
+    public static final int CHOICES = 3;
+    public static final int BITS = 1024;
+    public static final int POINTERS = 4;
+
+    /**
+     * Count and discard whatever is written.
+     */
+    private static class NullOutputStream extends OutputStream {
+
+        long written = 0;
+
+        public void write(int b) {
+            written++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            written += len;
+        }
+    }
+
+    private final Random _random;
+    private final BigInteger _modulus;
+
+    private final ASExpression _message;
+    private final ASExpression _pristine;
+    private final ASExpression _pointer;
+    private final ASExpression _namedPointer;
+    private final byte[] _verbatim;
+    private final String _readable;
+    private final String _base64;
+    private final ByteBuffer _buffer;
+    private final NullOutputStream _sink;
+    private final ASEWriter _writer;
+
+    public SExpressionBenchmarks() {
+        _random = new Random( SEED );
+        _modulus = BigInteger.probablePrime( BITS, _random );
+
+        _message = message();
+        _verbatim = _message.toVerbatim();
+
+        /*
+         * Build the same message again for the serialization benchmarks, and
+         * never ask it for its verbatim form, so that it isn't cached.
+         */
+        _random.setSeed( SEED );
+        BigInteger.probablePrime( BITS, _random );
+        _pristine = message();
+
+        _pointer = pointer();
+        _namedPointer = ASExpression
+                .make( "(ptr %node:#string %seq:#string %hash:#string)" );
+        _readable = _message.toString();
+        _base64 = Base64.encodeBytes( _verbatim );
+        _buffer = ByteBuffer.allocate( _verbatim.length );
+        _sink = new NullOutputStream();
+        _writer = new ASEWriter( _sink );
+    }
+
+    private ASExpression integer() {
+        return new ListExpression( StringExpression
+                .makeString( "adder-integer" ), StringExpression
+                .makeString( new BigInteger( BITS, _random ).mod( _modulus )
+                        .toString() ), StringExpression.makeString( _modulus
+                .toString() ) );
+    }
+
+    private ASExpression integers(int n) {
+        ArrayList<ASExpression> list = new ArrayList<ASExpression>();
+        for (int i = 0; i < n; i++)
+            list.add( integer() );
+        return new ListExpression( list );
+    }
+
+    private ASExpression race() {
+        ArrayList<ASExpression> choices = new ArrayList<ASExpression>();
+        for (int i = 0; i < CHOICES; i++) {
+            ASExpression proof = new ListExpression( StringExpression
+                    .makeString( "membership-proof" ), integer(), integers( 2 ),
+                    integers( 2 ), integers( 2 ), integers( 2 ) );
+            choices.add( new ListExpression( StringExpression
+                    .makeString( "elgamal-ciphertext" ), integer(), integer(),
+                    integer(), proof ) );
+        }
+        return new ListExpression( StringExpression.makeString( "B"
+                + _random.nextInt( 1000 ) ), new ListExpression( choices ) );
+    }
+
+    private ASExpression pointer() {
+        byte[] hash = new byte[20];
+        _random.nextBytes( hash );
+        return new ListExpression( StringExpression.makeString( "ptr" ),
+                StringExpression.makeString( "" + _random.nextInt( 100 ) ),
+                StringExpression.makeString( "" + _random.nextInt( 100000 ) ),
+                StringExpression.makeString( hash ) );
+    }
+
+    private ASExpression message() {
+        ArrayList<ASExpression> races = new ArrayList<ASExpression>();
+        for (int i = 0; i < RACES; i++)
+            races.add( race() );
+        ASExpression ballot = new ListExpression( StringExpression
+                .makeString( "commit-ballot" ), StringExpression
+                .makeString( "12345" ), new ListExpression( races ) );
+
+        ArrayList<ASExpression> pointers = new ArrayList<ASExpression>();
+        for (int i = 0; i < POINTERS; i++)
+            pointers.add( pointer() );
+
+        byte[] signature = new byte[128];
+        _random.nextBytes( signature );
+        ASExpression key = new ListExpression( StringExpression
+                .makeString( "key" ), StringExpression.makeString( "1" ),
+                StringExpression.makeString( "verification" ), StringExpression
+                        .makeString( _modulus.toString() ), StringExpression
+                        .makeString( "65537" ) );
+        ASExpression cert = new ListExpression( StringExpression
+                .makeString( "cert" ), new ListExpression( StringExpression
+                .makeString( "signature" ), StringExpression.makeString( "0" ),
+                StringExpression.makeString( signature ), key ) );
+        ASExpression signed = new ListExpression( StringExpression
+                .makeString( "signature" ), StringExpression.makeString( "1" ),
+                StringExpression.makeString( signature ), new ListExpression(
+                        StringExpression.makeString( "succeeds" ),
+                        new ListExpression( pointers ), ballot ) );
+
+        return new ListExpression( StringExpression.makeString( "announce" ),
+                new ListExpression( StringExpression.makeString( "host" ),
+                        StringExpression.makeString( "1" ), StringExpression
+                                .makeString( "192.168.1.101" ),
+                        StringExpression.makeString( "9700" ) ),
+                StringExpression.makeString( "42" ), new ListExpression(
+                        StringExpression.makeString( "signed-message" ), cert,
+                        signed ) );
+    }
+
+    /**
+     * @return This method returns the size of the benchmark message in its
+     *         verbatim form.
+     */
+    public int getMessageSize() {
+        return _verbatim.length;
+    }
+
+    @Benchmark
+    public ASExpression readVerbatim() throws IOException,
+            InvalidVerbatimStreamException {
+        return new ASEInputStreamReader( new ByteArrayInputStream( _verbatim ) )
+                .read();
+    }
+
+    @Benchmark
+    public Object writeASE() throws IOException {
+        _writer.writeASE( _pristine );
+        return _sink;
+    }
+
+    @Benchmark
+    public ByteBuffer writeToBuffer() {
+        _buffer.clear();
+        _pristine.writeTo( _buffer );
+        return _buffer;
+    }
+
+    @Benchmark
+    public byte[] toVerbatimHelp() {
+        return _pristine.toVerbatimHelp().getBytes();
+    }
+
+    @Benchmark
+    public ASExpression parseReadable() {
+        return ASExpression.make( _readable );
+    }
+
+    @Benchmark
+    public ASExpression matchPointer() {
+        return MessagePointer.PATTERN.match( _pointer );
+    }
+
+    @Benchmark
+    public HashMap<String, ASExpression> namedMatchPointer() {
+        return _namedPointer.namedMatch( _pointer );
+    }
+
+    @Benchmark
+    public ASExpression matchAnnouncement() {
+        return Dag.PATTERN.match( _message );
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64.encodeBytes( _verbatim );
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.decode( _base64 );
+    }
+
+    @Benchmark
+    public byte[] sha1Tree() {
+        /* A new root, so the hash isn't cached; its children aren't either. */
+        return new ListExpression( ((ListExpression) _pristine).getArray() )
+                .getSHA1();
+    }
+
+    @Benchmark
+    public byte[] sha1Verbatim() {
+        return ASExpression.computeSHA1( _verbatim );
+    }
+
+    public static void main(String[] args) {
+        SExpressionBenchmarks benchmarks = new SExpressionBenchmarks();
+        System.out.println( "message: " + benchmarks.getMessageSize()
+                + " bytes" );
+        new Harness( args ).run( benchmarks );
+    }
+}
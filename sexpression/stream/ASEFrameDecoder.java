@@ -0,0 +1,297 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import sexpression.ASExpression;
+
+/**
+ * The ASEFrameDecoder pulls whole ASExpressions out of a byte stream that
+ * arrives in arbitrary chunks (for instance, whatever a non-blocking socket
+ * channel happened to have ready). Unlike {@link ASEInputStreamReader}, which
+ * blocks until an expression is complete, this class buffers partial input
+ * and only hands back an expression once every byte of it has been fed in.<br>
+ * <br>
+ * Expressions are expected back to back, in either verbatim or
+ * base64/canonical form, exactly as {@link ASEWriter} produces them.
+ * 
+ * @author Kyle
+ * 
+ */
+public class ASEFrameDecoder {
+
+    private byte[] _buf;
+    private int _start;
+    private int _end;
+
+    /**
+     * Construct a decoder with a small initial buffer. The buffer grows to fit
+     * the largest expression seen.
+     */
+    public ASEFrameDecoder() {
+        _buf = new byte[4096];
+        _start = 0;
+        _end = 0;
+    }
+
+    /**
+     * Append the remaining bytes of a buffer to the pending input.
+     * 
+     * @param bytes
+     *            Consume everything between this buffer's position and its
+     *            limit.
+     */
+    public void feed(ByteBuffer bytes) {
+        int len = bytes.remaining();
+        ensureCapacity( len );
+        bytes.get( _buf, _end, len );
+        _end += len;
+    }
+
+    /**
+     * Append bytes to the pending input.
+     * 
+     * @param bytes
+     *            Take bytes from this array.
+     * @param off
+     *            Start at this offset.
+     * @param len
+     *            Take this many bytes.
+     */
+    public void feed(byte[] bytes, int off, int len) {
+        ensureCapacity( len );
+        System.arraycopy( bytes, off, _buf, _end, len );
+        _end += len;
+    }
+
+    /**
+     * Parse the next expression off the pending input, if all of it has
+     * arrived.
+     * 
+     * @return This method returns the next complete expression, or null if more
+     *         bytes are needed before one can be returned.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if the pending input cannot be the start
+     *             of a verbatim expression. The decoder should be discarded
+     *             after this happens, as there is no way to resynchronize.
+     */
+    public ASExpression next() throws InvalidVerbatimStreamException {
+        int end = frameEnd();
+        if (end < 0)
+            return null;
+
+        ASExpression result;
+        try {
+            result = new ASEInputStreamReader( new ByteArrayInputStream( _buf,
+                    _start, end - _start ) ).read();
+        }
+        catch (IOException e) {
+            // The frame is complete and in memory, so this can't happen.
+            throw new InvalidVerbatimStreamException( "truncated frame: "
+                    + e.getMessage() );
+        }
+
+        _start = end;
+        if (_start == _end) {
+            _start = 0;
+            _end = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Take the bytes of the next expression off the pending input, if all of
+     * it has arrived, without parsing it. This is useful when only the
+     * verbatim form is wanted (to hash it, say).
+     * 
+     * @return This method returns a copy of the next complete expression's
+     *         bytes, exactly as they were fed in, or null if more bytes are
+     *         needed.
+     * @throws InvalidVerbatimStreamException
+     *             This method throws if the pending input cannot be the start
+     *             of a verbatim expression.
+     */
+    public byte[] nextFrame() throws InvalidVerbatimStreamException {
+        int end = frameEnd();
+        if (end < 0)
+            return null;
+
+        byte[] frame = new byte[end - _start];
+        System.arraycopy( _buf, _start, frame, 0, frame.length );
+
+        _start = end;
+        if (_start == _end) {
+            _start = 0;
+            _end = 0;
+        }
+        return frame;
+    }
+
+    /**
+     * Get the number of bytes which have been fed in but not yet returned as
+     * part of an expression.
+     * 
+     * @return This method returns the number of pending bytes.
+     */
+    public int pending() {
+        return _end - _start;
+    }
+
+    /**
+     * Take every pending byte out of the decoder, leaving it empty. This is
+     * useful when the rest of the stream has to be decoded some other way
+     * first (decompressed, say) and fed back in.
+     * 
+     * @return This method returns a copy of the pending bytes.
+     */
+    public byte[] takePending() {
+        byte[] pending = new byte[_end - _start];
+        System.arraycopy( _buf, _start, pending, 0, pending.length );
+        _start = 0;
+        _end = 0;
+        return pending;
+    }
+
+    /**
+     * Find where the first pending expression ends.
+     * 
+     * @return This method returns the offset one past the last byte of the
+     *         first pending expression, or -1 if it is not complete yet.
+     */
+    private int frameEnd() throws InvalidVerbatimStreamException {
+        if (_start == _end)
+            return -1;
+
+        // base64/canonical case: everything up to the closing brace.
+        if (_buf[_start] == '{') {
+            for (int i = _start + 1; i < _end; i++)
+                if (_buf[i] == '}')
+                    return i + 1;
+            return -1;
+        }
+
+        return scan( _start );
+    }
+
+    /**
+     * Skip over one verbatim expression.
+     * 
+     * @param pos
+     *            The expression starts here.
+     * @return This method returns the offset just past the expression, or -1 if
+     *         the expression runs off the end of the pending input.
+     */
+    private int scan(int pos) throws InvalidVerbatimStreamException {
+        if (pos >= _end)
+            return -1;
+
+        switch (_buf[pos]) {
+        case '(':
+            pos++;
+            while (pos >= 0 && pos < _end) {
+                if (_buf[pos] == ')')
+                    return pos + 1;
+                pos = scan( pos );
+            }
+            return -1;
+        case '#':
+            if (pos + 1 >= _end)
+                return -1;
+            switch (_buf[pos + 1]) {
+            case ASEInputStreamReader.LIST:
+                return scan( pos + 2 );
+            case ASEInputStreamReader.ANY:
+            case ASEInputStreamReader.STRING:
+            case ASEInputStreamReader.WILDCARD:
+            case ASEInputStreamReader.NOTHING:
+            case ASEInputStreamReader.NOMATCH:
+                return pos + 2;
+            }
+            throw new InvalidVerbatimStreamException(
+                    "# wasn't followed by an acceptable byte" );
+        case '%':
+            int name = scanString( pos + 1 );
+            if (name < 0)
+                return -1;
+            return scan( name );
+        }
+
+        return scanString( pos );
+    }
+
+    /**
+     * Skip over one [len]:[bytes] string.
+     * 
+     * @param pos
+     *            The string's length prefix starts here.
+     * @return This method returns the offset just past the string, or -1 if
+     *         the string runs off the end of the pending input.
+     */
+    private int scanString(int pos) throws InvalidVerbatimStreamException {
+        if (pos >= _end)
+            return -1;
+        if (!Character.isDigit( _buf[pos] ))
+            throw new InvalidVerbatimStreamException( "read: '"
+                    + (char) _buf[pos] + "' as " + _buf[pos]
+                    + ": expected to be a number, '(', '#', or '%'." );
+
+        long len = 0;
+        while (pos < _end && _buf[pos] != ':') {
+            if (!Character.isDigit( _buf[pos] ))
+                throw new InvalidVerbatimStreamException(
+                        "string length contains '" + (char) _buf[pos] + "'" );
+            len = len * 10 + (_buf[pos] - '0');
+            if (len > Integer.MAX_VALUE)
+                throw new InvalidVerbatimStreamException(
+                        "string length is too large" );
+            pos++;
+        }
+        if (pos >= _end)
+            return -1;
+
+        long end = pos + 1 + len;
+        if (end > _end)
+            return -1;
+        return (int) end;
+    }
+
+    /**
+     * Make room for more input, compacting away consumed bytes before growing.
+     */
+    private void ensureCapacity(int len) {
+        if (_end + len <= _buf.length)
+            return;
+
+        int pending = _end - _start;
+        byte[] target = _buf;
+        if (pending + len > _buf.length)
+            target = new byte[Math.max( _buf.length * 2, pending + len )];
+        System.arraycopy( _buf, _start, target, 0, pending );
+        _buf = target;
+        _start = 0;
+        _end = pending;
+    }
+}
@@ -19,12 +19,13 @@
   * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
   * ACCESS OR USE OF THE SOFTWARE.
  */
-
+
 package sexpression.stream;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.List;
 
 import sexpression.ASExpression;
 
@@ -39,6 +40,7 @@ public class ASEWriter {
 
     private OutputStream _stream;
     private OutputStream _base64Stream;
+    private byte[] _gather;
 
     /**
      * @param out
@@ -70,7 +72,60 @@ public class ASEWriter {
      *             converted to a verbatim expression.
      */
     public void writeASE(ASExpression expression) throws IOException {
-        _stream.write( expression.toVerbatim() );
+        expression.writeTo( _stream );
+        _stream.flush();
+    }
+
+    /**
+     * Invoke this method to write expressions that have already been
+     * serialized in the verbatim format (for instance, several back to back
+     * expressions that should go out in one write).
+     * 
+     * @param verbatim
+     *            Write bytes from this array.
+     * @param off
+     *            Start at this offset.
+     * @param len
+     *            Write this many bytes.
+     * @throws IOException
+     *             This method throws if the decorated stream's write method
+     *             throws.
+     */
+    public void writeVerbatim(byte[] verbatim, int off, int len)
+            throws IOException {
+        _stream.write( verbatim, off, len );
+        _stream.flush();
+    }
+
+    /**
+     * Invoke this method to write several expressions that have already been
+     * serialized, back to back. Small expressions are gathered into a reusable
+     * buffer so that they go out in as few writes as possible.
+     * 
+     * @param verbatims
+     *            Write each of these, in order.
+     * @throws IOException
+     *             This method throws if the decorated stream's write method
+     *             throws.
+     */
+    public void writeVerbatim(List<byte[]> verbatims) throws IOException {
+        if (_gather == null)
+            _gather = new byte[ASExpression.WRITE_BUFFER_SIZE];
+        int pos = 0;
+        for (byte[] verbatim : verbatims) {
+            if (pos + verbatim.length > _gather.length && pos > 0) {
+                _stream.write( _gather, 0, pos );
+                pos = 0;
+            }
+            if (verbatim.length >= _gather.length)
+                _stream.write( verbatim );
+            else {
+                System.arraycopy( verbatim, 0, _gather, pos, verbatim.length );
+                pos += verbatim.length;
+            }
+        }
+        if (pos > 0)
+            _stream.write( _gather, 0, pos );
         _stream.flush();
     }
 
@@ -92,7 +147,7 @@ public class ASEWriter {
         final int closebrace = new String( "}" ).getBytes( "us-ascii" )[0];
 
         _stream.write( openbrace );
-        _base64Stream.write( expression.toVerbatim() );
+        expression.writeTo( _base64Stream );
         _stream.write( closebrace );
         _stream.flush();
     }
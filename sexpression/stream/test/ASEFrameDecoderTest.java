@@ -0,0 +1,166 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.stream.test;
+
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import sexpression.stream.ASEFrameDecoder;
+import sexpression.stream.InvalidVerbatimStreamException;
+
+import junit.framework.TestCase;
+
+/**
+ * This class tests that ASEFrameDecoder only hands back expressions once all
+ * of their bytes have arrived, no matter how the input is split.
+ * 
+ * @author Kyle
+ * 
+ */
+public class ASEFrameDecoderTest extends TestCase {
+
+    /**
+     * Feed a nested expression one byte at a time; nothing should come out
+     * until the last byte.
+     */
+    public void test_byteAtATime() throws Exception {
+        byte[] bytes = "(()(3:abc2:ab)#s#l#a%4:name3:xyz)".getBytes( "us-ascii" );
+        ASEFrameDecoder decoder = new ASEFrameDecoder();
+
+        for (int i = 0; i < bytes.length - 1; i++) {
+            decoder.feed( bytes, i, 1 );
+            assertNull( decoder.next() );
+        }
+        decoder.feed( bytes, bytes.length - 1, 1 );
+
+        ASExpression result = decoder.next();
+        assertEquals( ASExpression.makeVerbatim( bytes ), result );
+        assertEquals( 0, decoder.pending() );
+        assertNull( decoder.next() );
+    }
+
+    /**
+     * Several expressions in a single chunk come out one per call to next(),
+     * with a trailing partial one left pending.
+     */
+    public void test_backToBack() throws Exception {
+        byte[] bytes = "3:abc(1:a)(2:bc)(5:de".getBytes( "us-ascii" );
+        ASEFrameDecoder decoder = new ASEFrameDecoder();
+        decoder.feed( bytes, 0, bytes.length );
+
+        assertEquals( "abc", decoder.next().toString() );
+        assertEquals( new ListExpression( "a" ), decoder.next() );
+        assertEquals( new ListExpression( "bc" ), decoder.next() );
+        assertNull( decoder.next() );
+        assertEquals( 5, decoder.pending() );
+
+        byte[] rest = "fgh)".getBytes( "us-ascii" );
+        decoder.feed( rest, 0, rest.length );
+        assertEquals( new ListExpression( "defgh" ), decoder.next() );
+    }
+
+    /**
+     * nextFrame() hands back the raw bytes of each expression, unparsed.
+     */
+    public void test_frames() throws Exception {
+        byte[] bytes = "(1:a)3:abc(2:b".getBytes( "us-ascii" );
+        ASEFrameDecoder decoder = new ASEFrameDecoder();
+        decoder.feed( bytes, 0, bytes.length );
+
+        assertEquals( "(1:a)", new String( decoder.nextFrame(), "us-ascii" ) );
+        assertEquals( "3:abc", new String( decoder.nextFrame(), "us-ascii" ) );
+        assertNull( decoder.nextFrame() );
+
+        byte[] rest = "c)".getBytes( "us-ascii" );
+        decoder.feed( rest, 0, rest.length );
+        assertEquals( "(2:bc)", new String( decoder.nextFrame(), "us-ascii" ) );
+        assertEquals( 0, decoder.pending() );
+    }
+
+    /**
+     * takePending() hands back whatever follows the last whole expression and
+     * leaves the decoder empty but usable.
+     */
+    public void test_takePending() throws Exception {
+        byte[] bytes = "(1:a)\u0001\u00ff(2".getBytes( "iso-8859-1" );
+        ASEFrameDecoder decoder = new ASEFrameDecoder();
+        decoder.feed( bytes, 0, bytes.length );
+
+        assertEquals( new ListExpression( "a" ), decoder.next() );
+        byte[] pending = decoder.takePending();
+        assertEquals( 4, pending.length );
+        assertEquals( 1, pending[0] );
+        assertEquals( (byte) 0xff, pending[1] );
+        assertEquals( 0, decoder.pending() );
+
+        byte[] rest = "3:abc".getBytes( "us-ascii" );
+        decoder.feed( rest, 0, rest.length );
+        assertEquals( "abc", decoder.next().toString() );
+    }
+
+    /**
+     * Expressions larger than the initial buffer are reassembled.
+     */
+    public void test_large() throws Exception {
+        byte[] payload = new byte[100000];
+        for (int i = 0; i < payload.length; i++)
+            payload[i] = (byte) i;
+        ASExpression expected = new ListExpression( StringExpression
+                .makeString( "big" ), StringExpression.makeString( payload ) );
+        byte[] bytes = expected.toVerbatim();
+
+        ASEFrameDecoder decoder = new ASEFrameDecoder();
+        for (int off = 0; off < bytes.length; off += 1000) {
+            assertNull( decoder.next() );
+            decoder.feed( bytes, off, Math.min( 1000, bytes.length - off ) );
+        }
+        assertEquals( expected, decoder.next() );
+    }
+
+    /**
+     * Base64 expressions are framed by their braces.
+     */
+    public void test_base64() throws Exception {
+        byte[] bytes = "{KDEwOkRlYXIgS3lsZTooNTpzLWV4cCgxOmYxOnQxOncpMTohKCkpKQ==}"
+                .getBytes( "us-ascii" );
+        ASEFrameDecoder decoder = new ASEFrameDecoder();
+        decoder.feed( bytes, 0, bytes.length - 1 );
+        assertNull( decoder.next() );
+        decoder.feed( bytes, bytes.length - 1, 1 );
+        assertEquals( "(Dear Kyle: (s-exp (f t w) ! ()))", decoder.next()
+                .toString() );
+    }
+
+    /**
+     * Garbage is reported rather than buffered forever.
+     */
+    public void test_invalid() throws Exception {
+        ASEFrameDecoder decoder = new ASEFrameDecoder();
+        decoder.feed( new byte[] { (byte) 234 }, 0, 1 );
+        try {
+            decoder.next();
+            fail();
+        }
+        catch (InvalidVerbatimStreamException e) {}
+    }
+}
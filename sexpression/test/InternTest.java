@@ -0,0 +1,104 @@
+/**
+  * This file is part of VoteBox.
+  * 
+  * VoteBox is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License version 3 as published by
+  * the Free Software Foundation.
+  * 
+  * You should have received a copy of the GNU General Public License
+  * along with VoteBox, found in the root of any distribution or
+  * repository containing all or part of VoteBox.
+  * 
+  * THIS SOFTWARE IS PROVIDED BY WILLIAM MARSH RICE UNIVERSITY, HOUSTON,
+  * TX AND IS PROVIDED 'AS IS' AND WITHOUT ANY EXPRESS, IMPLIED OR
+  * STATUTORY WARRANTIES, INCLUDING, BUT NOT LIMITED TO, WARRANTIES OF
+  * ACCURACY, COMPLETENESS, AND NONINFRINGEMENT.  THE SOFTWARE USER SHALL
+  * INDEMNIFY, DEFEND AND HOLD HARMLESS RICE UNIVERSITY AND ITS FACULTY,
+  * STAFF AND STUDENTS FROM ANY AND ALL CLAIMS, ACTIONS, DAMAGES, LOSSES,
+  * LIABILITIES, COSTS AND EXPENSES, INCLUDING ATTORNEYS' FEES AND COURT
+  * COSTS, DIRECTLY OR INDIRECTLY ARISING OUR OF OR IN CONNECTION WITH
+  * ACCESS OR USE OF THE SOFTWARE.
+ */
+
+package sexpression.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import sexpression.StringExpression;
+
+/**
+ * This is a JUnit test of StringExpression's intern table.
+ */
+public class InternTest {
+
+    // ** makeString tests **
+    @Test
+    public void same_instance() {
+        StringExpression a = StringExpression.makeString( "intern-test" );
+        StringExpression b = StringExpression.makeString( "intern-test"
+                .getBytes() );
+        assertSame( a, b );
+        assertNotSame( a, StringExpression.makeString( "intern-test2" ) );
+
+        /* Short strings and strings sharing a hash prefix still differ. */
+        assertNotSame( StringExpression.makeString( new byte[] { 1 } ),
+            StringExpression.makeString( new byte[] { 2 } ) );
+        assertEquals( 1, StringExpression.makeString( new byte[] { 1 } )
+                .size() );
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        final int threads = 8;
+        final int strings = 2000;
+        final StringExpression[][] results = new StringExpression[threads][strings];
+        final CountDownLatch start = new CountDownLatch( 1 );
+        ArrayList<Thread> running = new ArrayList<Thread>();
+
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread thread = new Thread( new Runnable() {
+
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {}
+                    for (int i = 0; i < strings; i++)
+                        results[id][i] = StringExpression
+                                .makeString( "concurrent-" + i );
+                }
+            } );
+            thread.start();
+            running.add( thread );
+        }
+        start.countDown();
+        for (Thread thread : running)
+            thread.join();
+
+        for (int i = 0; i < strings; i++)
+            for (int t = 1; t < threads; t++)
+                assertSame( results[0][i], results[t][i] );
+    }
+
+    @Test
+    public void collected() throws Exception {
+        int before = StringExpression.TESTgetInternedCount();
+        for (int i = 0; i < 10000; i++)
+            StringExpression.makeString( "collected-" + i );
+        assertTrue( StringExpression.TESTgetInternedCount() >= before );
+
+        /* Nothing holds on to them, so the entries should go away. */
+        for (int tries = 0; tries < 50
+                && StringExpression.TESTgetInternedCount() > before + 5000; tries++) {
+            System.gc();
+            Thread.sleep( 20 );
+        }
+        assertTrue( StringExpression.TESTgetInternedCount() <= before + 5000 );
+    }
+}
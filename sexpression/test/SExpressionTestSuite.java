@@ -28,6 +28,7 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
   ByteArrayBufferTest.class,
+  InternTest.class,
   PatternTest.class,
   SerializationTest.class
 })
@@ -24,6 +24,10 @@ package sexpression.test;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 
 import org.junit.Test;
@@ -102,4 +106,87 @@ public class SerializationTest {
         eq2( "%huge:(#list:#list:#string #list:#list:#string)",
             "%4:huge(#l#l#s#l#l#s)" );
     }
+
+    // ** writeTo tests
+
+    private ASExpression big() {
+        byte[] payload = new byte[ASExpression.WRITE_BUFFER_SIZE * 3 + 7];
+        for (int i = 0; i < payload.length; i++)
+            payload[i] = (byte) i;
+        return new ListExpression( StringExpression.makeString( "big" ),
+                new ListExpression( StringExpression.makeString( payload ),
+                        ListExpression.EMPTY, ASExpression.make( "(#string %x:#any)" ) ),
+                StringExpression.makeString( payload.length + "" ) );
+    }
+
+    @Test
+    public void verbatim_length() throws Exception {
+        for (String s : new String[] { "foo", "(foo () bar)",
+                "((Hello) (() ()) (World))", "(#string #list:#any %name:#any)" }) {
+            ASExpression exp = ASExpression.make( s );
+            assertEquals( exp.toVerbatimHelp().getBytes().length, exp
+                    .verbatimLength() );
+        }
+        ASExpression big = big();
+        assertEquals( big.toVerbatimHelp().getBytes().length, big
+                .verbatimLength() );
+        assertTrue( Arrays.equals( big.toVerbatimHelp().getBytes(), big
+                .toVerbatim() ) );
+    }
+
+    @Test
+    public void write_buffer() throws Exception {
+        ASExpression exp = ASExpression.make( "(foo (1234567890) #string)" );
+        ByteBuffer buf = ByteBuffer.allocate( 100 );
+        buf.put( (byte) 'x' );
+        exp.writeTo( buf );
+        assertEquals( 1 + exp.verbatimLength(), buf.position() );
+        byte[] written = new byte[exp.verbatimLength()];
+        buf.flip();
+        buf.get();
+        buf.get( written );
+        assertTrue( Arrays.equals( exp.toVerbatim(), written ) );
+
+        try {
+            exp.writeTo( ByteBuffer.allocate( exp.verbatimLength() - 1 ) );
+            fail();
+        }
+        catch (BufferOverflowException e) {}
+    }
+
+    @Test
+    public void write_streams() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        big().writeTo( Channels.newChannel( out ) );
+        assertTrue( Arrays.equals( big().toVerbatimHelp().getBytes(), out
+                .toByteArray() ) );
+
+        out = new ByteArrayOutputStream();
+        big().writeTo( out );
+        assertTrue( Arrays.equals( big().toVerbatimHelp().getBytes(), out
+                .toByteArray() ) );
+    }
+
+    // ** hash tests
+
+    private void hashes(ASExpression exp) throws Exception {
+        byte[] verbatim = exp.toVerbatimHelp().getBytes();
+        assertTrue( Arrays.equals( ASExpression.computeSHA1( verbatim ), exp
+                .getSHA1() ) );
+        assertTrue( Arrays.equals( ASExpression.computeSHA256( verbatim ), exp
+                .getSHA256() ) );
+    }
+
+    @Test
+    public void streaming_hash() throws Exception {
+        hashes( big() );
+        hashes( ASExpression.make( "(foo (() bar) baz)" ) );
+        hashes( ASExpression.make( "(#string %name:(#list:#any %x:#string))" ) );
+        hashes( StringExpression.makeString( "" ) );
+
+        /* Children whose verbatim forms are already built feed the digest. */
+        ASExpression child = big();
+        child.toVerbatim();
+        hashes( new ListExpression( child, StringExpression.makeString( "x" ) ) );
+    }
 }
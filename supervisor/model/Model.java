@@ -30,6 +30,7 @@ import crypto.interop.AdderKeyManipulator;
 import crypto.adder.PrivateKey;
 import crypto.adder.PublicKey;
 import sexpression.ASExpression;
+import sexpression.ListExpression;
 import sexpression.NoMatch;
 import sexpression.StringExpression;
 import sexpression.stream.Base64;
@@ -44,6 +45,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -1398,11 +1400,32 @@ public class Model {
                         PrivateKey privateKey = (PrivateKey)auditoriumParams.getKeyStore().loadAdderKey("private");
                         PublicKey publicKey = (PublicKey) auditoriumParams.getKeyStore().loadAdderKey("public");
 
-                        tallier = new ChallengeDelayedWithNIZKsTallier(publicKey, privateKey);
+                        /* Checkpoint the running tally, if configured, so it survives a restart */
+                        String checkpointDirectory = auditoriumParams.getTallyCheckpointDirectory();
+
+                        if(checkpointDirectory == null || checkpointDirectory.trim().isEmpty())
+                            tallier = new ChallengeDelayedWithNIZKsTallier(publicKey, privateKey);
+                        else{
+                            File directory = new File(checkpointDirectory);
+
+                            if(!directory.isDirectory() && !directory.mkdirs())
+                                System.err.println("Could not create tally checkpoint directory " + directory);
+
+                            /* The checkpoint is only picked up again for the same election, i.e. the same ballot */
+                            ASExpression election = new ListExpression(
+                                    StringExpression.makeString(auditoriumParams.getElectionName()),
+                                    StringExpression.makeString(precinct),
+                                    StringExpression.makeString(ASExpression.computeSHA256(Files.readAllBytes(fileIn.toPath()))));
+
+                            tallier = new ChallengeDelayedWithNIZKsTallier(publicKey, privateKey,
+                                    new File(directory, precinct + ".tally"), election);
+                        }
                     }
                 } catch (AuditoriumCryptoException e1) {
                     System.err.println("Crypto error encountered: "+e1.getMessage());
                     e1.printStackTrace();
+                } catch (IOException e1) {
+                    System.err.println("Could not read ballot " + fileIn + ": " + e1.getMessage());
                 }
 
             /* If we haven't seen this tallier before, add it to the map of talliers to precincts */
@@ -1,6 +1,7 @@
 package supervisor.model.tallier;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.util.*;
 
 import auditorium.Bugout;
@@ -32,6 +33,19 @@ public class ChallengeDelayedWithNIZKsTallier extends EncryptedTallierWithNIZKs
         super(pub, priv);
     }
 
+    /**
+     * Constructor for a tallier which checkpoints its running tally, resuming from the checkpoint if there is one.
+     * Ballots which have been recorded but not yet confirmed are not checkpointed.
+     *
+     * @param pub        - The PublicKey used to encrypt votes to be tallied.
+     * @param priv       - The PrivateKey to be used to decrypt the totals.
+     * @param checkpoint - The file to checkpoint the running tally to.
+     * @param election   - Identifies the election being tallied, e.g. by its ballot.
+     */
+    public ChallengeDelayedWithNIZKsTallier(PublicKey pub, PrivateKey priv, File checkpoint, ASExpression election) {
+        super(pub, priv, checkpoint, election);
+    }
+
     /**
      * Analogous to
      * @see supervisor.model.tallier.EncryptedTallierWithNIZKs#recordVotes(byte[], sexpression.ASExpression)
@@ -61,6 +75,9 @@ public class ChallengeDelayedWithNIZKsTallier extends EncryptedTallierWithNIZKs
 
             System.out.println("SExpression okay!");
 
+            /* The races are only tallied once all of their proofs have been verified */
+            UnverifiedBallot unverified = new UnverifiedBallot(ballotBytes);
+
             /* TODO This is writein code that doesn't really work */
             /* Pop the key "vote" off the end of each ballot
              * ASExpression writeInKey = ballot.get(ballot.size() - 1);
@@ -107,22 +124,10 @@ public class ChallengeDelayedWithNIZKsTallier extends EncryptedTallierWithNIZKs
 					return;
 				}
 				
-				if(!voteProof.verify(vote, _finalPublicKey, 0, 1)){
-					Bugout.err("!!!Ballot failed NIZK test!!!");
-					return;
-				}
-				
-				String subElectionId = makeId(voteIds);
-
-				Election election = _results.get(subElectionId);
-				
-				if(election == null)
-					election = new Election(_publicKey.getP());
-				
-				election.castVote(vote);
-				
-				_results.put(subElectionId, election);
+				unverified.add(makeId(voteIds), vote, voteProof);
 			}//for
+
+			queue(unverified);
 		}catch(Exception e){
             e.printStackTrace();
             Bugout.err("Malformed ballot received <"+e.getMessage()+">");
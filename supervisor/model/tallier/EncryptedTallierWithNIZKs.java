@@ -1,7 +1,13 @@
 package supervisor.model.tallier;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -11,6 +17,7 @@ import auditorium.Bugout;
 
 import crypto.adder.AdderInteger;
 import crypto.adder.Election;
+import crypto.adder.ElgamalCiphertext;
 import crypto.adder.PrivateKey;
 import crypto.adder.PublicKey;
 import crypto.adder.Vote;
@@ -18,11 +25,17 @@ import crypto.adder.VoteProof;
 
 import sexpression.ASExpression;
 import sexpression.ListExpression;
+import sexpression.StringExpression;
 import sexpression.stream.ASEInputStreamReader;
 import crypto.interop.AdderKeyManipulator;
 
 /**
  * Tallier for elections run with NIZKs but without the commit-challenge model enabled.
+ * <p>
+ * Each race keeps only a running product of the votes cast in it, so the tally takes the same space however many
+ * ballots are cast, and reporting only has to decrypt. If given a checkpoint file, the tallier writes its running
+ * tally there every few ballots and picks it back up when it is created again, e.g. after Supervisor restarts. A
+ * checkpoint names the election and the keys it was made for, and is only picked up by a tallier for the same ones.
  *
  * @author Montrose
  */
@@ -40,8 +53,32 @@ public class EncryptedTallierWithNIZKs implements ITallier {
     /** The final private key, to ensure that the same private key is used througout the election */
     protected PrivateKey _finalPrivateKey = null;
 
+    /** The secret behind the final keys, encrypted under the public key, from which the final private key is derived */
+    protected ElgamalCiphertext _finalKeyShare = null;
+
 	/** The results of the election are stored by race ID in this map */
 	protected Map<String, Election> _results = new HashMap<String, Election>();
+
+    /** The number of races held back so that their proofs can be verified together in one batch */
+    protected static final int VERIFY_BATCH_SIZE = 256;
+
+    /** Ballots whose proofs have not been verified yet, in the order they were recorded */
+    protected List<UnverifiedBallot> _unverified = new ArrayList<UnverifiedBallot>();
+
+    /** The number of races on all of the unverified ballots */
+    protected int _unverifiedRaces = 0;
+
+    /** The number of ballots recorded between checkpoints of the running tally */
+    protected static final int CHECKPOINT_INTERVAL = 16;
+
+    /** The file the running tally is checkpointed to, or null if it is not checkpointed */
+    protected File _checkpoint = null;
+
+    /** The election and the keys this tallier's checkpoint belongs to */
+    protected ASExpression _identity = null;
+
+    /** The number of ballots recorded since the last checkpoint */
+    protected int _sinceCheckpoint = 0;
 	
 	/**
 	 * Constructor.
@@ -55,6 +92,28 @@ public class EncryptedTallierWithNIZKs implements ITallier {
 		
 	}
 
+	/**
+	 * Constructor for a tallier which checkpoints its running tally, resuming from the checkpoint if there is one.
+	 * A checkpoint made for another election, or under other keys, is not resumed from.
+	 *
+	 * @param pub - The PublicKey used to encrypt votes to be tallied.
+	 * @param priv - The PrivateKey to be used to decrypt the totals.
+	 * @param checkpoint - The file to checkpoint the running tally to.
+	 * @param election - Identifies the election being tallied, e.g. by its ballot.
+	 */
+	public EncryptedTallierWithNIZKs(PublicKey pub, PrivateKey priv, File checkpoint, ASExpression election){
+		this(pub, priv);
+
+		_identity = new ListExpression(StringExpression.makeString("election"), election,
+				StringExpression.makeString(pub.toASE().getSHA256()));
+
+		if(checkpoint.exists())
+			restore(checkpoint);
+
+		_checkpoint = checkpoint;
+		_sinceCheckpoint = 0;
+	}
+
     /**
      * This is not a challenge-delayed tallier. Votes are tallied when they are first recorded by this class.
      *
@@ -71,8 +130,12 @@ public class EncryptedTallierWithNIZKs implements ITallier {
      */
 	@SuppressWarnings("unchecked")
 	public Map<String, BigInteger> getReport() {
-        /* Ensure the private key is still valid before decryption */
-		_finalPrivateKey = AdderKeyManipulator.generateFinalPrivateKey(_publicKey, _privateKey);
+        /* Tally any ballots still waiting on their proofs */
+		verifyBallots();
+		checkpoint();
+
+        /* Derive the final private key, unless it was restored along with a checkpoint */
+		deriveFinalPrivateKey();
 
         /* this map will house the final results after they've been decrypted */
 		Map<String, BigInteger> report = new HashMap<String, BigInteger>();
@@ -83,7 +146,7 @@ public class EncryptedTallierWithNIZKs implements ITallier {
             /* Here our races are represented as "Elections", a class provided in the UConn encryption code */
 			Election election = _results.get(group);
 
-            /* From the election, we can get the sum of cipher texts */
+            /* From the election, we can get the sum of cipher texts, which has been kept up to date as votes came in */
 			Vote cipherSum = election.sumVotes();
 
             /*
@@ -126,6 +189,15 @@ public class EncryptedTallierWithNIZKs implements ITallier {
      * @see supervisor.model.tallier.ITallier#recordVotes(byte[], sexpression.ASExpression)
      */
 	public void recordVotes(byte[] ballotBytes, ASExpression nonce) {
+		record(ballotBytes);
+	}
+
+	/**
+	 * Parses a ballot and holds it back until its proofs can be verified.
+	 *
+	 * @param ballotBytes the ballot
+	 */
+	protected void record(byte[] ballotBytes) {
         /* Verify that the keys used to encrypt this ballot are the same keys we used for the whole election */
 		if(_finalPublicKey == null)
 			_finalPublicKey = AdderKeyManipulator.generateFinalPublicKey(_publicKey);
@@ -148,6 +220,9 @@ public class EncryptedTallierWithNIZKs implements ITallier {
 			 /* Check that the ballot is well-formed */
 			ListExpression ballot = (ListExpression)sexp;
 
+            /* The races are only tallied once all of their proofs have been verified */
+			UnverifiedBallot unverified = new UnverifiedBallot(ballotBytes);
+
             /* Iterate through each of the races on the ballot */
 			for(int i = 0; i < ballot.size(); i++){
                 /* Retrieve the corresponding race information from this selection */
@@ -188,32 +263,253 @@ public class EncryptedTallierWithNIZKs implements ITallier {
 					return;
 				}
 
-                /* Confirm that the vote proof is valid */
-				if(!voteProof.verify(vote, _finalPublicKey, 0, 1)){
-					Bugout.err("!!!Ballot failed NIZK test!!!");
-					return;
-				}
-
                 /* Code these results as a subelection so the ciphers can be summed homomorphically */
-				String subElectionId = makeId(voteIds);
+				unverified.add(makeId(voteIds), vote, voteProof);
+			}
+
+            /* Hold the ballot back until enough races have arrived to verify their proofs in a batch */
+			queue(unverified);
+		}catch(Exception e){
+			Bugout.err("Malformed ballot received <"+e.getMessage()+">");
+			Bugout.err("Rejected ballot:\n"+new String(ballotBytes));
+		}
+	}
+
+	/**
+	 * Holds back a ballot whose proofs have not been checked yet, verifying
+	 * everything held back once enough races have accumulated.
+	 *
+	 * @param unverified the ballot
+	 */
+	protected void queue(UnverifiedBallot unverified){
+		_unverified.add(unverified);
+		_unverifiedRaces += unverified.proofs.size();
+
+		if(_unverifiedRaces >= VERIFY_BATCH_SIZE)
+			verifyBallots();
+
+		if(++_sinceCheckpoint >= CHECKPOINT_INTERVAL)
+			checkpoint();
+	}
+
+	/**
+	 * Verifies the proofs of every held back ballot in one batch, then tallies
+	 * each ballot all of whose proofs are valid. A ballot with any bad proof is
+	 * rejected as a whole.
+	 */
+	protected void verifyBallots(){
+		if(_unverified.isEmpty())
+			return;
+
+		List<VoteProof> proofs = new ArrayList<VoteProof>(_unverifiedRaces);
+		List<Vote> votes = new ArrayList<Vote>(_unverifiedRaces);
+
+		for(UnverifiedBallot unverified : _unverified){
+			proofs.addAll(unverified.proofs);
+			votes.addAll(unverified.votes);
+		}
+
+		boolean[] valid = VoteProof.verifyEach(proofs, votes, _finalPublicKey, 0, 1);
+		int race = 0;
+
+		for(UnverifiedBallot unverified : _unverified){
+			boolean ok = true;
+
+			for(int i = 0; i < unverified.proofs.size(); i++)
+				ok &= valid[race++];
+
+			if(!ok){
+				Bugout.err("!!!Ballot failed NIZK test!!!");
+				Bugout.err("Rejected ballot:\n"+new String(unverified.ballotBytes));
+				continue;
+			}
+
+			for(int i = 0; i < unverified.votes.size(); i++){
+				String subElectionId = unverified.ids.get(i);
 				Election election = _results.get(subElectionId);
 
                 /* If we haven't seen this specific election before, initialize it */
 				if(election == null)
 					election = new Election(_publicKey.getP());
 
-                /* This will homomorphically tally the vote */
-				election.castVote(vote);
+                /* This will homomorphically fold the vote into the running sum, so the vote itself can be dropped */
+				election.tally(unverified.votes.get(i));
 
                 /* Now save the result until we're ready to decrypt the totals */
 				_results.put(subElectionId, election);
 			}
+		}
+
+		_unverified.clear();
+		_unverifiedRaces = 0;
+	}
+
+	/**
+	 * Derives the final private key from the encrypted share of the final keys, making the share first if need be.
+	 */
+	protected void deriveFinalPrivateKey(){
+		if(_finalPrivateKey != null)
+			return;
+
+		if(_finalKeyShare == null)
+			_finalKeyShare = AdderKeyManipulator.generateFinalKeyShare(_publicKey);
+
+		_finalPrivateKey = AdderKeyManipulator.generateFinalPrivateKey(_privateKey, _finalKeyShare);
+	}
+
+	/**
+	 * Writes the running tally of each race, along with the ballots whose proofs have not been verified yet, to the
+	 * checkpoint file. The checkpoint is written next to the file and then moved over it, so that a crash part way
+	 * through leaves the previous checkpoint intact.
+	 * <p>
+	 * The final keys are derived afresh every time Supervisor starts, so they are checkpointed too; without them the
+	 * running tally could not be decrypted after a restart. Only the final public key and the share of the final keys
+	 * encrypted under the public key are written, never a private key; the final private key is derived again from the
+	 * share with the private key in the key store.
+	 */
+	protected void checkpoint(){
+		_sinceCheckpoint = 0;
+
+		if(_checkpoint == null)
+			return;
+
+		ASExpression keys = ListExpression.EMPTY;
+
+		if(_finalPublicKey != null){
+			if(_finalKeyShare == null)
+				_finalKeyShare = AdderKeyManipulator.generateFinalKeyShare(_publicKey);
+
+			keys = new ListExpression(_finalPublicKey.toASE(), _finalKeyShare.toASE());
+		}
+
+		List<ASExpression> races = new ArrayList<ASExpression>();
+
+		for(Map.Entry<String, Election> entry : _results.entrySet())
+			races.add(new ListExpression(StringExpression.makeString(entry.getKey()), entry.getValue().toASE()));
+
+		List<ASExpression> ballots = new ArrayList<ASExpression>();
+
+		for(UnverifiedBallot unverified : _unverified)
+			ballots.add(StringExpression.makeString(unverified.ballotBytes));
+
+		ASExpression sexp = new ListExpression(StringExpression.makeString("tally-checkpoint"), _identity, keys,
+				new ListExpression(races), new ListExpression(ballots));
+
+		File temp = new File(_checkpoint.getPath() + ".tmp");
+
+		try {
+			FileOutputStream out = new FileOutputStream(temp);
+
+			try {
+				out.write(sexp.toVerbatim());
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+
+			Files.move(temp.toPath(), _checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}catch(IOException e){
+			Bugout.err("Could not checkpoint the tally to " + _checkpoint + " <" + e.getMessage() + ">");
+		}
+	}
+
+	/**
+	 * Reads the final keys and the running tally back in from a checkpoint file, and holds back its unverified ballots
+	 * again. The restored final public key replaces the one Supervisor would otherwise derive, so that ballots cast
+	 * after a restart are encrypted under it too. Nothing is restored unless the checkpoint was made for this election
+	 * under this tallier's keys, and its final keys derive from them. A checkpoint that cannot be read or does not
+	 * belong to this tallier is moved aside, so that it is not overwritten.
+	 *
+	 * @param checkpoint the checkpoint file
+	 */
+	protected void restore(File checkpoint){
+		try {
+			FileInputStream in = new FileInputStream(checkpoint);
+			ListExpression sexp;
+
+			try {
+				sexp = (ListExpression) new ASEInputStreamReader(in).read();
+			} finally {
+				in.close();
+			}
+
+			if(sexp.size() != 5 || !sexp.get(0).toString().equals("tally-checkpoint"))
+				throw new RuntimeException("Not a tally-checkpoint");
+
+			if(!sexp.get(1).equals(_identity))
+				throw new RuntimeException("Checkpoint is for another election or other keys");
+
+			ListExpression keys = (ListExpression) sexp.get(2);
+			PublicKey finalPublicKey = null;
+			ElgamalCiphertext finalKeyShare = null;
+			PrivateKey finalPrivateKey = null;
+
+			if(keys.size() == 2){
+				finalPublicKey = PublicKey.fromASE(keys.get(0));
+				finalKeyShare = ElgamalCiphertext.fromASE(keys.get(1));
+				finalPrivateKey = AdderKeyManipulator.generateFinalPrivateKey(_privateKey, finalKeyShare);
+
+				if(!isFinalKeyPair(finalPublicKey, finalPrivateKey))
+					throw new RuntimeException("Checkpointed final keys don't derive from this tallier's keys");
+			}
+
+			Map<String, Election> results = new HashMap<String, Election>();
+			ListExpression races = (ListExpression) sexp.get(3);
+
+			for(int i = 0; i < races.size(); i++){
+				ListExpression race = (ListExpression) races.get(i);
+				results.put(race.get(0).toString(), Election.fromASE(race.get(1)));
+			}
+
+			List<byte[]> ballots = new ArrayList<byte[]>();
+			ListExpression ballotsE = (ListExpression) sexp.get(4);
+
+			for(int i = 0; i < ballotsE.size(); i++)
+				ballots.add(((StringExpression) ballotsE.get(i)).getBytesCopy());
+
+            /* The whole checkpoint checks out, so take it on */
+			_finalPublicKey = finalPublicKey;
+			_finalKeyShare = finalKeyShare;
+			_finalPrivateKey = finalPrivateKey;
+			_results.putAll(results);
+
+			if(_finalPublicKey != null)
+				AdderKeyManipulator.setCachedKey(_finalPublicKey);
+
+			for(byte[] ballot : ballots)
+				record(ballot);
 		}catch(Exception e){
-			Bugout.err("Malformed ballot received <"+e.getMessage()+">");
-			Bugout.err("Rejected ballot:\n"+new String(ballotBytes));
+			Bugout.err("Could not restore the tally from " + checkpoint + " <" + e.getMessage() + ">");
+
+			_finalPublicKey = null;
+			_finalKeyShare = null;
+			_finalPrivateKey = null;
+			_results.clear();
+			_unverified.clear();
+			_unverifiedRaces = 0;
+
+			if(!checkpoint.renameTo(new File(checkpoint.getPath() + ".bad")))
+				Bugout.err("Could not move aside " + checkpoint);
 		}
 	}
 
+	/**
+	 * Checks that a final key pair belongs to this tallier: it is over the same group as the public key, and the
+	 * private key is the one that goes with the public key.
+	 *
+	 * @param finalPublicKey the final public key
+	 * @param finalPrivateKey the final private key
+	 * @return true if the keys are a final key pair for this tallier's keys
+	 */
+	protected boolean isFinalKeyPair(PublicKey finalPublicKey, PrivateKey finalPrivateKey){
+		if(!finalPublicKey.getP().equals(_publicKey.getP()) || !finalPublicKey.getG().equals(_publicKey.getG())
+				|| !finalPublicKey.getF().equals(_publicKey.getF()))
+			return false;
+
+		return finalPublicKey.getG().pow(finalPrivateKey.getX()).equals(finalPublicKey.getH());
+	}
+
 	/**
 	 * Using NIZKs, imposes structure on our race format we haven't had before.
 	 *
@@ -244,4 +540,42 @@ public class EncryptedTallierWithNIZKs implements ITallier {
 		if(!publicKey.get(0).toString().equals("public-key"))
 			throw new RuntimeException("Missing \"public-key\"");
 	}
+
+	/**
+	 * The races of a ballot which has been parsed but whose proofs have not
+	 * been verified yet.
+	 */
+	protected static class UnverifiedBallot {
+		/** The ballot as it was recorded, for reporting it if it is rejected */
+		protected final byte[] ballotBytes;
+
+		/** The race ID of each race */
+		protected final List<String> ids = new ArrayList<String>();
+
+		/** The encrypted vote in each race */
+		protected final List<Vote> votes = new ArrayList<Vote>();
+
+		/** The proof for each vote */
+		protected final List<VoteProof> proofs = new ArrayList<VoteProof>();
+
+		/**
+		 * @param ballotBytes the ballot as it was recorded
+		 */
+		protected UnverifiedBallot(byte[] ballotBytes){
+			this.ballotBytes = ballotBytes;
+		}
+
+		/**
+		 * Adds a race.
+		 *
+		 * @param id the race ID
+		 * @param vote the encrypted vote
+		 * @param proof the proof for the vote
+		 */
+		protected void add(String id, Vote vote, VoteProof proof){
+			ids.add(id);
+			votes.add(vote);
+			proofs.add(proof);
+		}
+	}
 }
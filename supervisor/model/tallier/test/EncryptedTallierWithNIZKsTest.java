@@ -0,0 +1,246 @@
+package supervisor.model.tallier.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+import crypto.adder.AdderInteger;
+import crypto.adder.PrivateKey;
+import crypto.adder.PublicKey;
+import crypto.adder.Vote;
+import crypto.adder.VoteProof;
+import crypto.interop.AdderKeyManipulator;
+import sexpression.ASExpression;
+import sexpression.ListExpression;
+import sexpression.StringExpression;
+import supervisor.model.tallier.EncryptedTallierWithNIZKs;
+
+/**
+ * Tests for checkpointing the running tally.
+ *
+ * @author Montrose
+ */
+public class EncryptedTallierWithNIZKsTest extends TestCase {
+    private static final String[] CANDIDATES = { "A", "B", "C" };
+
+    private PublicKey publicKey;
+    private PrivateKey privateKey;
+    private ASExpression election;
+    private File checkpoint;
+    private File bad;
+    private int nonce;
+
+    /**
+     * Constructs a new tallier test.
+     *
+     * @param name the name of the test
+     */
+    public EncryptedTallierWithNIZKsTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Makes a fresh set of election keys, as if Supervisor had just started,
+     * and picks a checkpoint file that does not exist yet.
+     */
+    protected void setUp() throws IOException {
+        publicKey = PublicKey.makePartialKey(128);
+        privateKey = publicKey.genKeyPair();
+        election = StringExpression.makeString("test-election");
+        restart();
+
+        checkpoint = File.createTempFile("tally", ".checkpoint");
+        checkpoint.delete();
+        bad = new File(checkpoint.getPath() + ".bad");
+    }
+
+    protected void tearDown() {
+        checkpoint.delete();
+        bad.delete();
+        new File(checkpoint.getPath() + ".tmp").delete();
+    }
+
+    /**
+     * Forgets the final keys, as a restart of Supervisor would.
+     */
+    private void restart() {
+        AdderKeyManipulator.setCachedKey(null);
+        AdderKeyManipulator.generateFinalPublicKey(publicKey);
+    }
+
+    private EncryptedTallierWithNIZKs tallier() {
+        return new EncryptedTallierWithNIZKs(publicKey, privateKey, checkpoint,
+                                             election);
+    }
+
+    /**
+     * Casts ballots for candidates in turn, under the current final key, and
+     * adds them to the expected totals.
+     */
+    private void cast(EncryptedTallierWithNIZKs tallier, int count,
+                      Map<String, BigInteger> expected) {
+        PublicKey finalKey = AdderKeyManipulator.generateFinalPublicKey(publicKey);
+
+        for (int i = 0; i < count; i++) {
+            List<AdderInteger> choices = new ArrayList<AdderInteger>();
+            List<ASExpression> ids = new ArrayList<ASExpression>();
+            String chosen = CANDIDATES[nonce % CANDIDATES.length];
+
+            for (String candidate : CANDIDATES) {
+                choices.add(candidate.equals(chosen) ? AdderInteger.ONE
+                                                     : AdderInteger.ZERO);
+                ids.add(StringExpression.makeString(candidate));
+            }
+
+            Vote vote = finalKey.encrypt(choices);
+            VoteProof proof = new VoteProof();
+            proof.compute(vote, finalKey, choices, 0, 1);
+
+            ASExpression race = new ListExpression(
+                new ListExpression(StringExpression.makeString("vote"), vote.toASE()),
+                new ListExpression(StringExpression.makeString("vote-ids"), new ListExpression(ids)),
+                new ListExpression(StringExpression.makeString("proof"), proof.toASE()),
+                new ListExpression(StringExpression.makeString("public-key"), finalKey.toASE()));
+
+            tallier.recordVotes(new ListExpression(race).toVerbatim(),
+                                StringExpression.makeString("nonce" + nonce++));
+
+            BigInteger total = expected.get(chosen);
+            expected.put(chosen, total == null ? BigInteger.ONE
+                                               : total.add(BigInteger.ONE));
+        }
+    }
+
+    /**
+     * Fills in the candidates nobody voted for.
+     */
+    private Map<String, BigInteger> complete(Map<String, BigInteger> expected) {
+        for (String candidate : CANDIDATES) {
+            if (!expected.containsKey(candidate)) {
+                expected.put(candidate, BigInteger.ZERO);
+            }
+        }
+
+        return expected;
+    }
+
+    /**
+     * A new tallier picks up the tally where the old one left off, after the
+     * final keys have been forgotten, and ballots cast afterwards are added
+     * to it.
+     */
+    public void testResume() {
+        Map<String, BigInteger> expected = new HashMap<String, BigInteger>();
+        EncryptedTallierWithNIZKs tallier = tallier();
+        cast(tallier, 7, expected);
+        Map<String, BigInteger> report = tallier.getReport();
+        assertEquals(complete(expected), report);
+
+        restart();
+        tallier = tallier();
+        assertEquals(report, tallier.getReport());
+
+        cast(tallier, 5, expected);
+        assertEquals(complete(expected), tallier.getReport());
+    }
+
+    /**
+     * Ballots whose proofs had not been checked when the checkpoint was made
+     * are checked and tallied after it is restored.
+     */
+    public void testUnverifiedRequeued() {
+        Map<String, BigInteger> expected = new HashMap<String, BigInteger>();
+
+        /* Enough ballots to checkpoint, too few to verify */
+        cast(tallier(), 16, expected);
+        assertTrue(checkpoint.exists());
+
+        restart();
+        assertEquals(complete(expected), tallier().getReport());
+    }
+
+    /**
+     * The checkpoint holds the final public key but not the final private
+     * key, nor the private key it comes from.
+     */
+    public void testNoPrivateKey() throws IOException {
+        EncryptedTallierWithNIZKs tallier = tallier();
+        cast(tallier, 3, new HashMap<String, BigInteger>());
+        tallier.getReport();
+
+        String contents = new String(Files.readAllBytes(checkpoint.toPath()),
+                                     "ISO-8859-1");
+        PrivateKey finalKey = AdderKeyManipulator.generateFinalPrivateKey(
+            publicKey, privateKey);
+
+        assertFalse(contents.contains("private-key"));
+        assertFalse(contents.contains(new String(
+            finalKey.getX().toASE().toVerbatim(), "ISO-8859-1")));
+        assertFalse(contents.contains(new String(
+            privateKey.getX().toASE().toVerbatim(), "ISO-8859-1")));
+    }
+
+    /**
+     * A checkpoint that can't be read is moved aside and the tally starts
+     * over.
+     */
+    public void testCorrupt() throws IOException {
+        FileOutputStream out = new FileOutputStream(checkpoint);
+        out.write("(16:tally-checkpoint".getBytes());
+        out.close();
+
+        EncryptedTallierWithNIZKs tallier = tallier();
+        assertFalse(checkpoint.exists());
+        assertTrue(bad.exists());
+        assertTrue(tallier.getReport().isEmpty());
+    }
+
+    /**
+     * A checkpoint made under other keys is not restored, and is moved aside.
+     */
+    public void testOtherKeys() {
+        cast(tallier(), 16, new HashMap<String, BigInteger>());
+        assertTrue(checkpoint.exists());
+
+        publicKey = PublicKey.makePartialKey(128);
+        privateKey = publicKey.genKeyPair();
+        restart();
+
+        EncryptedTallierWithNIZKs tallier = tallier();
+        assertTrue(bad.exists());
+        assertTrue(tallier.getReport().isEmpty());
+    }
+
+    /**
+     * A checkpoint made for another election is not restored, and is moved
+     * aside.
+     */
+    public void testOtherElection() {
+        cast(tallier(), 16, new HashMap<String, BigInteger>());
+        assertTrue(checkpoint.exists());
+
+        election = StringExpression.makeString("other-election");
+        restart();
+
+        EncryptedTallierWithNIZKs tallier = tallier();
+        assertTrue(bad.exists());
+        assertTrue(tallier.getReport().isEmpty());
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the main parameters
+     */
+    public static void main(String[] args) {
+        TestRunner.run(EncryptedTallierWithNIZKsTest.class);
+    }
+}
@@ -53,10 +53,29 @@ public class AuditoriumParams implements IAuditoriumParams,
     public static final int DISCOVER_REPLY_PORT = 9783;
     public static final int LISTEN_PORT = 9700;
     public static final int JOIN_TIMEOUT = 1000;
+
+    /* If true, links are serviced by one selector thread instead of a thread per peer. */
+    public static final boolean USE_NIO_TRANSPORT = false;
+
+    /* Threads checking signatures on incoming messages; 0 for one per processor. */
+    public static final int VERIFY_THREADS = 0;
+
+    /* If true, links are compressed whenever the machine at the other end agrees. */
+    public static final boolean COMPRESS_LINKS = false;
+
     public static final String BROADCAST_ADDRESS = "255.255.255.255";
     public static final String LOG_LOCATION = "log/log.out";
+
+    /* When to force the log to disk (none, message, batch, interval), and how often for interval */
+    public static final String LOG_SYNC_POLICY = "none";
+    public static final int LOG_SYNC_INTERVAL = 100;
+    public static final boolean RESUME_LOG = false;
+    public static final boolean INDEX_LOG = true;
     public static final String KEYS_DIRECTORY = "keys/";
 
+    /* Where Supervisor checkpoints its running tallies; empty to not checkpoint them */
+    public static final String TALLY_CHECKPOINT_DIRECTORY = "";
+
     public static final String VIEW_IMPLEMENTATION = "AWT"; //Changed from SDL
     public static final String RULE_FILE = "rules";
     
@@ -113,6 +132,12 @@ public class AuditoriumParams implements IAuditoriumParams,
     /* By default, we don't enable Piecemeal Encryption */
     public static final boolean USE_PIECEMEAL_ENCRYPTION = false;
 
+    /* By default, races on a ballot are encrypted in parallel */
+    public static final boolean USE_PARALLEL_ENCRYPTION = true;
+
+    /* By default, randomness for encrypting ballots is precomputed while the voter votes */
+    public static final boolean PRECOMPUTE_RANDOMNESS = true;
+
     /* By default, we use the "fanciest" tally view possible */
     public static final boolean USE_SIMPLE_TALLY_VIEW = false;
     public static final boolean USE_TABLE_TALLY_VIEW = false;
@@ -261,6 +286,49 @@ public class AuditoriumParams implements IAuditoriumParams,
         return LISTEN_PORT;
     }
 
+    /**
+     * Checks the HashMap to see if it contains an entry for whether the
+     * selector-based (java.nio) transport is to be used and, if so, returns it.
+     *
+     * @return      whether the selector-based transport is to be used
+     */
+    public boolean getUseNIOTransport() {
+
+        if (_config.containsKey("USE_NIO_TRANSPORT"))
+            return Boolean.parseBoolean(_config.get("USE_NIO_TRANSPORT"));
+
+        return USE_NIO_TRANSPORT;
+    }
+
+    /**
+     * Checks the HashMap to see if it contains an entry for the number of
+     * threads checking incoming signatures and, if so, returns it.
+     *
+     * @return      the number of signature checking threads, 0 for one per
+     *              processor
+     */
+    public int getVerifyThreads() {
+
+        if (_config.containsKey("VERIFY_THREADS"))
+            return Integer.parseInt(_config.get("VERIFY_THREADS"));
+
+        return VERIFY_THREADS;
+    }
+
+    /**
+     * Checks the HashMap to see if it contains an entry for whether links are
+     * to be compressed and, if so, returns it.
+     *
+     * @return      whether links are to be compressed
+     */
+    public boolean getCompressLinks() {
+
+        if (_config.containsKey("COMPRESS_LINKS"))
+            return Boolean.parseBoolean(_config.get("COMPRESS_LINKS"));
+
+        return COMPRESS_LINKS;
+    }
+
     /**
      * Checks the HashMap to see if it contains an entry for the filename of the
      * print commands file and, if so, returns it.
@@ -303,6 +371,76 @@ public class AuditoriumParams implements IAuditoriumParams,
         return LOG_LOCATION;
     }
 
+    /**
+     * Checks the HashMap to see if it contains an entry for the log sync policy
+     * and, if so, returns it.
+     *
+     * @return      when to force the log to disk
+     */
+    public String getLogSyncPolicy() {
+
+        if (_config.containsKey("LOG_SYNC_POLICY"))
+            return _config.get("LOG_SYNC_POLICY");
+
+        return LOG_SYNC_POLICY;
+    }
+
+    /**
+     * Checks the HashMap to see if it contains an entry for the log sync
+     * interval and, if so, returns it.
+     *
+     * @return      how often, in milliseconds, to force the log to disk
+     */
+    public int getLogSyncInterval() {
+
+        if (_config.containsKey("LOG_SYNC_INTERVAL"))
+            return Integer.parseInt(_config.get("LOG_SYNC_INTERVAL"));
+
+        return LOG_SYNC_INTERVAL;
+    }
+
+    /**
+     * Checks the HashMap to see if it contains an entry for whether an
+     * existing log is to be resumed and, if so, returns it.
+     *
+     * @return      whether to pick up the existing log
+     */
+    public boolean getResumeLog() {
+
+        if (_config.containsKey("RESUME_LOG"))
+            return Boolean.parseBoolean(_config.get("RESUME_LOG"));
+
+        return RESUME_LOG;
+    }
+
+    /**
+     * Checks the HashMap to see if it contains an entry for whether the log
+     * is to be indexed and, if so, returns it.
+     *
+     * @return      whether to keep an index of the log
+     */
+    public boolean getIndexLog() {
+
+        if (_config.containsKey("INDEX_LOG"))
+            return Boolean.parseBoolean(_config.get("INDEX_LOG"));
+
+        return INDEX_LOG;
+    }
+
+    /**
+     * Checks the HashMap to see if it contains an entry for the tally
+     * checkpoint directory and, if so, returns it.
+     *
+     * @return      where to checkpoint running tallies
+     */
+    public String getTallyCheckpointDirectory() {
+
+        if (_config.containsKey("TALLY_CHECKPOINT_DIRECTORY"))
+            return _config.get("TALLY_CHECKPOINT_DIRECTORY");
+
+        return TALLY_CHECKPOINT_DIRECTORY;
+    }
+
     /**
      * Checks the HashMap to see if it contains an entry for the view implementation
      * and, if so, returns it.
@@ -611,6 +749,34 @@ public class AuditoriumParams implements IAuditoriumParams,
 		return USE_PIECEMEAL_ENCRYPTION;
 	}
 
+    /**
+     * Checks the HashMap to see if it contains an entry for whether ballots
+     * are to be encrypted in parallel and, if so, returns it.
+     *
+     * @return      whether parallel encryption is to be used
+     */
+	public boolean getUseParallelEncryption() {
+
+		if (_config.containsKey("USE_PARALLEL_ENCRYPTION"))
+			return Boolean.parseBoolean(_config.get("USE_PARALLEL_ENCRYPTION"));
+
+		return USE_PARALLEL_ENCRYPTION;
+	}
+
+    /**
+     * Checks the HashMap to see if it contains an entry for whether encryption
+     * randomness is to be precomputed and, if so, returns it.
+     *
+     * @return      whether randomness is to be precomputed
+     */
+	public boolean getPrecomputeRandomness() {
+
+		if (_config.containsKey("PRECOMPUTE_RANDOMNESS"))
+			return Boolean.parseBoolean(_config.get("PRECOMPUTE_RANDOMNESS"));
+
+		return PRECOMPUTE_RANDOMNESS;
+	}
+
     /**
      * Checks the HashMap to see if it contains an entry for whether simple tally
      * view is to be used and, if so, returns it.
@@ -351,6 +351,21 @@ public class VoteBox{
 
         });
 
+        BallotEncrypter.SINGLETON.setParallel(_constants.getUseParallelEncryption());
+        BallotEncrypter.SINGLETON.setPrecompute(_constants.getPrecomputeRandomness());
+
+        /* Spend the time the voter takes filling out the ballot precomputing randomness for its encryption */
+        if (_constants.getPrecomputeRandomness()) {
+            try {
+                if (_constants.getEnableNIZKs())
+                    BallotEncrypter.SINGLETON.precompute((PublicKey) _constants.getKeyStore().loadAdderKey("public"));
+                else
+                    BallotEncrypter.SINGLETON.precompute(_constants.getKeyStore().loadKey(mySerial + ""));
+            } catch (AuditoriumCryptoException e) {
+                Bugout.err("Crypto error trying to precompute randomness: " + e.getMessage());
+            }
+        }
+
         /*  If we're using piecemeal encryption, we need to listen for each page change. TODO might get rid of this */
         if (_constants.getUsePiecemealEncryption()) {
 
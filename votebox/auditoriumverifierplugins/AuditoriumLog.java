@@ -22,9 +22,7 @@
 
 package votebox.auditoriumverifierplugins;
 
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -73,15 +71,18 @@ public class AuditoriumLog implements IVerifierPlugin {
 		ArrayList<Expression> set = new ArrayList<Expression>();
 
 		try {
-			ASEInputStreamReader in = new ASEInputStreamReader( new FileInputStream(new File(verifier.getArgs().get("log"))));
+			LogReader in = new LogReader(new File(verifier.getArgs().get("log")));
 
-            /* Loop until end of file and load into dag to build set TODO EOF stuff */
-			while (true) {
-				Message msg = new Message(in.read());
-				dag.add(msg);
-				set.add(new Expression(msg.toASE()));
+            /* Load every message into dag to build set */
+			try {
+				for (int i = 0; i < in.size(); i++) {
+					Message msg = in.get(i);
+					dag.add(msg);
+					set.add(new Expression(msg.toASE()));
+				}
+			} finally {
+				in.close();
 			}
-		} catch (EOFException e) {
 		} catch (IOException e) {
 			throw new PluginException("auditorium", e);
 		} catch (IncorrectFormatException e) {
@@ -169,6 +169,7 @@ public class Launcher {
 					public String       getBroadcastAddress()            { return null;  }
                     public String       getEloTouchScreenDevice()        { return null;  }
                     public String       getLogLocation()                 { return null;  }
+                    public String       getLogSyncPolicy()               { return null;  }
                     public String       getPrinterForVVPAT()             { return vvpat; }
 
                     public boolean      getAllowUIScaling()              { return true;  }
@@ -177,8 +178,12 @@ public class Launcher {
 					public boolean      getUseEloTouchScreen()           { return false; }
 					public boolean      getEnableNIZKs()                 { return false; }
 					public boolean      getUsePiecemealEncryption()      { return false; }
+					public boolean      getUseParallelEncryption()       { return false; }
+					public boolean      getPrecomputeRandomness()        { return false; }
 					public boolean      getUseSimpleTallyView()          { return false; }
 					public boolean      getUseTableTallyView()           { return false; }
+					public boolean      getUseNIOTransport()             { return false; }
+					public boolean      getCompressLinks()               { return false; }
 
                     public int          getDefaultSerialNumber()         { return 0; }
                     public int          getDiscoverPort()                { return 0; }
@@ -188,6 +193,11 @@ public class Launcher {
                     public int          getPort()                        { return 0; }
                     public int          getListenPort()                  { return 0; }
                     public int          getJoinTimeout()                 { return 0; }
+                    public int          getVerifyThreads()               { return 0; }
+                    public int          getLogSyncInterval()             { return 0; }
+                    public boolean      getResumeLog()                   { return false; }
+                    public boolean      getIndexLog()                    { return false; }
+                    public String       getTallyCheckpointDirectory()    { return null;  }
                     public int          getViewRestartTimeout()          { return 1; }
                     public int          getPaperHeightForVVPAT()         { return vvpatHeight;     }
                     public int          getPaperWidthForVVPAT()          { return vvpatWidth;      }